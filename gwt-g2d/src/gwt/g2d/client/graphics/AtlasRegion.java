@@ -0,0 +1,66 @@
+package gwt.g2d.client.graphics;
+
+/**
+ * An image packed into a {@link TextureAtlas}: the page it is on, and where on that page.
+ */
+public final class AtlasRegion {
+
+	// page of the atlas
+	final int fPage;
+
+	// position and size on the page
+	final int fX;
+	final int fY;
+	final int fWidth;
+	final int fHeight;
+
+
+	// create a region
+	AtlasRegion(int page, int x, int y, int width, int height) {
+		fPage = page;
+		fX = x;
+		fY = y;
+		fWidth = width;
+		fHeight = height;
+	}
+
+
+	/**
+	 * Gets the index of the page of the atlas the image is on.
+	 */
+	public int getPage() {
+		return fPage;
+	}
+
+
+	/**
+	 * Gets the x-coordinate of the image on its page.
+	 */
+	public int getX() {
+		return fX;
+	}
+
+
+	/**
+	 * Gets the y-coordinate of the image on its page.
+	 */
+	public int getY() {
+		return fY;
+	}
+
+
+	/**
+	 * Gets the width of the image.
+	 */
+	public int getWidth() {
+		return fWidth;
+	}
+
+
+	/**
+	 * Gets the height of the image.
+	 */
+	public int getHeight() {
+		return fHeight;
+	}
+}
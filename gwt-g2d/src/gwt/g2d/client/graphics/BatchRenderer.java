@@ -0,0 +1,377 @@
+package gwt.g2d.client.graphics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gwt.g2d.shared.Color;
+
+/**
+ * Collects circles, rectangles, lines and polylines during a frame, and 
+ * draws them with as few canvas calls as possible: all primitives of the 
+ * same style are drawn as a single path, with a single fill or stroke, 
+ * through a {@link DirectShapeRenderer}.
+ * 
+ * By default, primitives are grouped by style over the whole frame, so a 
+ * primitive may be drawn below one that was added before it in another 
+ * style. In ordered mode (see {@link #setOrdered(boolean)}), only 
+ * consecutive primitives of the same style are grouped, which keeps the 
+ * exact order at the cost of more fills and strokes when styles interleave.
+ * 
+ * Primitives of the same style that overlap are filled together, so a 
+ * translucent color is not blended where they overlap. Nothing is drawn 
+ * until {@link #flush()} is called; the buffers are kept between frames, so 
+ * a steady scene doesn't allocate.
+ * 
+ * The bounds of every batch are kept, so a batch outside of the view is 
+ * culled and the bounds of the drawn ones are marked dirty, like any other 
+ * draw on the surface (see {@link Surface#setCulling(boolean)} and 
+ * {@link Surface#setDirtyTracking(boolean)}).
+ */
+public class BatchRenderer {
+	private static final int CIRCLE = 0, RECTANGLE = 1, LINE = 2, POLYLINE = 3, 
+			POLYGON = 4;
+	
+	/**
+	 * The primitives of a single style.
+	 */
+	private static final class Batch {
+		private final Color color;
+		private final boolean stroke;
+		private final double lineWidth;
+		
+		/** Another batch of the same color, with a different line width. */
+		private Batch next;
+		
+		private int[] kinds = new int[16];
+		private int kindCount;
+		private double[] values = new double[64];
+		private int valueCount;
+		
+		/** Whether the batch is in the list of batches to flush. */
+		private boolean queued;
+		
+		/** The bounds of the primitives, empty if min is larger than max. */
+		private double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, 
+				maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		
+		private Batch(Color color, boolean stroke, double lineWidth) {
+			this.color = color;
+			this.stroke = stroke;
+			this.lineWidth = lineWidth;
+		}
+		
+		private void add(int kind) {
+			if (kindCount == kinds.length) {
+				int[] grown = new int[kinds.length * 2];
+				System.arraycopy(kinds, 0, grown, 0, kindCount);
+				kinds = grown;
+			}
+			kinds[kindCount++] = kind;
+		}
+		
+		private void add(double value) {
+			if (valueCount == values.length) {
+				double[] grown = new double[values.length * 2];
+				System.arraycopy(values, 0, grown, 0, valueCount);
+				values = grown;
+			}
+			values[valueCount++] = value;
+		}
+		
+		private void include(double x, double y) {
+			if (x < minX) {
+				minX = x;
+			}
+			if (x > maxX) {
+				maxX = x;
+			}
+			if (y < minY) {
+				minY = y;
+			}
+			if (y > maxY) {
+				maxY = y;
+			}
+		}
+		
+		private void clear() {
+			kindCount = 0;
+			valueCount = 0;
+			queued = false;
+			minX = minY = Double.POSITIVE_INFINITY;
+			maxX = maxY = Double.NEGATIVE_INFINITY;
+		}
+	}
+	
+	private final Surface surface;
+	private final DirectShapeRenderer renderer;
+	private boolean ordered;
+	
+	/** The batches to flush, in order. */
+	private final List<Batch> queue = new ArrayList<Batch>();
+	
+	/** Reusable batches, by color code. */
+	private final Map<String, Batch> fillBatches = new HashMap<String, Batch>();
+	private final Map<String, Batch> strokeBatches = new HashMap<String, Batch>();
+	
+	/** Batches used in ordered mode, reused from frame to frame. */
+	private final List<Batch> orderedBatches = new ArrayList<Batch>();
+	
+	/** The batch the last primitive was added to. */
+	private Batch last;
+	
+	/**
+	 * Creates a renderer that draws onto the given surface.
+	 */
+	public BatchRenderer(Surface surface) {
+		this.surface = surface;
+		this.renderer = new DirectShapeRenderer(surface);
+	}
+	
+	/**
+	 * Checks whether the primitives are drawn in the exact order they were 
+	 * added.
+	 */
+	public boolean isOrdered() {
+		return ordered;
+	}
+	
+	/**
+	 * Sets whether the primitives are drawn in the exact order they were 
+	 * added (only grouping consecutive primitives of the same style), or 
+	 * grouped by style over the whole frame. Default: false. Flushes the 
+	 * primitives added so far.
+	 */
+	public void setOrdered(boolean ordered) {
+		flush();
+		this.ordered = ordered;
+	}
+	
+	/**
+	 * Adds a filled circle.
+	 */
+	public BatchRenderer fillCircle(double x, double y, double radius, Color color) {
+		Batch batch = getBatch(color, false, 0);
+		batch.add(CIRCLE);
+		batch.add(x);
+		batch.add(y);
+		batch.add(radius);
+		batch.include(x - radius, y - radius);
+		batch.include(x + radius, y + radius);
+		return this;
+	}
+	
+	/**
+	 * Adds a stroked circle.
+	 */
+	public BatchRenderer strokeCircle(double x, double y, double radius, Color color, 
+			double lineWidth) {
+		Batch batch = getBatch(color, true, lineWidth);
+		batch.add(CIRCLE);
+		batch.add(x);
+		batch.add(y);
+		batch.add(radius);
+		batch.include(x - radius, y - radius);
+		batch.include(x + radius, y + radius);
+		return this;
+	}
+	
+	/**
+	 * Adds a filled rectangle.
+	 */
+	public BatchRenderer fillRectangle(double x, double y, double width, 
+			double height, Color color) {
+		Batch batch = getBatch(color, false, 0);
+		addRectangle(batch, x, y, width, height);
+		return this;
+	}
+	
+	/**
+	 * Adds a stroked rectangle.
+	 */
+	public BatchRenderer strokeRectangle(double x, double y, double width, 
+			double height, Color color, double lineWidth) {
+		Batch batch = getBatch(color, true, lineWidth);
+		addRectangle(batch, x, y, width, height);
+		return this;
+	}
+	
+	/**
+	 * Adds a line segment.
+	 */
+	public BatchRenderer strokeLine(double fromX, double fromY, double toX, 
+			double toY, Color color, double lineWidth) {
+		Batch batch = getBatch(color, true, lineWidth);
+		batch.add(LINE);
+		batch.add(fromX);
+		batch.add(fromY);
+		batch.add(toX);
+		batch.add(toY);
+		batch.include(fromX, fromY);
+		batch.include(toX, toY);
+		return this;
+	}
+	
+	/**
+	 * Adds a polyline through the given number of points, whose x- and 
+	 * y-coordinates alternate in the given array.
+	 */
+	public BatchRenderer strokePolyline(double[] points, int pointCount, 
+			Color color, double lineWidth) {
+		addPoints(getBatch(color, true, lineWidth), POLYLINE, points, pointCount);
+		return this;
+	}
+	
+	/**
+	 * Adds a filled polygon with the given number of corners, whose x- and 
+	 * y-coordinates alternate in the given array.
+	 */
+	public BatchRenderer fillPolygon(double[] points, int pointCount, Color color) {
+		addPoints(getBatch(color, false, 0), POLYGON, points, pointCount);
+		return this;
+	}
+	
+	/**
+	 * Draws all primitives added since the previous flush, with one path and 
+	 * one fill or stroke per batch, and empties the batches. The fill style, 
+	 * stroke style and line width of the surface are changed.
+	 */
+	public void flush() {
+		for (int i = 0; i < queue.size(); i++) {
+			Batch batch = queue.get(i);
+			if (batch.kindCount > 0) {
+				draw(batch);
+			}
+			batch.clear();
+		}
+		queue.clear();
+		last = null;
+	}
+	
+	/**
+	 * Draws the primitives of a single batch, unless it is culled.
+	 */
+	private void draw(Batch batch) {
+		if (batch.stroke) {
+			surface.setStrokeStyle(batch.color).setLineWidth(batch.lineWidth);
+		} else {
+			surface.setFillStyle(batch.color);
+		}
+		double padding = batch.stroke ? surface.getStrokePadding() : 0;
+		if (batch.minX <= batch.maxX && surface.isSkipped(batch.minX, batch.minY, 
+				batch.maxX - batch.minX, batch.maxY - batch.minY, padding)) {
+			return;
+		}
+		renderer.beginPath();
+		double[] v = batch.values;
+		int j = 0;
+		for (int i = 0; i < batch.kindCount; i++) {
+			switch (batch.kinds[i]) {
+			case CIRCLE:
+				// a subpath of its own, without a line from the previous one
+				renderer.moveTo(v[j] + v[j + 2], v[j + 1])
+						.drawCircle(v[j], v[j + 1], v[j + 2]);
+				j += 3;
+				break;
+			case RECTANGLE:
+				renderer.drawRect(v[j], v[j + 1], v[j + 2], v[j + 3]).closePath();
+				j += 4;
+				break;
+			case LINE:
+				renderer.drawLineSegment(v[j], v[j + 1], v[j + 2], v[j + 3]);
+				j += 4;
+				break;
+			case POLYLINE:
+			case POLYGON:
+				int count = (int) v[j++];
+				renderer.moveTo(v[j], v[j + 1]);
+				for (int k = 1; k < count; k++) {
+					renderer.drawLineTo(v[j + 2 * k], v[j + 2 * k + 1]);
+				}
+				if (batch.kinds[i] == POLYGON) {
+					renderer.closePath();
+				}
+				j += 2 * count;
+				break;
+			}
+		}
+		if (batch.stroke) {
+			renderer.stroke();
+		} else {
+			renderer.fill();
+		}
+	}
+	
+	/**
+	 * Gets the batch a primitive of the given style goes into.
+	 */
+	private Batch getBatch(Color color, boolean stroke, double lineWidth) {
+		// most primitives have the same style as the one before
+		if (last != null && last.stroke == stroke && last.lineWidth == lineWidth 
+				&& (last.color == color || last.color.getColorCode().equals(color.getColorCode()))) {
+			return last;
+		}
+		Batch batch;
+		if (ordered) {
+			// a new batch after every change of style
+			int index = queue.size();
+			if (index < orderedBatches.size() && orderedBatches.get(index).stroke == stroke 
+					&& orderedBatches.get(index).lineWidth == lineWidth
+					&& orderedBatches.get(index).color.getColorCode().equals(color.getColorCode())) {
+				batch = orderedBatches.get(index);
+			} else {
+				batch = new Batch(color, stroke, lineWidth);
+				if (index < orderedBatches.size()) {
+					orderedBatches.set(index, batch);
+				} else {
+					orderedBatches.add(batch);
+				}
+			}
+		} else {
+			Map<String, Batch> batches = stroke ? strokeBatches : fillBatches;
+			Batch first = batches.get(color.getColorCode());
+			batch = first;
+			while (batch != null && batch.lineWidth != lineWidth) {
+				batch = batch.next;
+			}
+			if (batch == null) {
+				batch = new Batch(color, stroke, lineWidth);
+				batch.next = first;
+				batches.put(color.getColorCode(), batch);
+			}
+		}
+		if (!batch.queued) {
+			batch.queued = true;
+			queue.add(batch);
+		}
+		last = batch;
+		return batch;
+	}
+	
+	private static void addRectangle(Batch batch, double x, double y, 
+			double width, double height) {
+		batch.add(RECTANGLE);
+		batch.add(x);
+		batch.add(y);
+		batch.add(width);
+		batch.add(height);
+		batch.include(x, y);
+		batch.include(x + width, y + height);
+	}
+	
+	private static void addPoints(Batch batch, int kind, double[] points, 
+			int pointCount) {
+		if (pointCount < 2) {
+			return;
+		}
+		batch.add(kind);
+		batch.add(pointCount);
+		for (int i = 0; i < 2 * pointCount; i++) {
+			batch.add(points[i]);
+		}
+		for (int i = 0; i < 2 * pointCount; i += 2) {
+			batch.include(points[i], points[i + 1]);
+		}
+	}
+}
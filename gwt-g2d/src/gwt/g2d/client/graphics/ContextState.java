@@ -0,0 +1,257 @@
+package gwt.g2d.client.graphics;
+
+import com.google.gwt.canvas.dom.client.Context2d;
+import com.google.gwt.canvas.dom.client.Context2d.Composite;
+import com.google.gwt.canvas.dom.client.Context2d.LineCap;
+import com.google.gwt.canvas.dom.client.Context2d.LineJoin;
+import com.google.gwt.canvas.dom.client.Context2d.TextAlign;
+import com.google.gwt.canvas.dom.client.Context2d.TextBaseline;
+
+import gwt.g2d.client.math.Matrix;
+import gwt.g2d.shared.math.Vector2;
+
+/**
+ * A Java-side copy of the drawing state of a {@link Context2d}, so that a
+ * {@link Surface} can skip setting a style to the value it already has, and
+ * answer getters without reading from the context.
+ *
+ * A value that is not known (null, or NaN for numbers) never matches, so the
+ * next setter always reaches the context. Getters read unknown values from
+ * the context once, and remember them.
+ */
+final class ContextState {
+	/** The dash pattern of solid lines. */
+	static final double[] NO_DASHES = new double[0];
+
+	/** The fill and stroke style: a color code, a gradient or a pattern. */
+	Object fillStyle, strokeStyle;
+
+	double lineWidth, miterLimit, globalAlpha;
+
+	/** The dash pattern of lines, never modified; empty for solid lines. */
+	double[] lineDash;
+	double lineDashOffset;
+	double shadowOffsetX, shadowOffsetY, shadowBlur;
+	String shadowColor, font;
+	LineCap lineCap;
+	LineJoin lineJoin;
+	Composite globalCompositeOperation;
+	TextAlign textAlign;
+	TextBaseline textBaseline;
+
+	/**
+	 * The current transformation, in the order of the canvas' setTransform, 
+	 * or NaN if it is not known. 
+	 */
+	double m11, m12, m21, m22, dx, dy;
+
+	/** 
+	 * Bounds of the clipping region on the canvas; infinite if there is no 
+	 * clipping region, or if it is not known.
+	 */
+	double clipLeft, clipTop, clipRight, clipBottom;
+
+	/**
+	 * Creates the state of a new context.
+	 */
+	ContextState() {
+		reset();
+	}
+
+	/**
+	 * Sets every value to the default of a new context (or of a context whose
+	 * canvas was resized).
+	 */
+	void reset() {
+		fillStyle = strokeStyle = "#000000";
+		lineWidth = 1.0;
+		miterLimit = 10.0;
+		globalAlpha = 1.0;
+		lineDash = NO_DASHES;
+		lineDashOffset = 0;
+		shadowOffsetX = shadowOffsetY = shadowBlur = 0;
+		shadowColor = "rgba(0, 0, 0, 0)";
+		font = "10px sans-serif";
+		lineCap = LineCap.BUTT;
+		lineJoin = LineJoin.MITER;
+		globalCompositeOperation = Composite.SOURCE_OVER;
+		textAlign = TextAlign.START;
+		textBaseline = TextBaseline.ALPHABETIC;
+		setTransform(1, 0, 0, 1, 0, 0);
+		resetClip();
+	}
+
+	/**
+	 * Forgets every value, e.g. after the context was changed without going
+	 * through the surface.
+	 */
+	void invalidate() {
+		fillStyle = strokeStyle = null;
+		lineWidth = miterLimit = globalAlpha = Double.NaN;
+		lineDash = null;
+		lineDashOffset = Double.NaN;
+		shadowOffsetX = shadowOffsetY = shadowBlur = Double.NaN;
+		shadowColor = font = null;
+		lineCap = null;
+		lineJoin = null;
+		globalCompositeOperation = null;
+		textAlign = null;
+		textBaseline = null;
+		m11 = m12 = m21 = m22 = dx = dy = Double.NaN;
+		resetClip();
+	}
+
+	/**
+	 * Copies every value of the given state.
+	 */
+	void copyFrom(ContextState state) {
+		fillStyle = state.fillStyle;
+		strokeStyle = state.strokeStyle;
+		lineWidth = state.lineWidth;
+		miterLimit = state.miterLimit;
+		globalAlpha = state.globalAlpha;
+		lineDash = state.lineDash;
+		lineDashOffset = state.lineDashOffset;
+		shadowOffsetX = state.shadowOffsetX;
+		shadowOffsetY = state.shadowOffsetY;
+		shadowBlur = state.shadowBlur;
+		shadowColor = state.shadowColor;
+		font = state.font;
+		lineCap = state.lineCap;
+		lineJoin = state.lineJoin;
+		globalCompositeOperation = state.globalCompositeOperation;
+		textAlign = state.textAlign;
+		textBaseline = state.textBaseline;
+		copyTransformFrom(state);
+		clipLeft = state.clipLeft;
+		clipTop = state.clipTop;
+		clipRight = state.clipRight;
+		clipBottom = state.clipBottom;
+	}
+
+	/**
+	 * Copies the transformation of the given state.
+	 */
+	void copyTransformFrom(ContextState state) {
+		m11 = state.m11;
+		m12 = state.m12;
+		m21 = state.m21;
+		m22 = state.m22;
+		dx = state.dx;
+		dy = state.dy;
+	}
+
+	/**
+	 * Checks whether the current transformation is known.
+	 */
+	boolean isTransformKnown() {
+		return !Double.isNaN(m11);
+	}
+
+	/**
+	 * Sets the current transformation.
+	 */
+	void setTransform(double m11, double m12, double m21, double m22, 
+			double dx, double dy) {
+		this.m11 = m11;
+		this.m12 = m12;
+		this.m21 = m21;
+		this.m22 = m22;
+		this.dx = dx;
+		this.dy = dy;
+	}
+
+	/**
+	 * Multiplies the current transformation by the given one.
+	 */
+	void transform(double m11, double m12, double m21, double m22, 
+			double dx, double dy) {
+		setTransform(this.m11 * m11 + this.m21 * m12, this.m12 * m11 + this.m22 * m12,
+				this.m11 * m21 + this.m21 * m22, this.m12 * m21 + this.m22 * m22,
+				this.m11 * dx + this.m21 * dy + this.dx, this.m12 * dx + this.m22 * dy + this.dy);
+	}
+
+	/**
+	 * Sets the given matrix to the inverse of the current transformation, 
+	 * which is NaN if the transformation is not invertible or not known.
+	 */
+	void getInverseTransform(Matrix result) {
+		double det = m11 * m22 - m12 * m21;
+		if (det == 0) {
+			det = Double.NaN;
+		}
+		double i11 = m22 / det, i12 = -m12 / det;
+		double i21 = -m21 / det, i22 = m11 / det;
+		result.set(i11, i12, i21, i22, -(i11 * dx + i21 * dy), -(i12 * dx + i22 * dy));
+	}
+
+	/**
+	 * Applies the current transformation to the given point.
+	 */
+	void toSurfaceSpace(Vector2 point) {
+		double x = point.getX(), y = point.getY();
+		point.set(m11 * x + m21 * y + dx, m12 * x + m22 * y + dy);
+	}
+
+	/**
+	 * Applies the inverse of the current transformation to the given point, 
+	 * which becomes NaN if the transformation is not invertible or not known.
+	 */
+	void toUserSpace(Vector2 point) {
+		double det = m11 * m22 - m12 * m21;
+		if (det == 0) {
+			det = Double.NaN;
+		}
+		double x = point.getX() - dx, y = point.getY() - dy;
+		point.set((m22 * x - m21 * y) / det, (m11 * y - m12 * x) / det);
+	}
+
+	/**
+	 * Removes the clipping region.
+	 */
+	void resetClip() {
+		clipLeft = clipTop = Double.NEGATIVE_INFINITY;
+		clipRight = clipBottom = Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Intersects the clipping region with the given rectangle on the canvas.
+	 */
+	void clip(double left, double top, double right, double bottom) {
+		clipLeft = Math.max(clipLeft, left);
+		clipTop = Math.max(clipTop, top);
+		clipRight = Math.min(clipRight, right);
+		clipBottom = Math.min(clipBottom, bottom);
+	}
+
+	/**
+	 * Gets the constant of the given enum type whose CSS value is the given
+	 * string, as returned by the getters of the context.
+	 */
+	static <E extends Enum<E>> E fromValue(E[] values, String value) {
+		for (E e : values) {
+			if (getValue(e).equals(value)) {
+				return e;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the CSS value of a constant of one of the enums of the context.
+	 */
+	private static String getValue(Enum<?> e) {
+		if (e instanceof LineCap) {
+			return ((LineCap) e).getValue();
+		} else if (e instanceof LineJoin) {
+			return ((LineJoin) e).getValue();
+		} else if (e instanceof Composite) {
+			return ((Composite) e).getValue();
+		} else if (e instanceof TextAlign) {
+			return ((TextAlign) e).getValue();
+		} else if (e instanceof TextBaseline) {
+			return ((TextBaseline) e).getValue();
+		}
+		return e.name();
+	}
+}
@@ -15,12 +15,20 @@
  */
 package gwt.g2d.client.graphics;
 
+import gwt.g2d.client.graphics.shapes.DashedPathContext;
+import gwt.g2d.client.graphics.visitor.CanvasPathContext;
+import gwt.g2d.client.graphics.visitor.PathContext;
+
 import com.google.gwt.canvas.dom.client.Context2d;
 
 /**
- * Helper class for drawing dashed line.
- * Reference: http://davidowens.wordpress.com/2010/09/07/html-5-canvas-and-dashed-lines/
+ * Helper class for drawing dashed lines in software, for browsers without
+ * {@link Surface#setLineDash(double...)}. A dash pattern is an array of
+ * dash and gap lengths, as for the canvas' setLineDash; the phase is the
+ * distance into the pattern at which a line starts, so that consecutive
+ * lines can continue the pattern where the previous one stopped.
  * 
+ * @see DashedPathContext
  * @author hao1300@gmail.com
  */
 public class DashedLineRenderer {	
@@ -38,89 +46,78 @@ public class DashedLineRenderer {
 	 */
 	public static void drawDashedLine(Context2d context, double fromX, double fromY, 
 			double toX, double toY, double dashLength, double gapLength) {
-	  DashedLineHelper checkX = GreaterThanHelper.instance;
-	  DashedLineHelper checkY = GreaterThanHelper.instance;
-
-	  if (fromY - toY > 0) {
-	    checkY = LessThanHelper.instance;
-	  }
-	  if (fromX - toX > 0) {
-	    checkX = LessThanHelper.instance;
-	  }
-
-	  context.moveTo(fromX, fromY);
-	  double offsetX = fromX;
-	  double offsetY = fromY;
-	  boolean dash = true;
-	  double ang = Math.atan2(toY - fromY, toX - fromX);
-	  while (!(checkX.isThereYet(offsetX, toX) && checkY.isThereYet(offsetY, toY))) {
-	  	double len = (dash) ? dashLength : gapLength;
-	  	
-	    offsetX = checkX.getCap(toX, offsetX + (Math.cos(ang) * len));
-	    offsetY = checkY.getCap(toY, offsetY + (Math.sin(ang) * len));
-
-	    if (dash) {
-	    	context.lineTo(offsetX, offsetY);
-	    } else {
-	    	context.moveTo(offsetX, offsetY);
-	    }
-	    dash = !dash;
-	  }
+		drawDashedLine(new CanvasPathContext(context), fromX, fromY, toX, toY, 
+				dashLength, gapLength);
 	}
 	
 	/**
-	 * Helper class for checking the dash line.
+	 * Adds a dashed line from (fromX, fromY) to (toX, toY) to the given path.
+	 * The current position is set to the end point of the line.
+	 * 
+	 * @param path
+	 * @param fromX x-coordinate of the starting point
+	 * @param fromY y-coordinate of the starting point
+	 * @param toX x-coordinate of the ending point
+	 * @param toY y-coordinate of the ending point
+	 * @param dashLength length of the dash
+	 * @param gapLength length of the gap in between dashes
 	 */
-	private interface DashedLineHelper {
-		
-		/**
-		 * Checks whether the point has been reached yet.
-		 * 
-		 * @param from
-		 * @param to
-		 * @return
-		 */
-		boolean isThereYet(double from, double to);
-		
-		/**
-		 * Gets the cap of the two values. If the line is increasing, this will
-		 * return max(v1, v2). If the line is decreasing, this will return
-		 * min(v1, v2).
-		 * 
-		 * @param v1
-		 * @param v2
-		 * @return
-		 */
-		double getCap(double v1, double v2);
+	public static void drawDashedLine(PathContext path, double fromX, double fromY, 
+			double toX, double toY, double dashLength, double gapLength) {
+		DashedPathContext dashed = new DashedPathContext(path, 
+				new double[] {dashLength, gapLength}, 0);
+		dashed.moveTo(fromX, fromY);
+		dashed.lineTo(toX, toY);
+		if (!dashed.isInDash()) {
+			path.moveTo(toX, toY);
+		}		
 	}
 	
 	/**
-	 * Helper for a decreasing line.
+	 * Adds a dashed line from (fromX, fromY) to (toX, toY) to the given path,
+	 * starting at the given phase of the pattern.
+	 * 
+	 * @param path
+	 * @param fromX x-coordinate of the starting point
+	 * @param fromY y-coordinate of the starting point
+	 * @param toX x-coordinate of the ending point
+	 * @param toY y-coordinate of the ending point
+	 * @param pattern lengths of the dashes and gaps, alternately.
+	 * @param phase the distance into the pattern at which the line starts.
+	 * @return the phase at the end of the line, to continue the pattern on 
+	 * 				the next line.
 	 */
-	private static class LessThanHelper implements DashedLineHelper {
-		private static DashedLineHelper instance = new LessThanHelper();
-		
-		public double getCap(double v1, double v2) {
-			return Math.max(v1, v2);
-		}
-
-		public boolean isThereYet(double from, double to) {
-			return from <= to;
-		}		
+	public static double drawDashedLine(PathContext path, double fromX, double fromY, 
+			double toX, double toY, double[] pattern, double phase) {
+		DashedPathContext dashed = new DashedPathContext(path, pattern, phase);
+		dashed.moveTo(fromX, fromY);
+		dashed.lineTo(toX, toY);
+		return dashed.getPhase();
 	}
-	
+		
 	/**
-	 * Helper for an increasing line.
+	 * Adds a dashed polyline through the given points to the given path. The
+	 * pattern continues across the points, and dashes that span a point are 
+	 * joined there.
+	 * 
+	 * @param path
+	 * @param points the coordinates of the points: x0, y0, x1, y1, ...
+	 * @param offset the index of the x-coordinate of the first point.
+	 * @param count the number of points.
+	 * @param pattern lengths of the dashes and gaps, alternately.
+	 * @param phase the distance into the pattern at which the polyline starts.
+	 * @return the phase at the end of the polyline.
 	 */
-	private static class GreaterThanHelper implements DashedLineHelper {
-		private static DashedLineHelper instance = new GreaterThanHelper();
-		
-		public double getCap(double v1, double v2) {
-			return Math.min(v1, v2);
+	public static double drawDashedPolyline(PathContext path, double[] points, 
+			int offset, int count, double[] pattern, double phase) {
+		if (count <= 0) {
+			return phase;
 		}
-
-		public boolean isThereYet(double from, double to) {
-			return from >= to;
+		DashedPathContext dashed = new DashedPathContext(path, pattern, phase);
+		dashed.moveTo(points[offset], points[offset + 1]);
+		for (int i = 1; i < count; i++) {
+			dashed.lineTo(points[offset + i * 2], points[offset + i * 2 + 1]);
 		}		
+		return dashed.getPhase();
 	}
 }
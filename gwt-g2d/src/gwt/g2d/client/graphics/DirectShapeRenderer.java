@@ -23,11 +23,13 @@ import gwt.g2d.client.graphics.visitor.ArcToVisitor;
 import gwt.g2d.client.graphics.visitor.ArcVisitor;
 import gwt.g2d.client.graphics.visitor.BezierCurveToVisitor;
 import gwt.g2d.client.graphics.visitor.BezierCurveVisitor;
+import gwt.g2d.client.graphics.visitor.CanvasPathContext;
 import gwt.g2d.client.graphics.visitor.CircleVisitor;
 import gwt.g2d.client.graphics.visitor.EllipseVisitor;
 import gwt.g2d.client.graphics.visitor.LineSegmentVisitor;
 import gwt.g2d.client.graphics.visitor.LineToVisitor;
 import gwt.g2d.client.graphics.visitor.MoveToVisitor;
+import gwt.g2d.client.graphics.visitor.PathContext;
 import gwt.g2d.client.graphics.visitor.QuadraticCurveToVisitor;
 import gwt.g2d.client.graphics.visitor.QuadraticCurveVisitor;
 import gwt.g2d.client.graphics.visitor.RectangleVisitor;
@@ -52,20 +54,45 @@ import gwt.g2d.shared.math.Vector2;
  * when the shapes are very complex or when new custom shape are to be drawn in 
  * high frequency.
  * 
+ * A renderer created for a {@link DisplayList} records all commands into the
+ * list instead of drawing them. A renderer created for a {@link Surface} 
+ * saves, restores and transforms through the surface, so that the state it 
+ * keeps of the canvas stays current.
+ * 
  * @author hao1300@gmail.com
  */
 public class DirectShapeRenderer {
+	private final Surface surface;
 	private final Context2d context;
+	private final DisplayList displayList;
+	private final PathContext path;
 	
 	public DirectShapeRenderer(Surface surface) {
+		this.surface = surface;
 		context = surface.getContext();
+		displayList = null;
+		path = new CanvasPathContext(context);
+	}
+	
+	/**
+	 * Creates a renderer that records all commands into the given display list.
+	 */
+	public DirectShapeRenderer(DisplayList displayList) {
+		surface = null;
+		context = null;
+		this.displayList = displayList;
+		path = displayList;
 	}
 	
 	/**
 	 * Resets the current path.
 	 */
 	public final DirectShapeRenderer beginPath() {
-		context.beginPath();
+		if (displayList != null) {
+			displayList.beginPath();
+		} else {
+			context.beginPath();
+		}
 		return this;
 	}
 	
@@ -74,7 +101,7 @@ public class DirectShapeRenderer {
 	 * the same as the start and end of the newly closed subpath.
 	 */
 	public final DirectShapeRenderer closePath() {
-		context.closePath();
+		path.closePath();
 		return this;
 	}
 	
@@ -82,7 +109,11 @@ public class DirectShapeRenderer {
 	 * Further constrains the clipping region to the given path.
 	 */
 	public final DirectShapeRenderer clip() {
-		context.clip();
+		if (displayList != null) {
+			displayList.clip();
+		} else {
+			context.clip();
+		}
 		return this;
 	}
 	
@@ -90,7 +121,11 @@ public class DirectShapeRenderer {
 	 * Fills the subpaths with the current fill style.
 	 */
 	public final DirectShapeRenderer fill() {
-		context.fill();
+		if (displayList != null) {
+			displayList.fill();
+		} else {
+			context.fill();
+		}
 		return this;
 	}
 	
@@ -98,7 +133,11 @@ public class DirectShapeRenderer {
 	 * Strokes the subpaths with the current stroke style.
 	 */
 	public final DirectShapeRenderer stroke() {
-		context.stroke();
+		if (displayList != null) {
+			displayList.stroke();
+		} else {
+			context.stroke();
+		}
 		return this;
 	}
 	
@@ -106,6 +145,10 @@ public class DirectShapeRenderer {
 	 * Returns true if the given point is in the current path.
 	 */
 	public final boolean isPointInPath(double x, double y) {
+		if (context == null) {
+			throw new UnsupportedOperationException(
+					"The path of a display list can't be tested");
+		}
 		return context.isPointInPath(x, y);
 	}
 	
@@ -113,14 +156,14 @@ public class DirectShapeRenderer {
 	 * Returns true if the given point is in the current path.
 	 */
 	public final boolean isPointInPath(Vector2 point) {
-		return context.isPointInPath(point.getX(), point.getY());
+		return isPointInPath(point.getX(), point.getY());
 	}
 	
 	/**
 	 * @see MoveToVisitor#MoveToVisitor(double, double)
 	 */
 	public final DirectShapeRenderer moveTo(double x, double y) {
-		context.moveTo(x, y);
+		path.moveTo(x, y);
 		return this;
 	}
 	
@@ -135,7 +178,7 @@ public class DirectShapeRenderer {
 	 * @see LineToVisitor#LineToVisitor(double, double)
 	 */
 	public final DirectShapeRenderer drawLineTo(double x, double y) {
-		context.lineTo(x, y);
+		path.lineTo(x, y);
 		return this;
 	}
 	
@@ -151,7 +194,7 @@ public class DirectShapeRenderer {
 	 */
 	public final DirectShapeRenderer drawDashedLine(double fromX, double fromY, 
 			double toX, double toY, double dashLength, double gapLength) {
-		DashedLineRenderer.drawDashedLine(context, fromX, fromY, toX, toY, 
+		DashedLineRenderer.drawDashedLine(path, fromX, fromY, toX, toY, 
 				dashLength, gapLength);
 		return this;
 	}
@@ -161,11 +204,21 @@ public class DirectShapeRenderer {
 	 */
 	public final DirectShapeRenderer drawDashedLine(Vector2 fromPos, 
 			Vector2 toPos, double dashLength, double gapLength) {
-		DashedLineRenderer.drawDashedLine(context, fromPos.getX(), fromPos.getY(), 
+		DashedLineRenderer.drawDashedLine(path, fromPos.getX(), fromPos.getY(), 
 				toPos.getX(), toPos.getY(), dashLength, gapLength);
 		return this;
 	}
 	
+	/**
+	 * @see DashedLineRenderer#drawDashedPolyline(PathContext, double[], int, int, double[], double)
+	 */
+	public final DirectShapeRenderer drawDashedPolyline(double[] points, 
+			double[] pattern, double dashOffset) {
+		DashedLineRenderer.drawDashedPolyline(path, points, 0, points.length / 2, 
+				pattern, dashOffset);
+		return this;
+	}
+	
 	/**
 	 * @see LineSegmentVisitor#LineSegmentVisitor(double, double, double, double)
 	 */
@@ -187,7 +240,7 @@ public class DirectShapeRenderer {
 	 */
 	public final DirectShapeRenderer drawArc(double x, double y, double radius, 
 			double startAngle, double endAngle, boolean antiClockwise) {
-		context.arc(x, y, radius, startAngle, endAngle, antiClockwise);
+		path.arc(x, y, radius, startAngle, endAngle, antiClockwise);
 		return this;
 	}
 	
@@ -216,7 +269,7 @@ public class DirectShapeRenderer {
 			double startAngle, double endAngle, boolean antiClockwise, 
 			boolean connectFromPrev) {
 		if (!connectFromPrev) {
-			context.moveTo(x, y);
+			path.moveTo(x, y);
 		}
 		return drawArc(x, y, radius, startAngle, endAngle, antiClockwise);
 	}
@@ -246,7 +299,7 @@ public class DirectShapeRenderer {
 	 */
 	public final DirectShapeRenderer drawArcTo(double x1, double y1, double x2, 
 			double y2, double radius) {
-		context.arcTo(x1, y1, x2, y2, radius);
+		path.arcTo(x1, y1, x2, y2, radius);
 		return this;
 	}
 	
@@ -332,7 +385,7 @@ public class DirectShapeRenderer {
 	public final DirectShapeRenderer drawBezierCurveTo(double controlPoint1X, 
 			double controlPoint1Y, double controlPoint2X, double controlPoint2Y, 
 			double endPointX, double endPointY) {
-		context.bezierCurveTo(controlPoint1X, controlPoint1Y, 
+		path.bezierCurveTo(controlPoint1X, controlPoint1Y, 
 				controlPoint2X, controlPoint2Y, endPointX, endPointY);
 		return this;
 	}
@@ -379,7 +432,7 @@ public class DirectShapeRenderer {
 	 */
 	public final DirectShapeRenderer drawQuadraticCurveTo(double controlPointX, 
 			double controlPointY, double endPointX, double endPointY) {
-		context.quadraticCurveTo(controlPointX, controlPointY,
+		path.quadraticCurveTo(controlPointX, controlPointY,
 				endPointX, endPointY);
 		return this;
 	}
@@ -420,11 +473,11 @@ public class DirectShapeRenderer {
 	 */
 	public final DirectShapeRenderer drawRect(double x, double y, double width, 
 			double height) {
-		context.moveTo(x, y);
-		context.lineTo(x + width, y);
-		context.lineTo(x + width, y + height);
-		context.lineTo(x, y + height);
-		context.lineTo(x, y);
+		path.moveTo(x, y);
+		path.lineTo(x + width, y);
+		path.lineTo(x + width, y + height);
+		path.lineTo(x, y + height);
+		path.lineTo(x, y);
 		return this;
 	}
 	
@@ -448,7 +501,11 @@ public class DirectShapeRenderer {
 	 * @see Surface#save()
 	 */
 	public final DirectShapeRenderer save() {
-		context.save();
+		if (surface != null) {
+			surface.save();
+		} else {
+			path.save();
+		}
 		return this;
 	}
 	
@@ -456,7 +513,11 @@ public class DirectShapeRenderer {
 	 * @see Surface#restore()
 	 */
 	public final DirectShapeRenderer restore() {
-		context.restore();
+		if (surface != null) {
+			surface.restore();
+		} else {
+			path.restore();
+		}
 		return this;
 	}
 	
@@ -464,7 +525,11 @@ public class DirectShapeRenderer {
 	 * @see ScaleVisitor#ScaleVisitor(double, double)
 	 */
 	public final DirectShapeRenderer scale(double x, double y) {
-		context.scale(x, y);
+		if (surface != null) {
+			surface.scale(x, y);
+		} else {
+			path.scale(x, y);
+		}
 		return this;
 	}
 	
@@ -487,7 +552,11 @@ public class DirectShapeRenderer {
 	 * @see RotateVisitor#RotateVisitor(double)
 	 */
 	public final DirectShapeRenderer rotate(double angle) {
-		context.rotate(angle);
+		if (surface != null) {
+			surface.rotate(angle);
+		} else {
+			path.rotate(angle);
+		}
 		return this;
 	}
 	
@@ -503,7 +572,11 @@ public class DirectShapeRenderer {
 	 * @see TranslateVisitor#TranslateVisitor(double, double)
 	 */
 	public final DirectShapeRenderer translate(double x, double y) {
-		context.translate(x, y);
+		if (surface != null) {
+			surface.translate(x, y);
+		} else {
+			path.translate(x, y);
+		}
 		return this;
 	}
 	
@@ -520,7 +593,11 @@ public class DirectShapeRenderer {
 	 */
 	public final DirectShapeRenderer transform(double m11, double m12, 
 			double m21, double m22, double dx, double dy) {
-		context.transform(m11, m12, m21, m22, dx, dy);
+		if (surface != null) {
+			surface.transform(m11, m12, m21, m22, dx, dy);
+		} else {
+			path.transform(m11, m12, m21, m22, dx, dy);
+		}
 		return this;
 	}
 	
@@ -533,12 +610,20 @@ public class DirectShapeRenderer {
 	}
 	
 	/**
+	 * On a surface, the transformation is set like {@link Surface#setTransform(
+	 * double, double, double, double, double, double)} does, including the 
+	 * resolution scale of the surface.
+	 * 
 	 * @see SetTransformVisitor#SetTransformVisitor(double, double, double, 
 	 * 			double, double, double)
 	 */
 	public final DirectShapeRenderer setTransform(double m11, double m12, double m21, 
 			double m22, double dx, double dy) {
-		context.setTransform(m11, m12, m21, m22, dx, dy);
+		if (surface != null) {
+			surface.setTransform(m11, m12, m21, m22, dx, dy);
+		} else {
+			path.setTransform(m11, m12, m21, m22, dx, dy);
+		}
 		return this;
 	}
 	
@@ -0,0 +1,187 @@
+package gwt.g2d.client.graphics;
+
+import gwt.g2d.shared.math.Rectangle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The area of a {@link Surface} that was drawn on, as a small set of
+ * rectangles on the canvas.
+ *
+ * A rectangle that is added is merged with every rectangle it overlaps
+ * heavily: when the union of the two isn't much larger than the two
+ * together, a single rectangle costs less to clear than two. When there are
+ * too many rectangles, the new one is merged with the one that grows the
+ * least, and when the rectangles cover most of the surface, the whole
+ * surface is dirty.
+ */
+final class DirtyRegion {
+
+	/** How much larger than the two rectangles their union may be. */
+	private static final double MERGE_SLACK = 1.3;
+
+	/** The most rectangles that are tracked. */
+	private static final int MAX_RECTANGLES = 16;
+
+	/** The share of the surface above which the whole surface is dirty. */
+	private static final double FULL_RATIO = 0.6;
+
+	private final double[] left = new double[MAX_RECTANGLES];
+	private final double[] top = new double[MAX_RECTANGLES];
+	private final double[] right = new double[MAX_RECTANGLES];
+	private final double[] bottom = new double[MAX_RECTANGLES];
+	private int count;
+	private double area;
+	private boolean full;
+
+	/**
+	 * Checks whether nothing is dirty.
+	 */
+	boolean isEmpty() {
+		return count == 0 && !full;
+	}
+
+	/**
+	 * Checks whether the whole surface is dirty.
+	 */
+	boolean isFull() {
+		return full;
+	}
+
+	/**
+	 * Marks the whole surface as dirty.
+	 */
+	void setFull() {
+		full = true;
+		count = 0;
+		area = 0;
+	}
+
+	/**
+	 * Marks nothing as dirty.
+	 */
+	void clear() {
+		full = false;
+		count = 0;
+		area = 0;
+	}
+
+	/**
+	 * Adds the given rectangle of a surface of the given size. The rectangle
+	 * is grown to whole pixels, plus one pixel for anti-aliasing.
+	 */
+	void add(double l, double t, double r, double b, int width, int height) {
+		if (full) {
+			return;
+		}
+		l = Math.max(0, Math.floor(l) - 1);
+		t = Math.max(0, Math.floor(t) - 1);
+		r = Math.min(width, Math.ceil(r) + 1);
+		b = Math.min(height, Math.ceil(b) + 1);
+		if (l >= r || t >= b) {
+			return;
+		}
+
+		// absorb the rectangles that the new one overlaps heavily, which may
+		// make it overlap others
+		boolean grown = true;
+		while (grown) {
+			grown = false;
+			for (int i = count - 1; i >= 0; i--) {
+				double ul = Math.min(l, left[i]), ut = Math.min(t, top[i]);
+				double ur = Math.max(r, right[i]), ub = Math.max(b, bottom[i]);
+				double union = (ur - ul) * (ub - ut);
+				if (union <= ((r - l) * (b - t) + areaOf(i)) * MERGE_SLACK) {
+					l = ul;
+					t = ut;
+					r = ur;
+					b = ub;
+					remove(i);
+					grown = true;
+				}
+			}
+		}
+
+		// no room left: merge with the rectangle that grows the least
+		if (count == MAX_RECTANGLES) {
+			int best = 0;
+			double bestGrowth = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				double growth = (Math.max(r, right[i]) - Math.min(l, left[i]))
+						* (Math.max(b, bottom[i]) - Math.min(t, top[i])) - areaOf(i);
+				if (growth < bestGrowth) {
+					best = i;
+					bestGrowth = growth;
+				}
+			}
+			l = Math.min(l, left[best]);
+			t = Math.min(t, top[best]);
+			r = Math.max(r, right[best]);
+			b = Math.max(b, bottom[best]);
+			remove(best);
+		}
+
+		left[count] = l;
+		top[count] = t;
+		right[count] = r;
+		bottom[count] = b;
+		count++;
+		area += (r - l) * (b - t);
+		if (area > (double) width * height * FULL_RATIO) {
+			setFull();
+		}
+	}
+
+	/**
+	 * Gets the number of rectangles; 0 if the whole surface is dirty.
+	 */
+	int getCount() {
+		return count;
+	}
+
+	double getLeft(int index) {
+		return left[index];
+	}
+
+	double getTop(int index) {
+		return top[index];
+	}
+
+	double getRight(int index) {
+		return right[index];
+	}
+
+	double getBottom(int index) {
+		return bottom[index];
+	}
+
+	/**
+	 * Gets the dirty rectangles of a surface of the given size.
+	 */
+	List<Rectangle> getRectangles(int width, int height) {
+		List<Rectangle> rectangles = new ArrayList<Rectangle>();
+		if (full) {
+			rectangles.add(new Rectangle(0, 0, width, height));
+		} else {
+			for (int i = 0; i < count; i++) {
+				rectangles.add(new Rectangle(left[i], top[i], right[i] - left[i],
+						bottom[i] - top[i]));
+			}
+		}
+		return rectangles;
+	}
+
+	private double areaOf(int index) {
+		return (right[index] - left[index]) * (bottom[index] - top[index]);
+	}
+
+	private void remove(int index) {
+		area -= areaOf(index);
+		count--;
+		left[index] = left[count];
+		top[index] = top[count];
+		right[index] = right[count];
+		bottom[index] = bottom[count];
+	}
+}
@@ -0,0 +1,825 @@
+package gwt.g2d.client.graphics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gwt.canvas.dom.client.CanvasGradient;
+import com.google.gwt.canvas.dom.client.CanvasPattern;
+import com.google.gwt.canvas.dom.client.Context2d;
+import com.google.gwt.canvas.dom.client.Context2d.Composite;
+import com.google.gwt.canvas.dom.client.Context2d.LineCap;
+import com.google.gwt.canvas.dom.client.Context2d.LineJoin;
+import com.google.gwt.canvas.dom.client.Context2d.TextAlign;
+import com.google.gwt.canvas.dom.client.Context2d.TextBaseline;
+import com.google.gwt.dom.client.CanvasElement;
+import com.google.gwt.dom.client.ImageElement;
+
+import gwt.g2d.client.graphics.shapes.Shape;
+import gwt.g2d.client.graphics.visitor.PathContext;
+import gwt.g2d.client.math.Matrix;
+import gwt.g2d.shared.Color;
+import gwt.g2d.shared.math.Rectangle;
+
+/**
+ * A recorded sequence of drawing commands, which can be replayed onto any
+ * {@link Surface} with a single call to {@link #replay(Surface)}.
+ *
+ * The commands are recorded with the same methods as on {@link Surface} and
+ * {@link DirectShapeRenderer} (which can record into a display list with
+ * {@link DirectShapeRenderer#DirectShapeRenderer(DisplayList)}). They are
+ * stored as an array of opcodes and an array of numeric operands; styles,
+ * texts and images are interned, so that a style that is used many times is
+ * stored once. Replaying walks the arrays in a single loop, without creating
+ * any objects, so a mostly-static scene can be redrawn every frame at the
+ * cost of the canvas calls alone.
+ *
+ * Styles are replayed through the surface, which skips the ones that are
+ * already set. Rectangles, images and text are replayed through the surface 
+ * as well, so they are culled and marked dirty like any other draw (see 
+ * {@link Surface#setCulling(boolean)} and 
+ * {@link Surface#setDirtyTracking(boolean)}); the bounds of filled and 
+ * stroked paths aren't known, so they mark the whole surface dirty.
+ */
+public class DisplayList implements PathContext {
+	// opcodes, followed by the index of their object operand if they have one
+	private static final int SAVE = 0, RESTORE = 1, TRANSLATE = 2, SCALE = 3,
+			ROTATE = 4, TRANSFORM = 5, SET_TRANSFORM = 6, FILL_STYLE = 7,
+			STROKE_STYLE = 8, LINE_WIDTH = 9, LINE_CAP = 10, LINE_JOIN = 11,
+			MITER_LIMIT = 12, GLOBAL_ALPHA = 13, COMPOSITE = 14, FONT = 15,
+			TEXT_ALIGN = 16, TEXT_BASELINE = 17, SHADOW_OFFSET = 18,
+			SHADOW_BLUR = 19, SHADOW_COLOR = 20, BEGIN_PATH = 21, CLOSE_PATH = 22,
+			MOVE_TO = 23, LINE_TO = 24, QUADRATIC_CURVE_TO = 25,
+			BEZIER_CURVE_TO = 26, ARC = 27, ARC_TO = 28, RECT = 29, FILL = 30,
+			STROKE = 31, CLIP = 32, FILL_RECT = 33, STROKE_RECT = 34,
+			CLEAR_RECT = 35, FILL_TEXT = 36, FILL_TEXT_MAX_WIDTH = 37,
+			STROKE_TEXT = 38, STROKE_TEXT_MAX_WIDTH = 39, DRAW_CANVAS = 40,
+			DRAW_CANVAS_SCALED = 41, DRAW_CANVAS_CLIPPED = 42, DRAW_IMAGE = 43,
+			DRAW_IMAGE_SCALED = 44, DRAW_IMAGE_CLIPPED = 45;
+
+	private int[] ops = new int[64];
+	private int opCount;
+	private double[] args = new double[256];
+	private int argCount;
+	private Object[] objects = new Object[16];
+	private int objectCount;
+	private final Map<Object, Integer> objectIndices = new HashMap<Object, Integer>();
+	private int commandCount;
+
+	/**
+	 * Replays all recorded commands onto the given surface.
+	 */
+	public void replay(Surface surface) {
+		Context2d context = surface.getContext();
+		int[] ops = this.ops;
+		double[] a = this.args;
+		Object[] objects = this.objects;
+		int i = 0, j = 0;
+		while (i < opCount) {
+			switch (ops[i++]) {
+			case SAVE:
+				surface.save();
+				break;
+			case RESTORE:
+				surface.restore();
+				break;
+			case TRANSLATE:
+				surface.translate(a[j], a[j + 1]);
+				j += 2;
+				break;
+			case SCALE:
+				surface.scale(a[j], a[j + 1]);
+				j += 2;
+				break;
+			case ROTATE:
+				surface.rotate(a[j++]);
+				break;
+			case TRANSFORM:
+				surface.transform(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4], a[j + 5]);
+				j += 6;
+				break;
+			case SET_TRANSFORM:
+				surface.setTransform(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4], a[j + 5]);
+				j += 6;
+				break;
+			case FILL_STYLE:
+				surface.applyFillStyle(objects[ops[i++]]);
+				break;
+			case STROKE_STYLE:
+				surface.applyStrokeStyle(objects[ops[i++]]);
+				break;
+			case LINE_WIDTH:
+				surface.setLineWidth(a[j++]);
+				break;
+			case LINE_CAP:
+				surface.setLineCap((LineCap) objects[ops[i++]]);
+				break;
+			case LINE_JOIN:
+				surface.setLineJoin((LineJoin) objects[ops[i++]]);
+				break;
+			case MITER_LIMIT:
+				surface.setMiterLimit(a[j++]);
+				break;
+			case GLOBAL_ALPHA:
+				surface.setGlobalAlpha(a[j++]);
+				break;
+			case COMPOSITE:
+				surface.setGlobalCompositeOperation((Composite) objects[ops[i++]]);
+				break;
+			case FONT:
+				surface.setFont((String) objects[ops[i++]]);
+				break;
+			case TEXT_ALIGN:
+				surface.setTextAlign((TextAlign) objects[ops[i++]]);
+				break;
+			case TEXT_BASELINE:
+				surface.setTextBaseline((TextBaseline) objects[ops[i++]]);
+				break;
+			case SHADOW_OFFSET:
+				surface.setShadowOffsetX(a[j]).setShadowOffsetY(a[j + 1]);
+				j += 2;
+				break;
+			case SHADOW_BLUR:
+				surface.setShadowBlur(a[j++]);
+				break;
+			case SHADOW_COLOR:
+				surface.applyShadowColor((String) objects[ops[i++]]);
+				break;
+			case BEGIN_PATH:
+				context.beginPath();
+				break;
+			case CLOSE_PATH:
+				context.closePath();
+				break;
+			case MOVE_TO:
+				context.moveTo(a[j], a[j + 1]);
+				j += 2;
+				break;
+			case LINE_TO:
+				context.lineTo(a[j], a[j + 1]);
+				j += 2;
+				break;
+			case QUADRATIC_CURVE_TO:
+				context.quadraticCurveTo(a[j], a[j + 1], a[j + 2], a[j + 3]);
+				j += 4;
+				break;
+			case BEZIER_CURVE_TO:
+				context.bezierCurveTo(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4], a[j + 5]);
+				j += 6;
+				break;
+			case ARC:
+				context.arc(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4], a[j + 5] != 0);
+				j += 6;
+				break;
+			case ARC_TO:
+				context.arcTo(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4]);
+				j += 5;
+				break;
+			case RECT:
+				context.rect(a[j], a[j + 1], a[j + 2], a[j + 3]);
+				j += 4;
+				break;
+			case FILL:
+				surface.markAllDirty();
+				context.fill();
+				break;
+			case STROKE:
+				surface.markAllDirty();
+				context.stroke();
+				break;
+			case CLIP:
+				context.clip();
+				break;
+			case FILL_RECT:
+				surface.fillRectangle(a[j], a[j + 1], a[j + 2], a[j + 3]);
+				j += 4;
+				break;
+			case STROKE_RECT:
+				surface.strokeRectangle(a[j], a[j + 1], a[j + 2], a[j + 3]);
+				j += 4;
+				break;
+			case CLEAR_RECT:
+				surface.clearRectangle(a[j], a[j + 1], a[j + 2], a[j + 3]);
+				j += 4;
+				break;
+			case FILL_TEXT:
+				surface.fillText((String) objects[ops[i++]], a[j], a[j + 1]);
+				j += 2;
+				break;
+			case FILL_TEXT_MAX_WIDTH:
+				surface.fillText((String) objects[ops[i++]], a[j], a[j + 1], a[j + 2]);
+				j += 3;
+				break;
+			case STROKE_TEXT:
+				surface.strokeText((String) objects[ops[i++]], a[j], a[j + 1]);
+				j += 2;
+				break;
+			case STROKE_TEXT_MAX_WIDTH:
+				surface.strokeText((String) objects[ops[i++]], a[j], a[j + 1], a[j + 2]);
+				j += 3;
+				break;
+			case DRAW_CANVAS:
+				surface.drawImage((CanvasElement) objects[ops[i++]], a[j], a[j + 1]);
+				j += 2;
+				break;
+			case DRAW_CANVAS_SCALED:
+				surface.drawImage((CanvasElement) objects[ops[i++]], a[j], a[j + 1],
+						a[j + 2], a[j + 3]);
+				j += 4;
+				break;
+			case DRAW_CANVAS_CLIPPED:
+				surface.drawImage((CanvasElement) objects[ops[i++]], a[j], a[j + 1],
+						a[j + 2], a[j + 3], a[j + 4], a[j + 5], a[j + 6], a[j + 7]);
+				j += 8;
+				break;
+			case DRAW_IMAGE:
+				surface.drawImage((ImageElement) objects[ops[i++]], a[j], a[j + 1]);
+				j += 2;
+				break;
+			case DRAW_IMAGE_SCALED:
+				surface.drawImage((ImageElement) objects[ops[i++]], a[j], a[j + 1],
+						a[j + 2], a[j + 3]);
+				j += 4;
+				break;
+			case DRAW_IMAGE_CLIPPED:
+				surface.drawImage((ImageElement) objects[ops[i++]], a[j], a[j + 1],
+						a[j + 2], a[j + 3], a[j + 4], a[j + 5], a[j + 6], a[j + 7]);
+				j += 8;
+				break;
+			default:
+				throw new IllegalStateException("Unknown opcode " + ops[i - 1]);
+			}
+		}
+	}
+
+	/**
+	 * Removes all recorded commands, keeping the allocated arrays for the
+	 * next recording.
+	 */
+	public DisplayList clear() {
+		opCount = argCount = commandCount = 0;
+		for (int i = 0; i < objectCount; i++) {
+			objects[i] = null;
+		}
+		objectCount = 0;
+		objectIndices.clear();
+		return this;
+	}
+
+	/**
+	 * Gets the number of recorded commands.
+	 */
+	public int size() {
+		return commandCount;
+	}
+
+	/**
+	 * Checks whether no commands were recorded.
+	 */
+	public boolean isEmpty() {
+		return commandCount == 0;
+	}
+
+	/**
+	 * Records {@link Surface#save()}.
+	 */
+	@Override
+	public void save() {
+		op(SAVE);
+	}
+
+	/**
+	 * Records {@link Surface#restore()}.
+	 */
+	@Override
+	public void restore() {
+		op(RESTORE);
+	}
+
+	@Override
+	public void translate(double x, double y) {
+		op(TRANSLATE, x, y);
+	}
+
+	@Override
+	public void scale(double x, double y) {
+		op(SCALE, x, y);
+	}
+
+	@Override
+	public void rotate(double angle) {
+		op(ROTATE, angle);
+	}
+
+	@Override
+	public void transform(double m11, double m12, double m21, double m22,
+			double dx, double dy) {
+		op(TRANSFORM, m11, m12, m21, m22, dx, dy);
+	}
+
+	/**
+	 * Records {@link Surface#transform(Matrix)}.
+	 */
+	public DisplayList transform(Matrix matrix) {
+		transform(matrix.getM11(), matrix.getM12(), matrix.getM21(),
+				matrix.getM22(), matrix.getDx(), matrix.getDy());
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#setTransform(double, double, double, double,
+	 * double, double)}. The transformation is relative to the surface the
+	 * list is replayed onto.
+	 */
+	@Override
+	public void setTransform(double m11, double m12, double m21, double m22,
+			double dx, double dy) {
+		op(SET_TRANSFORM, m11, m12, m21, m22, dx, dy);
+	}
+
+	/**
+	 * Records {@link Surface#setTransform(Matrix)}.
+	 */
+	public DisplayList setTransform(Matrix matrix) {
+		setTransform(matrix.getM11(), matrix.getM12(), matrix.getM21(),
+				matrix.getM22(), matrix.getDx(), matrix.getDy());
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#setFillStyle(Color)}.
+	 */
+	public DisplayList setFillStyle(Color color) {
+		return op(FILL_STYLE, color.getColorCode());
+	}
+
+	/**
+	 * Records {@link Surface#setFillStyle(CanvasGradient)}.
+	 */
+	public DisplayList setFillStyle(CanvasGradient gradient) {
+		return op(FILL_STYLE, gradient);
+	}
+
+	/**
+	 * Records {@link Surface#setFillStyle(CanvasPattern)}.
+	 */
+	public DisplayList setFillStyle(CanvasPattern pattern) {
+		return op(FILL_STYLE, pattern);
+	}
+
+	/**
+	 * Records {@link Surface#setStrokeStyle(Color)}.
+	 */
+	public DisplayList setStrokeStyle(Color color) {
+		return op(STROKE_STYLE, color.getColorCode());
+	}
+
+	/**
+	 * Records {@link Surface#setStrokeStyle(CanvasGradient)}.
+	 */
+	public DisplayList setStrokeStyle(CanvasGradient gradient) {
+		return op(STROKE_STYLE, gradient);
+	}
+
+	/**
+	 * Records {@link Surface#setStrokeStyle(CanvasPattern)}.
+	 */
+	public DisplayList setStrokeStyle(CanvasPattern pattern) {
+		return op(STROKE_STYLE, pattern);
+	}
+
+	/**
+	 * Records {@link Surface#setLineWidth(double)}.
+	 */
+	public DisplayList setLineWidth(double lineWidth) {
+		return op(LINE_WIDTH, lineWidth);
+	}
+
+	/**
+	 * Records {@link Surface#setLineCap(LineCap)}.
+	 */
+	public DisplayList setLineCap(LineCap lineCap) {
+		return op(LINE_CAP, lineCap);
+	}
+
+	/**
+	 * Records {@link Surface#setLineJoin(LineJoin)}.
+	 */
+	public DisplayList setLineJoin(LineJoin lineJoin) {
+		return op(LINE_JOIN, lineJoin);
+	}
+
+	/**
+	 * Records {@link Surface#setMiterLimit(double)}.
+	 */
+	public DisplayList setMiterLimit(double miterLimit) {
+		return op(MITER_LIMIT, miterLimit);
+	}
+
+	/**
+	 * Records {@link Surface#setGlobalAlpha(double)}.
+	 */
+	public DisplayList setGlobalAlpha(double alpha) {
+		return op(GLOBAL_ALPHA, alpha);
+	}
+
+	/**
+	 * Records {@link Surface#setGlobalCompositeOperation(Composite)}.
+	 */
+	public DisplayList setGlobalCompositeOperation(Composite compositeOperation) {
+		return op(COMPOSITE, compositeOperation);
+	}
+
+	/**
+	 * Records {@link Surface#setFont(String)}.
+	 */
+	public DisplayList setFont(String font) {
+		return op(FONT, font);
+	}
+
+	/**
+	 * Records {@link Surface#setTextAlign(TextAlign)}.
+	 */
+	public DisplayList setTextAlign(TextAlign textAlign) {
+		return op(TEXT_ALIGN, textAlign);
+	}
+
+	/**
+	 * Records {@link Surface#setTextBaseline(TextBaseline)}.
+	 */
+	public DisplayList setTextBaseline(TextBaseline textBaseline) {
+		return op(TEXT_BASELINE, textBaseline);
+	}
+
+	/**
+	 * Records {@link Surface#setShadowOffsetX(double)} and
+	 * {@link Surface#setShadowOffsetY(double)}.
+	 */
+	public DisplayList setShadowOffset(double x, double y) {
+		op(SHADOW_OFFSET, x, y);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#setShadowBlur(double)}.
+	 */
+	public DisplayList setShadowBlur(double shadowBlur) {
+		return op(SHADOW_BLUR, shadowBlur);
+	}
+
+	/**
+	 * Records {@link Surface#setShadowColor(Color)}.
+	 */
+	public DisplayList setShadowColor(Color shadowColor) {
+		return op(SHADOW_COLOR, shadowColor.getColorCode());
+	}
+
+	/**
+	 * Records {@link DirectShapeRenderer#beginPath()}.
+	 */
+	public DisplayList beginPath() {
+		op(BEGIN_PATH);
+		return this;
+	}
+
+	@Override
+	public void closePath() {
+		op(CLOSE_PATH);
+	}
+
+	@Override
+	public void moveTo(double x, double y) {
+		op(MOVE_TO, x, y);
+	}
+
+	@Override
+	public void lineTo(double x, double y) {
+		op(LINE_TO, x, y);
+	}
+
+	@Override
+	public void quadraticCurveTo(double cpx, double cpy, double x, double y) {
+		op(QUADRATIC_CURVE_TO, cpx, cpy, x, y);
+	}
+
+	@Override
+	public void bezierCurveTo(double cp1x, double cp1y, double cp2x,
+			double cp2y, double x, double y) {
+		op(BEZIER_CURVE_TO, cp1x, cp1y, cp2x, cp2y, x, y);
+	}
+
+	@Override
+	public void arc(double x, double y, double radius, double startAngle,
+			double endAngle, boolean antiClockwise) {
+		op(ARC, x, y, radius, startAngle, endAngle, antiClockwise ? 1 : 0);
+	}
+
+	@Override
+	public void arcTo(double x1, double y1, double x2, double y2, double radius) {
+		op(ARC_TO, x1, y1, x2, y2, radius);
+	}
+
+	@Override
+	public void rect(double x, double y, double width, double height) {
+		op(RECT, x, y, width, height);
+	}
+
+	/**
+	 * Records {@link DirectShapeRenderer#fill()}.
+	 */
+	public DisplayList fill() {
+		op(FILL);
+		return this;
+	}
+
+	/**
+	 * Records {@link DirectShapeRenderer#stroke()}.
+	 */
+	public DisplayList stroke() {
+		op(STROKE);
+		return this;
+	}
+
+	/**
+	 * Records {@link DirectShapeRenderer#clip()}.
+	 */
+	public DisplayList clip() {
+		op(CLIP);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#fillShape(Shape)}, using the geometry of the
+	 * shape as described by {@link Shape#appendPath(PathContext)}.
+	 */
+	public DisplayList fillShape(Shape shape) {
+		beginPath();
+		shape.appendPath(this);
+		return fill();
+	}
+
+	/**
+	 * Records {@link Surface#strokeShape(Shape)}, using the geometry of the
+	 * shape as described by {@link Shape#appendPath(PathContext)}.
+	 */
+	public DisplayList strokeShape(Shape shape) {
+		beginPath();
+		shape.appendPath(this);
+		return stroke();
+	}
+
+	/**
+	 * Records {@link Surface#fillRectangle(double, double, double, double)}.
+	 */
+	public DisplayList fillRectangle(double x, double y, double width, double height) {
+		op(FILL_RECT, x, y, width, height);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#fillRectangle(Rectangle)}.
+	 */
+	public DisplayList fillRectangle(Rectangle rectangle) {
+		return fillRectangle(rectangle.getX(), rectangle.getY(),
+				rectangle.getWidth(), rectangle.getHeight());
+	}
+
+	/**
+	 * Records {@link Surface#strokeRectangle(double, double, double, double)}.
+	 */
+	public DisplayList strokeRectangle(double x, double y, double width, double height) {
+		op(STROKE_RECT, x, y, width, height);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#strokeRectangle(Rectangle)}.
+	 */
+	public DisplayList strokeRectangle(Rectangle rectangle) {
+		return strokeRectangle(rectangle.getX(), rectangle.getY(),
+				rectangle.getWidth(), rectangle.getHeight());
+	}
+
+	/**
+	 * Records {@link Surface#clearRectangle(double, double, double, double)}.
+	 */
+	public DisplayList clearRectangle(double x, double y, double width, double height) {
+		op(CLEAR_RECT, x, y, width, height);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#fillText(String, double, double)}.
+	 */
+	public DisplayList fillText(String text, double x, double y) {
+		op(FILL_TEXT, text);
+		arg(x);
+		arg(y);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#fillText(String, double, double, double)}.
+	 */
+	public DisplayList fillText(String text, double x, double y, double maxWidth) {
+		op(FILL_TEXT_MAX_WIDTH, text);
+		arg(x);
+		arg(y);
+		arg(maxWidth);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#strokeText(String, double, double)}.
+	 */
+	public DisplayList strokeText(String text, double x, double y) {
+		op(STROKE_TEXT, text);
+		arg(x);
+		arg(y);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#strokeText(String, double, double, double)}.
+	 */
+	public DisplayList strokeText(String text, double x, double y, double maxWidth) {
+		op(STROKE_TEXT_MAX_WIDTH, text);
+		arg(x);
+		arg(y);
+		arg(maxWidth);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#drawImage(CanvasElement, double, double)}.
+	 */
+	public DisplayList drawImage(CanvasElement image, double x, double y) {
+		op(DRAW_CANVAS, image);
+		arg(x);
+		arg(y);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#drawImage(CanvasElement, double, double, double,
+	 * double)}.
+	 */
+	public DisplayList drawImage(CanvasElement image, double x, double y,
+			double width, double height) {
+		op(DRAW_CANVAS_SCALED, image);
+		args(x, y, width, height);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#drawImage(CanvasElement, double, double, double,
+	 * double, double, double, double, double)}.
+	 */
+	public DisplayList drawImage(CanvasElement image, double sourceX,
+			double sourceY, double sourceWidth, double sourceHeight, double destX,
+			double destY, double destWidth, double destHeight) {
+		op(DRAW_CANVAS_CLIPPED, image);
+		args(sourceX, sourceY, sourceWidth, sourceHeight);
+		args(destX, destY, destWidth, destHeight);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#drawImage(ImageElement, double, double)}.
+	 */
+	public DisplayList drawImage(ImageElement image, double x, double y) {
+		op(DRAW_IMAGE, image);
+		arg(x);
+		arg(y);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#drawImage(ImageElement, double, double, double,
+	 * double)}.
+	 */
+	public DisplayList drawImage(ImageElement image, double x, double y,
+			double width, double height) {
+		op(DRAW_IMAGE_SCALED, image);
+		args(x, y, width, height);
+		return this;
+	}
+
+	/**
+	 * Records {@link Surface#drawImage(ImageElement, double, double, double,
+	 * double, double, double, double, double)}.
+	 */
+	public DisplayList drawImage(ImageElement image, double sourceX,
+			double sourceY, double sourceWidth, double sourceHeight, double destX,
+			double destY, double destWidth, double destHeight) {
+		op(DRAW_IMAGE_CLIPPED, image);
+		args(sourceX, sourceY, sourceWidth, sourceHeight);
+		args(destX, destY, destWidth, destHeight);
+		return this;
+	}
+
+	/**
+	 * Adds an opcode without operands.
+	 */
+	private void op(int op) {
+		if (opCount == ops.length) {
+			int[] newOps = new int[ops.length * 2];
+			System.arraycopy(ops, 0, newOps, 0, opCount);
+			ops = newOps;
+		}
+		ops[opCount++] = op;
+		commandCount++;
+	}
+
+	/**
+	 * Adds an opcode with an object operand, which is interned.
+	 */
+	private DisplayList op(int op, Object object) {
+		op(op);
+		Integer index = objectIndices.get(object);
+		if (index == null) {
+			if (objectCount == objects.length) {
+				Object[] newObjects = new Object[objects.length * 2];
+				System.arraycopy(objects, 0, newObjects, 0, objectCount);
+				objects = newObjects;
+			}
+			index = objectCount;
+			objects[objectCount++] = object;
+			objectIndices.put(object, index);
+		}
+		if (opCount == ops.length) {
+			int[] newOps = new int[ops.length * 2];
+			System.arraycopy(ops, 0, newOps, 0, opCount);
+			ops = newOps;
+		}
+		ops[opCount++] = index;
+		return this;
+	}
+
+	/**
+	 * Adds an opcode with a single numeric operand.
+	 */
+	private DisplayList op(int op, double a) {
+		op(op);
+		arg(a);
+		return this;
+	}
+
+	/**
+	 * Adds an opcode with two numeric operands.
+	 */
+	private void op(int op, double a, double b) {
+		op(op);
+		arg(a);
+		arg(b);
+	}
+
+	/**
+	 * Adds an opcode with four numeric operands.
+	 */
+	private void op(int op, double a, double b, double c, double d) {
+		op(op);
+		args(a, b, c, d);
+	}
+
+	/**
+	 * Adds an opcode with five numeric operands.
+	 */
+	private void op(int op, double a, double b, double c, double d, double e) {
+		op(op);
+		args(a, b, c, d);
+		arg(e);
+	}
+
+	/**
+	 * Adds an opcode with six numeric operands.
+	 */
+	private void op(int op, double a, double b, double c, double d, double e,
+			double f) {
+		op(op);
+		args(a, b, c, d);
+		arg(e);
+		arg(f);
+	}
+
+	/**
+	 * Adds four numeric operands.
+	 */
+	private void args(double a, double b, double c, double d) {
+		arg(a);
+		arg(b);
+		arg(c);
+		arg(d);
+	}
+
+	/**
+	 * Adds a numeric operand.
+	 */
+	private void arg(double value) {
+		if (argCount == args.length) {
+			double[] newArgs = new double[args.length * 2];
+			System.arraycopy(args, 0, newArgs, 0, argCount);
+			args = newArgs;
+		}
+		args[argCount++] = value;
+	}
+}
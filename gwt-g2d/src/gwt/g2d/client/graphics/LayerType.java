@@ -0,0 +1,25 @@
+package gwt.g2d.client.graphics;
+
+/**
+ * Determines when a layer of a {@link LayeredSurface} is repainted, and where 
+ * it is stacked: static layers at the bottom, animated layers above them, and 
+ * overlays on top.
+ */
+public enum LayerType {
+	/**
+	 * Content that rarely changes, such as backgrounds, grids and labels. 
+	 * Repainted only when invalidated.
+	 */
+	STATIC,
+	
+	/**
+	 * Content that changes every frame. Repainted on every update.
+	 */
+	ANIMATED,
+	
+	/**
+	 * Content that stays on top of the animated layers, such as selections or 
+	 * tooltips. Repainted only when invalidated.
+	 */
+	OVERLAY
+}
@@ -0,0 +1,543 @@
+package gwt.g2d.client.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gwt.g2d.client.mouse.MouseSurface;
+import gwt.g2d.client.mouse.PickMode;
+
+import com.google.gwt.event.dom.client.BlurHandler;
+import com.google.gwt.event.dom.client.ClickHandler;
+import com.google.gwt.event.dom.client.DoubleClickHandler;
+import com.google.gwt.event.dom.client.DragEndHandler;
+import com.google.gwt.event.dom.client.DragEnterHandler;
+import com.google.gwt.event.dom.client.DragHandler;
+import com.google.gwt.event.dom.client.DragLeaveHandler;
+import com.google.gwt.event.dom.client.DragOverHandler;
+import com.google.gwt.event.dom.client.DragStartHandler;
+import com.google.gwt.event.dom.client.DropHandler;
+import com.google.gwt.event.dom.client.FocusHandler;
+import com.google.gwt.event.dom.client.GestureChangeHandler;
+import com.google.gwt.event.dom.client.GestureEndHandler;
+import com.google.gwt.event.dom.client.GestureStartHandler;
+import com.google.gwt.event.dom.client.HasAllDragAndDropHandlers;
+import com.google.gwt.event.dom.client.HasAllFocusHandlers;
+import com.google.gwt.event.dom.client.HasAllGestureHandlers;
+import com.google.gwt.event.dom.client.HasAllKeyHandlers;
+import com.google.gwt.event.dom.client.HasAllMouseHandlers;
+import com.google.gwt.event.dom.client.HasAllTouchHandlers;
+import com.google.gwt.event.dom.client.HasBlurHandlers;
+import com.google.gwt.event.dom.client.HasClickHandlers;
+import com.google.gwt.event.dom.client.HasDoubleClickHandlers;
+import com.google.gwt.event.dom.client.HasDragEndHandlers;
+import com.google.gwt.event.dom.client.HasDragEnterHandlers;
+import com.google.gwt.event.dom.client.HasDragHandlers;
+import com.google.gwt.event.dom.client.HasDragLeaveHandlers;
+import com.google.gwt.event.dom.client.HasDragOverHandlers;
+import com.google.gwt.event.dom.client.HasDragStartHandlers;
+import com.google.gwt.event.dom.client.HasDropHandlers;
+import com.google.gwt.event.dom.client.HasFocusHandlers;
+import com.google.gwt.event.dom.client.HasGestureChangeHandlers;
+import com.google.gwt.event.dom.client.HasGestureEndHandlers;
+import com.google.gwt.event.dom.client.HasGestureStartHandlers;
+import com.google.gwt.event.dom.client.HasKeyDownHandlers;
+import com.google.gwt.event.dom.client.HasKeyPressHandlers;
+import com.google.gwt.event.dom.client.HasKeyUpHandlers;
+import com.google.gwt.event.dom.client.HasMouseDownHandlers;
+import com.google.gwt.event.dom.client.HasMouseMoveHandlers;
+import com.google.gwt.event.dom.client.HasMouseOutHandlers;
+import com.google.gwt.event.dom.client.HasMouseOverHandlers;
+import com.google.gwt.event.dom.client.HasMouseUpHandlers;
+import com.google.gwt.event.dom.client.HasMouseWheelHandlers;
+import com.google.gwt.event.dom.client.HasTouchCancelHandlers;
+import com.google.gwt.event.dom.client.HasTouchEndHandlers;
+import com.google.gwt.event.dom.client.HasTouchMoveHandlers;
+import com.google.gwt.event.dom.client.HasTouchStartHandlers;
+import com.google.gwt.event.dom.client.KeyDownHandler;
+import com.google.gwt.event.dom.client.KeyPressHandler;
+import com.google.gwt.event.dom.client.KeyUpHandler;
+import com.google.gwt.event.dom.client.MouseDownHandler;
+import com.google.gwt.event.dom.client.MouseMoveHandler;
+import com.google.gwt.event.dom.client.MouseOutHandler;
+import com.google.gwt.event.dom.client.MouseOverHandler;
+import com.google.gwt.event.dom.client.MouseUpHandler;
+import com.google.gwt.event.dom.client.MouseWheelHandler;
+import com.google.gwt.event.dom.client.TouchCancelHandler;
+import com.google.gwt.event.dom.client.TouchEndHandler;
+import com.google.gwt.event.dom.client.TouchMoveHandler;
+import com.google.gwt.event.dom.client.TouchStartHandler;
+import com.google.gwt.event.logical.shared.HasAttachHandlers;
+import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.event.shared.HasHandlers;
+import com.google.gwt.user.client.ui.AbsolutePanel;
+import com.google.gwt.user.client.ui.Composite;
+
+/**
+ * A stack of {@link Surface}s of the same size, lying exactly on top of each 
+ * other, each of which is only repainted when needed.
+ * 
+ * Every layer has a {@link LayerType} and, optionally, a {@link Painter}. 
+ * {@link #update()} repaints the animated layers, and the static layers and 
+ * overlays that were invalidated since the previous update; everything else 
+ * stays on its canvas as it is. Backgrounds, grids and labels are thus 
+ * painted once, while only the animated layers are redrawn every frame.
+ * 
+ * The bottom layer, which is created with the stack, receives the input for 
+ * the whole stack: all other layers let the mouse and touch events through. 
+ * The handlers added to the stack, and the mouse registrations made on any 
+ * layer after {@link #enableMouseRegistration(PickMode)}, are all tied to 
+ * the bottom layer.
+ */
+public class LayeredSurface extends Composite implements HasAllDragAndDropHandlers, HasAllFocusHandlers, HasAllGestureHandlers, HasAllKeyHandlers, HasAllMouseHandlers, HasAllTouchHandlers, HasBlurHandlers, HasClickHandlers, HasDoubleClickHandlers, HasDragEndHandlers, HasDragEnterHandlers, HasDragHandlers, HasDragLeaveHandlers, HasDragOverHandlers, HasDragStartHandlers, HasDropHandlers, HasFocusHandlers, HasGestureChangeHandlers, HasGestureEndHandlers, HasGestureStartHandlers, HasKeyDownHandlers, HasKeyPressHandlers, HasKeyUpHandlers, HasMouseDownHandlers, HasMouseMoveHandlers, HasMouseOutHandlers, HasMouseOverHandlers, HasMouseUpHandlers, HasMouseWheelHandlers, HasTouchCancelHandlers, HasTouchEndHandlers, HasTouchMoveHandlers, HasTouchStartHandlers, HasAttachHandlers, HasHandlers {
+	
+	/**
+	 * Repaints a layer.
+	 */
+	public interface Painter {
+		/**
+		 * Paints the layer onto the given surface, which has been cleared.
+		 */
+		public void paint(Surface surface);
+	}
+	
+	/**
+	 * A single layer of a {@link LayeredSurface}.
+	 */
+	public static class Layer {
+		private final LayeredSurface owner;
+		private final Surface surface;
+		private final LayerType type;
+		private Painter painter;
+		private boolean invalid = true;
+		
+		private Layer(LayeredSurface owner, Surface surface, LayerType type, 
+				Painter painter) {
+			this.owner = owner;
+			this.surface = surface;
+			this.type = type;
+			this.painter = painter;
+		}
+		
+		/**
+		 * Gets the surface of the layer, to paint on it directly.
+		 */
+		public Surface getSurface() {
+			return surface;
+		}
+		
+		/**
+		 * Gets the type of the layer.
+		 */
+		public LayerType getType() {
+			return type;
+		}
+		
+		/**
+		 * Gets the painter of the layer, or null if the layer is painted 
+		 * directly.
+		 */
+		public Painter getPainter() {
+			return painter;
+		}
+		
+		/**
+		 * Sets the painter of the layer, and invalidates the layer.
+		 */
+		public void setPainter(Painter painter) {
+			this.painter = painter;
+			invalid = true;
+		}
+		
+		/**
+		 * Marks the layer to be repainted on the next update.
+		 */
+		public void invalidate() {
+			invalid = true;
+		}
+		
+		/**
+		 * Checks whether the layer will be repainted on the next update.
+		 */
+		public boolean isInvalid() {
+			return invalid || type == LayerType.ANIMATED;
+		}
+		
+		/**
+		 * Shows or hides the layer.
+		 */
+		public void setVisible(boolean visible) {
+			surface.setVisible(visible);
+		}
+		
+		/**
+		 * Checks whether the layer is shown.
+		 */
+		public boolean isVisible() {
+			return surface.isVisible();
+		}
+		
+		/**
+		 * Removes the layer from its stack. The bottom layer can't be removed.
+		 */
+		public void remove() {
+			owner.removeLayer(this);
+		}
+		
+		/**
+		 * Repaints the layer if it is invalid and has a painter.
+		 * 
+		 * @return whether the layer was repainted.
+		 */
+		private boolean update() {
+			if (!isInvalid() || painter == null) {
+				return false;
+			}
+			surface.clear();
+			painter.paint(surface);
+			invalid = false;
+			return true;
+		}
+	}
+	
+	private final AbsolutePanel panel = new AbsolutePanel();
+	
+	/** The layers, from bottom to top. */
+	private final List<Layer> layers = new ArrayList<Layer>();
+	private int width, height;
+	private double resolutionScale = 1;
+	
+	/**
+	 * Initializes a stack of the given size, with a single static bottom 
+	 * layer.
+	 * 
+	 * @param width width of the layers.
+	 * @param height height of the layers.
+	 */
+	public LayeredSurface(int width, int height) {
+		this.width = width;
+		this.height = height;
+		panel.setPixelSize(width, height);
+		initWidget(panel);
+		Surface bottom = new Surface(width, height);
+		panel.add(bottom, 0, 0);
+		layers.add(new Layer(this, bottom, LayerType.STATIC, null));
+	}
+	
+	/**
+	 * Adds a layer of the given type, on top of the other layers of the 
+	 * same type.
+	 */
+	public Layer addLayer(LayerType type) {
+		return addLayer(type, null);
+	}
+	
+	/**
+	 * Adds a layer of the given type that is repainted by the given painter, 
+	 * on top of the other layers of the same type.
+	 */
+	public Layer addLayer(LayerType type, Painter painter) {
+		Surface surface = new Surface(width, height);
+		surface.setResolutionScale(resolutionScale);
+		
+		// let the input through to the bottom layer
+		surface.getElement().getStyle().setProperty("pointerEvents", "none");
+		MouseSurface mouseSurface = getInputSurface().getMouseSurface();
+		if (mouseSurface != null) {
+			surface.shareMouseRegistration(mouseSurface);
+		}
+		
+		// above every layer of the same or a lower type
+		int index = layers.size();
+		while (index > 1 && layers.get(index - 1).getType().compareTo(type) > 0) {
+			index--;
+		}
+		Layer layer = new Layer(this, surface, type, painter);
+		layers.add(index, layer);
+		panel.insert(surface, 0, 0, index);
+		return layer;
+	}
+	
+	/**
+	 * Removes the given layer. The bottom layer can't be removed.
+	 */
+	public void removeLayer(Layer layer) {
+		if (layer == layers.get(0)) {
+			throw new IllegalArgumentException("The bottom layer can't be removed");
+		}
+		if (layers.remove(layer)) {
+			panel.remove(layer.getSurface());
+		}
+	}
+	
+	/**
+	 * Gets the number of layers.
+	 */
+	public int getLayerCount() {
+		return layers.size();
+	}
+	
+	/**
+	 * Gets the layer at the given index, from the bottom (0) up.
+	 */
+	public Layer getLayer(int index) {
+		return layers.get(index);
+	}
+	
+	/**
+	 * Gets the bottom layer, which receives the input of the whole stack.
+	 */
+	public Layer getBottomLayer() {
+		return layers.get(0);
+	}
+	
+	/**
+	 * Gets the surface that receives the input of the whole stack: the 
+	 * surface of the bottom layer.
+	 */
+	public Surface getInputSurface() {
+		return layers.get(0).getSurface();
+	}
+	
+	/**
+	 * Repaints the animated layers, and the other layers that were 
+	 * invalidated. Layers without a painter are left alone.
+	 * 
+	 * @return the number of layers that were repainted.
+	 */
+	public int update() {
+		int count = 0;
+		for (Layer layer : layers) {
+			if (layer.update()) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Marks every layer to be repainted on the next update.
+	 */
+	public void invalidateAll() {
+		for (Layer layer : layers) {
+			layer.invalidate();
+		}
+	}
+	
+	/**
+	 * Changes the size of every layer, which clears them, and invalidates 
+	 * them.
+	 */
+	public void setSize(int width, int height) {
+		this.width = width;
+		this.height = height;
+		panel.setPixelSize(width, height);
+		for (Layer layer : layers) {
+			layer.getSurface().setSize(width, height);
+			layer.invalidate();
+		}
+	}
+	
+	/**
+	 * Sets the resolution scale of every layer, which clears them, and 
+	 * invalidates them.
+	 * 
+	 * @see Surface#setResolutionScale(double)
+	 */
+	public void setResolutionScale(double scale) {
+		if (scale == resolutionScale) {
+			return;
+		}
+		for (Layer layer : layers) {
+			layer.getSurface().setResolutionScale(scale);
+			layer.invalidate();
+		}
+		resolutionScale = scale;
+	}
+	
+	/**
+	 * Gets the resolution scale of the layers.
+	 */
+	public double getResolutionScale() {
+		return resolutionScale;
+	}
+	
+	/**
+	 * Gets the width of the layers.
+	 */
+	public int getCoordinateSpaceWidth() {
+		return width;
+	}
+	
+	/**
+	 * Gets the height of the layers.
+	 */
+	public int getCoordinateSpaceHeight() {
+		return height;
+	}
+	
+	/**
+	 * Enable click registering on arbitrary shapes drawn on any layer, with 
+	 * the mouse events of the whole stack.
+	 * 
+	 * @see Surface#enableMouseRegistration(PickMode)
+	 */
+	public void enableMouseRegistration(PickMode pickMode) {
+		Surface input = getInputSurface();
+		input.enableMouseRegistration(pickMode);
+		for (int i = 1; i < layers.size(); i++) {
+			layers.get(i).getSurface().shareMouseRegistration(input.getMouseSurface());
+		}
+	}
+	
+	/**
+	 * Enable click registering on arbitrary shapes drawn on any layer.
+	 * 
+	 * @see Surface#enableMouseRegistration()
+	 */
+	public void enableMouseRegistration() {
+		enableMouseRegistration(PickMode.SURFACE_PER_ID);
+	}
+	
+	/**
+	 * Gets the mouse surface shared by all layers, or null if mouse 
+	 * registration is not enabled.
+	 */
+	public MouseSurface getMouseSurface() {
+		return getInputSurface().getMouseSurface();
+	}
+
+	@Override
+	public HandlerRegistration addTouchStartHandler(TouchStartHandler handler) {
+		return getInputSurface().addTouchStartHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addTouchMoveHandler(TouchMoveHandler handler) {
+		return getInputSurface().addTouchMoveHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addTouchEndHandler(TouchEndHandler handler) {
+		return getInputSurface().addTouchEndHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addTouchCancelHandler(TouchCancelHandler handler) {
+		return getInputSurface().addTouchCancelHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addMouseWheelHandler(MouseWheelHandler handler) {
+		return getInputSurface().addMouseWheelHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addMouseUpHandler(MouseUpHandler handler) {
+		return getInputSurface().addMouseUpHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addMouseOverHandler(MouseOverHandler handler) {
+		return getInputSurface().addMouseOverHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addMouseOutHandler(MouseOutHandler handler) {
+		return getInputSurface().addMouseOutHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addMouseMoveHandler(MouseMoveHandler handler) {
+		return getInputSurface().addMouseMoveHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addMouseDownHandler(MouseDownHandler handler) {
+		return getInputSurface().addMouseDownHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addKeyUpHandler(KeyUpHandler handler) {
+		return getInputSurface().addKeyUpHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addKeyPressHandler(KeyPressHandler handler) {
+		return getInputSurface().addKeyPressHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addKeyDownHandler(KeyDownHandler handler) {
+		return getInputSurface().addKeyDownHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addGestureStartHandler(GestureStartHandler handler) {
+		return getInputSurface().addGestureStartHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addGestureEndHandler(GestureEndHandler handler) {
+		return getInputSurface().addGestureEndHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addGestureChangeHandler(	GestureChangeHandler handler) {
+		return getInputSurface().addGestureChangeHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addFocusHandler(FocusHandler handler) {
+		return getInputSurface().addFocusHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addDropHandler(DropHandler handler) {
+		return getInputSurface().addDropHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addDragStartHandler(DragStartHandler handler) {
+		return getInputSurface().addDragStartHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addDragOverHandler(DragOverHandler handler) {
+		return getInputSurface().addDragOverHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addDragLeaveHandler(DragLeaveHandler handler) {
+		return getInputSurface().addDragLeaveHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addDragHandler(DragHandler handler) {
+		return getInputSurface().addDragHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addDragEnterHandler(DragEnterHandler handler) {
+		return getInputSurface().addDragEnterHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addDragEndHandler(DragEndHandler handler) {
+		return getInputSurface().addDragEndHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addDoubleClickHandler(DoubleClickHandler handler) {
+		return getInputSurface().addDoubleClickHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addClickHandler(ClickHandler handler) {
+		return getInputSurface().addClickHandler(handler);
+	}
+
+	@Override
+	public HandlerRegistration addBlurHandler(BlurHandler handler) {
+		return getInputSurface().addBlurHandler(handler);
+	}
+}
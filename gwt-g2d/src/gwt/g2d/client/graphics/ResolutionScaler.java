@@ -0,0 +1,239 @@
+package gwt.g2d.client.graphics;
+
+import com.google.gwt.core.client.Duration;
+
+/**
+ * Adjusts the resolution scale of a {@link Surface} (or of every layer of a
+ * {@link LayeredSurface}) to the time it takes to render a frame, so that
+ * busy frames are drawn with fewer pixels instead of dropping the frame rate.
+ *
+ * Call {@link #beginFrame()} before and {@link #endFrame()} after rendering
+ * each frame, or pass frame times measured elsewhere to
+ * {@link #frameRendered(double)}. When the average frame time exceeds the
+ * budget for a few frames, the scale is lowered at once by as much as the
+ * overrun requires (the cost of a frame is taken to grow with the number of
+ * pixels, the square of the scale); when a higher scale would fit in the
+ * budget with some headroom for a while, the scale is raised by a single
+ * step. Scales are multiples of the step, so that the canvas is only resized
+ * when the scale really changes. Resizing clears the canvas, so the frame
+ * after a change must be redrawn completely.
+ *
+ * @see Surface#setResolutionScale(double)
+ */
+public class ResolutionScaler {
+
+	/** Weight of the latest frame in the average frame time. */
+	private static final double SMOOTHING = 0.2;
+
+	/** Share of the budget a higher scale must fit in before it is used. */
+	private static final double HEADROOM = 0.85;
+
+	/** Frames to ignore after a change, while the resized canvas warms up. */
+	private static final int SETTLE_FRAMES = 10;
+
+	private final Surface surface;
+	private final LayeredSurface layeredSurface;
+
+	private double frameBudget;
+	private double minScale = 0.5, maxScale;
+	private double step = 0.125;
+	private int lowerAfter = 5, raiseAfter = 60;
+
+	private double scale;
+	private double averageFrameTime = Double.NaN;
+	private double frameStart = Double.NaN;
+
+	/** Consecutive frames over the budget, and frames a higher scale would fit. */
+	private int overBudget, underBudget;
+
+	/** Frames left to ignore after the last change. */
+	private int settling;
+
+	/**
+	 * Creates a controller for the given surface, which is set to the
+	 * highest scale: the device pixel ratio.
+	 *
+	 * @param surface the surface to adjust the resolution of.
+	 * @param frameBudget the time a frame should take, in milliseconds.
+	 */
+	public ResolutionScaler(Surface surface, double frameBudget) {
+		this(surface, null, frameBudget);
+	}
+
+	/**
+	 * Creates a controller for every layer of the given stack, which is set
+	 * to the highest scale: the device pixel ratio.
+	 *
+	 * @param surface the layers to adjust the resolution of.
+	 * @param frameBudget the time a frame should take, in milliseconds.
+	 */
+	public ResolutionScaler(LayeredSurface surface, double frameBudget) {
+		this(null, surface, frameBudget);
+	}
+
+	private ResolutionScaler(Surface surface, LayeredSurface layeredSurface,
+			double frameBudget) {
+		this.surface = surface;
+		this.layeredSurface = layeredSurface;
+		this.frameBudget = frameBudget;
+		maxScale = Math.max(minScale, Surface.getDevicePixelRatio());
+		setScale(maxScale);
+	}
+
+	/**
+	 * Sets the time a frame should take, in milliseconds.
+	 */
+	public void setFrameBudget(double frameBudget) {
+		this.frameBudget = frameBudget;
+	}
+
+	/**
+	 * Gets the time a frame should take, in milliseconds.
+	 */
+	public double getFrameBudget() {
+		return frameBudget;
+	}
+
+	/**
+	 * Sets the range of the scale, and clamps the current scale to it.
+	 * Default: 0.5 to the device pixel ratio.
+	 */
+	public void setScaleRange(double minScale, double maxScale) {
+		if (!(minScale > 0) || maxScale < minScale) {
+			throw new IllegalArgumentException("Invalid scale range: " + minScale
+					+ " to " + maxScale);
+		}
+		this.minScale = minScale;
+		this.maxScale = maxScale;
+		setScale(scale);
+	}
+
+	/**
+	 * Gets the lowest scale.
+	 */
+	public double getMinScale() {
+		return minScale;
+	}
+
+	/**
+	 * Gets the highest scale.
+	 */
+	public double getMaxScale() {
+		return maxScale;
+	}
+
+	/**
+	 * Sets the granularity of the scale. Default: 0.125.
+	 */
+	public void setStep(double step) {
+		if (!(step > 0)) {
+			throw new IllegalArgumentException("Step must be positive: " + step);
+		}
+		this.step = step;
+	}
+
+	/**
+	 * Sets how many consecutive frames must exceed the budget before the
+	 * scale is lowered, and for how many frames a higher scale must fit in
+	 * the budget before it is raised. Default: 5 and 60.
+	 */
+	public void setPatience(int lowerAfter, int raiseAfter) {
+		this.lowerAfter = Math.max(1, lowerAfter);
+		this.raiseAfter = Math.max(1, raiseAfter);
+	}
+
+	/**
+	 * Gets the current scale.
+	 */
+	public double getScale() {
+		return scale;
+	}
+
+	/**
+	 * Gets the average time of the recent frames, in milliseconds, or NaN
+	 * before the first frame.
+	 */
+	public double getAverageFrameTime() {
+		return averageFrameTime;
+	}
+
+	/**
+	 * Sets the scale, clamped to the range, and starts measuring anew.
+	 */
+	public void setScale(double scale) {
+		this.scale = Math.max(minScale, Math.min(maxScale, scale));
+		if (surface != null) {
+			surface.setResolutionScale(this.scale);
+		} else {
+			layeredSurface.setResolutionScale(this.scale);
+		}
+		averageFrameTime = Double.NaN;
+		overBudget = underBudget = 0;
+		settling = SETTLE_FRAMES;
+	}
+
+	/**
+	 * Starts measuring the time of a frame.
+	 */
+	public void beginFrame() {
+		frameStart = Duration.currentTimeMillis();
+	}
+
+	/**
+	 * Stops measuring the time of a frame started with {@link #beginFrame()},
+	 * and adjusts the scale.
+	 *
+	 * @return true if the scale was changed, so the next frame must be drawn
+	 * 				completely.
+	 */
+	public boolean endFrame() {
+		if (Double.isNaN(frameStart)) {
+			return false;
+		}
+		double frameTime = Duration.currentTimeMillis() - frameStart;
+		frameStart = Double.NaN;
+		return frameRendered(frameTime);
+	}
+
+	/**
+	 * Adjusts the scale to the time the last frame took.
+	 *
+	 * @param frameTime the time the last frame took, in milliseconds.
+	 * @return true if the scale was changed, so the next frame must be drawn
+	 * 				completely.
+	 */
+	public boolean frameRendered(double frameTime) {
+		if (settling > 0) {
+			settling--;
+			return false;
+		}
+		averageFrameTime = Double.isNaN(averageFrameTime) ? frameTime
+				: averageFrameTime + (frameTime - averageFrameTime) * SMOOTHING;
+
+		// lower the scale to what fits in the budget
+		if (averageFrameTime > frameBudget) {
+			underBudget = 0;
+			if (++overBudget >= lowerAfter && scale > minScale) {
+				double fit = scale * Math.sqrt(frameBudget / averageFrameTime);
+				double lower = Math.min(scale - step, Math.floor(fit / step) * step);
+				setScale(lower);
+				return true;
+			}
+			return false;
+		}
+		overBudget = 0;
+
+		// raise the scale by a step if the frames would still fit
+		double higher = Math.min(maxScale, (Math.floor(scale / step) + 1) * step);
+		double ratio = higher / scale;
+		if (higher > scale && averageFrameTime * ratio * ratio < frameBudget * HEADROOM) {
+			if (++underBudget >= raiseAfter) {
+				setScale(higher);
+				return true;
+			}
+		} else {
+			underBudget = 0;
+		}
+		return false;
+	}
+}
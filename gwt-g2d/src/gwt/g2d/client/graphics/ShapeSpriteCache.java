@@ -0,0 +1,292 @@
+package gwt.g2d.client.graphics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import gwt.g2d.client.graphics.shapes.Shape;
+import gwt.g2d.shared.math.Rectangle;
+
+/**
+ * A cache of shapes rasterized into off-screen canvases, so that a shape that is drawn many times in the
+ * same style is only filled and stroked once, and blitted with a single drawImage after that.
+ * <p>
+ * A sprite is identified by a shape key, a {@link SpriteStyle} and a scale. The shape key is either given
+ * by the caller (e.g. the name of an icon), or the shape itself; either way, it must have a stable
+ * equals and hashCode, and {@link #invalidate(Object)} must be called if the shape it stands for changes.
+ * The scale is the resolution of the sprite: it should match the scale of the transformation the sprite
+ * is drawn with, so that it isn't blurred.
+ * <p>
+ * The cache holds at most a given number of pixels; when it is full, the least recently drawn sprites are
+ * dropped. Shapes that don't describe their geometry, and sprites that would take more than a quarter of
+ * the budget, are drawn directly instead.
+ */
+public class ShapeSpriteCache {
+
+	/** Default pixel budget: about 16 MB of RGBA pixels. */
+	public static final long DEFAULT_PIXEL_BUDGET = 4 * 1024 * 1024;
+
+	// a rasterized shape, and where its canvas goes relative to the origin of the shape (at scale 1)
+	private static final class Sprite {
+		Surface fSurface;
+		double fX, fY, fWidth, fHeight;
+	}
+
+	// identifies a sprite
+	private static final class Key {
+		Object fShape;
+		SpriteStyle fStyle;
+		double fScale;
+
+		Key(Object shape, SpriteStyle style, double scale) {
+			fShape = shape;
+			fStyle = style;
+			fScale = scale;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key)obj;
+			return fScale == other.fScale && fShape.equals(other.fShape) && fStyle.equals(other.fStyle);
+		}
+
+		@Override
+		public int hashCode() {
+			return fShape.hashCode() ^ fStyle.hashCode() ^ (int)(fScale * 1024);
+		}
+	}
+
+	// sprites, from least to most recently drawn
+	LinkedHashMap<Key, Sprite> fSprites = new LinkedHashMap<Key, Sprite>(64, 0.75f, true);
+
+	// reused to look up sprites without creating a key for every draw
+	private final Key fProbe = new Key(null, null, 1);
+
+	// maximum number of pixels held
+	long fPixelBudget;
+
+	// number of pixels of all sprites
+	long fPixels = 0;
+
+	// counters
+	int fHits = 0;
+	int fMisses = 0;
+	int fBypasses = 0;
+	int fEvictions = 0;
+
+
+	/**
+	 * Create a cache with the default pixel budget.
+	 */
+	public ShapeSpriteCache() {
+		this(DEFAULT_PIXEL_BUDGET);
+	}
+
+
+	/**
+	 * Create a cache that holds at most the given number of pixels.
+	 */
+	public ShapeSpriteCache(long pixelBudget) {
+		fPixelBudget = pixelBudget;
+	}
+
+
+	/**
+	 * Draw the given shape in the given style, with its origin at the given position, rasterized at the given
+	 * scale. The shape itself is the key of the sprite.
+	 */
+	public void draw(Surface surface, Shape shape, SpriteStyle style, double x, double y, double scale) {
+		draw(surface, shape, shape, style, x, y, scale);
+	}
+
+
+	/**
+	 * Draw the given shape in the given style, with its origin at the given position, rasterized at the given
+	 * scale. The sprite is looked up with the given key, so the shape is only used when the sprite isn't cached.
+	 */
+	public void draw(Surface surface, Object shapeKey, Shape shape, SpriteStyle style, double x, double y,
+			double scale) {
+		fProbe.fShape = shapeKey;
+		fProbe.fStyle = style;
+		fProbe.fScale = scale;
+		Sprite sprite = fSprites.get(fProbe);
+		fProbe.fShape = null;
+		fProbe.fStyle = null;
+		if (sprite != null) fHits++;
+		else {
+			sprite = rasterize(shape, style, scale);
+
+			// can't be cached - draw it directly
+			if (sprite == null) {
+				fBypasses++;
+				surface.save();
+				surface.translate(x, y);
+				style.draw(surface, shape, 1);
+				surface.restore();
+				return;
+			}
+			fMisses++;
+			fSprites.put(new Key(shapeKey, style, scale), sprite);
+			fPixels += pixels(sprite.fSurface);
+			trim();
+		}
+		if (sprite.fWidth > 0) {
+			surface.drawImage(sprite.fSurface.getCanvasElement(), x + sprite.fX, y + sprite.fY, sprite.fWidth,
+					sprite.fHeight);
+		}
+	}
+
+
+	/**
+	 * Drop all sprites of the given shape key, e.g. because the shape changed.
+	 */
+	public void invalidate(Object shapeKey) {
+		Iterator<Map.Entry<Key, Sprite>> it = fSprites.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, Sprite> entry = it.next();
+			if (entry.getKey().fShape.equals(shapeKey)) {
+				it.remove();
+				drop(entry.getValue());
+			}
+		}
+	}
+
+
+	/**
+	 * Drop all sprites.
+	 */
+	public void clear() {
+		for (Sprite sprite : fSprites.values()) drop(sprite);
+		fSprites.clear();
+	}
+
+
+	/**
+	 * Sets the maximum number of pixels held by this cache, and drops sprites until it is respected.
+	 */
+	public void setPixelBudget(long pixelBudget) {
+		fPixelBudget = pixelBudget;
+		trim();
+	}
+
+
+	/**
+	 * Gets the maximum number of pixels held by this cache.
+	 */
+	public long getPixelBudget() {
+		return fPixelBudget;
+	}
+
+
+	/**
+	 * Gets the number of cached sprites.
+	 */
+	public int getSpriteCount() {
+		return fSprites.size();
+	}
+
+
+	/**
+	 * Gets the number of bytes held by the sprites (4 bytes per pixel).
+	 */
+	public long getBytesHeld() {
+		return fPixels * 4;
+	}
+
+
+	/**
+	 * Gets the number of draws that found their sprite in the cache.
+	 */
+	public int getHitCount() {
+		return fHits;
+	}
+
+
+	/**
+	 * Gets the number of draws that had to rasterize their sprite.
+	 */
+	public int getMissCount() {
+		return fMisses;
+	}
+
+
+	/**
+	 * Gets the number of draws that couldn't be cached, and were drawn directly.
+	 */
+	public int getBypassCount() {
+		return fBypasses;
+	}
+
+
+	/**
+	 * Gets the number of sprites dropped to respect the pixel budget.
+	 */
+	public int getEvictionCount() {
+		return fEvictions;
+	}
+
+
+	/**
+	 * Sets all counters back to 0.
+	 */
+	public void resetCounters() {
+		fHits = 0;
+		fMisses = 0;
+		fBypasses = 0;
+		fEvictions = 0;
+	}
+
+
+	// draw the shape on a canvas of its own, or return null if it can't be cached
+	private Sprite rasterize(Shape shape, SpriteStyle style, double scale) {
+		if (!shape.hasGeometry()) return null;
+		Rectangle bounds = shape.getFlattenedPath().getBounds();
+
+		// the area that can be drawn on, grown by a pixel for anti-aliasing
+		double padding = style.getPadding() + 1 / scale;
+		double x = bounds.x - padding;
+		double y = bounds.y - padding;
+		int width = (int)Math.ceil((bounds.width + 2 * padding) * scale);
+		int height = (int)Math.ceil((bounds.height + 2 * padding) * scale);
+		if ((long)width * height * 4 > fPixelBudget) return null;
+
+		// draw it with the origin of the area in the top-left corner
+		Sprite sprite = new Sprite();
+		sprite.fSurface = new Surface(width, height);
+		sprite.fX = x;
+		sprite.fY = y;
+		sprite.fWidth = width / scale;
+		sprite.fHeight = height / scale;
+		if (width > 0 && height > 0) {
+			sprite.fSurface.setTransform(scale, 0, 0, scale, -x * scale, -y * scale);
+			style.draw(sprite.fSurface, shape, scale);
+		}
+		return sprite;
+	}
+
+
+	// drop the least recently drawn sprites until the budget is respected
+	private void trim() {
+		Iterator<Sprite> it = fSprites.values().iterator();
+		while (fPixels > fPixelBudget && it.hasNext()) {
+			Sprite sprite = it.next();
+			it.remove();
+			drop(sprite);
+			fEvictions++;
+		}
+	}
+
+
+	// forget a sprite, and shrink its canvas so that the browser frees its backing store right away
+	private void drop(Sprite sprite) {
+		fPixels -= pixels(sprite.fSurface);
+		sprite.fSurface.setSize(0, 0);
+	}
+
+
+	// number of pixels of a surface
+	private static int pixels(Surface surface) {
+		return surface.getCoordinateSpaceWidth() * surface.getCoordinateSpaceHeight();
+	}
+}
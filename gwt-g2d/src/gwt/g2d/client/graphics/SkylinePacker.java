@@ -0,0 +1,132 @@
+package gwt.g2d.client.graphics;
+
+/**
+ * Packs rectangles into a fixed-size area with the skyline bottom-left heuristic: the packed area is
+ * described by its top outline (the skyline), a list of horizontal segments, and every rectangle is put
+ * on the segment where its bottom ends up the highest.
+ */
+class SkylinePacker {
+
+	// size of the area
+	final int fWidth;
+	final int fHeight;
+
+	// segments of the skyline, from left to right: start, height and width of each
+	int[] fX = new int[16];
+	int[] fY = new int[16];
+	int[] fW = new int[16];
+	int fCount;
+
+	// position of the last packed rectangle
+	int fPackedX;
+	int fPackedY;
+
+
+	// create an empty area of the given size
+	public SkylinePacker(int width, int height) {
+		fWidth = width;
+		fHeight = height;
+		fX[0] = 0;
+		fY[0] = 0;
+		fW[0] = width;
+		fCount = 1;
+	}
+
+
+	// pack a rectangle of the given size; if it fits, its position is stored in fPackedX and fPackedY
+	public boolean pack(int width, int height) {
+
+		// find the segment on which the rectangle ends lowest, or is narrowest
+		int best = -1;
+		int bestBottom = Integer.MAX_VALUE;
+		int bestY = 0;
+		for (int i = 0; i < fCount; i++) {
+			int y = fit(i, width);
+			if (y < 0 || y + height > fHeight) continue;
+			if (y + height < bestBottom) {
+				best = i;
+				bestBottom = y + height;
+				bestY = y;
+			}
+		}
+		if (best < 0) return false;
+		fPackedX = fX[best];
+		fPackedY = bestY;
+
+		// add the top of the rectangle to the skyline, and cut away the segments below it
+		insert(best, fPackedX, bestBottom, width);
+		int right = fPackedX + width;
+		int i = best + 1;
+		while (i < fCount && fX[i] < right) {
+			int end = fX[i] + fW[i];
+			if (end <= right) remove(i);
+			else {
+				fW[i] = end - right;
+				fX[i] = right;
+				break;
+			}
+		}
+		merge();
+		return true;
+	}
+
+
+	// lowest height at which a rectangle of the given width can start at the given segment, or -1
+	private int fit(int index, int width) {
+		if (fX[index] + width > fWidth) return -1;
+		int y = 0;
+		int remaining = width;
+		for (int i = index; remaining > 0; i++) {
+			y = Math.max(y, fY[i]);
+			remaining -= fW[i];
+		}
+		return y;
+	}
+
+
+	// insert a segment at the given index
+	private void insert(int index, int x, int y, int width) {
+		if (fCount == fX.length) {
+			fX = grow(fX);
+			fY = grow(fY);
+			fW = grow(fW);
+		}
+		System.arraycopy(fX, index, fX, index + 1, fCount - index);
+		System.arraycopy(fY, index, fY, index + 1, fCount - index);
+		System.arraycopy(fW, index, fW, index + 1, fCount - index);
+		fX[index] = x;
+		fY[index] = y;
+		fW[index] = width;
+		fCount++;
+	}
+
+
+	// remove the segment at the given index
+	private void remove(int index) {
+		System.arraycopy(fX, index + 1, fX, index, fCount - index - 1);
+		System.arraycopy(fY, index + 1, fY, index, fCount - index - 1);
+		System.arraycopy(fW, index + 1, fW, index, fCount - index - 1);
+		fCount--;
+	}
+
+
+	// join neighbouring segments of the same height
+	private void merge() {
+		int i = 0;
+		while (i < fCount - 1) {
+			if (fY[i] == fY[i + 1]) {
+				fW[i] += fW[i + 1];
+				remove(i + 1);
+			}
+			else i++;
+		}
+	}
+
+
+	// twice as large copy of an array
+	private static int[] grow(int[] array) {
+		int[] grown = new int[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+}
@@ -0,0 +1,139 @@
+package gwt.g2d.client.graphics;
+
+import com.google.gwt.canvas.dom.client.Context2d.LineJoin;
+
+import gwt.g2d.client.graphics.shapes.Shape;
+import gwt.g2d.shared.Color;
+
+/**
+ * The style a {@link ShapeSpriteCache} draws a shape with: fill, stroke, line width and shadow. A style is
+ * immutable, and two styles with the same values are equal, so that it can be part of a cache key; the
+ * {@code with...} methods return a modified copy.
+ */
+public final class SpriteStyle {
+
+	// fill and stroke color, null if the shape is not filled or stroked
+	final Color fFill;
+	final Color fStroke;
+
+	// stroke
+	final double fLineWidth;
+	final LineJoin fLineJoin;
+
+	// shadow, no shadow if the color is null
+	final Color fShadowColor;
+	final double fShadowBlur;
+	final double fShadowOffsetX;
+	final double fShadowOffsetY;
+
+
+	// create a style with all values
+	private SpriteStyle(Color fill, Color stroke, double lineWidth, LineJoin lineJoin, Color shadowColor,
+			double shadowBlur, double shadowOffsetX, double shadowOffsetY) {
+		fFill = fill;
+		fStroke = stroke;
+		fLineWidth = lineWidth;
+		fLineJoin = lineJoin;
+		fShadowColor = shadowColor;
+		fShadowBlur = shadowBlur;
+		fShadowOffsetX = shadowOffsetX;
+		fShadowOffsetY = shadowOffsetY;
+	}
+
+
+	/**
+	 * A style that fills the shape with the given color.
+	 */
+	public static SpriteStyle fill(Color fill) {
+		return new SpriteStyle(fill, null, 1, LineJoin.MITER, null, 0, 0, 0);
+	}
+
+
+	/**
+	 * A style that strokes the shape with the given color and line width.
+	 */
+	public static SpriteStyle stroke(Color stroke, double lineWidth) {
+		return new SpriteStyle(null, stroke, lineWidth, LineJoin.MITER, null, 0, 0, 0);
+	}
+
+
+	/**
+	 * A style that fills the shape with the given color, and strokes it with the other.
+	 */
+	public static SpriteStyle fillAndStroke(Color fill, Color stroke, double lineWidth) {
+		return new SpriteStyle(fill, stroke, lineWidth, LineJoin.MITER, null, 0, 0, 0);
+	}
+
+
+	/**
+	 * A copy of this style with the given line join.
+	 */
+	public SpriteStyle withLineJoin(LineJoin lineJoin) {
+		return new SpriteStyle(fFill, fStroke, fLineWidth, lineJoin, fShadowColor, fShadowBlur, fShadowOffsetX,
+				fShadowOffsetY);
+	}
+
+
+	/**
+	 * A copy of this style with the given shadow.
+	 */
+	public SpriteStyle withShadow(Color color, double blur, double offsetX, double offsetY) {
+		return new SpriteStyle(fFill, fStroke, fLineWidth, fLineJoin, color, blur, offsetX, offsetY);
+	}
+
+
+	/**
+	 * How far the drawn pixels can reach outside of the geometry of the shape, at scale 1: half the line
+	 * width (much more with miter joins), plus the extent of the shadow.
+	 */
+	double getPadding() {
+		double padding = 0;
+		if (fStroke != null) padding = fLineJoin == LineJoin.MITER ? fLineWidth * 5 : fLineWidth / 2;
+		if (fShadowColor != null) {
+			padding += fShadowBlur * 2 + Math.max(Math.abs(fShadowOffsetX), Math.abs(fShadowOffsetY));
+		}
+		return padding;
+	}
+
+
+	// draw the given shape in this style, with the given scale for the shadow
+	void draw(Surface surface, Shape shape, double scale) {
+		if (fShadowColor != null) {
+			surface.setShadowColor(fShadowColor).setShadowBlur(fShadowBlur * scale)
+					.setShadowOffsetX(fShadowOffsetX * scale).setShadowOffsetY(fShadowOffsetY * scale);
+		}
+		if (fFill != null) surface.setFillStyle(fFill).fillShape(shape);
+		if (fStroke != null) {
+			surface.setStrokeStyle(fStroke).setLineWidth(fLineWidth).setLineJoin(fLineJoin).strokeShape(shape);
+		}
+	}
+
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof SpriteStyle)) return false;
+		SpriteStyle other = (SpriteStyle)obj;
+		return equal(fFill, other.fFill) && equal(fStroke, other.fStroke) && fLineWidth == other.fLineWidth
+				&& fLineJoin == other.fLineJoin && equal(fShadowColor, other.fShadowColor)
+				&& fShadowBlur == other.fShadowBlur && fShadowOffsetX == other.fShadowOffsetX
+				&& fShadowOffsetY == other.fShadowOffsetY;
+	}
+
+
+	@Override
+	public int hashCode() {
+		int hash = fFill == null ? 0 : fFill.hashCode();
+		hash = hash * 31 + (fStroke == null ? 0 : fStroke.hashCode());
+		hash = hash * 31 + (fShadowColor == null ? 0 : fShadowColor.hashCode());
+		hash = hash * 31 + (int)(fLineWidth * 16);
+		hash = hash * 31 + (int)(fShadowBlur * 16);
+		return hash;
+	}
+
+
+	// are both colors null, or equal?
+	private static boolean equal(Color a, Color b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
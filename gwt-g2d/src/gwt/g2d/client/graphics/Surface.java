@@ -15,11 +15,16 @@
  */
 package gwt.g2d.client.graphics;
 
+import gwt.g2d.client.graphics.shapes.CompiledShape;
+import gwt.g2d.client.graphics.shapes.DashedPathContext;
+import gwt.g2d.client.graphics.shapes.PathBounds;
 import gwt.g2d.client.graphics.shapes.Shape;
+import gwt.g2d.client.graphics.visitor.CanvasPathContext;
 import gwt.g2d.client.math.Matrix;
 import gwt.g2d.shared.Color;
 import gwt.g2d.shared.math.Rectangle;
 import gwt.g2d.client.mouse.MouseSurface;
+import gwt.g2d.client.mouse.PickMode;
 import gwt.g2d.client.mouse.SurfaceClickHandler;
 import gwt.g2d.client.mouse.SurfaceMouseDragHandler;
 import gwt.g2d.client.mouse.SurfaceMouseMoveHandler;
@@ -27,6 +32,10 @@ import gwt.g2d.client.mouse.SurfaceMouseOutHandler;
 import gwt.g2d.client.mouse.SurfaceMouseOverHandler;
 import gwt.g2d.shared.math.Vector2;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import com.google.gwt.canvas.client.Canvas;
 import com.google.gwt.canvas.dom.client.CanvasGradient;
 import com.google.gwt.canvas.dom.client.CanvasPattern;
@@ -35,9 +44,14 @@ import com.google.gwt.canvas.dom.client.Context2d.LineCap;
 import com.google.gwt.canvas.dom.client.Context2d.LineJoin;
 import com.google.gwt.canvas.dom.client.Context2d.TextAlign;
 import com.google.gwt.canvas.dom.client.Context2d.TextBaseline;
+import com.google.gwt.canvas.dom.client.FillStrokeStyle;
 import com.google.gwt.canvas.dom.client.TextMetrics;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArray;
+import com.google.gwt.core.client.JsArrayNumber;
 import com.google.gwt.dom.client.CanvasElement;
 import com.google.gwt.dom.client.ImageElement;
+import com.google.gwt.dom.client.Touch;
 import com.google.gwt.event.dom.client.BlurHandler;
 import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
@@ -100,9 +114,14 @@ import com.google.gwt.event.dom.client.MouseOverHandler;
 import com.google.gwt.event.dom.client.MouseUpEvent;
 import com.google.gwt.event.dom.client.MouseUpHandler;
 import com.google.gwt.event.dom.client.MouseWheelHandler;
+import com.google.gwt.event.dom.client.TouchCancelEvent;
 import com.google.gwt.event.dom.client.TouchCancelHandler;
+import com.google.gwt.event.dom.client.TouchEndEvent;
 import com.google.gwt.event.dom.client.TouchEndHandler;
+import com.google.gwt.event.dom.client.TouchEvent;
+import com.google.gwt.event.dom.client.TouchMoveEvent;
 import com.google.gwt.event.dom.client.TouchMoveHandler;
+import com.google.gwt.event.dom.client.TouchStartEvent;
 import com.google.gwt.event.dom.client.TouchStartHandler;
 import com.google.gwt.event.logical.shared.HasAttachHandlers;
 import com.google.gwt.event.shared.HandlerRegistration;
@@ -124,6 +143,9 @@ import com.google.gwt.user.client.ui.Composite;
  */
 public class Surface extends Composite implements HasAllDragAndDropHandlers, HasAllFocusHandlers, HasAllGestureHandlers, HasAllKeyHandlers, HasAllMouseHandlers, HasAllTouchHandlers, HasBlurHandlers, HasClickHandlers, HasDoubleClickHandlers, HasDragEndHandlers, HasDragEnterHandlers, HasDragHandlers, HasDragLeaveHandlers, HasDragOverHandlers, HasDragStartHandlers, HasDropHandlers, HasFocusHandlers, HasGestureChangeHandlers, HasGestureEndHandlers, HasGestureStartHandlers, HasKeyDownHandlers, HasKeyPressHandlers, HasKeyUpHandlers, HasMouseDownHandlers, HasMouseMoveHandlers, HasMouseOutHandlers, HasMouseOverHandlers, HasMouseUpHandlers, HasMouseWheelHandlers, HasTouchCancelHandlers, HasTouchEndHandlers, HasTouchMoveHandlers, HasTouchStartHandlers, HasAttachHandlers, HasHandlers {
 	
+	// whether the browser has line dashes, and can report the transformation of a context - checked once
+	private static Boolean lineDashSupported, transformGetterSupported;
+	
 	// canvas information
 	private Canvas canvas;
 	private Context2d context;
@@ -137,6 +159,37 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	// mouse surface
 	public MouseSurface fMouseSurface = null;
 	
+	// position of the replaced context's canvas on this surface - subtracted from absolute transformations
+	private double fContextOffsetX = 0, fContextOffsetY = 0;
+	
+	// canvas pixels per coordinate unit of the current context - the resolution scale, unless the context is replaced
+	private double fContextScale = 1;
+	
+	// copy of the drawing state of the context, and the states pushed by save()
+	private final ContextState state = new ContextState();
+	private ContextState[] savedStates = new ContextState[8];
+	private int savedStateCount = 0;
+	
+	// state and saved states of this surface's context while another context replaces it
+	private ContextState fReplacedState = null;
+	private ContextState[] fReplacedSavedStates = null;
+	private int fReplacedSavedStateCount = 0;
+	
+	// size of the surface in CSS pixels, and the number of canvas pixels per CSS pixel
+	private int width, height;
+	private double resolutionScale = 1;
+	
+	// skip draws that are entirely outside of the view and the clipping region, and how many were skipped
+	private boolean culling = false;
+	private int culledCount = 0;
+	
+	// area drawn on since the last clear (null if not tracked), and whether a frame started by beginFrame() is open
+	private DirtyRegion dirty = null;
+	private boolean inFrame = false;
+	
+	// bounds of the last draw on the canvas, computed by toCanvasBounds()
+	private double drawLeft, drawTop, drawRight, drawBottom;
+	
 	
 	/**
 	 * Initialize a surface with a default size of 100 by 100.
@@ -154,6 +207,8 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	public Surface(int width, int height) {
 		
 		// create the canvas
+		this.width = width;
+		this.height = height;
 		canvas = Canvas.createIfSupported();
 		canvas.setWidth(width + "px");
 		canvas.setHeight(height + "px");
@@ -186,7 +241,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Gets the size of the surface.
 	 */
 	public Vector2 getSize() {
-		return new Vector2(canvas.getCoordinateSpaceWidth(), canvas.getCoordinateSpaceHeight());
+		return new Vector2(width, height);
 	}
 	
 	/**
@@ -195,39 +250,115 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @param height
 	 */
 	public void setSize(int width, int height) {
+		this.width = width;
+		this.height = height;
 		canvas.setWidth(width + "px");
 		canvas.setHeight(height + "px");
-		canvas.setCoordinateSpaceWidth(width);
-		canvas.setCoordinateSpaceHeight(height);
+		canvas.setCoordinateSpaceWidth(toCanvasPixels(width));
+		canvas.setCoordinateSpaceHeight(toCanvasPixels(height));
+		resetState();
 	}
 
 	/**
-	 * Gets the width of the surface.
+	 * Gets the width of the surface, in the coordinates used for drawing 
+	 * (which are independent of the resolution scale).
 	 */
 	public int getCoordinateSpaceWidth() {
-		return canvas.getCoordinateSpaceWidth();
+		return width;
 	}
 	
 	/**
-	 * Gets the height of the surface.
+	 * Gets the height of the surface, in the coordinates used for drawing 
+	 * (which are independent of the resolution scale).
 	 */
 	public int getCoordinateSpaceHeight() {
-		return canvas.getCoordinateSpaceHeight();
+		return height;
 	}
 	
 	
 	/**
-	 * Sets the width of the surface.
+	 * Sets the width of the surface, in the coordinates used for drawing.
 	 */
 	public void setCoordinateSpaceWidth(int width) {
-		canvas.setCoordinateSpaceWidth(width);
+		this.width = width;
+		canvas.setCoordinateSpaceWidth(toCanvasPixels(width));
+		resetState();
 	}
 	
 	/**
-	 * Sets the height of the surface.
+	 * Sets the height of the surface, in the coordinates used for drawing.
 	 */
 	public void setCoordinateSpaceHeight(int height) {
-		canvas.setCoordinateSpaceHeight(height);
+		this.height = height;
+		canvas.setCoordinateSpaceHeight(toCanvasPixels(height));
+		resetState();
+	}
+	
+	/**
+	 * Sets the number of canvas pixels per coordinate unit. The canvas is 
+	 * resized to the size of the surface times the scale, and every 
+	 * transformation is multiplied by the scale, so drawing code keeps 
+	 * working in the same coordinates (CSS pixels) while the canvas is 
+	 * rendered at a higher or lower resolution: use 
+	 * {@link #getDevicePixelRatio()} for crisp output on high-DPI displays, or 
+	 * a scale below 1 to draw fewer pixels (see {@link ResolutionScaler}).
+	 * 
+	 * Changing the scale clears the surface and resets its drawing state. 
+	 * Image data (see {@link #getImageData(double, double, double, double)} 
+	 * and {@link #putImageData(ImageData, double, double)}) is addressed in 
+	 * canvas pixels, and drawing the canvas element of this surface onto 
+	 * another surface draws it at its canvas size. Default: 1.
+	 * 
+	 * @param scale the number of canvas pixels per coordinate unit.
+	 */
+	public void setResolutionScale(double scale) {
+		if (!(scale > 0)) {
+			throw new IllegalArgumentException("Resolution scale must be positive: " + scale);
+		}
+		if (scale == resolutionScale) {
+			return;
+		}
+		resolutionScale = scale;
+		if (context == canvas.getContext2d()) {
+			fContextScale = scale;
+		}
+		canvas.setCoordinateSpaceWidth(toCanvasPixels(width));
+		canvas.setCoordinateSpaceHeight(toCanvasPixels(height));
+		resetState();
+	}
+	
+	/**
+	 * Gets the number of canvas pixels per coordinate unit.
+	 */
+	public double getResolutionScale() {
+		return resolutionScale;
+	}
+	
+	/**
+	 * Gets the number of canvas pixels per unit of the current coordinates: 
+	 * the larger of the scales of the current transformation along its two 
+	 * axes, times the resolution scale. Use it to choose how much detail is 
+	 * worth drawing. NaN if the current transformation is not known.
+	 */
+	public double getPixelScale() {
+		readTransform();
+		return Math.max(Math.hypot(state.m11, state.m12), Math.hypot(state.m21, state.m22)) 
+				* fContextScale;
+	}
+	
+	/**
+	 * Gets the number of device pixels per CSS pixel of the browser window, 
+	 * or 1 if the browser doesn't report it.
+	 */
+	public static native double getDevicePixelRatio() /*-{
+		return $wnd.devicePixelRatio || 1;
+	}-*/;
+	
+	/**
+	 * Converts a length in coordinate units to canvas pixels.
+	 */
+	private int toCanvasPixels(int length) {
+		return (int) Math.ceil(length * resolutionScale);
 	}
 	
 	/**
@@ -258,12 +389,42 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	/**
 	 * Gets the context 2D.
 	 * 
+	 * The surface keeps a copy of the styles it sets on the context, so that 
+	 * setting a style to the value it already has costs nothing. Styles set 
+	 * directly on the context (outside of a balanced save and restore) must be 
+	 * followed by {@link #invalidateState()}.
+	 * 
 	 * @return the underlying context implementation for drawing onto the canvas.
 	 */
 	public Context2d getContext() {
 		return context;
 	}
 	
+	/**
+	 * Forgets the copy of the drawing state, so that the next setter of every
+	 * style is passed on to the context and the next getter reads from it.
+	 * Call this after changing styles directly on {@link #getContext()}.
+	 */
+	public void invalidateState() {
+		state.invalidate();
+		for (int i = 0; i < savedStateCount; i++) {
+			savedStates[i].invalidate();
+		}
+	}
+	
+	/**
+	 * The canvas was resized, which resets its context to the defaults.
+	 */
+	private void resetState() {
+		state.reset();
+		savedStateCount = 0;
+		
+		// the base transformation of the resolution scale
+		if (resolutionScale != 1) {
+			canvas.getContext2d().setTransform(resolutionScale, 0, 0, resolutionScale, 0, 0);
+		}
+	}
+	
 	/**
 	 * Pushes the current state onto the stack.
 	 * 
@@ -272,7 +433,8 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * <li>The current transformation matrix.</li>
 	 * <li>The current clipping region.</li>
 	 * <li>The current values of the following attributes: strokeStyle, fillStyle, 
-	 * globalAlpha, lineWidth, lineCap, lineJoin, miterLimit, shadowOffsetX, 
+	 * globalAlpha, lineWidth, lineCap, lineJoin, miterLimit, lineDash, 
+	 * lineDashOffset, shadowOffsetX, 
 	 * shadowOffsetY, shadowBlur, shadowColor, globalCompositeOperation, font, 
 	 * textAlign, textBaseline.</li>
 	 * </ul>
@@ -284,6 +446,15 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 */
 	public Surface save() {
 		context.save();
+		if (savedStateCount == savedStates.length) {
+			ContextState[] newStates = new ContextState[savedStateCount * 2];
+			System.arraycopy(savedStates, 0, newStates, 0, savedStateCount);
+			savedStates = newStates;
+		}
+		if (savedStates[savedStateCount] == null) {
+			savedStates[savedStateCount] = new ContextState();
+		}
+		savedStates[savedStateCount++].copyFrom(state);
 		return this;
 	}
 	
@@ -295,6 +466,9 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 */
 	public Surface restore() {
 		context.restore();
+		if (savedStateCount > 0) {
+			state.copyFrom(savedStates[--savedStateCount]);
+		}
 		return this;
 	}
 	
@@ -307,6 +481,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 */
 	public Surface scale(double x, double y) {
 		context.scale(x, y);
+		state.transform(x, 0, 0, y, 0, 0);
 		return this;
 	}
 	
@@ -338,6 +513,8 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 */
 	public Surface rotate(double angle) {
 		context.rotate(angle);
+		double cos = Math.cos(angle), sin = Math.sin(angle);
+		state.transform(cos, sin, -sin, cos, 0, 0);
 		return this;
 	}
 	
@@ -360,6 +537,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 */
 	public Surface translate(double x, double y) {
 		context.translate(x, y);
+		state.transform(1, 0, 0, 1, x, y);
 		return this;
 	}
 	
@@ -394,6 +572,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	public Surface transform(double m11, double m12, double m21, double m22,
       double dx, double dy) {
 		context.transform(m11, m12, m21, m22, dx, dy);
+		state.transform(m11, m12, m21, m22, dx, dy);
 		return this;
 	}
 	
@@ -428,7 +607,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 */
 	public Surface setTransform(double m11, double m12, double m21, double m22,
       double dx, double dy) {
-		context.setTransform(m11, m12, m21, m22, dx, dy);
+		double s = fContextScale;
+		context.setTransform(m11 * s, m12 * s, m21 * s, m22 * s, 
+				(dx - fContextOffsetX) * s, (dy - fContextOffsetY) * s);
+		state.setTransform(m11, m12, m21, m22, dx, dy);
 		return this;
 	}
 	
@@ -443,6 +625,135 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 				matrix.getM22(), matrix.getDx(), matrix.getDy());
 	}
 	
+	/**
+	 * Gets the current transformation, from the copy that the surface keeps 
+	 * of it, with the values in the order of 
+	 * {@link #setTransform(Matrix)}. The resolution scale is not included.
+	 * After {@link #invalidateState()}, the transformation is read back from 
+	 * the context where the browser supports it, or is NaN otherwise.
+	 * 
+	 * @return a new matrix.
+	 */
+	public Matrix getTransform() {
+		return getTransform(new Matrix());
+	}
+	
+	/**
+	 * Gets the current transformation into the given matrix, so that no new
+	 * matrix is allocated.
+	 * 
+	 * @see #getTransform()
+	 * @return the given matrix.
+	 */
+	public Matrix getTransform(Matrix result) {
+		readTransform();
+		result.set(state.m11, state.m12, state.m21, state.m22, state.dx, state.dy);
+		return result;
+	}
+	
+	/**
+	 * Gets the inverse of the current transformation, which turns surface 
+	 * coordinates into the current coordinates. NaN if the transformation is 
+	 * not invertible or not known.
+	 * 
+	 * @return a new matrix.
+	 */
+	public Matrix getInverseTransform() {
+		return getInverseTransform(new Matrix());
+	}
+	
+	/**
+	 * Gets the inverse of the current transformation into the given matrix, 
+	 * so that no new matrix is allocated.
+	 * 
+	 * @see #getInverseTransform()
+	 * @return the given matrix.
+	 */
+	public Matrix getInverseTransform(Matrix result) {
+		readTransform();
+		state.getInverseTransform(result);
+		return result;
+	}
+	
+	/**
+	 * Converts a point in the current coordinates to surface coordinates 
+	 * (CSS pixels from the top left corner of the surface), by applying the 
+	 * current transformation.
+	 * 
+	 * @return a new vector.
+	 */
+	public Vector2 toSurfaceSpace(double x, double y) {
+		return mutableToSurfaceSpace(new Vector2(x, y));
+	}
+	
+	/**
+	 * Converts the given point from the current coordinates to surface 
+	 * coordinates. Unlike {@link #toSurfaceSpace(double, double)}, the 
+	 * returned vector is the given one, so no new vector is allocated.
+	 * 
+	 * @return the given vector.
+	 */
+	public Vector2 mutableToSurfaceSpace(Vector2 point) {
+		readTransform();
+		state.toSurfaceSpace(point);
+		return point;
+	}
+	
+	/**
+	 * Converts a point in surface coordinates (CSS pixels from the top left 
+	 * corner of the surface, as in mouse events) to the current coordinates, 
+	 * by applying the inverse of the current transformation. NaN if the 
+	 * transformation is not invertible or not known.
+	 * 
+	 * @return a new vector.
+	 */
+	public Vector2 toUserSpace(double x, double y) {
+		return mutableToUserSpace(new Vector2(x, y));
+	}
+	
+	/**
+	 * Converts the given point from surface coordinates to the current 
+	 * coordinates. Unlike {@link #toUserSpace(double, double)}, the returned 
+	 * vector is the given one, so no new vector is allocated.
+	 * 
+	 * @return the given vector.
+	 */
+	public Vector2 mutableToUserSpace(Vector2 point) {
+		readTransform();
+		state.toUserSpace(point);
+		return point;
+	}
+	
+	/**
+	 * Reads the current transformation back from the context if the copy of 
+	 * it is not known, and the browser supports it.
+	 */
+	private void readTransform() {
+		if (state.isTransformKnown()) {
+			return;
+		}
+		if (transformGetterSupported == null) {
+			transformGetterSupported = Boolean.valueOf(hasTransformGetter());
+		}
+		if (!transformGetterSupported.booleanValue()) {
+			return;
+		}
+		JsArrayNumber m = readContextTransform(context);
+		double s = fContextScale;
+		state.setTransform(m.get(0) / s, m.get(1) / s, m.get(2) / s, m.get(3) / s, 
+				m.get(4) / s + fContextOffsetX, m.get(5) / s + fContextOffsetY);
+	}
+	
+	private static native boolean hasTransformGetter() /*-{
+		return !!$wnd.CanvasRenderingContext2D 
+				&& typeof $wnd.CanvasRenderingContext2D.prototype.getTransform == 'function';
+	}-*/;
+	
+	private static native JsArrayNumber readContextTransform(Context2d context) /*-{
+		var m = context.getTransform();
+		return [m.a, m.b, m.c, m.d, m.e, m.f];
+	}-*/;
+	
 	/**
 	 * Sets the current alpha value applied to rendering operations.
 	 * Default: 1.0.
@@ -450,7 +761,12 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface setGlobalAlpha(double alpha) {
-		context.setGlobalAlpha(alpha);
+		if (alpha != state.globalAlpha) {
+			context.setGlobalAlpha(alpha);
+			
+			// values outside of [0, 1] are ignored by the context
+			state.globalAlpha = alpha >= 0 && alpha <= 1 ? alpha : Double.NaN;
+		}
 		return this;
 	}
 	
@@ -458,7 +774,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Gets the current alpha value applied to rendering operations.
 	 */
 	public double getGlobalAlpha() {
-		return context.getGlobalAlpha();
+		if (Double.isNaN(state.globalAlpha)) {
+			state.globalAlpha = context.getGlobalAlpha();
+		}
+		return state.globalAlpha;
 	}
 	
 	/**
@@ -469,7 +788,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface setGlobalCompositeOperation(Context2d.Composite compositeOperation) {
-		context.setGlobalCompositeOperation(compositeOperation);
+		if (compositeOperation != state.globalCompositeOperation) {
+			context.setGlobalCompositeOperation(compositeOperation);
+			state.globalCompositeOperation = compositeOperation;
+		}
 		return this;
 	}
 	
@@ -477,7 +799,11 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Gets the current composition operation.
 	 */
 	public Context2d.Composite getGlobalCompositeOperation() {
-		return Context2d.Composite.valueOf(context.getGlobalCompositeOperation());
+		if (state.globalCompositeOperation == null) {
+			state.globalCompositeOperation = ContextState.fromValue(
+					Context2d.Composite.values(), context.getGlobalCompositeOperation());
+		}
+		return state.globalCompositeOperation;
 	}
 	
 	/**
@@ -487,7 +813,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface setFillStyle(Color color) {
-		context.setFillStyle(color.getColorCode());
+		applyFillStyle(color.getColorCode());
 		return this;
 	}
 	
@@ -498,7 +824,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface setFillStyle(CanvasGradient gradient) {
-		context.setFillStyle(gradient);
+		applyFillStyle(gradient);
 		return this;
 	}
 	
@@ -509,15 +835,31 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface setFillStyle(CanvasPattern pattern) {
-		context.setFillStyle(pattern);
+		applyFillStyle(pattern);
 		return this;
 	}
 	
+	/**
+	 * Sets the fill style to a color code, a gradient or a pattern, unless it
+	 * is already set.
+	 */
+	void applyFillStyle(Object style) {
+		if (style instanceof String ? style.equals(state.fillStyle) : style == state.fillStyle) {
+			return;
+		}
+		if (style instanceof String) {
+			context.setFillStyle((String) style);
+		} else {
+			context.setFillStyle((FillStrokeStyle) style);
+		}
+		state.fillStyle = style;
+	}
+	
 	/**
 	 * Sets the stroke style.
 	 */
 	public Surface setStrokeStyle(Color color) {
-		context.setStrokeStyle(color.getColorCode());
+		applyStrokeStyle(color.getColorCode());
 		return this;
 	}
 	
@@ -525,7 +867,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Sets the stroke style.
 	 */
 	public Surface setStrokeStyle(CanvasGradient gradient) {
-		context.setStrokeStyle(gradient);
+		applyStrokeStyle(gradient);
 		return this;
 	}
 	
@@ -533,10 +875,26 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Sets the stroke style.
 	 */
 	public Surface setStrokeStyle(CanvasPattern pattern) {
-		context.setStrokeStyle(pattern);
+		applyStrokeStyle(pattern);
 		return this;
 	}
 	
+	/**
+	 * Sets the stroke style to a color code, a gradient or a pattern, unless 
+	 * it is already set.
+	 */
+	void applyStrokeStyle(Object style) {
+		if (style instanceof String ? style.equals(state.strokeStyle) : style == state.strokeStyle) {
+			return;
+		}
+		if (style instanceof String) {
+			context.setStrokeStyle((String) style);
+		} else {
+			context.setStrokeStyle((FillStrokeStyle) style);
+		}
+		state.strokeStyle = style;
+	}
+	
 	/**
 	 * Create a linear gradient.
 	 */
@@ -586,7 +944,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface setLineWidth(double lineWidth) {
-		context.setLineWidth(lineWidth);		
+		if (lineWidth != state.lineWidth && isValidSize(lineWidth)) {
+			context.setLineWidth(lineWidth);
+			state.lineWidth = lineWidth;
+		}
 		return this;
 	}
 	
@@ -594,7 +955,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Gets the width of lines, in coordinate space units.
 	 */
 	public double getLineWidth() {
-		return context.getLineWidth();
+		if (Double.isNaN(state.lineWidth)) {
+			state.lineWidth = context.getLineWidth();
+		}
+		return state.lineWidth;
 	}
 	
 	/**
@@ -605,7 +969,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface setLineCap(LineCap lineCap) {
-		context.setLineCap(lineCap);
+		if (lineCap != state.lineCap) {
+			context.setLineCap(lineCap);
+			state.lineCap = lineCap;
+		}
 		return this;
 	}
 	
@@ -613,7 +980,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Gets the type of endings that UAs will place on the end of lines.
 	 */
 	public LineCap getLineCap() {
-		return LineCap.valueOf(context.getLineCap());
+		if (state.lineCap == null) {
+			state.lineCap = ContextState.fromValue(LineCap.values(), context.getLineCap());
+		}
+		return state.lineCap;
 	}
 	
 	/**
@@ -624,7 +994,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface setLineJoin(LineJoin lineJoin) {
-		context.setLineJoin(lineJoin);
+		if (lineJoin != state.lineJoin) {
+			context.setLineJoin(lineJoin);
+			state.lineJoin = lineJoin;
+		}
 		return this;
 	}
 	
@@ -632,7 +1005,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Gets the type of corners that UAs will place where two lines meet.
 	 */
 	public LineJoin getLineJoin() {
-		return LineJoin.valueOf(context.getLineJoin());
+		if (state.lineJoin == null) {
+			state.lineJoin = ContextState.fromValue(LineJoin.values(), context.getLineJoin());
+		}
+		return state.lineJoin;
 	}
 	
 	/**
@@ -653,7 +1029,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface setMiterLimit(double miterLimit) {
-		context.setMiterLimit(miterLimit);
+		if (miterLimit != state.miterLimit && isValidSize(miterLimit)) {
+			context.setMiterLimit(miterLimit);
+			state.miterLimit = miterLimit;
+		}
 		return this;
 	}
 	
@@ -661,7 +1040,148 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Gets the current miter limit ratio.
 	 */
 	public double getMiterLimit() {
-		return context.getMiterLimit();
+		if (Double.isNaN(state.miterLimit)) {
+			state.miterLimit = context.getMiterLimit();
+		}
+		return state.miterLimit;
+	}
+	
+	/**
+	 * Sets the dash pattern of lines: the lengths of the dashes and the gaps 
+	 * between them, alternately, in coordinate space units. An odd number of 
+	 * lengths is repeated to make it even, and no lengths (or only zeros) 
+	 * draw solid lines. On setting, negative, infinite and NaN lengths must be 
+	 * ignored, leaving the pattern unchanged.
+	 * 
+	 * The pattern starts over at the start of each subpath, and continues 
+	 * across its lines and curves. Where the browser has no line dashes (see 
+	 * {@link #isLineDashSupported()}), {@link #strokeShape(Shape)} and 
+	 * {@link #strokeRectangle(double, double, double, double)} dash the lines 
+	 * in software with a {@link DashedPathContext}, with the same dash lengths 
+	 * and the same transformation left on the surface as a native stroke; 
+	 * strokes of paths drawn directly on the context stay solid.
+	 * 
+	 * Default: solid lines.
+	 * 
+	 * @return self to support chaining.
+	 */
+	public Surface setLineDash(double... segments) {
+		for (double segment : segments) {
+			if (!(segment >= 0) || segment == Double.POSITIVE_INFINITY) {
+				return this;
+			}
+		}
+		if (state.lineDash == null || !Arrays.equals(segments, state.lineDash)) {
+			double[] lineDash = new double[segments.length];
+			System.arraycopy(segments, 0, lineDash, 0, segments.length);
+			if (isLineDashSupported()) {
+				JsArrayNumber array = JavaScriptObject.createArray().cast();
+				for (double segment : lineDash) {
+					array.push(segment);
+				}
+				setLineDash(context, array);
+			}
+			state.lineDash = lineDash;
+		}
+		return this;
+	}
+	
+	/**
+	 * Gets the dash pattern of lines, as it was set: the lengths of the 
+	 * dashes and the gaps between them, alternately. Empty for solid lines.
+	 */
+	public double[] getLineDash() {
+		if (state.lineDash == null) {
+			if (isLineDashSupported()) {
+				JsArrayNumber array = getLineDash(context);
+				state.lineDash = new double[array.length()];
+				for (int i = 0; i < state.lineDash.length; i++) {
+					state.lineDash[i] = array.get(i);
+				}
+			} else {
+				state.lineDash = ContextState.NO_DASHES;
+			}
+		}
+		double[] lineDash = new double[state.lineDash.length];
+		System.arraycopy(state.lineDash, 0, lineDash, 0, lineDash.length);
+		return lineDash;
+	}
+	
+	/**
+	 * Sets the distance into the dash pattern at which lines start. On 
+	 * setting, infinite and NaN values must be ignored, leaving the value 
+	 * unchanged.
+	 * 
+	 * Default: 0.
+	 * 
+	 * @return self to support chaining.
+	 */
+	public Surface setLineDashOffset(double lineDashOffset) {
+		if (lineDashOffset != state.lineDashOffset 
+				&& !Double.isNaN(lineDashOffset) && !Double.isInfinite(lineDashOffset)) {
+			if (isLineDashSupported()) {
+				setLineDashOffset(context, lineDashOffset);
+			}
+			state.lineDashOffset = lineDashOffset;
+		}
+		return this;
+	}
+	
+	/**
+	 * Gets the distance into the dash pattern at which lines start.
+	 */
+	public double getLineDashOffset() {
+		if (Double.isNaN(state.lineDashOffset)) {
+			state.lineDashOffset = isLineDashSupported() ? getLineDashOffset(context) : 0;
+		}
+		return state.lineDashOffset;
+	}
+	
+	/**
+	 * Checks whether the browser draws dashed lines itself. Otherwise, the 
+	 * surface dashes the lines of shapes and rectangles in software.
+	 */
+	public static boolean isLineDashSupported() {
+		if (lineDashSupported == null) {
+			lineDashSupported = Boolean.valueOf(hasLineDash());
+		}
+		return lineDashSupported.booleanValue();
+	}
+	
+	private static native boolean hasLineDash() /*-{
+		return !!$wnd.CanvasRenderingContext2D 
+				&& typeof $wnd.CanvasRenderingContext2D.prototype.setLineDash == 'function';
+	}-*/;
+	
+	private static native void setLineDash(Context2d context, JsArrayNumber segments) /*-{
+		context.setLineDash(segments);
+	}-*/;
+	
+	private static native JsArrayNumber getLineDash(Context2d context) /*-{
+		return context.getLineDash();
+	}-*/;
+	
+	private static native void setLineDashOffset(Context2d context, double offset) /*-{
+		context.lineDashOffset = offset;
+	}-*/;
+	
+	private static native double getLineDashOffset(Context2d context) /*-{
+		return context.lineDashOffset;
+	}-*/;
+	
+	/**
+	 * Checks whether strokes need to be dashed in software.
+	 */
+	private boolean isDashedInSoftware() {
+		return !isLineDashSupported() && state.lineDash != null && state.lineDash.length > 0;
+	}
+	
+	/**
+	 * Checks whether the given line width or miter limit is accepted by the 
+	 * context, which ignores zero, negative, infinite and NaN values.
+	 */
+	private static boolean isValidSize(double value) {
+		return value > 0 && value != Double.POSITIVE_INFINITY;
 	}
 	
 	/**
@@ -701,6 +1221,9 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface fillRectangle(double x, double y, double width, double height) {
+		if (isSkipped(x, y, width, height, 0)) {
+			return this;
+		}
 		context.fillRect(x, y, width, height);
 		return this;
 	}
@@ -721,6 +1244,16 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * lineJoin, and (if appropriate) miterLimit attributes
 	 */
 	public Surface strokeRectangle(double x, double y, double width, double height) {
+		if (isSkipped(x, y, width, height, getStrokePadding())) {
+			return this;
+		}
+		if (isDashedInSoftware()) {
+			context.beginPath();
+			new DashedPathContext(new CanvasPathContext(context), state.lineDash, 
+					state.lineDashOffset).rect(x, y, width, height);
+			context.stroke();
+			return this;
+		}
 		context.strokeRect(x, y, width, height);
 		return this;
 	}
@@ -742,6 +1275,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	public Surface clipRectangle(double x, double y, double width, double height) {
 		context.rect(x, y, width, height);
 		context.clip();
+		clipState(x, y, width, height);
 		return this;
 	}
 	
@@ -782,8 +1316,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface fillRectangleFromTo(double x1, double y1, double x2, double y2) {
-		context.fillRect(x1, y1, x2-x1, y2-y1);
-		return this;
+		return fillRectangle(x1, y1, x2 - x1, y2 - y1);
 	}
 	
 	
@@ -792,8 +1325,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * lineJoin, and (if appropriate) miterLimit attributes
 	 */
 	public Surface strokeRectangleFromTo(double x1, double y1, double x2, double y2) {
-		context.strokeRect(x1, y1, x2-x1, y2-y1);
-		return this;
+		return strokeRectangle(x1, y1, x2 - x1, y2 - y1);
 	}
 	
 	
@@ -805,6 +1337,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	public Surface clipRectangleFromTo(double x1, double y1, double x2, double y2) {
 		context.rect(x1, y1, x2-x1, y2-y1);
 		context.clip();
+		clipState(x1, y1, x2 - x1, y2 - y1);
 		return this;
 	}
 	
@@ -813,6 +1346,13 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Fills the specified shape using the fillStyle.
 	 */
 	public Surface fillShape(Shape shape) {
+		if (isSkipped(shape, 0)) {
+			return this;
+		}
+		if (shape instanceof CompiledShape) {
+			((CompiledShape) shape).fill(this);
+			return this;
+		}
 		shape.draw(this);
 		context.fill();
 		return this;
@@ -823,33 +1363,498 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * lineJoin, and (if appropriate) miterLimit attributes
 	 */
 	public Surface strokeShape(Shape shape) {
+		if (isSkipped(shape, getStrokePadding())) {
+			return this;
+		}
+		// shapes that don't describe their geometry are stroked with solid lines
+		if (isDashedInSoftware() && shape.hasGeometry()) {
+			strokeDashed(shape);
+			return this;
+		}
+		if (shape instanceof CompiledShape) {
+			((CompiledShape) shape).stroke(this);
+			return this;
+		}
 		shape.draw(this);
 		context.stroke();
 		return this;
 	}
 	
+	/**
+	 * Strokes the given shape with the line dash in software. The 
+	 * transformations of the shape are applied to the surface first, where a 
+	 * native stroke leaves them as well, and the dashes are measured in the 
+	 * coordinate space the path is stroked in, so that the dash lengths scale 
+	 * with the line width like they do natively.
+	 */
+	private void strokeDashed(Shape shape) {
+		PathBounds end = new PathBounds();
+		shape.appendPath(end);
+		double[] m = end.getTransform();
+		transform(m[0], m[1], m[2], m[3], m[4], m[5]);
+		double det = m[0] * m[3] - m[1] * m[2];
+		if (det == 0) {
+			// nothing can be stroked in a collapsed coordinate space
+			return;
+		}
+		DashedPathContext dashes = new DashedPathContext(
+				new CanvasPathContext(context), state.lineDash, state.lineDashOffset);
+		dashes.setBaseTransform(m[3] / det, -m[1] / det, -m[2] / det, m[0] / det, 
+				(m[2] * m[5] - m[3] * m[4]) / det, (m[1] * m[4] - m[0] * m[5]) / det);
+		context.beginPath();
+		shape.appendPath(dashes);
+		context.stroke();
+	}
+	
 	/**
 	 * Create a new clipping region by calculating the intersection of the 
 	 * current clipping region and the area described by the given shape, using 
 	 * the non-zero winding number rule.
 	 */
 	public Surface clipShape(Shape shape) {
-		shape.draw(this);
-		context.clip();
+		
+		// the bounds of the shape already include its own transformations, 
+		// so they are mapped with the transformation from before the draw
+		Rectangle bounds = getShapeBounds(shape);
+		boolean known = bounds != null && toCanvasBounds(bounds.getX(), 
+				bounds.getY(), bounds.getWidth(), bounds.getHeight(), 0);
+		double left = drawLeft, top = drawTop, right = drawRight, bottom = drawBottom;
+		if (shape instanceof CompiledShape) {
+			((CompiledShape) shape).clip(this);
+		} else {
+			shape.draw(this);
+			context.clip();
+		}
+		if (known) {
+			state.clip(left, top, right, bottom);
+		}
+		return this;
+	}
+	
+	/**
+	 * Enables or disables culling: when enabled, shapes, rectangles and 
+	 * images whose bounds, transformed by the current transformation, don't 
+	 * intersect the view rectangle or the current clipping region are not 
+	 * drawn at all. The bounds of shapes are computed exactly (see 
+	 * {@link Shape#getBounds()}), and grown by the line width for strokes and 
+	 * by the extent of the shadow.
+	 * 
+	 * Culling needs to know the current transformation, so after 
+	 * {@link #invalidateState()} it is suspended until the transformation is 
+	 * set again with {@link #setTransform(double, double, double, double, double, double)},
+	 * unless the browser can report the transformation of the context.
+	 * A culled shape doesn't replace the current path. Default: false.
+	 */
+	public Surface setCulling(boolean culling) {
+		this.culling = culling;
 		return this;
 	}
 	
+	/**
+	 * Checks whether culling is enabled.
+	 */
+	public boolean isCulling() {
+		return culling;
+	}
+	
+	/**
+	 * Gets the number of draws that were skipped by culling since the last 
+	 * call to {@link #resetCulledCount()}.
+	 */
+	public int getCulledCount() {
+		return culledCount;
+	}
+	
+	/**
+	 * Resets the number of draws that were skipped by culling.
+	 */
+	public void resetCulledCount() {
+		culledCount = 0;
+	}
+	
+	/**
+	 * Enables or disables dirty tracking: when enabled, the surface keeps 
+	 * track of the area that was drawn on, as a few rectangles, so that 
+	 * {@link #clearDirty()} and {@link #beginFrame()} clear only that area 
+	 * instead of the whole canvas. Shapes, rectangles, images and text are 
+	 * tracked with their bounds, and so are the draws of {@link DisplayList}, 
+	 * {@link BatchRenderer} and {@link TextureAtlas}; draws made directly on 
+	 * {@link #getContext()} (e.g. by {@link DirectShapeRenderer}) must be 
+	 * reported with {@link #markDirty(double, double, double, double)}. Draws whose bounds 
+	 * aren't known mark the whole surface dirty. 
+	 * 
+	 * Enabling tracking marks the whole surface dirty, since it is not known 
+	 * what was drawn before. Default: false.
+	 */
+	public Surface setDirtyTracking(boolean tracking) {
+		if (!tracking) {
+			dirty = null;
+		} else if (dirty == null) {
+			dirty = new DirtyRegion();
+			dirty.setFull();
+		}
+		return this;
+	}
+	
+	/**
+	 * Checks whether dirty tracking is enabled.
+	 */
+	public boolean isDirtyTracking() {
+		return dirty != null;
+	}
+	
+	/**
+	 * Marks the given rectangle as dirty. The rectangle is in the current 
+	 * coordinates: it is transformed by the current transformation.
+	 */
+	public Surface markDirty(double x, double y, double width, double height) {
+		if (dirty != null) {
+			if (toCanvasBounds(x, y, width, height, 0)) {
+				addDirty();
+			} else {
+				dirty.setFull();
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Marks the given rectangle as dirty.
+	 * 
+	 * @see #markDirty(double, double, double, double)
+	 */
+	public Surface markDirty(Rectangle rectangle) {
+		return markDirty(rectangle.getX(), rectangle.getY(), rectangle.getWidth(), 
+				rectangle.getHeight());
+	}
+	
+	/**
+	 * Marks the whole surface as dirty.
+	 */
+	public Surface markAllDirty() {
+		if (dirty != null) {
+			dirty.setFull();
+		}
+		return this;
+	}
+	
+	/**
+	 * Gets the dirty rectangles, on the canvas (not transformed by the 
+	 * current transformation). Empty if nothing is dirty or dirty tracking 
+	 * is disabled.
+	 */
+	public List<Rectangle> getDirtyRectangles() {
+		if (dirty == null) {
+			return new ArrayList<Rectangle>();
+		}
+		return dirty.getRectangles(getCoordinateSpaceWidth(), getCoordinateSpaceHeight());
+	}
+	
+	/**
+	 * Clears the dirty area to transparent black, and marks nothing as 
+	 * dirty. Use this to erase sprites before drawing them at their new 
+	 * positions, which are tracked again. Clears the whole surface if dirty 
+	 * tracking is disabled. The clipping region limits what is cleared.
+	 * 
+	 * @return self to support chaining.
+	 */
+	public Surface clearDirty() {
+		if (dirty == null) {
+			save().setTransform(1, 0, 0, 1, 0, 0).clear().restore();
+			return this;
+		}
+		if (!dirty.isEmpty()) {
+			save().setTransform(1, 0, 0, 1, 0, 0);
+			clearDirtyRectangles();
+			restore();
+			dirty.clear();
+		}
+		return this;
+	}
+	
+	/**
+	 * Starts repainting the dirty area: clears it and clips to it, until 
+	 * {@link #endFrame()} is called. Use this to repaint content whose changes 
+	 * were reported with {@link #markDirty(double, double, double, double)}, 
+	 * at their old as well as their new bounds: the content can then be 
+	 * drawn in full, and only the dirty area is touched (with culling, draws 
+	 * outside of it are skipped altogether). Draws are not tracked until the 
+	 * frame ends, and nothing is dirty afterwards.
+	 * 
+	 * The current transformation is kept, if it is known.
+	 * 
+	 * @return self to support chaining.
+	 */
+	public Surface beginFrame() {
+		save();
+		inFrame = true;
+		if (dirty == null || dirty.isFull()) {
+			setTransform(1, 0, 0, 1, 0, 0).clear();
+		} else {
+			setTransform(1, 0, 0, 1, 0, 0);
+			clearDirtyRectangles();
+			context.beginPath();
+			double l = Double.POSITIVE_INFINITY, t = Double.POSITIVE_INFINITY;
+			double r = Double.NEGATIVE_INFINITY, b = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < dirty.getCount(); i++) {
+				context.rect(dirty.getLeft(i), dirty.getTop(i), 
+						dirty.getRight(i) - dirty.getLeft(i), dirty.getBottom(i) - dirty.getTop(i));
+				l = Math.min(l, dirty.getLeft(i));
+				t = Math.min(t, dirty.getTop(i));
+				r = Math.max(r, dirty.getRight(i));
+				b = Math.max(b, dirty.getBottom(i));
+			}
+			context.clip();
+			context.beginPath();
+			state.clip(l, t, r, b);
+		}
+		if (dirty != null) {
+			dirty.clear();
+		}
+		
+		// back to the transformation of the caller
+		ContextState saved = savedStates[savedStateCount - 1];
+		if (saved.isTransformKnown()) {
+			setTransform(saved.m11, saved.m12, saved.m21, saved.m22, saved.dx, saved.dy);
+		}
+		return this;
+	}
+	
+	/**
+	 * Ends a frame started with {@link #beginFrame()}, which restores the 
+	 * state the surface had before, and resumes tracking draws.
+	 * 
+	 * @return self to support chaining.
+	 */
+	public Surface endFrame() {
+		if (inFrame) {
+			inFrame = false;
+			restore();
+		}
+		return this;
+	}
+	
+	/**
+	 * Clears the dirty rectangles, with the identity transformation.
+	 */
+	private void clearDirtyRectangles() {
+		for (int i = 0; i < dirty.getCount(); i++) {
+			context.clearRect(dirty.getLeft(i), dirty.getTop(i), 
+					dirty.getRight(i) - dirty.getLeft(i), dirty.getBottom(i) - dirty.getTop(i));
+		}
+	}
+	
+	/**
+	 * Checks whether a draw of the given shape, grown by the given padding, 
+	 * can be skipped (see {@link #isSkipped(double, double, double, double, double)}).
+	 */
+	private boolean isSkipped(Shape shape, double padding) {
+		if (!culling && !isTrackingDraws()) {
+			return false;
+		}
+		Rectangle bounds = getShapeBounds(shape);
+		if (bounds == null) {
+			if (isTrackingDraws()) {
+				dirty.setFull();
+			}
+			return false;
+		}
+		return isSkipped(bounds.getX(), bounds.getY(), bounds.getWidth(), 
+				bounds.getHeight(), padding);
+	}
+	
+	/**
+	 * Checks whether a draw of the given text can be skipped (see 
+	 * {@link #isSkipped(double, double, double, double, double)}). The bounds 
+	 * of the text are estimated generously, so that they hold for every 
+	 * alignment and baseline.
+	 */
+	private boolean isTextSkipped(String text, double x, double y, double maxWidth) {
+		if (!culling && !isTrackingDraws()) {
+			return false;
+		}
+		double size = getFontPixelSize(getFont());
+		if (Double.isNaN(size)) {
+			if (isTrackingDraws()) {
+				dirty.setFull();
+			}
+			return false;
+		}
+		double width = Math.min(maxWidth, measureText(text).getWidth());
+		return isSkipped(x - width, y - size * 1.5, width * 2, size * 3, 
+				state.lineWidth);
+	}
+	
+	/**
+	 * Gets the size in pixels of the given CSS font (e.g. "12px sans-serif"), 
+	 * or NaN if it isn't given in pixels. Text in such fonts has unknown 
+	 * bounds: it is never culled, and marks the whole surface dirty.
+	 * 
+	 * @param font the CSS font string.
+	 * @return the size in pixels, or NaN if it is unknown.
+	 */
+	public static double getFontPixelSize(String font) {
+		int end = font.indexOf("px");
+		int start = end;
+		while (start > 0 && (Character.isDigit(font.charAt(start - 1)) 
+				|| font.charAt(start - 1) == '.')) {
+			start--;
+		}
+		if (start < end) {
+			try {
+				return Double.parseDouble(font.substring(start, end));
+			} catch (NumberFormatException e) {
+				// not a number after all
+			}
+		}
+		return Double.NaN;
+	}
+	
+	/**
+	 * Gets the exact bounds of the given shape, or null if the shape doesn't 
+	 * describe its geometry.
+	 */
+	private static Rectangle getShapeBounds(Shape shape) {
+		return shape.hasGeometry() ? shape.getBounds() : null;
+	}
+	
+	/**
+	 * Checks whether a draw of the given rectangle in user coordinates, grown 
+	 * by the given padding, can be skipped because culling is enabled and it 
+	 * is outside of the view and the clipping region. Counts the draws that 
+	 * are skipped, and marks the bounds of the others as dirty if dirty 
+	 * tracking is enabled. Also used by the renderers of this package that 
+	 * draw on the context directly.
+	 */
+	boolean isSkipped(double x, double y, double width, double height, 
+			double padding) {
+		if (!culling && !isTrackingDraws()) {
+			return false;
+		}
+		double shadow = getShadowExtent();
+		if (Double.isNaN(padding) || Double.isNaN(shadow) 
+				|| !toCanvasBounds(x, y, width, height, padding)) {
+			if (isTrackingDraws()) {
+				dirty.setFull();
+			}
+			return false;
+		}
+		drawLeft = Math.max(drawLeft - shadow, state.clipLeft);
+		drawTop = Math.max(drawTop - shadow, state.clipTop);
+		drawRight = Math.min(drawRight + shadow, state.clipRight);
+		drawBottom = Math.min(drawBottom + shadow, state.clipBottom);
+		
+		if (culling && (drawRight < 0 || drawBottom < 0 || drawLeft > getCoordinateSpaceWidth() 
+				|| drawTop > getCoordinateSpaceHeight() || drawLeft > drawRight || drawTop > drawBottom)) {
+			culledCount++;
+			return true;
+		}
+		if (isTrackingDraws()) {
+			addDirty();
+		}
+		return false;
+	}
+	
+	/**
+	 * Checks whether draws are marked dirty.
+	 */
+	private boolean isTrackingDraws() {
+		return dirty != null && !inFrame;
+	}
+	
+	/**
+	 * Marks the bounds of the last draw as dirty.
+	 */
+	private void addDirty() {
+		dirty.add(drawLeft, drawTop, drawRight, drawBottom, 
+				getCoordinateSpaceWidth(), getCoordinateSpaceHeight());
+	}
+	
+	/**
+	 * Computes the bounds on the canvas of the given rectangle in user 
+	 * coordinates, grown by the given padding, as the bounds of the last 
+	 * draw. 
+	 * 
+	 * @return false if the current transformation isn't known.
+	 */
+	private boolean toCanvasBounds(double x, double y, double width, double height, 
+			double padding) {
+		readTransform();
+		if (!state.isTransformKnown()) {
+			return false;
+		}
+		double x1 = Math.min(x, x + width) - padding, y1 = Math.min(y, y + height) - padding;
+		double x2 = Math.max(x, x + width) + padding, y2 = Math.max(y, y + height) + padding;
+		double ax = state.m11 * x1 + state.m21 * y1, ay = state.m12 * x1 + state.m22 * y1;
+		double bx = state.m11 * x2 + state.m21 * y1, by = state.m12 * x2 + state.m22 * y1;
+		double cx = state.m11 * x1 + state.m21 * y2, cy = state.m12 * x1 + state.m22 * y2;
+		double dx = state.m11 * x2 + state.m21 * y2, dy = state.m12 * x2 + state.m22 * y2;
+		drawLeft = Math.min(Math.min(ax, bx), Math.min(cx, dx)) + state.dx;
+		drawTop = Math.min(Math.min(ay, by), Math.min(cy, dy)) + state.dy;
+		drawRight = Math.max(Math.max(ax, bx), Math.max(cx, dx)) + state.dx;
+		drawBottom = Math.max(Math.max(ay, by), Math.max(cy, dy)) + state.dy;
+		return true;
+	}
+	
+	/**
+	 * Gets how far a stroke reaches outside of its path in user coordinates: 
+	 * half the line width, or half the miter limit times the line width for 
+	 * miter joins. NaN if not known.
+	 */
+	double getStrokePadding() {
+		double padding = state.lineWidth / 2;
+		if (state.lineJoin != LineJoin.ROUND && state.lineJoin != LineJoin.BEVEL) {
+			padding *= Math.max(1, state.miterLimit);
+		}
+		return padding;
+	}
+	
+	/**
+	 * Gets how far the shadow reaches outside of a draw on the canvas, 0 if 
+	 * there is no shadow, or NaN if not known.
+	 */
+	private double getShadowExtent() {
+		if (state.shadowColor == null) {
+			return Double.NaN;
+		}
+		if (state.shadowColor.equals("rgba(0, 0, 0, 0)")) {
+			return 0;
+		}
+		return state.shadowBlur * 2 
+				+ Math.max(Math.abs(state.shadowOffsetX), Math.abs(state.shadowOffsetY));
+	}
+	
+	/**
+	 * Intersects the known clipping region with the given rectangle in user 
+	 * coordinates.
+	 */
+	private void clipState(double x, double y, double width, double height) {
+		if (toCanvasBounds(x, y, width, height, 0)) {
+			state.clip(drawLeft, drawTop, drawRight, drawBottom);
+		}
+	}
+	
 	
 	/**
 	 * Enable click registering on arbitrary shapes.
 	 */
 	public void enableMouseRegistration() {
+		enableMouseRegistration(PickMode.SURFACE_PER_ID);
+	}
+	
+	
+	/**
+	 * Enable click registering on arbitrary shapes, storing the registrations in the given way.
+	 * {@link PickMode#COLOR_BUFFER} keeps a single hidden canvas for all registrations, instead of
+	 * one canvas per registration.
+	 */
+	public void enableMouseRegistration(PickMode pickMode) {
 		
 		// already done - only do it once
 		if (fMouseSurface != null) return;
 		
 		// create the mouse surface
-		fMouseSurface = new MouseSurface(this);
+		fMouseSurface = new MouseSurface(this, pickMode);
 		
 		// register click & mouse handlers
 		addClickHandler(new ClickHandler() {
@@ -896,6 +1901,78 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 				fMouseSurface.onMouseMove(event.getX(), event.getY());
 			}
 		});
+		
+		// every touch is resolved as a pointer of its own, all touches of an event at once
+		addTouchStartHandler(new TouchStartHandler() {
+			
+			@Override
+			public void onTouchStart(TouchStartEvent event) {
+				int[][] touches = getChangedTouches(event);
+				
+				// a touch on a registered object - don't scroll, and don't emulate mouse events for it
+				if (fMouseSurface.onTouchStart(touches[0], touches[1], touches[2])) event.preventDefault();
+			}
+		});
+		addTouchMoveHandler(new TouchMoveHandler() {
+			
+			@Override
+			public void onTouchMove(TouchMoveEvent event) {
+				int[][] touches = getChangedTouches(event);
+				fMouseSurface.onTouchMove(touches[0], touches[1], touches[2]);
+			}
+		});
+		addTouchEndHandler(new TouchEndHandler() {
+			
+			@Override
+			public void onTouchEnd(TouchEndEvent event) {
+				int[][] touches = getChangedTouches(event);
+				fMouseSurface.onTouchEnd(touches[0], touches[1], touches[2]);
+			}
+		});
+		addTouchCancelHandler(new TouchCancelHandler() {
+			
+			@Override
+			public void onTouchCancel(TouchCancelEvent event) {
+				int[][] touches = getChangedTouches(event);
+				fMouseSurface.onTouchCancel(touches[0], touches[1], touches[2]);
+			}
+		});
+	}
+	
+	
+	/**
+	 * Gets the identifiers and the positions relative to the canvas of the touches that changed in the
+	 * given event, as three arrays.
+	 */
+	private int[][] getChangedTouches(TouchEvent<?> event) {
+		JsArray<Touch> touches = event.getChangedTouches();
+		int[][] result = new int[3][touches.length()];
+		for (int i = 0; i < touches.length(); i++) {
+			Touch touch = touches.get(i);
+			result[0][i] = touch.getIdentifier();
+			result[1][i] = touch.getRelativeX(getCanvasElement());
+			result[2][i] = touch.getRelativeY(getCanvasElement());
+		}
+		return result;
+	}
+	
+	
+	/**
+	 * Gets the mouse surface that handles the mouse registrations, or null if mouse registration is
+	 * not enabled.
+	 */
+	public MouseSurface getMouseSurface() {
+		return fMouseSurface;
+	}
+	
+	
+	/**
+	 * Registers the draws of this surface with the given mouse surface, which receives the mouse events of
+	 * another surface of the same size lying under or over this one (e.g. the layers of a
+	 * {@link LayeredSurface}). No mouse handlers are added to this surface itself.
+	 */
+	public void shareMouseRegistration(MouseSurface mouseSurface) {
+		fMouseSurface = mouseSurface;
 	}
 	
 	
@@ -904,9 +1981,41 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * be registered to the same object, until stopMouseRegistration is called. Any handlers added
 	 * between startMouseRegistration and stopMouseRegistration will be associated with these draws.
 	 */
-	public void startMouseRegistration(Long id) {
+	public void startMouseRegistration(long id) {
+		if (fMouseSurface == null) return;
+		fMouseSurface.startRegister(this, id, null);
+	}
+	
+	
+	/**
+	 * Same as {@link #startMouseRegistration(long)}, for draws that stay inside the given bounds (in
+	 * surface coordinates). Mouse events outside of these bounds will not be tested against this
+	 * registration, which keeps the mouse handling fast when many objects are registered.
+	 */
+	public void startMouseRegistration(long id, Rectangle bounds) {
 		if (fMouseSurface == null) return;
-		fMouseSurface.startRegister(id);
+		fMouseSurface.startRegister(this, id, bounds);
+	}
+	
+	
+	/**
+	 * Same as {@link #startMouseRegistration(long, Rectangle)}, and puts the registration in the given
+	 * z-index: it will receive the mouse events before all registrations with a lower z-index, and after
+	 * all registrations with a higher one, regardless of the order in which they were registered.
+	 */
+	public void startMouseRegistration(long id, Rectangle bounds, int zIndex) {
+		if (fMouseSurface == null) return;
+		fMouseSurface.startRegister(this, id, bounds, zIndex);
+	}
+	
+	
+	/**
+	 * Remove everything that was registered for the given id, so that it no longer receives mouse events
+	 * and its memory can be reused.
+	 */
+	public void removeMouseRegistration(long id) {
+		if (fMouseSurface == null) return;
+		fMouseSurface.unregister(id);
 	}
 	
 	
@@ -980,7 +2089,55 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * be used to capture draws for mouse registration.
 	 */
 	public void replaceContext(Context2d ctx) {
+		replaceContext(ctx, 0, 0);
+	}
+	
+	
+	/**
+	 * Switch the context temporarily with the context of a canvas that covers only part of
+	 * this surface, starting at the given position. The context is expected to already be
+	 * translated by the negated position, and unlike the context of this surface, not to be scaled by the
+	 * resolution scale; {@link #setTransform(double, double, double, double, double, double)}
+	 * takes the position into account, so that draws end up at the same place as on this surface.
+	 * 
+	 * The current transformation, if known, is applied to the other context; its clipping region is not.
+	 * Switching back to the context of this surface restores the state it had before it was replaced.
+	 */
+	public void replaceContext(Context2d ctx, double offsetX, double offsetY) {
+		Context2d own = canvas.getContext2d();
+		ContextState kept = new ContextState();
+		kept.copyFrom(state);
+		
+		// keep the state of this surface's context, and its saved states, until it is switched back
+		if (context == own && ctx != own) {
+			fReplacedState = kept;
+			fReplacedSavedStates = savedStates;
+			fReplacedSavedStateCount = savedStateCount;
+			savedStates = new ContextState[8];
+			savedStateCount = 0;
+		}
+		
 		this.context = ctx;
+		fContextOffsetX = offsetX;
+		fContextOffsetY = offsetY;
+		fContextScale = ctx == own ? resolutionScale : 1;
+		
+		// back to this surface's context, which never saw the changes made to the other one
+		if (ctx == own && fReplacedState != null) {
+			state.copyFrom(fReplacedState);
+			savedStates = fReplacedSavedStates;
+			savedStateCount = fReplacedSavedStateCount;
+			fReplacedState = null;
+			fReplacedSavedStates = null;
+			return;
+		}
+		
+		// the other context has a state of its own, and no clipping region, but draws still go through the
+		// transformation set on this surface
+		invalidateState();
+		if (kept.isTransformKnown()) {
+			setTransform(kept.m11, kept.m12, kept.m21, kept.m22, kept.dx, kept.dy);
+		}
 	}
 	
 	
@@ -1054,6 +2211,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 */
 	public Surface clear() {
 		context.clearRect(0.0, 0.0, getCoordinateSpaceWidth(), getCoordinateSpaceHeight());
+		if (dirty != null && state.isTransformKnown() && state.m11 == 1 && state.m12 == 0 
+				&& state.m21 == 0 && state.m22 == 1 && state.dx == 0 && state.dy == 0) {
+			dirty.clear();
+		}
 		return this;
 	}
 	
@@ -1094,6 +2255,9 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface drawImage(CanvasElement image, double x, double y) {
+		if (isSkipped(x, y, image.getWidth(), image.getHeight(), 0)) {
+			return this;
+		}
 		context.drawImage(image, x, y);
 		return this;
 	}
@@ -1121,6 +2285,9 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 */
 	public Surface drawImage(CanvasElement image, double x, double y, double width, 
 			double height) {
+		if (isSkipped(x, y, width, height, 0)) {
+			return this;
+		}
 		context.drawImage(image, x, y, width, height);
 		return this;
 	}
@@ -1155,6 +2322,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	public Surface drawImage(CanvasElement image, double sourceX, double sourceY, 
 			double sourceWidth, double sourceHeight, double destinationX, 
 			double destinationY, double destinationWidth, double destinationHeight) {
+		if (isSkipped(destinationX, destinationY, destinationWidth, 
+				destinationHeight, 0)) {
+			return this;
+		}
 		context.drawImage(image, sourceX, sourceY, sourceWidth, sourceHeight,
 				destinationX, destinationY, destinationWidth, destinationHeight);
 		return this;
@@ -1187,6 +2358,9 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @return self to support chaining.
 	 */
 	public Surface drawImage(ImageElement image, double x, double y) {
+		if (isSkipped(x, y, image.getWidth(), image.getHeight(), 0)) {
+			return this;
+		}
 		context.drawImage(image, x, y);
 		return this;
 	}
@@ -1214,6 +2388,9 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 */
 	public Surface drawImage(ImageElement image, double x, double y, double width, 
 			double height) {
+		if (isSkipped(x, y, width, height, 0)) {
+			return this;
+		}
 		context.drawImage(image, x, y, width, height);
 		return this;
 	}
@@ -1248,6 +2425,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	public Surface drawImage(ImageElement image, double sourceX, double sourceY, 
 			double sourceWidth, double sourceHeight, double destinationX, 
 			double destinationY, double destinationWidth, double destinationHeight) {
+		if (isSkipped(destinationX, destinationY, destinationWidth, 
+				destinationHeight, 0)) {
+			return this;
+		}
 		context.drawImage(image, sourceX, sourceY, sourceWidth, sourceHeight,
 				destinationX, destinationY, destinationWidth, destinationHeight);
 		return this;
@@ -1395,22 +2576,31 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * property; values that cannot be parsed as CSS font values are ignored.
 	 */
 	public Surface setFont(String font) {
-		context.setFont(font);
+		if (!font.equals(state.font)) {
+			context.setFont(font);
+			state.font = font;
+		}
 		return this;
 	}
 	
 	/**
-	 * Gets the font settings.
+	 * Gets the font settings, as they were set.
 	 */
 	public String getFont() {
-		return context.getFont();
+		if (state.font == null) {
+			state.font = context.getFont();
+		}
+		return state.font;
 	}
 	
 	/**
 	 * Sets the text alignment settings.
 	 */
 	public Surface setTextAlign(TextAlign textAlign) {
-		context.setTextAlign(textAlign);
+		if (textAlign != state.textAlign) {
+			context.setTextAlign(textAlign);
+			state.textAlign = textAlign;
+		}
 		return this;
 	}
 	
@@ -1418,14 +2608,20 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Gets the text alignment settings.
 	 */
 	public TextAlign getTextAlign() {
-		return TextAlign.valueOf(context.getTextAlign());
+		if (state.textAlign == null) {
+			state.textAlign = ContextState.fromValue(TextAlign.values(), context.getTextAlign());
+		}
+		return state.textAlign;
 	}
 	
 	/**
 	 * Sets the text baseline alignment settings.
 	 */
 	public Surface setTextBaseline(TextBaseline textBaseline) {
-		context.setTextBaseline(textBaseline);
+		if (textBaseline != state.textBaseline) {
+			context.setTextBaseline(textBaseline);
+			state.textBaseline = textBaseline;
+		}
 		return this;
 	}
 	
@@ -1433,13 +2629,19 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Gets the text baseline alignment settings.
 	 */
 	public TextBaseline getTextBaseline() {
-		return TextBaseline.valueOf(context.getTextBaseline());
+		if (state.textBaseline == null) {
+			state.textBaseline = ContextState.fromValue(TextBaseline.values(), context.getTextBaseline());
+		}
+		return state.textBaseline;
 	}
 	
 	/**
 	 * Renders the given text at the given (x, y).
 	 */
 	public Surface fillText(String text, double x, double y) {
+		if (isTextSkipped(text, x, y, Double.POSITIVE_INFINITY)) {
+			return this;
+		}
 		context.fillText(text, x, y);
 		return this;
 	}
@@ -1456,6 +2658,9 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * not wider than maxWidth.
 	 */
 	public Surface fillText(String text, double x, double y, double maxWidth) {
+		if (isTextSkipped(text, x, y, maxWidth)) {
+			return this;
+		}
 		context.fillText(text, x, y, maxWidth);
 		return this;
 	}
@@ -1472,6 +2677,9 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Renders the given text at the given (x, y).
 	 */
 	public Surface strokeText(String text, double x, double y) {
+		if (isTextSkipped(text, x, y, Double.POSITIVE_INFINITY)) {
+			return this;
+		}
 		context.strokeText(text, x, y);
 		return this;
 	}
@@ -1480,8 +2688,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Renders the given text at the given position.
 	 */
 	public Surface strokeText(String text, Vector2 position) {
-		context.strokeText(text, position.getX(), position.getY());
-		return this;
+		return strokeText(text, position.getX(), position.getY());
 	}
 	
 	/**
@@ -1489,6 +2696,9 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * not wider than maxWidth.
 	 */
 	public Surface strokeText(String text, double x, double y, double maxWidth) {
+		if (isTextSkipped(text, x, y, maxWidth)) {
+			return this;
+		}
 		context.strokeText(text, x, y, maxWidth);
 		return this;
 	}
@@ -1498,8 +2708,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * not wider than maxWidth.
 	 */
 	public Surface strokeText(String text, Vector2 position, double maxWidth) {
-		context.strokeText(text, position.getX(), position.getY(), maxWidth);
-		return this;
+		return strokeText(text, position.getX(), position.getY(), maxWidth);
 	}
 	
 	/**
@@ -1517,7 +2726,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @param shadowOffsetX
 	 */
 	public Surface setShadowOffsetX(double shadowOffsetX) {
-		context.setShadowOffsetX(shadowOffsetX);
+		if (shadowOffsetX != state.shadowOffsetX) {
+			context.setShadowOffsetX(shadowOffsetX);
+			state.shadowOffsetX = shadowOffsetX;
+		}
 		return this;
 	}
 	
@@ -1526,7 +2738,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * horizontal direction.
 	 */
 	public double getShadowOffsetX() {
-		return context.getShadowOffsetX();		
+		if (Double.isNaN(state.shadowOffsetX)) {
+			state.shadowOffsetX = context.getShadowOffsetX();
+		}
+		return state.shadowOffsetX;
 	}
 
 	/**
@@ -1536,7 +2751,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @param shadowOffsetY
 	 */
 	public Surface setShadowOffsetY(double shadowOffsetY) {
-		context.setShadowOffsetY(shadowOffsetY);
+		if (shadowOffsetY != state.shadowOffsetY) {
+			context.setShadowOffsetY(shadowOffsetY);
+			state.shadowOffsetY = shadowOffsetY;
+		}
 		return this;
 	}
 
@@ -1545,7 +2763,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * vertical direction.
 	 */
 	public double getShadowOffsetY() {
-		return context.getShadowOffsetY();
+		if (Double.isNaN(state.shadowOffsetY)) {
+			state.shadowOffsetY = context.getShadowOffsetY();
+		}
+		return state.shadowOffsetY;
 	}
 	
 	/**
@@ -1555,9 +2776,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @param shadowOffset
 	 */
 	public Surface setShadowOffset(Vector2 shadowOffset) {
-		context.setShadowOffsetX(shadowOffset.getX());
-		context.setShadowOffsetY(shadowOffset.getY());
-		return this;
+		return setShadowOffsetX(shadowOffset.getX()).setShadowOffsetY(shadowOffset.getY());
 	}
 
 	/**
@@ -1565,7 +2784,7 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * horizontal and vertical direction.
 	 */
 	public Vector2 getShadowOffset() {
-		return new Vector2(context.getShadowOffsetX(), context.getShadowOffsetY());
+		return new Vector2(getShadowOffsetX(), getShadowOffsetY());
 	}
 	
 	/**
@@ -1574,7 +2793,11 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @param shadowBlur
 	 */
 	public Surface setShadowBlur(double shadowBlur) {
-		context.setShadowBlur(shadowBlur);
+		if (shadowBlur != state.shadowBlur && shadowBlur >= 0 
+				&& shadowBlur != Double.POSITIVE_INFINITY) {
+			context.setShadowBlur(shadowBlur);
+			state.shadowBlur = shadowBlur;
+		}
 		return this;
 	}
 	
@@ -1582,7 +2805,10 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * Gets the size of the blurring effect.
 	 */
 	public double getShadowBlur() {
-		return context.getShadowBlur();
+		if (Double.isNaN(state.shadowBlur)) {
+			state.shadowBlur = context.getShadowBlur();
+		}
+		return state.shadowBlur;
 	}
 
 	/**
@@ -1591,10 +2817,20 @@ public class Surface extends Composite implements HasAllDragAndDropHandlers, Has
 	 * @param shadowColor
 	 */
 	public Surface setShadowColor(Color shadowColor) {
-		context.setShadowColor(shadowColor.getColorCode());
+		applyShadowColor(shadowColor.getColorCode());
 		return this;
 	}
 	
+	/**
+	 * Sets the color code of the shadow, unless it is already set.
+	 */
+	void applyShadowColor(String colorCode) {
+		if (!colorCode.equals(state.shadowColor)) {
+			context.setShadowColor(colorCode);
+			state.shadowColor = colorCode;
+		}
+	}
+	
 	/**
 	 * Return a data: URL containing a representation of the image as a PNG file.
 	 */
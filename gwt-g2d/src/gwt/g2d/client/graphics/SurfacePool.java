@@ -0,0 +1,174 @@
+package gwt.g2d.client.graphics;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.google.gwt.canvas.dom.client.Context2d;
+
+/**
+ * A pool of off-screen surfaces, so that canvases can be reused instead of being created and thrown away
+ * over and over again. Released surfaces are kept until the pixels held by the pool (in use and pooled)
+ * exceed the pixel budget, at which point the least recently released surfaces are dropped.
+ */
+public class SurfacePool {
+
+	/** Default pixel budget: about 32 MB of RGBA pixels. */
+	public static final long DEFAULT_PIXEL_BUDGET = 8 * 1024 * 1024;
+
+	// maximum number of pixels held before pooled surfaces are dropped
+	long fPixelBudget;
+
+	// surfaces that are in use, with the number of pixels they had when they were acquired
+	Map<Surface, Integer> fLive = new HashMap<Surface, Integer>();
+
+	// released surfaces, from least to most recently released
+	LinkedList<Surface> fPooled = new LinkedList<Surface>();
+
+	// number of pixels of the live and pooled surfaces
+	long fLivePixels = 0;
+	long fPooledPixels = 0;
+
+
+	/**
+	 * Create a pool with the default pixel budget.
+	 */
+	public SurfacePool() {
+		this(DEFAULT_PIXEL_BUDGET);
+	}
+
+
+	/**
+	 * Create a pool that holds at most the given number of pixels, unless more are in use.
+	 */
+	public SurfacePool(long pixelBudget) {
+		fPixelBudget = pixelBudget;
+	}
+
+
+	/**
+	 * Get a cleared surface of the given size, reusing the most recently released surface of that size if
+	 * there is one. The surface must be given back with {@link #release(Surface)} once it is no longer needed.
+	 */
+	public Surface acquire(int width, int height) {
+
+		// look for a pooled surface of the same size, most recent first
+		Surface surface = null;
+		Iterator<Surface> it = fPooled.descendingIterator();
+		while (it.hasNext()) {
+			Surface pooled = it.next();
+			if (pooled.getCoordinateSpaceWidth() == width && pooled.getCoordinateSpaceHeight() == height) {
+				it.remove();
+				fPooledPixels -= pixels(pooled);
+				surface = pooled;
+				break;
+			}
+		}
+
+		// reused - clear it completely, regardless of the transformation that was left on it
+		if (surface != null) {
+			Context2d context = surface.getContext();
+			context.save();
+			context.setTransform(1, 0, 0, 1, 0, 0);
+			context.clearRect(0, 0, width, height);
+			context.restore();
+		}
+
+		// none found - create a new one
+		else {
+			surface = new Surface(width, height);
+		}
+
+		// keep track of it, and make room for it
+		fLive.put(surface, pixels(surface));
+		fLivePixels += pixels(surface);
+		trim();
+		return surface;
+	}
+
+
+	/**
+	 * Give a surface acquired from this pool back, so that it can be reused.
+	 */
+	public void release(Surface surface) {
+		Integer held = fLive.remove(surface);
+		if (held == null) return;
+		fLivePixels -= held;
+		fPooled.addLast(surface);
+		fPooledPixels += pixels(surface);
+		trim();
+	}
+
+
+	/**
+	 * Drop all pooled surfaces.
+	 */
+	public void clear() {
+		while (!fPooled.isEmpty()) drop(fPooled.removeFirst());
+		fPooledPixels = 0;
+	}
+
+
+	/**
+	 * Sets the maximum number of pixels held by this pool, and drops pooled surfaces until it is respected.
+	 */
+	public void setPixelBudget(long pixelBudget) {
+		fPixelBudget = pixelBudget;
+		trim();
+	}
+
+
+	/**
+	 * Gets the maximum number of pixels held by this pool.
+	 */
+	public long getPixelBudget() {
+		return fPixelBudget;
+	}
+
+
+	/**
+	 * Gets the number of surfaces that are acquired and not yet released.
+	 */
+	public int getLiveSurfaceCount() {
+		return fLive.size();
+	}
+
+
+	/**
+	 * Gets the number of released surfaces that are kept for reuse.
+	 */
+	public int getPooledSurfaceCount() {
+		return fPooled.size();
+	}
+
+
+	/**
+	 * Gets the number of bytes held by the live and pooled surfaces (4 bytes per pixel).
+	 */
+	public long getBytesHeld() {
+		return (fLivePixels + fPooledPixels) * 4;
+	}
+
+
+	// drop the least recently released surfaces until the budget is respected
+	private void trim() {
+		while (fLivePixels + fPooledPixels > fPixelBudget && !fPooled.isEmpty()) {
+			Surface surface = fPooled.removeFirst();
+			fPooledPixels -= pixels(surface);
+			drop(surface);
+		}
+	}
+
+
+	// shrink a dropped surface, so that the browser frees its backing store right away
+	private static void drop(Surface surface) {
+		surface.setSize(0, 0);
+	}
+
+
+	// number of pixels of a surface
+	private static int pixels(Surface surface) {
+		return surface.getCoordinateSpaceWidth() * surface.getCoordinateSpaceHeight();
+	}
+}
@@ -0,0 +1,194 @@
+package gwt.g2d.client.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.dom.client.CanvasElement;
+import com.google.gwt.dom.client.ImageElement;
+
+/**
+ * Packs many small images and pre-rendered canvases into a few large canvases (pages), so that drawing them
+ * uses only a few distinct source images, and the browser doesn't have to switch textures for every draw.
+ * <p>
+ * Every image that is added gets an {@link AtlasRegion}: its page and its place on that page. Regions are
+ * drawn one by one with {@link #draw(Surface, AtlasRegion, double, double)}, or many at once from primitive
+ * arrays with {@link #drawBatch(Surface, AtlasRegion[], double[], int)} and
+ * {@link #drawBatch(Surface, int, double[], double[], int)}. Images are packed with a skyline packer, with a
+ * pixel of padding between them so that they don't bleed into each other when drawn scaled.
+ * <p>
+ * Every region is drawn through the surface, so regions outside of the view are culled and the drawn ones
+ * are marked dirty, like any other image (see {@link Surface#setCulling(boolean)} and
+ * {@link Surface#setDirtyTracking(boolean)}).
+ */
+public class TextureAtlas {
+
+	/** Default width and height of a page. */
+	public static final int DEFAULT_PAGE_SIZE = 2048;
+
+	// space between the packed images
+	private static final int PADDING = 1;
+
+	// width and height of every page
+	final int fPageSize;
+
+	// pages, and the packer of each one
+	List<Surface> fPages = new ArrayList<Surface>();
+	List<SkylinePacker> fPackers = new ArrayList<SkylinePacker>();
+
+
+	/**
+	 * Create an empty atlas with pages of the default size.
+	 */
+	public TextureAtlas() {
+		this(DEFAULT_PAGE_SIZE);
+	}
+
+
+	/**
+	 * Create an empty atlas with pages of the given width and height.
+	 */
+	public TextureAtlas(int pageSize) {
+		fPageSize = pageSize;
+	}
+
+
+	/**
+	 * Copy the given image into the atlas.
+	 * @throws IllegalArgumentException if the image is larger than a page.
+	 */
+	public AtlasRegion add(ImageElement image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		AtlasRegion region = allocate(width, height);
+		fPages.get(region.fPage).getContext().drawImage(image, region.fX, region.fY);
+		return region;
+	}
+
+
+	/**
+	 * Copy the given canvas into the atlas.
+	 * @throws IllegalArgumentException if the canvas is larger than a page.
+	 */
+	public AtlasRegion add(CanvasElement canvas) {
+		return add(canvas, 0, 0, canvas.getWidth(), canvas.getHeight());
+	}
+
+
+	/**
+	 * Copy the given part of a canvas into the atlas.
+	 * @throws IllegalArgumentException if the part is larger than a page.
+	 */
+	public AtlasRegion add(CanvasElement canvas, int x, int y, int width, int height) {
+		AtlasRegion region = allocate(width, height);
+		if (width > 0 && height > 0) {
+			fPages.get(region.fPage).getContext().drawImage(canvas, x, y, width, height, region.fX, region.fY,
+					width, height);
+		}
+		return region;
+	}
+
+
+	/**
+	 * Draw a region at its own size, with its top-left corner at the given position.
+	 */
+	public void draw(Surface surface, AtlasRegion region, double x, double y) {
+		draw(surface, region, x, y, region.fWidth, region.fHeight);
+	}
+
+
+	/**
+	 * Draw a region scaled to the given rectangle.
+	 */
+	public void draw(Surface surface, AtlasRegion region, double x, double y, double width, double height) {
+		if (region.fWidth == 0 || region.fHeight == 0) return;
+		surface.drawImage(fPages.get(region.fPage).getCanvasElement(), region.fX, region.fY, region.fWidth,
+				region.fHeight, x, y, width, height);
+	}
+
+
+	/**
+	 * Draw the given number of regions, in order. Every region is drawn to the rectangle at the same index in
+	 * destination, which holds x, y, width and height of each one in a row.
+	 */
+	public void drawBatch(Surface surface, AtlasRegion[] regions, double[] destination, int count) {
+		int page = -1;
+		CanvasElement source = null;
+		for (int i = 0, j = 0; i < count; i++, j += 4) {
+			AtlasRegion region = regions[i];
+			if (region.fWidth == 0 || region.fHeight == 0) continue;
+			if (region.fPage != page) {
+				page = region.fPage;
+				source = fPages.get(page).getCanvasElement();
+			}
+			surface.drawImage(source, region.fX, region.fY, region.fWidth, region.fHeight, destination[j],
+					destination[j + 1], destination[j + 2], destination[j + 3]);
+		}
+	}
+
+
+	/**
+	 * Draw the given number of rectangles of a single page, in order. The source rectangles are on the page,
+	 * and the destination rectangles on the surface; both hold x, y, width and height of each one in a row.
+	 */
+	public void drawBatch(Surface surface, int page, double[] source, double[] destination, int count) {
+		CanvasElement canvas = fPages.get(page).getCanvasElement();
+		for (int i = 0, j = 0; i < count; i++, j += 4) {
+			surface.drawImage(canvas, source[j], source[j + 1], source[j + 2], source[j + 3], destination[j],
+					destination[j + 1], destination[j + 2], destination[j + 3]);
+		}
+	}
+
+
+	/**
+	 * Gets the number of pages.
+	 */
+	public int getPageCount() {
+		return fPages.size();
+	}
+
+
+	/**
+	 * Gets the canvas of the given page.
+	 */
+	public CanvasElement getPage(int page) {
+		return fPages.get(page).getCanvasElement();
+	}
+
+
+	/**
+	 * Gets the width and height of every page.
+	 */
+	public int getPageSize() {
+		return fPageSize;
+	}
+
+
+	/**
+	 * Drop all pages. The regions handed out before are no longer valid.
+	 */
+	public void clear() {
+		for (Surface page : fPages) page.setSize(0, 0);
+		fPages.clear();
+		fPackers.clear();
+	}
+
+
+	// find room for an image of the given size, on an existing page or a new one
+	private AtlasRegion allocate(int width, int height) {
+		if (width + PADDING > fPageSize || height + PADDING > fPageSize) {
+			throw new IllegalArgumentException("Image of " + width + "x" + height
+					+ " doesn't fit on an atlas page of " + fPageSize + "x" + fPageSize);
+		}
+		for (int page = 0; page < fPackers.size(); page++) {
+			SkylinePacker packer = fPackers.get(page);
+			if (packer.pack(width + PADDING, height + PADDING)) {
+				return new AtlasRegion(page, packer.fPackedX, packer.fPackedY, width, height);
+			}
+		}
+		SkylinePacker packer = new SkylinePacker(fPageSize, fPageSize);
+		packer.pack(width + PADDING, height + PADDING);
+		fPages.add(new Surface(fPageSize, fPageSize));
+		fPackers.add(packer);
+		return new AtlasRegion(fPackers.size() - 1, packer.fPackedX, packer.fPackedY, width, height);
+	}
+}
@@ -0,0 +1,97 @@
+package gwt.g2d.client.graphics.scene;
+
+import com.google.gwt.dom.client.CanvasElement;
+import com.google.gwt.dom.client.ImageElement;
+
+import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.shared.math.Rectangle;
+
+/**
+ * A scene node that draws an image or a canvas, with its top left corner at 
+ * the origin of the node.
+ */
+public class ImageNode extends SceneNode {
+	private ImageElement image;
+	private CanvasElement canvas;
+	private double width, height;
+	
+	/**
+	 * Creates a node that draws the given image at its natural size.
+	 */
+	public ImageNode(ImageElement image) {
+		this(image, image.getWidth(), image.getHeight());
+	}
+	
+	/**
+	 * Creates a node that draws the given image scaled to the given size.
+	 */
+	public ImageNode(ImageElement image, double width, double height) {
+		this.image = image;
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Creates a node that draws the given canvas at its natural size.
+	 */
+	public ImageNode(CanvasElement canvas) {
+		this(canvas, canvas.getWidth(), canvas.getHeight());
+	}
+	
+	/**
+	 * Creates a node that draws the given canvas scaled to the given size.
+	 */
+	public ImageNode(CanvasElement canvas, double width, double height) {
+		this.canvas = canvas;
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Sets the image to draw.
+	 */
+	public void setImage(ImageElement image) {
+		this.image = image;
+		this.canvas = null;
+		changed();
+	}
+	
+	/**
+	 * Sets the canvas to draw.
+	 */
+	public void setImage(CanvasElement canvas) {
+		this.canvas = canvas;
+		this.image = null;
+		changed();
+	}
+	
+	/**
+	 * Must be called after the pixels of the image or canvas were modified.
+	 */
+	public void imageChanged() {
+		changed();
+	}
+	
+	/**
+	 * Sets the size the image is drawn at.
+	 */
+	public void setSize(double width, double height) {
+		this.width = width;
+		this.height = height;
+		changed();
+	}
+	
+	@Override
+	protected void paint(Surface surface) {
+		if (image != null) {
+			surface.drawImage(image, 0, 0, width, height);
+		} else {
+			surface.drawImage(canvas, 0, 0, width, height);
+		}
+	}
+	
+	@Override
+	protected Rectangle computeLocalBounds(Surface surface) {
+		return new Rectangle(0, 0, width, height);
+	}
+}
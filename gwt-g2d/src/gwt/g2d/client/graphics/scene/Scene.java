@@ -0,0 +1,355 @@
+package gwt.g2d.client.graphics.scene;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.shared.Color;
+import gwt.g2d.shared.math.Rectangle;
+
+/**
+ * A retained-mode scene: a set of {@link SceneNode}s painted onto a 
+ * {@link Surface} in z-order.
+ * 
+ * Instead of clearing and repainting the whole surface, the scene collects 
+ * dirty rectangles: the bounds a node had before it changed, and the bounds 
+ * it has afterwards. {@link #redraw()} merges the dirty rectangles and, for 
+ * each of them, clips the surface to it, clears it and repaints only the 
+ * nodes that overlap it. A few moving nodes in a large scene thus only cost 
+ * the pixels they touch.
+ * 
+ * When the dirty area covers most of the surface, the whole surface is 
+ * repainted at once instead.
+ */
+public class Scene {
+	private static final Comparator<SceneNode> BOTTOM_FIRST = new Comparator<SceneNode>() {
+		@Override
+		public int compare(SceneNode a, SceneNode b) {
+			if (a.getZIndex() != b.getZIndex()) {
+				return a.getZIndex() < b.getZIndex() ? -1 : 1;
+			}
+			if (a.stamp != b.stamp) {
+				return a.stamp < b.stamp ? -1 : 1;
+			}
+			return 0;
+		}
+	};
+	
+	private final Surface surface;
+	private final List<SceneNode> nodes = new ArrayList<SceneNode>();
+	private final List<SceneNode> changedNodes = new ArrayList<SceneNode>();
+	private final List<Rectangle> dirtyRectangles = new ArrayList<Rectangle>();
+	private boolean sorted = true;
+	private boolean fullyDirty = true;
+	private long nextStamp;
+	private Color backgroundColor;
+	private double fullRedrawRatio = 0.5;
+	
+	/**
+	 * Creates an empty scene that paints onto the given surface.
+	 */
+	public Scene(Surface surface) {
+		this.surface = surface;
+	}
+	
+	/**
+	 * Gets the surface the scene paints onto.
+	 */
+	public Surface getSurface() {
+		return surface;
+	}
+	
+	/**
+	 * Adds the given node on top of the nodes with the same z-index.
+	 * 
+	 * @throws IllegalArgumentException if the node already belongs to a scene.
+	 */
+	public void add(SceneNode node) {
+		if (node.scene != null) {
+			throw new IllegalArgumentException("The node already belongs to a scene");
+		}
+		node.scene = this;
+		node.stamp = nextStamp++;
+		node.bounds = null;
+		nodes.add(node);
+		sorted = false;
+		nodeChanged(node);
+	}
+	
+	/**
+	 * Removes the given node from the scene.
+	 */
+	public void remove(SceneNode node) {
+		if (node.scene != this) {
+			return;
+		}
+		invalidateNode(node);
+		nodes.remove(node);
+		if (node.pending) {
+			changedNodes.remove(node);
+			node.pending = false;
+		}
+		node.scene = null;
+		node.bounds = null;
+	}
+	
+	/**
+	 * Removes all nodes from the scene.
+	 */
+	public void clear() {
+		for (SceneNode node : nodes) {
+			node.scene = null;
+			node.bounds = null;
+			node.pending = false;
+		}
+		nodes.clear();
+		changedNodes.clear();
+		invalidate();
+	}
+	
+	/**
+	 * Gets the nodes of the scene, from bottom to top.
+	 */
+	public List<SceneNode> getNodes() {
+		sort();
+		return Collections.unmodifiableList(nodes);
+	}
+	
+	/**
+	 * Gets the color the dirty rectangles are filled with before the nodes are 
+	 * repainted, or null if they are cleared to transparent black.
+	 */
+	public Color getBackgroundColor() {
+		return backgroundColor;
+	}
+	
+	/**
+	 * Sets the color the dirty rectangles are filled with before the nodes 
+	 * are repainted, or null to clear them to transparent black.
+	 */
+	public void setBackgroundColor(Color backgroundColor) {
+		this.backgroundColor = backgroundColor;
+		invalidate();
+	}
+	
+	/**
+	 * Sets the fraction of the surface above which the dirty area is not 
+	 * repainted rectangle by rectangle, but all at once. Default: 0.5.
+	 */
+	public void setFullRedrawRatio(double fullRedrawRatio) {
+		this.fullRedrawRatio = fullRedrawRatio;
+	}
+	
+	/**
+	 * Marks the whole surface as dirty, e.g. after it was resized or drawn on 
+	 * without going through the scene.
+	 */
+	public void invalidate() {
+		fullyDirty = true;
+		dirtyRectangles.clear();
+	}
+	
+	/**
+	 * Marks the given area of the surface as dirty.
+	 */
+	public void invalidate(Rectangle rectangle) {
+		addDirtyRectangle(rectangle);
+	}
+	
+	/**
+	 * Checks whether anything needs to be repainted.
+	 */
+	public boolean isDirty() {
+		return fullyDirty || !dirtyRectangles.isEmpty() || !changedNodes.isEmpty();
+	}
+	
+	/**
+	 * Repaints the dirty areas of the surface, and nothing else.
+	 * 
+	 * @return whether anything was repainted.
+	 */
+	public boolean redraw() {
+		// the new bounds of the changed nodes are dirty as well
+		for (SceneNode node : changedNodes) {
+			node.pending = false;
+			if (!fullyDirty) {
+				invalidateNode(node);
+			}
+		}
+		changedNodes.clear();
+		if (!isDirty()) {
+			return false;
+		}
+		sort();
+		
+		Rectangle view = surface.getViewRectangle();
+		List<Rectangle> regions = mergeDirtyRectangles(view);
+		double area = 0;
+		for (Rectangle region : regions) {
+			area += region.getWidth() * region.getHeight();
+		}
+		if (fullyDirty || area > view.getWidth() * view.getHeight() * fullRedrawRatio) {
+			regions.clear();
+			regions.add(view);
+		}
+		for (Rectangle region : regions) {
+			repaint(region, region == view);
+		}
+		fullyDirty = false;
+		dirtyRectangles.clear();
+		return true;
+	}
+	
+	/**
+	 * Repaints the nodes that overlap the given region of the surface.
+	 */
+	private void repaint(Rectangle region, boolean whole) {
+		surface.save();
+		surface.setTransform(1, 0, 0, 1, 0, 0);
+		if (!whole) {
+			surface.getContext().beginPath();
+			surface.clipRectangle(region);
+		}
+		if (backgroundColor == null) {
+			surface.clearRectangle(region);
+		} else {
+			surface.setFillStyle(backgroundColor).fillRectangle(region);
+		}
+		for (SceneNode node : nodes) {
+			if (!node.isVisible()) {
+				continue;
+			}
+			Rectangle bounds = getBounds(node);
+			if (whole || bounds == null || overlap(bounds, region)) {
+				node.paintTransformed(surface);
+			}
+		}
+		surface.restore();
+	}
+	
+	/**
+	 * Called by a node of this scene after it changed.
+	 */
+	void nodeChanged(SceneNode node) {
+		if (node.pending) {
+			return;
+		}
+		
+		// the old bounds are dirty now, the new ones once the scene is redrawn
+		invalidateNode(node);
+		node.bounds = null;
+		node.pending = true;
+		changedNodes.add(node);
+	}
+	
+	/**
+	 * Called by a node of this scene after its z-index changed.
+	 */
+	void orderChanged(SceneNode node) {
+		sorted = false;
+		nodeChanged(node);
+	}
+	
+	/**
+	 * Moves the given node of this scene on top of the nodes with the same 
+	 * z-index.
+	 */
+	void bringToFront(SceneNode node) {
+		node.stamp = nextStamp++;
+		orderChanged(node);
+	}
+	
+	/**
+	 * Gets the bounds of the given node on the surface, computing them if 
+	 * necessary.
+	 */
+	Rectangle getBounds(SceneNode node) {
+		if (node.bounds == null) {
+			Rectangle local = node.computeLocalBounds(surface);
+			if (local != null) {
+				node.bounds = node.transformBounds(local);
+			}
+		}
+		return node.bounds;
+	}
+	
+	/**
+	 * Marks the current bounds of the given node as dirty.
+	 */
+	private void invalidateNode(SceneNode node) {
+		if (fullyDirty || !node.isVisible()) {
+			return;
+		}
+		Rectangle bounds = getBounds(node);
+		if (bounds == null) {
+			invalidate();
+		} else {
+			addDirtyRectangle(bounds);
+		}
+	}
+	
+	private void addDirtyRectangle(Rectangle rectangle) {
+		if (!fullyDirty && rectangle.getWidth() > 0 && rectangle.getHeight() > 0) {
+			dirtyRectangles.add(new Rectangle(rectangle));
+		}
+	}
+	
+	private void sort() {
+		if (!sorted) {
+			Collections.sort(nodes, BOTTOM_FIRST);
+			sorted = true;
+		}
+	}
+	
+	/**
+	 * Clips the dirty rectangles to the view, and merges the ones that overlap 
+	 * until none do.
+	 */
+	private List<Rectangle> mergeDirtyRectangles(Rectangle view) {
+		List<Rectangle> merged = new ArrayList<Rectangle>();
+		for (Rectangle rectangle : dirtyRectangles) {
+			double x1 = Math.max(rectangle.getX(), view.getX());
+			double y1 = Math.max(rectangle.getY(), view.getY());
+			double x2 = Math.min(rectangle.getX() + rectangle.getWidth(), 
+					view.getX() + view.getWidth());
+			double y2 = Math.min(rectangle.getY() + rectangle.getHeight(), 
+					view.getY() + view.getHeight());
+			if (x1 >= x2 || y1 >= y2) {
+				continue;
+			}
+			Rectangle current = new Rectangle(x1, y1, x2 - x1, y2 - y1);
+			
+			// absorb every merged rectangle the current one overlaps, which may 
+			// make it overlap others
+			boolean grown = true;
+			while (grown) {
+				grown = false;
+				for (int i = merged.size() - 1; i >= 0; i--) {
+					Rectangle other = merged.get(i);
+					if (overlap(current, other)) {
+						current = union(current, other);
+						merged.remove(i);
+						grown = true;
+					}
+				}
+			}
+			merged.add(current);
+		}
+		return merged;
+	}
+	
+	private static boolean overlap(Rectangle a, Rectangle b) {
+		return a.getX() < b.getX() + b.getWidth() && b.getX() < a.getX() + a.getWidth()
+				&& a.getY() < b.getY() + b.getHeight() && b.getY() < a.getY() + a.getHeight();
+	}
+	
+	private static Rectangle union(Rectangle a, Rectangle b) {
+		double x1 = Math.min(a.getX(), b.getX());
+		double y1 = Math.min(a.getY(), b.getY());
+		double x2 = Math.max(a.getX() + a.getWidth(), b.getX() + b.getWidth());
+		double y2 = Math.max(a.getY() + a.getHeight(), b.getY() + b.getHeight());
+		return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+	}
+}
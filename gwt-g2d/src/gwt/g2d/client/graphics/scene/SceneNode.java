@@ -0,0 +1,209 @@
+package gwt.g2d.client.graphics.scene;
+
+import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.client.math.Matrix;
+import gwt.g2d.shared.math.Rectangle;
+
+/**
+ * An element of a {@link Scene}: something that paints itself in its own 
+ * coordinate space, placed on the surface by its transform.
+ * 
+ * A node knows the bounds of what it paints, so that the scene only redraws 
+ * the area a node covered before and after it changed. Subclasses must call 
+ * {@link #changed()} whenever what they paint changes.
+ */
+public abstract class SceneNode {
+	private final Matrix transform = new Matrix();
+	private int zIndex;
+	private boolean visible = true;
+	private double alpha = 1;
+
+	/** The scene the node belongs to, or null. */
+	Scene scene;
+
+	/** Place of the node within its z-index, the higher the closer to the top. */
+	long stamp;
+
+	/** Bounds of the node on the surface, or null if not computed yet. */
+	Rectangle bounds;
+
+	/** Whether the node changed since the scene was last redrawn. */
+	boolean pending;
+
+	/**
+	 * Paints the node onto the given surface, in the coordinate space of the 
+	 * node. The transform and alpha of the node are already applied.
+	 */
+	protected abstract void paint(Surface surface);
+
+	/**
+	 * Gets the bounds of what {@link #paint(Surface)} draws, in the coordinate 
+	 * space of the node, or null if they are not known (which redraws the 
+	 * whole surface whenever the node changes).
+	 * 
+	 * @param surface the surface the node is painted to, e.g. for measuring 
+	 * 				text.
+	 */
+	protected abstract Rectangle computeLocalBounds(Surface surface);
+
+	/**
+	 * Notifies the scene that what the node paints changed, so that the area 
+	 * it covers is redrawn.
+	 */
+	protected final void changed() {
+		if (scene != null) {
+			scene.nodeChanged(this);
+		}
+	}
+
+	/**
+	 * Gets the scene the node belongs to, or null.
+	 */
+	public Scene getScene() {
+		return scene;
+	}
+
+	/**
+	 * Gets a copy of the transform that places the node on the surface.
+	 */
+	public Matrix getTransform() {
+		return new Matrix(transform);
+	}
+
+	/**
+	 * Sets the transform that places the node on the surface.
+	 */
+	public void setTransform(Matrix matrix) {
+		if (!transform.equals(matrix)) {
+			transform.set(matrix);
+			changed();
+		}
+	}
+
+	/**
+	 * Places the node at the given position, without rotating or scaling it.
+	 */
+	public void setPosition(double x, double y) {
+		setTransform(new Matrix(1, 0, 0, 1, x, y));
+	}
+
+	/**
+	 * Gets the z-index of the node. Nodes with a higher z-index are painted on 
+	 * top of the ones with a lower z-index; within the same z-index, nodes 
+	 * added later are on top.
+	 */
+	public int getZIndex() {
+		return zIndex;
+	}
+
+	/**
+	 * Sets the z-index of the node.
+	 */
+	public void setZIndex(int zIndex) {
+		if (zIndex != this.zIndex) {
+			this.zIndex = zIndex;
+			if (scene != null) {
+				scene.orderChanged(this);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the node is painted.
+	 */
+	public boolean isVisible() {
+		return visible;
+	}
+
+	/**
+	 * Sets whether the node is painted.
+	 */
+	public void setVisible(boolean visible) {
+		if (visible != this.visible) {
+			// a node being hidden must still mark the area it covered
+			if (!visible) {
+				changed();
+			}
+			this.visible = visible;
+			if (visible) {
+				changed();
+			}
+		}
+	}
+
+	/**
+	 * Gets the alpha value the node is painted with.
+	 */
+	public double getAlpha() {
+		return alpha;
+	}
+
+	/**
+	 * Sets the alpha value the node is painted with. Default: 1.0.
+	 */
+	public void setAlpha(double alpha) {
+		if (alpha != this.alpha) {
+			this.alpha = alpha;
+			changed();
+		}
+	}
+
+	/**
+	 * Brings the node on top of all other nodes with the same z-index.
+	 */
+	public void bringToFront() {
+		if (scene != null) {
+			scene.bringToFront(this);
+		}
+	}
+
+	/**
+	 * Gets the bounds of the node on the surface of its scene, or null if 
+	 * the node doesn't belong to a scene or its bounds are not known.
+	 */
+	public Rectangle getBounds() {
+		if (scene == null) {
+			return null;
+		}
+		Rectangle bounds = scene.getBounds(this);
+		return bounds == null ? null : new Rectangle(bounds);
+	}
+
+	/**
+	 * Paints the node with its transform and alpha.
+	 */
+	void paintTransformed(Surface surface) {
+		surface.save();
+		surface.transform(transform);
+		if (alpha != 1) {
+			surface.setGlobalAlpha(surface.getGlobalAlpha() * alpha);
+		}
+		paint(surface);
+		surface.restore();
+	}
+
+	/**
+	 * Transforms the given local bounds to the bounds on the surface, grown 
+	 * to whole pixels.
+	 */
+	Rectangle transformBounds(Rectangle local) {
+		double x1 = local.getX(), y1 = local.getY();
+		double x2 = x1 + local.getWidth(), y2 = y1 + local.getHeight();
+		double m11 = transform.getM11(), m12 = transform.getM12();
+		double m21 = transform.getM21(), m22 = transform.getM22();
+		double dx = transform.getDx(), dy = transform.getDy();
+
+		// the corners of the rectangle, transformed as by the canvas
+		double ax = m11 * x1 + m21 * y1, ay = m12 * x1 + m22 * y1;
+		double bx = m11 * x2 + m21 * y1, by = m12 * x2 + m22 * y1;
+		double cx = m11 * x1 + m21 * y2, cy = m12 * x1 + m22 * y2;
+		double ex = m11 * x2 + m21 * y2, ey = m12 * x2 + m22 * y2;
+		double minX = Math.floor(Math.min(Math.min(ax, bx), Math.min(cx, ex)) + dx);
+		double minY = Math.floor(Math.min(Math.min(ay, by), Math.min(cy, ey)) + dy);
+		double maxX = Math.ceil(Math.max(Math.max(ax, bx), Math.max(cx, ex)) + dx);
+		double maxY = Math.ceil(Math.max(Math.max(ay, by), Math.max(cy, ey)) + dy);
+
+		// one more pixel on each side for anti-aliasing
+		return new Rectangle(minX - 1, minY - 1, maxX - minX + 2, maxY - minY + 2);
+	}
+}
@@ -0,0 +1,149 @@
+package gwt.g2d.client.graphics.scene;
+
+import com.google.gwt.canvas.dom.client.Context2d.LineJoin;
+
+import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.client.graphics.shapes.Shape;
+import gwt.g2d.shared.Color;
+import gwt.g2d.shared.math.Rectangle;
+
+/**
+ * A scene node that fills and/or strokes a {@link Shape}.
+ * 
+ * The bounds of the node are taken from the geometry of the shape (see 
+ * {@link Shape#appendPath(gwt.g2d.client.graphics.visitor.PathContext)}); 
+ * a shape that doesn't describe its geometry redraws the whole surface 
+ * whenever it changes. If the shape itself is modified, 
+ * {@link #shapeChanged()} must be called.
+ */
+public class ShapeNode extends SceneNode {
+	private Shape shape;
+	private Color fillColor, strokeColor;
+	private double lineWidth = 1;
+	private LineJoin lineJoin = LineJoin.MITER;
+	
+	/**
+	 * Creates a node for the given shape, which is neither filled nor stroked 
+	 * until a fill or stroke color is set.
+	 */
+	public ShapeNode(Shape shape) {
+		this.shape = shape;
+	}
+	
+	/**
+	 * Creates a node that fills the given shape with the given color.
+	 */
+	public ShapeNode(Shape shape, Color fillColor) {
+		this.shape = shape;
+		this.fillColor = fillColor;
+	}
+	
+	/**
+	 * Gets the shape.
+	 */
+	public Shape getShape() {
+		return shape;
+	}
+	
+	/**
+	 * Sets the shape.
+	 */
+	public void setShape(Shape shape) {
+		this.shape = shape;
+		changed();
+	}
+	
+	/**
+	 * Must be called after the shape was modified.
+	 */
+	public void shapeChanged() {
+		changed();
+	}
+	
+	/**
+	 * Gets the fill color, or null if the shape is not filled.
+	 */
+	public Color getFillColor() {
+		return fillColor;
+	}
+	
+	/**
+	 * Sets the fill color, or null to not fill the shape.
+	 */
+	public void setFillColor(Color fillColor) {
+		this.fillColor = fillColor;
+		changed();
+	}
+	
+	/**
+	 * Gets the stroke color, or null if the shape is not stroked.
+	 */
+	public Color getStrokeColor() {
+		return strokeColor;
+	}
+	
+	/**
+	 * Sets the stroke color, or null to not stroke the shape.
+	 */
+	public void setStrokeColor(Color strokeColor) {
+		this.strokeColor = strokeColor;
+		changed();
+	}
+	
+	/**
+	 * Gets the line width of the stroke.
+	 */
+	public double getLineWidth() {
+		return lineWidth;
+	}
+	
+	/**
+	 * Sets the line width of the stroke. Default: 1.0.
+	 */
+	public void setLineWidth(double lineWidth) {
+		this.lineWidth = lineWidth;
+		changed();
+	}
+	
+	/**
+	 * Gets the line join of the stroke.
+	 */
+	public LineJoin getLineJoin() {
+		return lineJoin;
+	}
+	
+	/**
+	 * Sets the line join of the stroke. Default: {@link LineJoin#MITER}.
+	 */
+	public void setLineJoin(LineJoin lineJoin) {
+		this.lineJoin = lineJoin;
+		changed();
+	}
+	
+	@Override
+	protected void paint(Surface surface) {
+		if (fillColor != null) {
+			surface.setFillStyle(fillColor).fillShape(shape);
+		}
+		if (strokeColor != null) {
+			surface.setStrokeStyle(strokeColor).setLineWidth(lineWidth)
+					.setLineJoin(lineJoin).strokeShape(shape);
+		}
+	}
+	
+	@Override
+	protected Rectangle computeLocalBounds(Surface surface) {
+		if (!shape.hasGeometry()) {
+			return null;
+		}
+		Rectangle bounds = shape.getFlattenedPath().getBounds();
+		if (strokeColor != null) {
+			// miter joins can reach up to the (default) miter limit times half 
+			// the line width
+			double grow = lineJoin == LineJoin.MITER ? lineWidth * 5 : lineWidth / 2;
+			bounds = new Rectangle(bounds.getX() - grow, bounds.getY() - grow, 
+					bounds.getWidth() + 2 * grow, bounds.getHeight() + 2 * grow);
+		}
+		return bounds;
+	}
+}
@@ -0,0 +1,107 @@
+package gwt.g2d.client.graphics.scene;
+
+import com.google.gwt.canvas.dom.client.Context2d.TextAlign;
+import com.google.gwt.canvas.dom.client.Context2d.TextBaseline;
+
+import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.shared.Color;
+import gwt.g2d.shared.math.Rectangle;
+
+/**
+ * A scene node that fills a single line of text, with the top left corner of 
+ * the text at the origin of the node.
+ * 
+ * The width of the text is measured on the surface; its height is taken from 
+ * the pixel size of the font (e.g. "12px sans-serif"), with room for 
+ * descenders. The bounds of fonts that aren't sized in pixels are unknown, 
+ * so changing such a node redraws the whole scene.
+ */
+public class TextNode extends SceneNode {
+	private String text;
+	private String font = "10px sans-serif";
+	private Color color;
+	
+	/**
+	 * Creates a node that fills the given text with the given color.
+	 */
+	public TextNode(String text, Color color) {
+		this.text = text;
+		this.color = color;
+	}
+	
+	/**
+	 * Creates a node that fills the given text with the given font and color.
+	 */
+	public TextNode(String text, String font, Color color) {
+		this.text = text;
+		this.font = font;
+		this.color = color;
+	}
+	
+	/**
+	 * Gets the text.
+	 */
+	public String getText() {
+		return text;
+	}
+	
+	/**
+	 * Sets the text.
+	 */
+	public void setText(String text) {
+		if (!text.equals(this.text)) {
+			this.text = text;
+			changed();
+		}
+	}
+	
+	/**
+	 * Gets the font.
+	 */
+	public String getFont() {
+		return font;
+	}
+	
+	/**
+	 * Sets the font, as a CSS font string.
+	 */
+	public void setFont(String font) {
+		this.font = font;
+		changed();
+	}
+	
+	/**
+	 * Gets the color.
+	 */
+	public Color getColor() {
+		return color;
+	}
+	
+	/**
+	 * Sets the color.
+	 */
+	public void setColor(Color color) {
+		this.color = color;
+		changed();
+	}
+	
+	@Override
+	protected void paint(Surface surface) {
+		surface.setFont(font).setTextAlign(TextAlign.START)
+				.setTextBaseline(TextBaseline.TOP).setFillStyle(color)
+				.fillText(text, 0, 0);
+	}
+	
+	@Override
+	protected Rectangle computeLocalBounds(Surface surface) {
+		double size = Surface.getFontPixelSize(font);
+		if (Double.isNaN(size)) {
+			return null;
+		}
+		surface.save();
+		surface.setFont(font);
+		double width = surface.measureText(text).getWidth();
+		surface.restore();
+		return new Rectangle(0, 0, width, size * 1.5);
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * Contains a retained-mode scene graph, which redraws only the parts of a 
+ * surface that changed.
+ */
+package gwt.g2d.client.graphics.scene;
@@ -4,6 +4,7 @@ package gwt.g2d.client.graphics.shapes;
 import com.google.gwt.canvas.dom.client.Context2d;
 
 import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.client.graphics.visitor.PathContext;
 import gwt.g2d.client.math.Circle;
 import gwt.g2d.client.math.MathHelper;
 import gwt.g2d.shared.math.Vector2;
@@ -40,6 +41,7 @@ public class CircleShape extends Shape {
 	
 	public void setCenter(Vector2 center) {
 		fCenter = center;
+		invalidatePath();
 	}
 
 	@Override
@@ -49,4 +51,18 @@ public class CircleShape extends Shape {
 		context.arc(fCenter.x, fCenter.y, fRadius, 0, MathHelper.TWO_PI, true);
 		context.closePath();
 	}
+	
+	@Override
+	public void appendPath(PathContext path) {
+		path.arc(fCenter.x, fCenter.y, fRadius, 0, MathHelper.TWO_PI, true);
+		path.closePath();
+	}
+	
+	@Override
+	public boolean contains(double x, double y, FillRule fillRule, 
+			double strokeWidth) {
+		double distance = Math.hypot(x - fCenter.x, y - fCenter.y);
+		return distance <= fRadius 
+				|| (strokeWidth > 0 && distance - fRadius <= strokeWidth / 2);
+	}
 }
@@ -0,0 +1,394 @@
+package gwt.g2d.client.graphics.shapes;
+
+import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.client.graphics.visitor.PathContext;
+
+import com.google.gwt.canvas.dom.client.Context2d;
+
+/**
+ * A shape whose geometry is compiled once into a browser Path2D object, so
+ * that filling, stroking, clipping to or hit-testing it is a single call on
+ * the context, instead of one call per segment. Meant for shapes that are
+ * drawn many times, such as markers, glyphs and icons.
+ *
+ * The geometry is taken from {@link Shape#appendPath(PathContext)} of the
+ * compiled shape: transformations within the shape apply to its path only,
+ * and don't change the transformation of the surface the way
+ * {@link Shape#draw(Surface)} may. The compiled shape must not change
+ * afterwards. Where Path2D isn't available, the compiled shape falls back to
+ * drawing the original shape.
+ *
+ * {@link Surface#fillShape(Shape)}, {@link Surface#strokeShape(Shape)} and
+ * {@link Surface#clipShape(Shape)} use the compiled path when they are given
+ * a compiled shape.
+ */
+public class CompiledShape extends Shape {
+	private final Shape shape;
+	private Path2D path;
+	private boolean compiled;
+
+	/**
+	 * Creates the compiled form of the given shape. The path is built the
+	 * first time the shape is used.
+	 *
+	 * @param shape a shape that describes its geometry.
+	 */
+	public CompiledShape(Shape shape) {
+		this.shape = shape;
+	}
+
+	/**
+	 * Gets the shape that was compiled.
+	 */
+	public Shape getShape() {
+		return shape;
+	}
+
+	/**
+	 * Checks whether the shape is drawn with a Path2D object, rather than by
+	 * drawing the original shape.
+	 */
+	public boolean isCompiled() {
+		return getPath() != null;
+	}
+
+	/**
+	 * Draws the original shape onto the given surface, since a compiled path
+	 * can't be added to the current path of the context.
+	 */
+	@Override
+	public void draw(Surface surface) {
+		shape.draw(surface);
+	}
+
+	@Override
+	public void appendPath(PathContext path) {
+		shape.appendPath(path);
+	}
+
+	/**
+	 * Fills the shape on the given surface with the current fill style.
+	 * Unlike {@link Surface#fillShape(Shape)}, the shape isn't culled.
+	 */
+	public void fill(Surface surface) {
+		Path2D path = getPath();
+		if (path != null) {
+			path.fill(surface.getContext());
+		} else {
+			shape.draw(surface);
+			surface.getContext().fill();
+		}
+	}
+
+	/**
+	 * Strokes the shape on the given surface with the current stroke style.
+	 * Unlike {@link Surface#strokeShape(Shape)}, the shape isn't culled.
+	 */
+	public void stroke(Surface surface) {
+		Path2D path = getPath();
+		if (path != null) {
+			path.stroke(surface.getContext());
+		} else {
+			shape.draw(surface);
+			surface.getContext().stroke();
+		}
+	}
+
+	/**
+	 * Intersects the clipping region of the given surface with the shape.
+	 * Use {@link Surface#clipShape(Shape)} for the surface to know about the
+	 * clipping region.
+	 */
+	public void clip(Surface surface) {
+		Path2D path = getPath();
+		if (path != null) {
+			path.clip(surface.getContext());
+		} else {
+			shape.draw(surface);
+			surface.getContext().clip();
+		}
+	}
+
+	/**
+	 * Checks whether the given point on the canvas is inside the shape, as
+	 * transformed by the current transformation of the given surface. Unlike
+	 * {@link Surface#isPointInPath(double, double)}, this doesn't need the
+	 * shape to be drawn first, and leaves the current path alone (unless the
+	 * shape couldn't be compiled).
+	 */
+	public boolean isPointInPath(Surface surface, double x, double y) {
+		Path2D path = getPath();
+		if (path != null) {
+			return path.isPointInPath(surface.getContext(), x, y);
+		}
+		shape.draw(surface);
+		return surface.isPointInPath(x, y);
+	}
+
+	@Override
+	public void checkHit(Surface surface, double x, double y) {
+		if (fClickHandler != null && isPointInPath(surface, x, y)) {
+			fClickHandler.onClick(x, y);
+		}
+	}
+
+	/**
+	 * Gets the compiled path, building it on first use, or null if Path2D
+	 * isn't supported.
+	 */
+	private Path2D getPath() {
+		if (!compiled) {
+			compiled = true;
+			if (Path2D.isSupported()) {
+				Path2D path = Path2D.create();
+				shape.appendPath(new Compiler(path));
+				this.path = path;
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Gets the ellipse that the given transformation turns an arc of a
+	 * circle centered at the origin into, as the radii, the rotation, the
+	 * start and end angle, and 1 if it is anti-clockwise, or 0.
+	 */
+	static void transformArc(double a, double b, double c, double d,
+			double radius, double startAngle, double endAngle,
+			boolean antiClockwise, double[] ellipse) {
+		// a reflection runs the ellipse the other way around: reflect the
+		// circle first, which negates its angles
+		boolean reflected = a * d - b * c < 0;
+		if (reflected) {
+			c = -c;
+			d = -d;
+			startAngle = -startAngle;
+			endAngle = -endAngle;
+			antiClockwise = !antiClockwise;
+		}
+
+		// decompose the matrix into rotation(theta) * scale(sx, sy) * rotation(phi)
+		double e = (a + d) / 2, f = (a - d) / 2, g = (b + c) / 2, h = (b - c) / 2;
+		double q = Math.hypot(e, h), r = Math.hypot(f, g);
+		double alpha = Math.atan2(g, f), beta = Math.atan2(h, e);
+		double theta = (beta + alpha) / 2, phi = (beta - alpha) / 2;
+		ellipse[0] = (q + r) * radius;
+		ellipse[1] = Math.max(0, q - r) * radius;
+		ellipse[2] = theta;
+		ellipse[3] = startAngle + phi;
+		ellipse[4] = endAngle + phi;
+		ellipse[5] = antiClockwise ? 1 : 0;
+	}
+
+	/**
+	 * Builds a Path2D object, applying the transformations of the path to
+	 * its points, since Path2D objects have no transformation of their own.
+	 */
+	private static final class Compiler implements PathContext {
+		private final Path2D path;
+
+		// current transformation, in the order of the canvas' setTransform
+		private double a = 1, b, c, d = 1, e, f;
+		private double[] stack = new double[24];
+		private int stackSize;
+
+		// current point and start of the current subpath, transformed
+		private boolean hasCurrent;
+		private double currentX, currentY, startX, startY;
+
+		private final double[] ellipse = new double[6];
+
+		Compiler(Path2D path) {
+			this.path = path;
+		}
+
+		@Override
+		public void moveTo(double x, double y) {
+			currentX = startX = a * x + c * y + e;
+			currentY = startY = b * x + d * y + f;
+			hasCurrent = true;
+			path.moveTo(currentX, currentY);
+		}
+
+		@Override
+		public void lineTo(double x, double y) {
+			if (!hasCurrent) {
+				moveTo(x, y);
+				return;
+			}
+			currentX = a * x + c * y + e;
+			currentY = b * x + d * y + f;
+			path.lineTo(currentX, currentY);
+		}
+
+		@Override
+		public void quadraticCurveTo(double cpx, double cpy, double x, double y) {
+			if (!hasCurrent) {
+				moveTo(cpx, cpy);
+			}
+			currentX = a * x + c * y + e;
+			currentY = b * x + d * y + f;
+			path.quadraticCurveTo(a * cpx + c * cpy + e, b * cpx + d * cpy + f,
+					currentX, currentY);
+		}
+
+		@Override
+		public void bezierCurveTo(double cp1x, double cp1y, double cp2x,
+				double cp2y, double x, double y) {
+			if (!hasCurrent) {
+				moveTo(cp1x, cp1y);
+			}
+			currentX = a * x + c * y + e;
+			currentY = b * x + d * y + f;
+			path.bezierCurveTo(a * cp1x + c * cp1y + e, b * cp1x + d * cp1y + f,
+					a * cp2x + c * cp2y + e, b * cp2x + d * cp2y + f,
+					currentX, currentY);
+		}
+
+		@Override
+		public void arc(double x, double y, double radius, double startAngle,
+				double endAngle, boolean antiClockwise) {
+			if (radius < 0) {
+				throw new IllegalArgumentException("Negative radius: " + radius);
+			}
+			double cx = a * x + c * y + e, cy = b * x + d * y + f;
+			if (a == 1 && b == 0 && c == 0 && d == 1) {
+				path.arc(cx, cy, radius, startAngle, endAngle, antiClockwise);
+			} else {
+				transformArc(a, b, c, d, radius, startAngle, endAngle,
+						antiClockwise, ellipse);
+				path.ellipse(cx, cy, ellipse[0], ellipse[1], ellipse[2], ellipse[3],
+						ellipse[4], ellipse[5] != 0);
+			}
+
+			// the end of the arc, the same way the canvas computes it
+			double end = startAngle + FlattenedPath.sweep(startAngle, endAngle, antiClockwise);
+			double px = x + radius * Math.cos(end), py = y + radius * Math.sin(end);
+			if (!hasCurrent) {
+				double sx = x + radius * Math.cos(startAngle);
+				double sy = y + radius * Math.sin(startAngle);
+				startX = a * sx + c * sy + e;
+				startY = b * sx + d * sy + f;
+				hasCurrent = true;
+			}
+			currentX = a * px + c * py + e;
+			currentY = b * px + d * py + f;
+		}
+
+		@Override
+		public void arcTo(double x1, double y1, double x2, double y2, double radius) {
+			if (radius < 0) {
+				throw new IllegalArgumentException("Negative radius: " + radius);
+			}
+			if (!hasCurrent) {
+				moveTo(x1, y1);
+			}
+
+			// the current point, in the current coordinate space
+			double det = a * d - b * c;
+			if (det == 0) {
+				return;
+			}
+			double px = currentX - e, py = currentY - f;
+			double x0 = (d * px - c * py) / det, y0 = (a * py - b * px) / det;
+			double[] circle = new double[5];
+			if (FlattenedPath.arcToCircle(x0, y0, x1, y1, x2, y2, radius, circle)) {
+				arc(circle[0], circle[1], radius, circle[2], circle[3], circle[4] != 0);
+			} else {
+				lineTo(x1, y1);
+			}
+		}
+
+		@Override
+		public void rect(double x, double y, double width, double height) {
+			if (b == 0 && c == 0) {
+				path.rect(a * x + e, d * y + f, a * width, d * height);
+				currentX = startX = a * x + e;
+				currentY = startY = d * y + f;
+				hasCurrent = true;
+			} else {
+				moveTo(x, y);
+				lineTo(x + width, y);
+				lineTo(x + width, y + height);
+				lineTo(x, y + height);
+				closePath();
+			}
+		}
+
+		@Override
+		public void closePath() {
+			if (hasCurrent) {
+				path.closePath();
+				currentX = startX;
+				currentY = startY;
+			}
+		}
+
+		@Override
+		public void save() {
+			if (stackSize + 6 > stack.length) {
+				double[] newStack = new double[stack.length * 2];
+				System.arraycopy(stack, 0, newStack, 0, stackSize);
+				stack = newStack;
+			}
+			stack[stackSize++] = a;
+			stack[stackSize++] = b;
+			stack[stackSize++] = c;
+			stack[stackSize++] = d;
+			stack[stackSize++] = e;
+			stack[stackSize++] = f;
+		}
+
+		@Override
+		public void restore() {
+			if (stackSize == 0) {
+				return;
+			}
+			f = stack[--stackSize];
+			e = stack[--stackSize];
+			d = stack[--stackSize];
+			c = stack[--stackSize];
+			b = stack[--stackSize];
+			a = stack[--stackSize];
+		}
+
+		@Override
+		public void translate(double x, double y) {
+			e += a * x + c * y;
+			f += b * x + d * y;
+		}
+
+		@Override
+		public void scale(double x, double y) {
+			a *= x;
+			b *= x;
+			c *= y;
+			d *= y;
+		}
+
+		@Override
+		public void rotate(double angle) {
+			double cos = Math.cos(angle), sin = Math.sin(angle);
+			transform(cos, sin, -sin, cos, 0, 0);
+		}
+
+		@Override
+		public void transform(double m11, double m12, double m21, double m22,
+				double dx, double dy) {
+			setTransform(a * m11 + c * m12, b * m11 + d * m12,
+					a * m21 + c * m22, b * m21 + d * m22,
+					a * dx + c * dy + e, b * dx + d * dy + f);
+		}
+
+		@Override
+		public void setTransform(double m11, double m12, double m21, double m22,
+				double dx, double dy) {
+			a = m11;
+			b = m12;
+			c = m21;
+			d = m22;
+			e = dx;
+			f = dy;
+		}
+	}
+}
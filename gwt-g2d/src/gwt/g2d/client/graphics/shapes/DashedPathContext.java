@@ -0,0 +1,444 @@
+package gwt.g2d.client.graphics.shapes;
+
+import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.client.graphics.visitor.PathContext;
+
+/**
+ * A {@link PathContext} that adds the dashes of the path it is given to
+ * another path, the way the canvas' setLineDash would stroke it: the
+ * pattern starts at the dash offset at the start of each subpath, and
+ * continues across its lines and curves. Curves and arcs are flattened into
+ * lines first. Each dash is added as a subpath of its own, and a dash that
+ * spans a corner is joined there. This is the software fallback of
+ * {@link Surface#setLineDash(double...)}, and can be used directly to dash
+ * any shape with {@link Shape#appendPath(PathContext)}.
+ *
+ * Transformations are applied to the points before they are dashed, and
+ * are not passed on, so dash lengths are in the units of the coordinate
+ * space the path starts in, unless another space is given with
+ * {@link #setBaseTransform(double, double, double, double, double, double)}.
+ */
+public class DashedPathContext implements PathContext {
+
+	/** The default largest distance of flattened curves from the real ones. */
+	public static final double DEFAULT_TOLERANCE = 0.25;
+
+	private final PathContext path;
+	private final double[] pattern;
+	private final double period, dashOffset;
+	private final double tolerance;
+
+	// current transformation, in the order of the canvas' setTransform, and 
+	// the one that the transformations of the path are applied after
+	private double a = 1, b, c, d = 1, e, f;
+	private double baseA = 1, baseB, baseC, baseD = 1, baseE, baseF;
+	private double[] stack;
+	private int stackSize;
+
+	// current point and start of the current subpath, transformed, the
+	// phase of the pattern at the current point, and whether the dashes end 
+	// there
+	private boolean hasCurrent, connected;
+	private double currentX, currentY, startX, startY;
+	private double phase;
+
+	/**
+	 * Creates a context that adds dashes with the given pattern to the given
+	 * path.
+	 *
+	 * @param path the path that receives the dashes.
+	 * @param pattern lengths of the dashes and gaps, alternately, as for the
+	 * 				canvas' setLineDash. An empty pattern draws solid lines.
+	 * @param dashOffset the distance into the pattern at which each subpath
+	 * 				starts.
+	 * @throws IllegalArgumentException if a length is negative or not finite.
+	 */
+	public DashedPathContext(PathContext path, double[] pattern, double dashOffset) {
+		this(path, pattern, dashOffset, DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * Creates a context that adds dashes with the given pattern to the given
+	 * path, flattening curves within the given tolerance.
+	 *
+	 * @see #DashedPathContext(PathContext, double[], double)
+	 */
+	public DashedPathContext(PathContext path, double[] pattern, double dashOffset,
+			double tolerance) {
+		this.path = path;
+		this.pattern = normalizePattern(pattern);
+		double period = 0;
+		if (this.pattern != null) {
+			for (double length : this.pattern) {
+				period += length;
+			}
+		}
+		this.period = period;
+		this.dashOffset = period == 0 ? 0 : wrapPhase(dashOffset);
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Maps the points with the given transformation, after the 
+	 * transformations of the path itself. With the inverse of the 
+	 * transformation that a path ends with, the dashes are measured in the 
+	 * coordinate space that the path is stroked in, like the canvas does. 
+	 * Must be called before the path is added.
+	 */
+	public void setBaseTransform(double m11, double m12, double m21, double m22,
+			double dx, double dy) {
+		a = baseA = m11;
+		b = baseB = m12;
+		c = baseC = m21;
+		d = baseD = m22;
+		e = baseE = dx;
+		f = baseF = dy;
+	}
+
+	/**
+	 * Gets the phase of the pattern at the current point: the distance into
+	 * the pattern at which the next line starts.
+	 */
+	public double getPhase() {
+		return phase;
+	}
+
+	/**
+	 * Checks whether the current point is within a dash, rather than a gap.
+	 */
+	public boolean isInDash() {
+		if (pattern == null) {
+			return true;
+		}
+		int i = 0;
+		double end = pattern[0];
+		while (phase >= end && i < pattern.length - 1) {
+			end += pattern[++i];
+		}
+		return i % 2 == 0;
+	}
+
+	@Override
+	public void moveTo(double x, double y) {
+		currentX = startX = a * x + c * y + e;
+		currentY = startY = b * x + d * y + f;
+		hasCurrent = true;
+		connected = false;
+		phase = dashOffset;
+		if (pattern == null) {
+			path.moveTo(currentX, currentY);
+		}
+	}
+
+	@Override
+	public void lineTo(double x, double y) {
+		if (!hasCurrent) {
+			moveTo(x, y);
+		} else {
+			addLine(a * x + c * y + e, b * x + d * y + f);
+		}
+	}
+
+	@Override
+	public void quadraticCurveTo(double cpx, double cpy, double x, double y) {
+		if (!hasCurrent) {
+			moveTo(cpx, cpy);
+		}
+		double x0 = currentX, y0 = currentY;
+		double x1 = a * cpx + c * cpy + e, y1 = b * cpx + d * cpy + f;
+		double x2 = a * x + c * y + e, y2 = b * x + d * y + f;
+
+		// the error of n uniform segments is at most |p0 - 2p1 + p2| / (4n^2)
+		int n = segments(Math.hypot(x0 - 2 * x1 + x2, y0 - 2 * y1 + y2) / 4);
+		for (int i = 1; i < n; ++i) {
+			double t = (double) i / n, s = 1 - t;
+			addLine(s * s * x0 + 2 * s * t * x1 + t * t * x2,
+					s * s * y0 + 2 * s * t * y1 + t * t * y2);
+		}
+		addLine(x2, y2);
+	}
+
+	@Override
+	public void bezierCurveTo(double cp1x, double cp1y, double cp2x, double cp2y,
+			double x, double y) {
+		if (!hasCurrent) {
+			moveTo(cp1x, cp1y);
+		}
+		double x0 = currentX, y0 = currentY;
+		double x1 = a * cp1x + c * cp1y + e, y1 = b * cp1x + d * cp1y + f;
+		double x2 = a * cp2x + c * cp2y + e, y2 = b * cp2x + d * cp2y + f;
+		double x3 = a * x + c * y + e, y3 = b * x + d * y + f;
+
+		// the error of n uniform segments is at most 3/4 max|p(i) - 2p(i+1) + p(i+2)| / n^2
+		double dd = Math.max(Math.hypot(x0 - 2 * x1 + x2, y0 - 2 * y1 + y2),
+				Math.hypot(x1 - 2 * x2 + x3, y1 - 2 * y2 + y3));
+		int n = segments(dd * 3 / 4);
+		for (int i = 1; i < n; ++i) {
+			double t = (double) i / n, s = 1 - t;
+			double w0 = s * s * s, w1 = 3 * s * s * t, w2 = 3 * s * t * t, w3 = t * t * t;
+			addLine(w0 * x0 + w1 * x1 + w2 * x2 + w3 * x3,
+					w0 * y0 + w1 * y1 + w2 * y2 + w3 * y3);
+		}
+		addLine(x3, y3);
+	}
+
+	@Override
+	public void arc(double x, double y, double radius, double startAngle,
+			double endAngle, boolean antiClockwise) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("Negative radius: " + radius);
+		}
+		double sweep = FlattenedPath.sweep(startAngle, endAngle, antiClockwise);
+
+		// the largest angle step that keeps the chords within the tolerance
+		double scale = Math.sqrt(Math.max(a * a + b * b, c * c + d * d));
+		double cosine = 1 - tolerance / Math.max(radius * scale, tolerance);
+		int n = Math.max(1, (int) Math.ceil(Math.abs(sweep) / (2 * Math.acos(cosine))));
+
+		lineTo(x + radius * Math.cos(startAngle), y + radius * Math.sin(startAngle));
+		for (int i = 1; i <= n; ++i) {
+			double angle = startAngle + sweep * i / n;
+			lineTo(x + radius * Math.cos(angle), y + radius * Math.sin(angle));
+		}
+	}
+
+	@Override
+	public void arcTo(double x1, double y1, double x2, double y2, double radius) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("Negative radius: " + radius);
+		}
+		if (!hasCurrent) {
+			moveTo(x1, y1);
+		}
+
+		// the current point, in the current coordinate space
+		double det = a * d - b * c;
+		if (det == 0) {
+			return;
+		}
+		double px = currentX - e, py = currentY - f;
+		double x0 = (d * px - c * py) / det, y0 = (a * py - b * px) / det;
+		double[] circle = new double[5];
+		if (FlattenedPath.arcToCircle(x0, y0, x1, y1, x2, y2, radius, circle)) {
+			arc(circle[0], circle[1], radius, circle[2], circle[3], circle[4] != 0);
+		} else {
+			lineTo(x1, y1);
+		}
+	}
+
+	@Override
+	public void rect(double x, double y, double width, double height) {
+		moveTo(x, y);
+		lineTo(x + width, y);
+		lineTo(x + width, y + height);
+		lineTo(x, y + height);
+		closePath();
+	}
+
+	@Override
+	public void closePath() {
+		if (!hasCurrent) {
+			return;
+		}
+		if (pattern == null) {
+			path.closePath();
+			currentX = startX;
+			currentY = startY;
+		} else {
+			addLine(startX, startY);
+		}
+
+		// a new subpath starts at the start of the closed one
+		connected = false;
+		phase = dashOffset;
+	}
+
+	@Override
+	public void save() {
+		if (stack == null) {
+			stack = new double[24];
+		} else if (stackSize + 6 > stack.length) {
+			double[] newStack = new double[stack.length * 2];
+			System.arraycopy(stack, 0, newStack, 0, stackSize);
+			stack = newStack;
+		}
+		stack[stackSize++] = a;
+		stack[stackSize++] = b;
+		stack[stackSize++] = c;
+		stack[stackSize++] = d;
+		stack[stackSize++] = e;
+		stack[stackSize++] = f;
+	}
+
+	@Override
+	public void restore() {
+		if (stackSize == 0) {
+			return;
+		}
+		f = stack[--stackSize];
+		e = stack[--stackSize];
+		d = stack[--stackSize];
+		c = stack[--stackSize];
+		b = stack[--stackSize];
+		a = stack[--stackSize];
+	}
+
+	@Override
+	public void translate(double x, double y) {
+		e += a * x + c * y;
+		f += b * x + d * y;
+	}
+
+	@Override
+	public void scale(double x, double y) {
+		a *= x;
+		b *= x;
+		c *= y;
+		d *= y;
+	}
+
+	@Override
+	public void rotate(double angle) {
+		double cos = Math.cos(angle), sin = Math.sin(angle);
+		transform(cos, sin, -sin, cos, 0, 0);
+	}
+
+	@Override
+	public void transform(double m11, double m12, double m21, double m22,
+			double dx, double dy) {
+		double a = this.a, b = this.b, c = this.c, d = this.d;
+		this.a = a * m11 + c * m12;
+		this.b = b * m11 + d * m12;
+		this.c = a * m21 + c * m22;
+		this.d = b * m21 + d * m22;
+		e += a * dx + c * dy;
+		f += b * dx + d * dy;
+	}
+
+	@Override
+	public void setTransform(double m11, double m12, double m21, double m22,
+			double dx, double dy) {
+		a = baseA * m11 + baseC * m12;
+		b = baseB * m11 + baseD * m12;
+		c = baseA * m21 + baseC * m22;
+		d = baseB * m21 + baseD * m22;
+		e = baseA * dx + baseC * dy + baseE;
+		f = baseB * dx + baseD * dy + baseF;
+	}
+
+	/**
+	 * Adds the dashes of a line from the current point to the given point,
+	 * which is already transformed.
+	 */
+	private void addLine(double x, double y) {
+		if (pattern == null) {
+			path.lineTo(x, y);
+		} else {
+			dash(x, y);
+		}
+		currentX = x;
+		currentY = y;
+	}
+
+	/**
+	 * Gets the number of uniform segments needed for a curve whose error
+	 * with a single segment is the given value.
+	 */
+	private int segments(double error) {
+		return Math.max(1, (int) Math.ceil(Math.sqrt(error / tolerance)));
+	}
+
+	/**
+	 * Gets the given pattern the way the canvas uses it: an odd number of 
+	 * lengths is repeated to make it even.
+	 * 
+	 * @return the pattern, or null if the line is solid because the pattern 
+	 * 				is empty or all of its lengths are zero.
+	 * @throws IllegalArgumentException if a length is negative or not finite.
+	 */
+	private static double[] normalizePattern(double[] pattern) {
+		if (pattern == null || pattern.length == 0) {
+			return null;
+		}
+		double total = 0;
+		for (double length : pattern) {
+			if (!(length >= 0) || Double.isInfinite(length)) {
+				throw new IllegalArgumentException("Invalid dash length: " + length);
+			}
+			total += length;
+		}
+		if (total == 0) {
+			return null;
+		}
+		if (pattern.length % 2 == 0) {
+			return pattern;
+		}
+		double[] even = new double[pattern.length * 2];
+		System.arraycopy(pattern, 0, even, 0, pattern.length);
+		System.arraycopy(pattern, 0, even, pattern.length, pattern.length);
+		return even;
+	}
+	
+	/**
+	 * Wraps the given distance into one period of the pattern, the way the 
+	 * canvas applies its line dash offset.
+	 */
+	private double wrapPhase(double phase) {
+		phase %= period;
+		return phase < 0 ? phase + period : phase;
+	}
+	
+	/**
+	 * Adds the dashes of the line from the current point to the given point,
+	 * from the current phase. Walks the line once, with a unit vector instead
+	 * of angles.
+	 */
+	private void dash(double toX, double toY) {
+		double fromX = currentX, fromY = currentY;
+		// the pattern entry that the phase is in, and where it starts
+		int i = 0;
+		double start = 0;
+		while (phase >= start + pattern[i] && i < pattern.length - 1) {
+			start += pattern[i++];
+		}
+		double remaining = start + pattern[i] - phase;
+		boolean on = i % 2 == 0;
+		if (on && !connected) {
+			path.moveTo(fromX, fromY);
+		}
+		
+		double dx = toX - fromX, dy = toY - fromY;
+		double length = Math.sqrt(dx * dx + dy * dy);
+		if (length == 0) {
+			connected = on;
+			return;
+		}
+		double ux = dx / length, uy = dy / length;
+		double position = 0;
+		while (length - position > remaining) {
+			position += remaining;
+			double x = fromX + ux * position, y = fromY + uy * position;
+			if (on) {
+				path.lineTo(x, y);
+			} else {
+				path.moveTo(x, y);
+			}
+			on = !on;
+			if (++i == pattern.length) {
+				i = 0;
+				start = 0;
+			} else {
+				start += pattern[i - 1];
+			}
+			remaining = pattern[i];
+		}
+		if (on) {
+			path.lineTo(toX, toY);
+		}
+		connected = on;
+		phase = start + pattern[i] - remaining + (length - position);
+		if (phase >= period) {
+			phase -= period;
+		}
+	}
+}
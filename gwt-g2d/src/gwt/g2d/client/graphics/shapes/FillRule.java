@@ -0,0 +1,18 @@
+package gwt.g2d.client.graphics.shapes;
+
+/**
+ * The rule that determines whether a point is inside a path.
+ */
+public enum FillRule {
+	/**
+	 * A point is inside if the path winds around it a non-zero number of 
+	 * times. This is the rule used by the canvas.
+	 */
+	NONZERO,
+	
+	/**
+	 * A point is inside if a ray from the point crosses the path an odd 
+	 * number of times.
+	 */
+	EVEN_ODD
+}
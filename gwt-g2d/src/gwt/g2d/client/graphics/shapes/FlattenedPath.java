@@ -0,0 +1,544 @@
+package gwt.g2d.client.graphics.shapes;
+
+import gwt.g2d.client.graphics.visitor.PathContext;
+import gwt.g2d.shared.math.Rectangle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A path whose curves and arcs are flattened into straight line segments, so
+ * that it can be hit tested in pure Java, without a canvas.
+ *
+ * Transformations are applied to the points as they are added, the same way
+ * the canvas does, so all queries are in the coordinate space the path was
+ * started in.
+ */
+public class FlattenedPath implements PathContext {
+	/** Default maximum distance between a curve and its flattened segments. */
+	public static final double DEFAULT_TOLERANCE = 0.25;
+
+	private final double tolerance;
+	private final List<Subpath> subpaths = new ArrayList<Subpath>();
+	private Subpath current;
+
+	// current transformation, in the order of the canvas' setTransform
+	private double a = 1, b, c, d = 1, e, f;
+	private double[] stack = new double[24];
+	private int stackSize;
+
+	// bounds of all points
+	private double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY,
+			maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Creates an empty path, flattened with the default tolerance.
+	 */
+	public FlattenedPath() {
+		this(DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * Creates an empty path.
+	 *
+	 * @param tolerance the maximum distance between a curve and the line
+	 * 				segments it is flattened into.
+	 */
+	public FlattenedPath(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Checks whether the given point is inside the area of the path, using
+	 * the non-zero winding rule.
+	 */
+	public boolean contains(double x, double y) {
+		return contains(x, y, FillRule.NONZERO);
+	}
+
+	/**
+	 * Checks whether the given point is inside the area of the path. All
+	 * subpaths are treated as closed, as they are when the path is filled.
+	 */
+	public boolean contains(double x, double y, FillRule fillRule) {
+		if (x < minX || x > maxX || y < minY || y > maxY) {
+			return false;
+		}
+		int winding = 0;
+		for (Subpath subpath : subpaths) {
+			double[] p = subpath.points;
+			int n = subpath.size;
+			if (n < 6) {
+				continue;
+			}
+			double x0 = p[n - 2], y0 = p[n - 1];
+			for (int i = 0; i < n; i += 2) {
+				double x1 = p[i], y1 = p[i + 1];
+				if (y0 <= y) {
+					if (y1 > y && cross(x0, y0, x1, y1, x, y) > 0) {
+						++winding;
+					}
+				} else if (y1 <= y && cross(x0, y0, x1, y1, x, y) < 0) {
+					--winding;
+				}
+				x0 = x1;
+				y0 = y1;
+			}
+		}
+		return fillRule == FillRule.EVEN_ODD ? (winding & 1) != 0 : winding != 0;
+	}
+
+	/**
+	 * Checks whether the given point is on the outline of the path, stroked
+	 * with the given line width. Only closed subpaths include their closing
+	 * segment.
+	 */
+	public boolean strokeContains(double x, double y, double lineWidth) {
+		double halfWidth = lineWidth / 2;
+		if (x < minX - halfWidth || x > maxX + halfWidth
+				|| y < minY - halfWidth || y > maxY + halfWidth) {
+			return false;
+		}
+		double limit = halfWidth * halfWidth;
+		for (Subpath subpath : subpaths) {
+			double[] p = subpath.points;
+			int n = subpath.size;
+			if (n < 4) {
+				continue;
+			}
+			int start = subpath.closed ? 0 : 2;
+			double x0 = subpath.closed ? p[n - 2] : p[0];
+			double y0 = subpath.closed ? p[n - 1] : p[1];
+			for (int i = start; i < n; i += 2) {
+				double x1 = p[i], y1 = p[i + 1];
+				if (distanceSquared(x, y, x0, y0, x1, y1) <= limit) {
+					return true;
+				}
+				x0 = x1;
+				y0 = y1;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the parts of the horizontal line at the given y-coordinate that
+	 * are inside the area of the path, as pairs of start and end
+	 * x-coordinates from left to right. This answers {@link #contains} for a
+	 * whole row of points at once, which is what filling the path needs.
+	 */
+	public double[] getSpans(double y, FillRule fillRule) {
+		if (y < minY || y > maxY) {
+			return new double[0];
+		}
+
+		// find where every edge crosses the line, and in which direction
+		double[] xs = new double[16];
+		int[] directions = new int[16];
+		int count = 0;
+		for (Subpath subpath : subpaths) {
+			double[] p = subpath.points;
+			int n = subpath.size;
+			if (n < 6) {
+				continue;
+			}
+			double x0 = p[n - 2], y0 = p[n - 1];
+			for (int i = 0; i < n; i += 2) {
+				double x1 = p[i], y1 = p[i + 1];
+				int direction = y0 <= y && y1 > y ? 1 : y1 <= y && y0 > y ? -1 : 0;
+				if (direction != 0) {
+					if (count == xs.length) {
+						double[] newXs = new double[count * 2];
+						int[] newDirections = new int[count * 2];
+						System.arraycopy(xs, 0, newXs, 0, count);
+						System.arraycopy(directions, 0, newDirections, 0, count);
+						xs = newXs;
+						directions = newDirections;
+					}
+
+					// insert the crossing in order (there are only a few per line)
+					double x = x0 + (y - y0) * (x1 - x0) / (y1 - y0);
+					int j = count++;
+					while (j > 0 && xs[j - 1] > x) {
+						xs[j] = xs[j - 1];
+						directions[j] = directions[j - 1];
+						j--;
+					}
+					xs[j] = x;
+					directions[j] = direction;
+				}
+				x0 = x1;
+				y0 = y1;
+			}
+		}
+
+		// walk along the line, and keep the parts where the winding puts us inside
+		double[] spans = new double[count];
+		int size = 0;
+		int winding = 0;
+		for (int i = 0; i < count; i++) {
+			boolean wasInside = fillRule == FillRule.EVEN_ODD ? (winding & 1) != 0 : winding != 0;
+			winding += directions[i];
+			boolean inside = fillRule == FillRule.EVEN_ODD ? (winding & 1) != 0 : winding != 0;
+			if (inside != wasInside) {
+				spans[size++] = xs[i];
+			}
+		}
+		if (size == spans.length) {
+			return spans;
+		}
+		double[] result = new double[size];
+		System.arraycopy(spans, 0, result, 0, size);
+		return result;
+	}
+
+	/**
+	 * Gets the bounding rectangle of all points of the path, or an empty
+	 * rectangle if the path has no points.
+	 */
+	public Rectangle getBounds() {
+		if (isEmpty()) {
+			return new Rectangle(0, 0, 0, 0);
+		}
+		return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	/**
+	 * Checks whether the path has no points.
+	 */
+	public boolean isEmpty() {
+		return minX > maxX;
+	}
+
+	/**
+	 * Removes all subpaths and resets the transformation.
+	 */
+	public void clear() {
+		subpaths.clear();
+		current = null;
+		a = d = 1;
+		b = c = e = f = 0;
+		stackSize = 0;
+		minX = minY = Double.POSITIVE_INFINITY;
+		maxX = maxY = Double.NEGATIVE_INFINITY;
+	}
+
+	@Override
+	public void moveTo(double x, double y) {
+		current = new Subpath();
+		subpaths.add(current);
+		addPoint(a * x + c * y + e, b * x + d * y + f);
+	}
+
+	@Override
+	public void lineTo(double x, double y) {
+		if (current == null) {
+			moveTo(x, y);
+		} else {
+			addPoint(a * x + c * y + e, b * x + d * y + f);
+		}
+	}
+
+	@Override
+	public void quadraticCurveTo(double cpx, double cpy, double x, double y) {
+		if (current == null) {
+			moveTo(cpx, cpy);
+		}
+		double x0 = current.lastX(), y0 = current.lastY();
+		double x1 = a * cpx + c * cpy + e, y1 = b * cpx + d * cpy + f;
+		double x2 = a * x + c * y + e, y2 = b * x + d * y + f;
+
+		// the error of n uniform segments is at most |p0 - 2p1 + p2| / (4n^2)
+		int n = segments(Math.hypot(x0 - 2 * x1 + x2, y0 - 2 * y1 + y2) / 4);
+		for (int i = 1; i < n; ++i) {
+			double t = (double) i / n, s = 1 - t;
+			addPoint(s * s * x0 + 2 * s * t * x1 + t * t * x2,
+					s * s * y0 + 2 * s * t * y1 + t * t * y2);
+		}
+		addPoint(x2, y2);
+	}
+
+	@Override
+	public void bezierCurveTo(double cp1x, double cp1y, double cp2x, double cp2y,
+			double x, double y) {
+		if (current == null) {
+			moveTo(cp1x, cp1y);
+		}
+		double x0 = current.lastX(), y0 = current.lastY();
+		double x1 = a * cp1x + c * cp1y + e, y1 = b * cp1x + d * cp1y + f;
+		double x2 = a * cp2x + c * cp2y + e, y2 = b * cp2x + d * cp2y + f;
+		double x3 = a * x + c * y + e, y3 = b * x + d * y + f;
+
+		// the error of n uniform segments is at most 3/4 max|p(i) - 2p(i+1) + p(i+2)| / n^2
+		double dd = Math.max(Math.hypot(x0 - 2 * x1 + x2, y0 - 2 * y1 + y2),
+				Math.hypot(x1 - 2 * x2 + x3, y1 - 2 * y2 + y3));
+		int n = segments(dd * 3 / 4);
+		for (int i = 1; i < n; ++i) {
+			double t = (double) i / n, s = 1 - t;
+			double w0 = s * s * s, w1 = 3 * s * s * t, w2 = 3 * s * t * t, w3 = t * t * t;
+			addPoint(w0 * x0 + w1 * x1 + w2 * x2 + w3 * x3,
+					w0 * y0 + w1 * y1 + w2 * y2 + w3 * y3);
+		}
+		addPoint(x3, y3);
+	}
+
+	@Override
+	public void arc(double x, double y, double radius, double startAngle,
+			double endAngle, boolean antiClockwise) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("Negative radius: " + radius);
+		}
+		double sweep = sweep(startAngle, endAngle, antiClockwise);
+
+		// the largest angle step that keeps the chords within the tolerance
+		double scale = Math.sqrt(Math.max(a * a + b * b, c * c + d * d));
+		double cosine = 1 - tolerance / Math.max(radius * scale, tolerance);
+		int n = Math.max(1, (int) Math.ceil(Math.abs(sweep) / (2 * Math.acos(cosine))));
+
+		lineTo(x + radius * Math.cos(startAngle), y + radius * Math.sin(startAngle));
+		for (int i = 1; i <= n; ++i) {
+			double angle = startAngle + sweep * i / n;
+			lineTo(x + radius * Math.cos(angle), y + radius * Math.sin(angle));
+		}
+	}
+
+	@Override
+	public void arcTo(double x1, double y1, double x2, double y2, double radius) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("Negative radius: " + radius);
+		}
+		if (current == null) {
+			moveTo(x1, y1);
+		}
+
+		// the last point, in the current coordinate space
+		double det = a * d - b * c;
+		if (det == 0) {
+			return;
+		}
+		double px = current.lastX() - e, py = current.lastY() - f;
+		double x0 = (d * px - c * py) / det, y0 = (a * py - b * px) / det;
+		double[] circle = new double[5];
+		if (arcToCircle(x0, y0, x1, y1, x2, y2, radius, circle)) {
+			arc(circle[0], circle[1], radius, circle[2], circle[3], circle[4] != 0);
+		} else {
+			lineTo(x1, y1);
+		}
+	}
+
+	@Override
+	public void rect(double x, double y, double width, double height) {
+		moveTo(x, y);
+		lineTo(x + width, y);
+		lineTo(x + width, y + height);
+		lineTo(x, y + height);
+		closePath();
+	}
+
+	@Override
+	public void closePath() {
+		if (current == null) {
+			return;
+		}
+		current.closed = true;
+
+		// a new subpath starts at the start of the closed one
+		Subpath subpath = new Subpath();
+		subpath.add(current.points[0], current.points[1]);
+		subpaths.add(subpath);
+		current = subpath;
+	}
+
+	@Override
+	public void save() {
+		if (stackSize + 6 > stack.length) {
+			double[] newStack = new double[stack.length * 2];
+			System.arraycopy(stack, 0, newStack, 0, stackSize);
+			stack = newStack;
+		}
+		stack[stackSize++] = a;
+		stack[stackSize++] = b;
+		stack[stackSize++] = c;
+		stack[stackSize++] = d;
+		stack[stackSize++] = e;
+		stack[stackSize++] = f;
+	}
+
+	@Override
+	public void restore() {
+		if (stackSize == 0) {
+			return;
+		}
+		f = stack[--stackSize];
+		e = stack[--stackSize];
+		d = stack[--stackSize];
+		c = stack[--stackSize];
+		b = stack[--stackSize];
+		a = stack[--stackSize];
+	}
+
+	@Override
+	public void translate(double x, double y) {
+		e += a * x + c * y;
+		f += b * x + d * y;
+	}
+
+	@Override
+	public void scale(double x, double y) {
+		a *= x;
+		b *= x;
+		c *= y;
+		d *= y;
+	}
+
+	@Override
+	public void rotate(double angle) {
+		double cos = Math.cos(angle), sin = Math.sin(angle);
+		transform(cos, sin, -sin, cos, 0, 0);
+	}
+
+	@Override
+	public void transform(double m11, double m12, double m21, double m22,
+			double dx, double dy) {
+		setTransform(a * m11 + c * m12, b * m11 + d * m12,
+				a * m21 + c * m22, b * m21 + d * m22,
+				a * dx + c * dy + e, b * dx + d * dy + f);
+	}
+
+	@Override
+	public void setTransform(double m11, double m12, double m21, double m22,
+			double dx, double dy) {
+		a = m11;
+		b = m12;
+		c = m21;
+		d = m22;
+		e = dx;
+		f = dy;
+	}
+
+	/**
+	 * Adds a point that is already transformed to the current subpath.
+	 */
+	private void addPoint(double x, double y) {
+		current.add(x, y);
+		minX = Math.min(minX, x);
+		minY = Math.min(minY, y);
+		maxX = Math.max(maxX, x);
+		maxY = Math.max(maxY, y);
+	}
+
+	/**
+	 * Gets the number of uniform segments needed for a curve whose error
+	 * with a single segment is the given value.
+	 */
+	private int segments(double error) {
+		return Math.max(1, (int) Math.ceil(Math.sqrt(error / tolerance)));
+	}
+
+	/**
+	 * Finds the arc that arcTo draws from (x0, y0), with the control points 
+	 * (x1, y1) and (x2, y2): its center, start angle, end angle and whether 
+	 * it is anticlockwise (1) or not (0) are stored in the given array.
+	 * 
+	 * @return false if the arc degenerates into a straight line to (x1, y1).
+	 */
+	static boolean arcToCircle(double x0, double y0, double x1, double y1, 
+			double x2, double y2, double radius, double[] circle) {
+		// degenerate cases are a straight line to (x1, y1)
+		double v1x = x0 - x1, v1y = y0 - y1, v2x = x2 - x1, v2y = y2 - y1;
+		double length1 = Math.hypot(v1x, v1y), length2 = Math.hypot(v2x, v2y);
+		double cross = v1x * v2y - v1y * v2x;
+		if (length1 == 0 || length2 == 0 || radius == 0 || cross == 0) {
+			return false;
+		}
+
+		// tangent points on both lines, and the center of the circle between them
+		v1x /= length1;
+		v1y /= length1;
+		v2x /= length2;
+		v2y /= length2;
+		double angle = Math.acos(Math.max(-1, Math.min(1, v1x * v2x + v1y * v2y)));
+		double tangent = radius / Math.tan(angle / 2);
+		double bisectorX = v1x + v2x, bisectorY = v1y + v2y;
+		double bisectorLength = Math.hypot(bisectorX, bisectorY);
+		double centerDistance = radius / Math.sin(angle / 2);
+		double cx = x1 + bisectorX / bisectorLength * centerDistance;
+		double cy = y1 + bisectorY / bisectorLength * centerDistance;
+		circle[0] = cx;
+		circle[1] = cy;
+		circle[2] = Math.atan2(y1 + v1y * tangent - cy, x1 + v1x * tangent - cx);
+		circle[3] = Math.atan2(y1 + v2y * tangent - cy, x1 + v2x * tangent - cx);
+		circle[4] = cross > 0 ? 1 : 0;
+		return true;
+	}
+
+	/**
+	 * Gets the signed angle swept by an arc, the same way the canvas does.
+	 */
+	static double sweep(double startAngle, double endAngle,
+			boolean antiClockwise) {
+		double twoPi = 2 * Math.PI;
+		if (!antiClockwise && endAngle - startAngle >= twoPi) {
+			return twoPi;
+		}
+		if (antiClockwise && startAngle - endAngle >= twoPi) {
+			return -twoPi;
+		}
+		if (!antiClockwise && startAngle > endAngle) {
+			return twoPi - (startAngle - endAngle) % twoPi;
+		}
+		if (antiClockwise && startAngle < endAngle) {
+			return -(twoPi - (endAngle - startAngle) % twoPi);
+		}
+		return endAngle - startAngle;
+	}
+
+	/**
+	 * Cross product of (x1 - x0, y1 - y0) and (x - x0, y - y0); positive if
+	 * the point is on the left of the edge.
+	 */
+	private static double cross(double x0, double y0, double x1, double y1,
+			double x, double y) {
+		return (x1 - x0) * (y - y0) - (x - x0) * (y1 - y0);
+	}
+
+	/**
+	 * Squared distance from (x, y) to the segment between (x0, y0) and (x1, y1).
+	 */
+	private static double distanceSquared(double x, double y, double x0,
+			double y0, double x1, double y1) {
+		double dx = x1 - x0, dy = y1 - y0;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared == 0 ? 0
+				: Math.max(0, Math.min(1, ((x - x0) * dx + (y - y0) * dy) / lengthSquared));
+		double px = x0 + t * dx - x, py = y0 + t * dy - y;
+		return px * px + py * py;
+	}
+
+	/**
+	 * The points of a single subpath.
+	 */
+	private static final class Subpath {
+		private double[] points = new double[16];
+		private int size;
+		private boolean closed;
+
+		private void add(double x, double y) {
+			if (size + 2 > points.length) {
+				double[] newPoints = new double[points.length * 2];
+				System.arraycopy(points, 0, newPoints, 0, size);
+				points = newPoints;
+			}
+			points[size++] = x;
+			points[size++] = y;
+		}
+
+		private double lastX() {
+			return points[size - 2];
+		}
+
+		private double lastY() {
+			return points[size - 1];
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package gwt.g2d.client.graphics.shapes;
+
+import com.google.gwt.canvas.dom.client.Context2d;
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * A browser Path2D object: a path that is built once and can then be filled,
+ * stroked, clipped to or hit-tested with a single call, without replaying
+ * its segments.
+ */
+final class Path2D extends JavaScriptObject {
+
+	protected Path2D() {
+	}
+
+	/**
+	 * Checks whether the browser supports Path2D objects, and drawing them
+	 * on a context.
+	 */
+	static native boolean isSupported() /*-{
+		return typeof $wnd.Path2D === "function"
+				&& typeof $wnd.Path2D.prototype.ellipse === "function";
+	}-*/;
+
+	/**
+	 * Creates an empty path. Must only be called if {@link #isSupported()}.
+	 */
+	static native Path2D create() /*-{
+		return new $wnd.Path2D();
+	}-*/;
+
+	native void moveTo(double x, double y) /*-{
+		this.moveTo(x, y);
+	}-*/;
+
+	native void lineTo(double x, double y) /*-{
+		this.lineTo(x, y);
+	}-*/;
+
+	native void quadraticCurveTo(double cpx, double cpy, double x, double y) /*-{
+		this.quadraticCurveTo(cpx, cpy, x, y);
+	}-*/;
+
+	native void bezierCurveTo(double cp1x, double cp1y, double cp2x, double cp2y,
+			double x, double y) /*-{
+		this.bezierCurveTo(cp1x, cp1y, cp2x, cp2y, x, y);
+	}-*/;
+
+	native void arc(double x, double y, double radius, double startAngle,
+			double endAngle, boolean antiClockwise) /*-{
+		this.arc(x, y, radius, startAngle, endAngle, antiClockwise);
+	}-*/;
+
+	native void arcTo(double x1, double y1, double x2, double y2, double radius) /*-{
+		this.arcTo(x1, y1, x2, y2, radius);
+	}-*/;
+
+	native void ellipse(double x, double y, double radiusX, double radiusY,
+			double rotation, double startAngle, double endAngle,
+			boolean antiClockwise) /*-{
+		this.ellipse(x, y, radiusX, radiusY, rotation, startAngle, endAngle,
+				antiClockwise);
+	}-*/;
+
+	native void rect(double x, double y, double width, double height) /*-{
+		this.rect(x, y, width, height);
+	}-*/;
+
+	native void closePath() /*-{
+		this.closePath();
+	}-*/;
+
+	/**
+	 * Fills the path on the given context with the non-zero winding rule.
+	 */
+	native void fill(Context2d context) /*-{
+		context.fill(this);
+	}-*/;
+
+	/**
+	 * Strokes the path on the given context.
+	 */
+	native void stroke(Context2d context) /*-{
+		context.stroke(this);
+	}-*/;
+
+	/**
+	 * Intersects the clipping region of the given context with the path,
+	 * with the non-zero winding rule.
+	 */
+	native void clip(Context2d context) /*-{
+		context.clip(this);
+	}-*/;
+
+	/**
+	 * Checks whether the given point on the canvas is inside the path,
+	 * transformed by the current transformation of the given context.
+	 */
+	native boolean isPointInPath(Context2d context, double x, double y) /*-{
+		return context.isPointInPath(this, x, y);
+	}-*/;
+}
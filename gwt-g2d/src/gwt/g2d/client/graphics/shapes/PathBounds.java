@@ -0,0 +1,352 @@
+package gwt.g2d.client.graphics.shapes;
+
+import gwt.g2d.client.graphics.visitor.PathContext;
+import gwt.g2d.client.graphics.visitor.PathVisitor;
+import gwt.g2d.shared.math.Rectangle;
+
+/**
+ * Computes the exact bounding box of a path, without flattening it: curves 
+ * and arcs contribute their end points and their extreme points, found 
+ * analytically.
+ *
+ * Transformations are applied to the control points as they are added, the 
+ * same way the canvas does, so the bounds are tight in the coordinate space 
+ * the path was started in, even for rotated or skewed curves.
+ */
+public class PathBounds implements PathContext {
+	// current transformation, in the order of the canvas' setTransform
+	private double a = 1, b, c, d = 1, e, f;
+	private double[] stack = new double[24];
+	private int stackSize;
+
+	// current point and start of the current subpath, transformed
+	private boolean hasCurrent;
+	private double currentX, currentY, startX, startY;
+
+	private double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY,
+			maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Gets the exact bounds of the path added by the given visitor.
+	 */
+	public static Rectangle of(PathVisitor visitor) {
+		PathBounds bounds = new PathBounds();
+		visitor.visit(bounds);
+		return bounds.getBounds();
+	}
+
+	/**
+	 * Gets the bounding rectangle of the path, or an empty rectangle if the 
+	 * path has no points.
+	 */
+	public Rectangle getBounds() {
+		if (isEmpty()) {
+			return new Rectangle(0, 0, 0, 0);
+		}
+		return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	/**
+	 * Checks whether the path has no points.
+	 */
+	public boolean isEmpty() {
+		return minX > maxX;
+	}
+
+	/**
+	 * Gets the transformation that the path ends with, relative to the 
+	 * coordinate space it was started in, in the order of the canvas' 
+	 * setTransform: m11, m12, m21, m22, dx, dy.
+	 */
+	public double[] getTransform() {
+		return new double[] {a, b, c, d, e, f};
+	}
+
+	/**
+	 * Forgets all points and resets the transformation.
+	 */
+	public void clear() {
+		hasCurrent = false;
+		a = d = 1;
+		b = c = e = f = 0;
+		stackSize = 0;
+		minX = minY = Double.POSITIVE_INFINITY;
+		maxX = maxY = Double.NEGATIVE_INFINITY;
+	}
+
+	@Override
+	public void moveTo(double x, double y) {
+		currentX = startX = a * x + c * y + e;
+		currentY = startY = b * x + d * y + f;
+		hasCurrent = true;
+		addPoint(currentX, currentY);
+	}
+
+	@Override
+	public void lineTo(double x, double y) {
+		if (!hasCurrent) {
+			moveTo(x, y);
+			return;
+		}
+		currentX = a * x + c * y + e;
+		currentY = b * x + d * y + f;
+		addPoint(currentX, currentY);
+	}
+
+	@Override
+	public void quadraticCurveTo(double cpx, double cpy, double x, double y) {
+		if (!hasCurrent) {
+			moveTo(cpx, cpy);
+		}
+		double x0 = currentX, y0 = currentY;
+		double x1 = a * cpx + c * cpy + e, y1 = b * cpx + d * cpy + f;
+		double x2 = a * x + c * y + e, y2 = b * x + d * y + f;
+
+		// the derivative of each coordinate is zero at most once
+		double tx = quadraticExtremum(x0, x1, x2);
+		double ty = quadraticExtremum(y0, y1, y2);
+		if (tx > 0 && tx < 1) {
+			addQuadraticPoint(tx, x0, y0, x1, y1, x2, y2);
+		}
+		if (ty > 0 && ty < 1) {
+			addQuadraticPoint(ty, x0, y0, x1, y1, x2, y2);
+		}
+		currentX = x2;
+		currentY = y2;
+		addPoint(x2, y2);
+	}
+
+	@Override
+	public void bezierCurveTo(double cp1x, double cp1y, double cp2x, double cp2y,
+			double x, double y) {
+		if (!hasCurrent) {
+			moveTo(cp1x, cp1y);
+		}
+		double x0 = currentX, y0 = currentY;
+		double x1 = a * cp1x + c * cp1y + e, y1 = b * cp1x + d * cp1y + f;
+		double x2 = a * cp2x + c * cp2y + e, y2 = b * cp2x + d * cp2y + f;
+		double x3 = a * x + c * y + e, y3 = b * x + d * y + f;
+		addCubicExtrema(x0, x1, x2, x3, x0, y0, x1, y1, x2, y2, x3, y3);
+		addCubicExtrema(y0, y1, y2, y3, x0, y0, x1, y1, x2, y2, x3, y3);
+		currentX = x3;
+		currentY = y3;
+		addPoint(x3, y3);
+	}
+
+	@Override
+	public void arc(double x, double y, double radius, double startAngle,
+			double endAngle, boolean antiClockwise) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("Negative radius: " + radius);
+		}
+		double sweep = FlattenedPath.sweep(startAngle, endAngle, antiClockwise);
+		lineTo(x + radius * Math.cos(startAngle), y + radius * Math.sin(startAngle));
+
+		// the transformed circle is an ellipse whose coordinates are extreme 
+		// where their derivative, -a sin + c cos (or -b sin + d cos), is zero
+		double angleX = Math.atan2(c, a), angleY = Math.atan2(d, b);
+		addArcPoint(x, y, radius, startAngle, sweep, angleX);
+		addArcPoint(x, y, radius, startAngle, sweep, angleX + Math.PI);
+		addArcPoint(x, y, radius, startAngle, sweep, angleY);
+		addArcPoint(x, y, radius, startAngle, sweep, angleY + Math.PI);
+		double end = startAngle + sweep;
+		lineTo(x + radius * Math.cos(end), y + radius * Math.sin(end));
+	}
+
+	@Override
+	public void arcTo(double x1, double y1, double x2, double y2, double radius) {
+		if (radius < 0) {
+			throw new IllegalArgumentException("Negative radius: " + radius);
+		}
+		if (!hasCurrent) {
+			moveTo(x1, y1);
+		}
+
+		// the current point, in the current coordinate space
+		double det = a * d - b * c;
+		if (det == 0) {
+			return;
+		}
+		double px = currentX - e, py = currentY - f;
+		double x0 = (d * px - c * py) / det, y0 = (a * py - b * px) / det;
+		double[] circle = new double[5];
+		if (FlattenedPath.arcToCircle(x0, y0, x1, y1, x2, y2, radius, circle)) {
+			arc(circle[0], circle[1], radius, circle[2], circle[3], circle[4] != 0);
+		} else {
+			lineTo(x1, y1);
+		}
+	}
+
+	@Override
+	public void rect(double x, double y, double width, double height) {
+		moveTo(x, y);
+		lineTo(x + width, y);
+		lineTo(x + width, y + height);
+		lineTo(x, y + height);
+		closePath();
+	}
+
+	@Override
+	public void closePath() {
+		if (hasCurrent) {
+			currentX = startX;
+			currentY = startY;
+		}
+	}
+
+	@Override
+	public void save() {
+		if (stackSize + 6 > stack.length) {
+			double[] newStack = new double[stack.length * 2];
+			System.arraycopy(stack, 0, newStack, 0, stackSize);
+			stack = newStack;
+		}
+		stack[stackSize++] = a;
+		stack[stackSize++] = b;
+		stack[stackSize++] = c;
+		stack[stackSize++] = d;
+		stack[stackSize++] = e;
+		stack[stackSize++] = f;
+	}
+
+	@Override
+	public void restore() {
+		if (stackSize == 0) {
+			return;
+		}
+		f = stack[--stackSize];
+		e = stack[--stackSize];
+		d = stack[--stackSize];
+		c = stack[--stackSize];
+		b = stack[--stackSize];
+		a = stack[--stackSize];
+	}
+
+	@Override
+	public void translate(double x, double y) {
+		e += a * x + c * y;
+		f += b * x + d * y;
+	}
+
+	@Override
+	public void scale(double x, double y) {
+		a *= x;
+		b *= x;
+		c *= y;
+		d *= y;
+	}
+
+	@Override
+	public void rotate(double angle) {
+		double cos = Math.cos(angle), sin = Math.sin(angle);
+		transform(cos, sin, -sin, cos, 0, 0);
+	}
+
+	@Override
+	public void transform(double m11, double m12, double m21, double m22,
+			double dx, double dy) {
+		setTransform(a * m11 + c * m12, b * m11 + d * m12,
+				a * m21 + c * m22, b * m21 + d * m22,
+				a * dx + c * dy + e, b * dx + d * dy + f);
+	}
+
+	@Override
+	public void setTransform(double m11, double m12, double m21, double m22,
+			double dx, double dy) {
+		a = m11;
+		b = m12;
+		c = m21;
+		d = m22;
+		e = dx;
+		f = dy;
+	}
+
+	/**
+	 * Adds a point that is already transformed to the bounds.
+	 */
+	private void addPoint(double x, double y) {
+		minX = Math.min(minX, x);
+		minY = Math.min(minY, y);
+		maxX = Math.max(maxX, x);
+		maxY = Math.max(maxY, y);
+	}
+
+	/**
+	 * Adds the point of a quadratic curve at the given parameter.
+	 */
+	private void addQuadraticPoint(double t, double x0, double y0, double x1, 
+			double y1, double x2, double y2) {
+		double s = 1 - t;
+		addPoint(s * s * x0 + 2 * s * t * x1 + t * t * x2,
+				s * s * y0 + 2 * s * t * y1 + t * t * y2);
+	}
+
+	/**
+	 * Adds the points of a cubic curve where the coordinate with the given 
+	 * control values (p0 to p3) has a zero derivative.
+	 */
+	private void addCubicExtrema(double p0, double p1, double p2, double p3,
+			double x0, double y0, double x1, double y1, double x2, double y2, 
+			double x3, double y3) {
+		// the derivative, divided by 3, is qa t^2 + qb t + qc
+		double qa = -p0 + 3 * p1 - 3 * p2 + p3;
+		double qb = 2 * (p0 - 2 * p1 + p2);
+		double qc = p1 - p0;
+		if (Math.abs(qa) < 1e-12) {
+			if (qb != 0) {
+				addCubicPoint(-qc / qb, x0, y0, x1, y1, x2, y2, x3, y3);
+			}
+			return;
+		}
+		double discriminant = qb * qb - 4 * qa * qc;
+		if (discriminant < 0) {
+			return;
+		}
+		double root = Math.sqrt(discriminant);
+		addCubicPoint((-qb + root) / (2 * qa), x0, y0, x1, y1, x2, y2, x3, y3);
+		addCubicPoint((-qb - root) / (2 * qa), x0, y0, x1, y1, x2, y2, x3, y3);
+	}
+
+	/**
+	 * Adds the point of a cubic curve at the given parameter, if it is 
+	 * strictly between 0 and 1.
+	 */
+	private void addCubicPoint(double t, double x0, double y0, double x1, 
+			double y1, double x2, double y2, double x3, double y3) {
+		if (t <= 0 || t >= 1) {
+			return;
+		}
+		double s = 1 - t;
+		double w0 = s * s * s, w1 = 3 * s * s * t, w2 = 3 * s * t * t, w3 = t * t * t;
+		addPoint(w0 * x0 + w1 * x1 + w2 * x2 + w3 * x3,
+				w0 * y0 + w1 * y1 + w2 * y2 + w3 * y3);
+	}
+
+	/**
+	 * Adds the point of a circle at the given angle, if the angle is within 
+	 * the sweep of the arc.
+	 */
+	private void addArcPoint(double x, double y, double radius, double startAngle, 
+			double sweep, double angle) {
+		double twoPi = 2 * Math.PI;
+		double delta = sweep >= 0 ? angle - startAngle : startAngle - angle;
+		delta %= twoPi;
+		if (delta < 0) {
+			delta += twoPi;
+		}
+		if (delta > Math.abs(sweep)) {
+			return;
+		}
+		double px = x + radius * Math.cos(angle), py = y + radius * Math.sin(angle);
+		addPoint(a * px + c * py + e, b * px + d * py + f);
+	}
+
+	/**
+	 * Gets the parameter where a quadratic curve with the given control 
+	 * values has a zero derivative, or NaN if it has none.
+	 */
+	private static double quadraticExtremum(double p0, double p1, double p2) {
+		double denominator = p0 - 2 * p1 + p2;
+		return denominator == 0 ? Double.NaN : (p0 - p1) / denominator;
+	}
+}
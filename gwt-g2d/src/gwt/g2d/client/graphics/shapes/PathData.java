@@ -0,0 +1,426 @@
+package gwt.g2d.client.graphics.shapes;
+
+import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.client.graphics.visitor.PathContext;
+import gwt.g2d.client.graphics.visitor.PathVisitor;
+import gwt.g2d.client.graphics.visitor.ShapeVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.canvas.dom.client.Context2d;
+
+/**
+ * A compact recording of a path: one opcode byte per operation, and the
+ * arguments of all operations packed into a single array of doubles. A
+ * polyline of n points costs n bytes and 2n doubles, instead of n visitor
+ * objects, and is replayed by a single loop.
+ *
+ * The path data is a {@link PathContext} itself, so that any
+ * {@link PathVisitor} can be recorded into it. Visitors that can't be
+ * recorded, since they only draw onto a surface, are kept as they are and
+ * called in order when the data is replayed.
+ */
+public final class PathData implements PathContext {
+	private static final byte MOVE_TO = 0;
+	private static final byte LINE_TO = 1;
+	private static final byte QUADRATIC_CURVE_TO = 2;
+	private static final byte BEZIER_CURVE_TO = 3;
+	private static final byte ARC = 4;
+	private static final byte ARC_ANTICLOCKWISE = 5;
+	private static final byte ARC_TO = 6;
+	private static final byte RECT = 7;
+	private static final byte CLOSE_PATH = 8;
+	private static final byte SAVE = 9;
+	private static final byte RESTORE = 10;
+	private static final byte TRANSLATE = 11;
+	private static final byte SCALE = 12;
+	private static final byte ROTATE = 13;
+	private static final byte TRANSFORM = 14;
+	private static final byte SET_TRANSFORM = 15;
+	private static final byte VISITOR = 16;
+
+	private byte[] ops = new byte[16];
+	private double[] args = new double[32];
+	private int opCount, argCount;
+
+	/** Visitors that couldn't be recorded, in the order of their opcodes. */
+	private final List<ShapeVisitor> visitors = new ArrayList<ShapeVisitor>();
+
+	/**
+	 * Gets the number of recorded operations.
+	 */
+	public int size() {
+		return opCount;
+	}
+
+	/**
+	 * Checks whether nothing was recorded.
+	 */
+	public boolean isEmpty() {
+		return opCount == 0;
+	}
+
+	/**
+	 * Forgets every recorded operation, but keeps the memory.
+	 */
+	public void clear() {
+		opCount = argCount = 0;
+		visitors.clear();
+	}
+
+	/**
+	 * Records a visitor that is called when the data is replayed. Prefer
+	 * recording a {@link PathVisitor} with {@link PathVisitor#visit(PathContext)},
+	 * which stores its operations instead of the visitor, if the visitor
+	 * doesn't change afterwards.
+	 */
+	public void addVisitor(ShapeVisitor visitor) {
+		op(VISITOR, 0);
+		visitors.add(visitor);
+	}
+
+	@Override
+	public void moveTo(double x, double y) {
+		op(MOVE_TO, 2);
+		args[argCount++] = x;
+		args[argCount++] = y;
+	}
+
+	@Override
+	public void lineTo(double x, double y) {
+		op(LINE_TO, 2);
+		args[argCount++] = x;
+		args[argCount++] = y;
+	}
+
+	/**
+	 * Records a line to each of the given points.
+	 *
+	 * @param points the coordinates of the points: x0, y0, x1, y1, ...
+	 * @param offset the index of the x-coordinate of the first point.
+	 * @param count the number of points.
+	 */
+	public void lineTo(double[] points, int offset, int count) {
+		ensureCapacity(count, count * 2);
+		for (int i = 0; i < count; i++) {
+			ops[opCount++] = LINE_TO;
+		}
+		System.arraycopy(points, offset, args, argCount, count * 2);
+		argCount += count * 2;
+	}
+
+	@Override
+	public void quadraticCurveTo(double cpx, double cpy, double x, double y) {
+		op(QUADRATIC_CURVE_TO, 4);
+		args[argCount++] = cpx;
+		args[argCount++] = cpy;
+		args[argCount++] = x;
+		args[argCount++] = y;
+	}
+
+	@Override
+	public void bezierCurveTo(double cp1x, double cp1y, double cp2x, double cp2y,
+			double x, double y) {
+		op(BEZIER_CURVE_TO, 6);
+		args[argCount++] = cp1x;
+		args[argCount++] = cp1y;
+		args[argCount++] = cp2x;
+		args[argCount++] = cp2y;
+		args[argCount++] = x;
+		args[argCount++] = y;
+	}
+
+	/**
+	 * Records a cubic Bezier curve for each group of three points.
+	 *
+	 * @param points the coordinates of the control points and end points:
+	 * 				cp1x, cp1y, cp2x, cp2y, x, y, ...
+	 * @param offset the index of the first coordinate.
+	 * @param count the number of curves.
+	 */
+	public void bezierCurveTo(double[] points, int offset, int count) {
+		ensureCapacity(count, count * 6);
+		for (int i = 0; i < count; i++) {
+			ops[opCount++] = BEZIER_CURVE_TO;
+		}
+		System.arraycopy(points, offset, args, argCount, count * 6);
+		argCount += count * 6;
+	}
+
+	@Override
+	public void arc(double x, double y, double radius, double startAngle,
+			double endAngle, boolean antiClockwise) {
+		op(antiClockwise ? ARC_ANTICLOCKWISE : ARC, 5);
+		args[argCount++] = x;
+		args[argCount++] = y;
+		args[argCount++] = radius;
+		args[argCount++] = startAngle;
+		args[argCount++] = endAngle;
+	}
+
+	@Override
+	public void arcTo(double x1, double y1, double x2, double y2, double radius) {
+		op(ARC_TO, 5);
+		args[argCount++] = x1;
+		args[argCount++] = y1;
+		args[argCount++] = x2;
+		args[argCount++] = y2;
+		args[argCount++] = radius;
+	}
+
+	@Override
+	public void rect(double x, double y, double width, double height) {
+		op(RECT, 4);
+		args[argCount++] = x;
+		args[argCount++] = y;
+		args[argCount++] = width;
+		args[argCount++] = height;
+	}
+
+	@Override
+	public void closePath() {
+		op(CLOSE_PATH, 0);
+	}
+
+	@Override
+	public void save() {
+		op(SAVE, 0);
+	}
+
+	@Override
+	public void restore() {
+		op(RESTORE, 0);
+	}
+
+	@Override
+	public void translate(double x, double y) {
+		op(TRANSLATE, 2);
+		args[argCount++] = x;
+		args[argCount++] = y;
+	}
+
+	@Override
+	public void scale(double x, double y) {
+		op(SCALE, 2);
+		args[argCount++] = x;
+		args[argCount++] = y;
+	}
+
+	@Override
+	public void rotate(double angle) {
+		op(ROTATE, 1);
+		args[argCount++] = angle;
+	}
+
+	@Override
+	public void transform(double m11, double m12, double m21, double m22,
+			double dx, double dy) {
+		op(TRANSFORM, 6);
+		args[argCount++] = m11;
+		args[argCount++] = m12;
+		args[argCount++] = m21;
+		args[argCount++] = m22;
+		args[argCount++] = dx;
+		args[argCount++] = dy;
+	}
+
+	@Override
+	public void setTransform(double m11, double m12, double m21, double m22,
+			double dx, double dy) {
+		op(SET_TRANSFORM, 6);
+		args[argCount++] = m11;
+		args[argCount++] = m12;
+		args[argCount++] = m21;
+		args[argCount++] = m22;
+		args[argCount++] = dx;
+		args[argCount++] = dy;
+	}
+
+	/**
+	 * Adds the recorded path to the current path of the given surface. Path
+	 * operations go straight to the context; transformations go through the
+	 * surface, so that it knows the current transformation.
+	 */
+	public void replay(Surface surface) {
+		Context2d context = surface.getContext();
+		byte[] ops = this.ops;
+		double[] a = args;
+		int j = 0, visitor = 0;
+		for (int i = 0; i < opCount; i++) {
+			switch (ops[i]) {
+			case MOVE_TO:
+				context.moveTo(a[j], a[j + 1]);
+				j += 2;
+				break;
+			case LINE_TO:
+				context.lineTo(a[j], a[j + 1]);
+				j += 2;
+				break;
+			case QUADRATIC_CURVE_TO:
+				context.quadraticCurveTo(a[j], a[j + 1], a[j + 2], a[j + 3]);
+				j += 4;
+				break;
+			case BEZIER_CURVE_TO:
+				context.bezierCurveTo(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4], a[j + 5]);
+				j += 6;
+				break;
+			case ARC:
+			case ARC_ANTICLOCKWISE:
+				context.arc(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4],
+						ops[i] == ARC_ANTICLOCKWISE);
+				j += 5;
+				break;
+			case ARC_TO:
+				context.arcTo(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4]);
+				j += 5;
+				break;
+			case RECT:
+				context.rect(a[j], a[j + 1], a[j + 2], a[j + 3]);
+				j += 4;
+				break;
+			case CLOSE_PATH:
+				context.closePath();
+				break;
+			case SAVE:
+				surface.save();
+				break;
+			case RESTORE:
+				surface.restore();
+				break;
+			case TRANSLATE:
+				surface.translate(a[j], a[j + 1]);
+				j += 2;
+				break;
+			case SCALE:
+				surface.scale(a[j], a[j + 1]);
+				j += 2;
+				break;
+			case ROTATE:
+				surface.rotate(a[j]);
+				j += 1;
+				break;
+			case TRANSFORM:
+				surface.transform(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4], a[j + 5]);
+				j += 6;
+				break;
+			case SET_TRANSFORM:
+				surface.setTransform(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4], a[j + 5]);
+				j += 6;
+				break;
+			default:
+				visitors.get(visitor++).visit(surface);
+
+				// the visitor may have changed the context
+				context = surface.getContext();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Adds the recorded path to the given path.
+	 *
+	 * @throws UnsupportedOperationException if a visitor that was recorded
+	 * 				as it is doesn't implement {@link PathVisitor}.
+	 */
+	public void replay(PathContext path) {
+		double[] a = args;
+		int j = 0, visitor = 0;
+		for (int i = 0; i < opCount; i++) {
+			switch (ops[i]) {
+			case MOVE_TO:
+				path.moveTo(a[j], a[j + 1]);
+				j += 2;
+				break;
+			case LINE_TO:
+				path.lineTo(a[j], a[j + 1]);
+				j += 2;
+				break;
+			case QUADRATIC_CURVE_TO:
+				path.quadraticCurveTo(a[j], a[j + 1], a[j + 2], a[j + 3]);
+				j += 4;
+				break;
+			case BEZIER_CURVE_TO:
+				path.bezierCurveTo(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4], a[j + 5]);
+				j += 6;
+				break;
+			case ARC:
+			case ARC_ANTICLOCKWISE:
+				path.arc(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4],
+						ops[i] == ARC_ANTICLOCKWISE);
+				j += 5;
+				break;
+			case ARC_TO:
+				path.arcTo(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4]);
+				j += 5;
+				break;
+			case RECT:
+				path.rect(a[j], a[j + 1], a[j + 2], a[j + 3]);
+				j += 4;
+				break;
+			case CLOSE_PATH:
+				path.closePath();
+				break;
+			case SAVE:
+				path.save();
+				break;
+			case RESTORE:
+				path.restore();
+				break;
+			case TRANSLATE:
+				path.translate(a[j], a[j + 1]);
+				j += 2;
+				break;
+			case SCALE:
+				path.scale(a[j], a[j + 1]);
+				j += 2;
+				break;
+			case ROTATE:
+				path.rotate(a[j]);
+				j += 1;
+				break;
+			case TRANSFORM:
+				path.transform(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4], a[j + 5]);
+				j += 6;
+				break;
+			case SET_TRANSFORM:
+				path.setTransform(a[j], a[j + 1], a[j + 2], a[j + 3], a[j + 4], a[j + 5]);
+				j += 6;
+				break;
+			default:
+				ShapeVisitor shape = visitors.get(visitor++);
+				if (!(shape instanceof PathVisitor)) {
+					throw new UnsupportedOperationException(
+							shape.getClass().getName() + " does not implement PathVisitor");
+				}
+				((PathVisitor) shape).visit(path);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Appends an opcode, making room for its arguments.
+	 */
+	private void op(byte op, int argumentCount) {
+		ensureCapacity(1, argumentCount);
+		ops[opCount++] = op;
+	}
+
+	/**
+	 * Makes room for the given number of opcodes and arguments.
+	 */
+	private void ensureCapacity(int opsNeeded, int argsNeeded) {
+		if (opCount + opsNeeded > ops.length) {
+			byte[] newOps = new byte[Math.max(ops.length * 2, opCount + opsNeeded)];
+			System.arraycopy(ops, 0, newOps, 0, opCount);
+			ops = newOps;
+		}
+		if (argCount + argsNeeded > args.length) {
+			double[] newArgs = new double[Math.max(args.length * 2, argCount + argsNeeded)];
+			System.arraycopy(args, 0, newArgs, 0, argCount);
+			args = newArgs;
+		}
+	}
+}
@@ -16,6 +16,7 @@
 package gwt.g2d.client.graphics.shapes;
 
 import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.client.graphics.visitor.PathContext;
 import gwt.g2d.shared.math.Rectangle;
 
 /**
@@ -41,4 +42,26 @@ public class RectangleShape extends Shape {
 	public final void draw(Surface surface) {
 		surface.getContext().rect(x, y, width, height);
 	}
+
+	@Override
+	public final void appendPath(PathContext path) {
+		path.rect(x, y, width, height);
+	}
+
+	@Override
+	public boolean contains(double px, double py, FillRule fillRule, 
+			double strokeWidth) {
+		double halfWidth = strokeWidth / 2;
+		double left = Math.min(x, x + width), right = Math.max(x, x + width);
+		double top = Math.min(y, y + height), bottom = Math.max(y, y + height);
+		if (px < left - halfWidth || px > right + halfWidth 
+				|| py < top - halfWidth || py > bottom + halfWidth) {
+			return false;
+		}
+
+		// inside the fill, or in the band around it that the (mitered) outline 
+		// covers
+		return (px >= left && px <= right && py >= top && py <= bottom) 
+				|| strokeWidth > 0;
+	}
 }
@@ -18,6 +18,8 @@ package gwt.g2d.client.graphics.shapes;
 import com.google.gwt.event.shared.HandlerRegistration;
 
 import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.client.graphics.visitor.PathContext;
+import gwt.g2d.shared.math.Rectangle;
 
 /**
  * Represents an abstract shape.
@@ -44,6 +46,105 @@ public abstract class Shape {
 	 */
 	public abstract void draw(Surface surface);
 	
+	/**
+	 * Adds the geometry of the shape to the given path, without drawing it.
+	 * Shapes that don't override this method can't be used with 
+	 * {@link #contains(double, double)}.
+	 * 
+	 * @param path the path to add the shape to.
+	 */
+	public void appendPath(PathContext path) {
+		throw new UnsupportedOperationException(getClass().getName() 
+				+ " does not describe its geometry");
+	}
+	
+	/**
+	 * Gets the geometry of the shape, flattened into line segments. The 
+	 * result is cached until {@link #invalidatePath()} is called.
+	 */
+	public FlattenedPath getFlattenedPath() {
+		if (fFlattenedPath == null) {
+			FlattenedPath path = new FlattenedPath();
+			appendPath(path);
+			fFlattenedPath = path;
+		}
+		return fFlattenedPath;
+	}
+	
+	/**
+	 * Gets the exact bounding rectangle of the shape, including the extrema 
+	 * of its curves and arcs. The result is cached until 
+	 * {@link #invalidatePath()} is called, and must not be modified.
+	 */
+	public Rectangle getBounds() {
+		if (fBounds == null) {
+			PathBounds bounds = new PathBounds();
+			appendPath(bounds);
+			fBounds = bounds.getBounds();
+		}
+		return fBounds;
+	}
+	
+	/**
+	 * Checks whether the shape describes its geometry, i.e. whether 
+	 * {@link #getBounds()}, {@link #getFlattenedPath()} and 
+	 * {@link #contains(double, double)} can be used. The answer is cached 
+	 * until {@link #invalidatePath()} is called, so a shape that doesn't 
+	 * describe its geometry only fails once.
+	 */
+	public boolean hasGeometry() {
+		if (fBounds == null && !fNoGeometry) {
+			try {
+				getBounds();
+			} catch (UnsupportedOperationException e) {
+				fNoGeometry = true;
+			}
+		}
+		return !fNoGeometry;
+	}
+	
+	/**
+	 * Discards the cached geometry of the shape. Must be called whenever the 
+	 * shape changes.
+	 */
+	protected void invalidatePath() {
+		fFlattenedPath = null;
+		fBounds = null;
+		fNoGeometry = false;
+	}
+	
+	/**
+	 * Checks whether the given point is inside the shape, using the non-zero 
+	 * winding rule. The point is in the coordinate space the shape is defined 
+	 * in. Unlike {@link #checkHit(Surface, double, double)}, this doesn't 
+	 * touch the canvas.
+	 */
+	public boolean contains(double x, double y) {
+		return contains(x, y, FillRule.NONZERO, 0);
+	}
+	
+	/**
+	 * Checks whether the given point is inside the shape, using the given 
+	 * fill rule.
+	 */
+	public boolean contains(double x, double y, FillRule fillRule) {
+		return contains(x, y, fillRule, 0);
+	}
+	
+	/**
+	 * Checks whether the given point is inside the shape, using the given 
+	 * fill rule, or on its outline when stroked with the given line width.
+	 * 
+	 * @param strokeWidth the line width of the outline, or 0 to only check 
+	 * 				the inside of the shape.
+	 */
+	public boolean contains(double x, double y, FillRule fillRule, 
+			double strokeWidth) {
+		FlattenedPath path = getFlattenedPath();
+		return path.contains(x, y, fillRule) 
+				|| (strokeWidth > 0 && path.strokeContains(x, y, strokeWidth));
+	}
+	
 	
 	/**
 	 * Does this shape's path contain the following point?
@@ -69,6 +170,22 @@ public abstract class Shape {
 	ClickHandler fClickHandler = null;
 	
 	
+	/**
+	 * Cached geometry
+	 */
+	FlattenedPath fFlattenedPath = null;
+	
+	/**
+	 * Cached bounds
+	 */
+	Rectangle fBounds = null;
+	
+	/**
+	 * Did the shape fail to describe its geometry?
+	 */
+	boolean fNoGeometry = false;
+	
+	
 	/**
 	 * Register a click handler.
 	 */
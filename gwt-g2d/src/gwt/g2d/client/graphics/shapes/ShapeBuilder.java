@@ -26,6 +26,8 @@ import gwt.g2d.client.graphics.visitor.EllipseVisitor;
 import gwt.g2d.client.graphics.visitor.LineSegmentVisitor;
 import gwt.g2d.client.graphics.visitor.LineToVisitor;
 import gwt.g2d.client.graphics.visitor.MoveToVisitor;
+import gwt.g2d.client.graphics.visitor.PathContext;
+import gwt.g2d.client.graphics.visitor.PathVisitor;
 import gwt.g2d.client.graphics.visitor.QuadraticCurveToVisitor;
 import gwt.g2d.client.graphics.visitor.QuadraticCurveVisitor;
 import gwt.g2d.client.graphics.visitor.RectangleVisitor;
@@ -42,28 +44,39 @@ import gwt.g2d.client.math.Matrix;
 import gwt.g2d.shared.math.Rectangle;
 import gwt.g2d.shared.math.Vector2;
 
-import java.util.ArrayList;
-import java.util.List;
-
-
-import com.google.gwt.canvas.dom.client.Context2d;
-
 /**
  * A builder for drawing custom shapes.
  * 
+ * The operations of the built-in visitors are recorded into a compact 
+ * {@link PathData} instead of keeping a visitor per operation, so large 
+ * paths cost little memory and are replayed by a single loop. Use the bulk 
+ * methods, such as {@link #drawPolyline(double[])}, for many points.
+ * 
  * @author hao1300@gmail.com
  */
 public class ShapeBuilder {
-	private final List<ShapeVisitor> shapes = new ArrayList<ShapeVisitor>();
+	private final PathData path = new PathData();
+	private int modificationCount;
 	
 	/**
-	 * Appends the given shape visitor to the builder.
+	 * Appends the given shape visitor to the builder. The visitor is kept, 
+	 * and called whenever the shape is drawn.
 	 * 
 	 * @param shapeVisitor the shape visitor to be added.
 	 * @return self to support chaining.
 	 */
 	public final ShapeBuilder append(ShapeVisitor shapeVisitor) {
-		shapes.add(shapeVisitor);
+		path.addVisitor(shapeVisitor);
+		++modificationCount;
+		return this;
+	}
+	
+	/**
+	 * Records the path operations of the given visitor, which is not kept.
+	 */
+	private ShapeBuilder record(PathVisitor pathVisitor) {
+		pathVisitor.visit(path);
+		++modificationCount;
 		return this;
 	}
 	
@@ -71,28 +84,118 @@ public class ShapeBuilder {
 	 * @see MoveToVisitor#MoveToVisitor(double, double)
 	 */
 	public final ShapeBuilder moveTo(double x, double y) {
-		return append(new MoveToVisitor(x, y));
+		path.moveTo(x, y);
+		++modificationCount;
+		return this;
 	}
 	
 	/**
 	 * @see MoveToVisitor#MoveToVisitor(Vector2)
 	 */
 	public final ShapeBuilder moveTo(Vector2 position) {
-		return append(new MoveToVisitor(position));
+		return record(new MoveToVisitor(position));
 	}
 	
 	/**
 	 * @see LineToVisitor#LineToVisitor(double, double)
 	 */
 	public final ShapeBuilder drawLineTo(double x, double y) {
-		return append(new LineToVisitor(x, y));
+		path.lineTo(x, y);
+		++modificationCount;
+		return this;
+	}
+	
+	/**
+	 * Draws a line from the current position through each of the given 
+	 * points.
+	 * 
+	 * @param points the coordinates of the points: x0, y0, x1, y1, ...
+	 */
+	public final ShapeBuilder drawLinesTo(double[] points) {
+		return drawLinesTo(points, 0, points.length / 2);
+	}
+	
+	/**
+	 * Draws a line from the current position through each of the given 
+	 * points.
+	 * 
+	 * @param points the coordinates of the points: x0, y0, x1, y1, ...
+	 * @param offset the index of the x-coordinate of the first point.
+	 * @param count the number of points.
+	 */
+	public final ShapeBuilder drawLinesTo(double[] points, int offset, int count) {
+		path.lineTo(points, offset, count);
+		++modificationCount;
+		return this;
+	}
+	
+	/**
+	 * Draws an open polyline through the given points, starting a new 
+	 * subpath at the first one.
+	 * 
+	 * @param points the coordinates of the points: x0, y0, x1, y1, ...
+	 */
+	public final ShapeBuilder drawPolyline(double[] points) {
+		return drawPolyline(points, 0, points.length / 2);
+	}
+	
+	/**
+	 * Draws an open polyline through the given points, starting a new 
+	 * subpath at the first one.
+	 * 
+	 * @param points the coordinates of the points: x0, y0, x1, y1, ...
+	 * @param offset the index of the x-coordinate of the first point.
+	 * @param count the number of points.
+	 */
+	public final ShapeBuilder drawPolyline(double[] points, int offset, int count) {
+		if (count > 0) {
+			path.moveTo(points[offset], points[offset + 1]);
+			path.lineTo(points, offset + 2, count - 1);
+			++modificationCount;
+		}
+		return this;
+	}
+	
+	/**
+	 * Draws a closed polygon with the given vertices, as a subpath of its 
+	 * own.
+	 * 
+	 * @param points the coordinates of the vertices: x0, y0, x1, y1, ...
+	 */
+	public final ShapeBuilder drawPolygon(double[] points) {
+		return drawPolygon(points, 0, points.length / 2);
+	}
+	
+	/**
+	 * Draws a closed polygon with the given vertices, as a subpath of its 
+	 * own.
+	 * 
+	 * @param points the coordinates of the vertices: x0, y0, x1, y1, ...
+	 * @param offset the index of the x-coordinate of the first vertex.
+	 * @param count the number of vertices.
+	 */
+	public final ShapeBuilder drawPolygon(double[] points, int offset, int count) {
+		if (count > 0) {
+			drawPolyline(points, offset, count);
+			closePath();
+		}
+		return this;
+	}
+	
+	/**
+	 * Closes the current subpath, and starts a new one at its start.
+	 */
+	public final ShapeBuilder closePath() {
+		path.closePath();
+		++modificationCount;
+		return this;
 	}
 	
 	/**
 	 * @see LineToVisitor#LineToVisitor(Vector2)
 	 */
 	public final ShapeBuilder drawLineTo(Vector2 position) {
-		return append(new LineToVisitor(position));
+		return record(new LineToVisitor(position));
 	}
 
 	/**
@@ -101,7 +204,7 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawDashedLine(double fromX, double fromY,
 			double toX, double toY, double dashLength, double gapLength) {
-		return append(new DashedLineVisitor(fromX, fromY, toX, toY, dashLength, gapLength));
+		return record(new DashedLineVisitor(fromX, fromY, toX, toY, dashLength, gapLength));
 	}
 	
 	/**
@@ -110,7 +213,7 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawDashedLine(Vector2 fromPos, Vector2 toPos, 
 			double dashLength, double gapLength) {
-		return append(new DashedLineVisitor(fromPos, toPos, dashLength, gapLength));
+		return record(new DashedLineVisitor(fromPos, toPos, dashLength, gapLength));
 	}
 	
 	/**
@@ -118,14 +221,14 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawLineSegment(double fromX, double fromY, double toX, 
 			double toY) {
-		return append(new LineSegmentVisitor(fromX, fromY, toX, toY));
+		return record(new LineSegmentVisitor(fromX, fromY, toX, toY));
 	}
 	
 	/**
 	 * @see LineSegmentVisitor#LineSegmentVisitor(Vector2, Vector2)
 	 */
 	public final ShapeBuilder drawLineSegment(Vector2 fromPosition, Vector2 toPosition) {
-		return append(new LineSegmentVisitor(fromPosition, toPosition));
+		return record(new LineSegmentVisitor(fromPosition, toPosition));
 	}
 	
 	/**
@@ -133,7 +236,7 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawArc(double x, double y, double radius, 
 			double startAngle, double endAngle, boolean antiClockwise) {
-		return append(new ArcVisitor(x, y, radius, startAngle, endAngle, antiClockwise));
+		return record(new ArcVisitor(x, y, radius, startAngle, endAngle, antiClockwise));
 	}
 	
 	/**
@@ -141,7 +244,7 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawArc(Vector2 position, double radius, double startAngle,
 			double endAngle, boolean antiClockwise) {
-		return append(new ArcVisitor(position, radius, startAngle, endAngle, 
+		return record(new ArcVisitor(position, radius, startAngle, endAngle, 
 				antiClockwise));
 	}
 	
@@ -149,7 +252,7 @@ public class ShapeBuilder {
 	 * @see ArcVisitor#ArcVisitor(Arc)
 	 */
 	public final ShapeBuilder drawArc(Arc arc) {
-		return append(new ArcVisitor(arc));
+		return record(new ArcVisitor(arc));
 	}
 	
 	/**
@@ -159,7 +262,7 @@ public class ShapeBuilder {
 	public final ShapeBuilder drawArc(double x, double y, double radius, 
 			double startAngle, double endAngle, boolean antiClockwise, 
 			boolean connectFromPrev) {
-		return append(new ArcVisitor(x, y, radius, startAngle, endAngle, 
+		return record(new ArcVisitor(x, y, radius, startAngle, endAngle, 
 				antiClockwise, connectFromPrev));
 	}
 	
@@ -169,7 +272,7 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawArc(Vector2 position, double radius, double startAngle,
 			double endAngle, boolean antiClockwise, boolean connectFromPrev) {
-		return append(new ArcVisitor(position, radius, startAngle, endAngle, 
+		return record(new ArcVisitor(position, radius, startAngle, endAngle, 
 				antiClockwise, connectFromPrev));
 	}
 	
@@ -177,7 +280,7 @@ public class ShapeBuilder {
 	 * @see ArcVisitor#ArcVisitor(Arc, boolean)
 	 */
 	public final ShapeBuilder drawArc(Arc arc, boolean connectFromPrev) {
-		return append(new ArcVisitor(arc, connectFromPrev));
+		return record(new ArcVisitor(arc, connectFromPrev));
 	}
 	
 	/**
@@ -186,7 +289,7 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawArcTo(double x0, double y0, 
 			double x1, double y1, double x2, double y2, double radius) {
-		return append(new ArcToVisitor(x0, y0, x1, y1, x2, y2, radius));
+		return record(new ArcToVisitor(x0, y0, x1, y1, x2, y2, radius));
 	}
 	
 	/**
@@ -194,7 +297,7 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawArcTo(double x1, double y1, double x2, double y2, 
 			double radius) {
-		return append(new ArcToVisitor(x1, y1, x2, y2, radius));
+		return record(new ArcToVisitor(x1, y1, x2, y2, radius));
 	}
 	
 	/**
@@ -202,56 +305,56 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawArcTo(Vector2 point0, Vector2 point1, 
 			Vector2 point2, double radius) {
-		return append(new ArcToVisitor(point0, point1, point2, radius));
+		return record(new ArcToVisitor(point0, point1, point2, radius));
 	}
 	
 	/**
 	 * @see ArcToVisitor#ArcToVisitor(Vector2, Vector2, double)
 	 */
 	public final ShapeBuilder drawArcTo(Vector2 point1, Vector2 point2, double radius) {
-		return append(new ArcToVisitor(point1, point2, radius));
+		return record(new ArcToVisitor(point1, point2, radius));
 	}
 	
 	/**
 	 * @see CircleVisitor#CircleVisitor(double, double, double)
 	 */
 	public final ShapeBuilder drawCircle(double x, double y, double radius) {
-		return append(new CircleVisitor(x, y, radius));
+		return record(new CircleVisitor(x, y, radius));
 	}
 	
 	/**
 	 * @see CircleVisitor#CircleVisitor(Vector2, double)
 	 */
 	public final ShapeBuilder drawCircle(Vector2 center, double radius) {
-		return append(new CircleVisitor(center, radius));
+		return record(new CircleVisitor(center, radius));
 	}
 	
 	/**
 	 * @see CircleVisitor#CircleVisitor(Circle)
 	 */
 	public final ShapeBuilder drawCircle(Circle circle) {
-		return append(new CircleVisitor(circle));
+		return record(new CircleVisitor(circle));
 	}
 	
 	/**
 	 * @see EllipseVisitor#EllipseVisitor(double, double, double, double)
 	 */
 	public final ShapeBuilder drawEllipse(double x, double y, double width, double height) {
-		return append(new EllipseVisitor(x, y, width, height));
+		return record(new EllipseVisitor(x, y, width, height));
 	}
 	
 	/**
 	 * @see EllipseVisitor#EllipseVisitor(Vector2, double, double)
 	 */
 	public final ShapeBuilder drawEllipse(Vector2 center, double width, double height) {
-		return append(new EllipseVisitor(center, width, height));
+		return record(new EllipseVisitor(center, width, height));
 	}
 	
 	/**
 	 * @see EllipseVisitor#EllipseVisitor(Ellipse)
 	 */
 	public final ShapeBuilder drawEllipse(Ellipse ellipse) {
-		return append(new EllipseVisitor(ellipse));
+		return record(new EllipseVisitor(ellipse));
 	}
 	
 	/**
@@ -261,9 +364,36 @@ public class ShapeBuilder {
 	public final ShapeBuilder drawBezierCurveTo(double controlPoint1X, 
 			double controlPoint1Y, double controlPoint2X, double controlPoint2Y, 
 			double endPointX, double endPointY) {
-		return append(new BezierCurveToVisitor(controlPoint1X, controlPoint1Y, 
+		path.bezierCurveTo(controlPoint1X, controlPoint1Y, 
 				controlPoint2X, controlPoint2Y, 
-				endPointX, endPointY));
+				endPointX, endPointY);
+		++modificationCount;
+		return this;
+	}
+	
+	/**
+	 * Draws a chain of cubic Bezier curves from the current position.
+	 * 
+	 * @param points the control points and the end point of each curve: 
+	 * 				cp1x, cp1y, cp2x, cp2y, x, y, ...
+	 */
+	public final ShapeBuilder drawBezierCurvesTo(double[] points) {
+		return drawBezierCurvesTo(points, 0, points.length / 6);
+	}
+	
+	/**
+	 * Draws a chain of cubic Bezier curves from the current position.
+	 * 
+	 * @param points the control points and the end point of each curve: 
+	 * 				cp1x, cp1y, cp2x, cp2y, x, y, ...
+	 * @param offset the index of the first coordinate.
+	 * @param count the number of curves.
+	 */
+	public final ShapeBuilder drawBezierCurvesTo(double[] points, int offset, 
+			int count) {
+		path.bezierCurveTo(points, offset, count);
+		++modificationCount;
+		return this;
 	}
 	
 	/**
@@ -271,7 +401,7 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawBezierCurveTo(Vector2 controlPoint1, Vector2 controlPoint2, 
 			Vector2 endPoint) {
-		return append(new BezierCurveToVisitor(controlPoint1, controlPoint2, endPoint));
+		return record(new BezierCurveToVisitor(controlPoint1, controlPoint2, endPoint));
 	}
 	
 	/**
@@ -282,7 +412,7 @@ public class ShapeBuilder {
 			double controlPoint1X, double controlPoint1Y, 
 			double controlPoint2X, double controlPoint2Y, 
 			double endPointX, double endPointY) {
-		return append(new BezierCurveVisitor(startPointX, startPointY, 
+		return record(new BezierCurveVisitor(startPointX, startPointY, 
 				controlPoint1X, controlPoint1Y, 
 				controlPoint2X, controlPoint2Y, 
 				endPointX, endPointY));
@@ -294,7 +424,7 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawBezierCurve(Vector2 startPoint, Vector2 controlPoint1, 
 			Vector2 controlPoint2, Vector2 endpoint) {
-		return append(new BezierCurveVisitor(startPoint, controlPoint1, 
+		return record(new BezierCurveVisitor(startPoint, controlPoint1, 
 				controlPoint2, endpoint));
 	}
 	
@@ -306,7 +436,7 @@ public class ShapeBuilder {
 	public final ShapeBuilder drawCubeCurveTo(double controlPoint1X, 
 			double controlPoint1Y, double controlPoint2X, double controlPoint2Y, 
 			double endPointX, double endPointY) {
-		return append(new gwt.g2d.client.graphics.visitor.CubicCurveToVisitor(
+		return record(new gwt.g2d.client.graphics.visitor.CubicCurveToVisitor(
 				controlPoint1X, controlPoint1Y, 
 				controlPoint2X, controlPoint2Y, 
 				endPointX, endPointY));
@@ -318,7 +448,7 @@ public class ShapeBuilder {
 	@Deprecated
 	public final ShapeBuilder drawCubeCurveTo(Vector2 controlPoint1, 
 			Vector2 controlPoint2, Vector2 endPoint) {
-		return append(new gwt.g2d.client.graphics.visitor.CubicCurveToVisitor(
+		return record(new gwt.g2d.client.graphics.visitor.CubicCurveToVisitor(
 				controlPoint1, controlPoint2, endPoint));
 	}
 	
@@ -331,7 +461,7 @@ public class ShapeBuilder {
 			double controlPoint1X, double controlPoint1Y, 
 			double controlPoint2X, double controlPoint2Y, 
 			double endPointX, double endPointY) {
-		return append(new gwt.g2d.client.graphics.visitor.CubicCurveVisitor(
+		return record(new gwt.g2d.client.graphics.visitor.CubicCurveVisitor(
 				startPointX, startPointY, 
 				controlPoint1X, controlPoint1Y, 
 				controlPoint2X, controlPoint2Y, 
@@ -344,7 +474,7 @@ public class ShapeBuilder {
 	@Deprecated
 	public final ShapeBuilder drawCubicCurve(Vector2 startPoint, 
 			Vector2 controlPoint1, Vector2 controlPoint2, Vector2 endpoint) {
-		return append(new gwt.g2d.client.graphics.visitor.CubicCurveVisitor(
+		return record(new gwt.g2d.client.graphics.visitor.CubicCurveVisitor(
 				startPoint, controlPoint1, controlPoint2, endpoint));
 	}
 	
@@ -354,15 +484,16 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawQuadraticCurveTo(double controlPointX, 
 			double controlPointY, double endPointX, double endPointY) {
-		return append(new QuadraticCurveToVisitor(controlPointX, controlPointY, 
-				endPointX, endPointY));
+		path.quadraticCurveTo(controlPointX, controlPointY, endPointX, endPointY);
+		++modificationCount;
+		return this;
 	}
 	
 	/**
 	 * @see QuadraticCurveToVisitor#QuadraticCurveToVisitor(Vector2, Vector2)
 	 */
 	public final ShapeBuilder drawQuadraticCurveTo(Vector2 controlPoint, Vector2 endPoint) {
-		return append(new QuadraticCurveToVisitor(controlPoint, endPoint));
+		return record(new QuadraticCurveToVisitor(controlPoint, endPoint));
 
 	}
 	
@@ -377,7 +508,7 @@ public class ShapeBuilder {
 	@Deprecated
 	public final ShapeBuilder drawQuadraticCurveTo(double startPointX, double startPointY,
 			double controlPointX, double controlPointY, double endPointX, double endPointY) {
-		return append(new QuadraticCurveVisitor(startPointX, startPointY, 
+		return record(new QuadraticCurveVisitor(startPointX, startPointY, 
 				controlPointX, controlPointY, endPointX, endPointY));
 	}
 	
@@ -387,7 +518,7 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawQuadraticCurve(double startPointX, double startPointY,
 			double controlPointX, double controlPointY, double endPointX, double endPointY) {
-		return append(new QuadraticCurveVisitor(startPointX, startPointY, 
+		return record(new QuadraticCurveVisitor(startPointX, startPointY, 
 				controlPointX, controlPointY, endPointX, endPointY));
 	}
 	
@@ -396,49 +527,49 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder drawQuadraticCurve(Vector2 startPoint, Vector2 controlPoint, 
 			Vector2 endPoint) {
-		return append(new QuadraticCurveVisitor(startPoint, controlPoint, endPoint));
+		return record(new QuadraticCurveVisitor(startPoint, controlPoint, endPoint));
 	}
 	
 	/**
 	 * @see RectangleVisitor#RectangleVisitor(double, double, double, double)
 	 */
 	public final ShapeBuilder drawRect(double x, double y, double width, double height) {
-		return append(new RectangleVisitor(x, y, width, height));
+		return record(new RectangleVisitor(x, y, width, height));
 	}
 	
 	/**
 	 * @see RectangleVisitor#RectangleVisitor(Vector2, double, double)
 	 */
 	public final ShapeBuilder drawRect(Vector2 position, double width, double height) {
-		return append(new RectangleVisitor(position, width, height));
+		return record(new RectangleVisitor(position, width, height));
 	}
 	
 	/**
 	 * @see RectangleVisitor#RectangleVisitor(Rectangle)
 	 */
 	public final ShapeBuilder drawRect(Rectangle rectangle) {
-		return append(new RectangleVisitor(rectangle));
+		return record(new RectangleVisitor(rectangle));
 	}
 	
 	/**
 	 * @see ScaleVisitor#ScaleVisitor(double, double)
 	 */
 	public final ShapeBuilder scale(double x, double y) {
-		return append(new ScaleVisitor(x, y));
+		return record(new ScaleVisitor(x, y));
 	}
 	
 	/**
 	 * @see ScaleVisitor#ScaleVisitor(Vector2)
 	 */
 	public final ShapeBuilder scale(Vector2 scales) {
-		return append(new ScaleVisitor(scales));
+		return record(new ScaleVisitor(scales));
 	}
 	
 	/**
 	 * @see ScaleVisitor#ScaleVisitor(double)
 	 */
 	public final ShapeBuilder scale(double scale) {
-		return append(new ScaleVisitor(scale));
+		return record(new ScaleVisitor(scale));
 	}
 	
 	/**
@@ -446,7 +577,7 @@ public class ShapeBuilder {
 	 * @see RotateVisitor#RotateVisitor(double)
 	 */
 	public final ShapeBuilder rotate(double angle) {
-		return append(new RotateVisitor(angle));
+		return record(new RotateVisitor(angle));
 	}
 	
 	/**
@@ -454,21 +585,21 @@ public class ShapeBuilder {
 	 * @see RotateVisitor#RotateVisitor(double)
 	 */
 	public final ShapeBuilder rotateCcw(double angle) {
-		return append(new RotateVisitor(-angle));
+		return record(new RotateVisitor(-angle));
 	}
 	
 	/**
 	 * @see TranslateVisitor#TranslateVisitor(double, double)
 	 */
 	public final ShapeBuilder translate(double x, double y) {
-		return append(new TranslateVisitor(x, y));
+		return record(new TranslateVisitor(x, y));
 	}
 	
 	/**
 	 * @see TranslateVisitor#TranslateVisitor(Vector2)
 	 */
 	public final ShapeBuilder translate(Vector2 translation) {
-		return append(new TranslateVisitor(translation));
+		return record(new TranslateVisitor(translation));
 	}
 	
 	/**
@@ -477,14 +608,14 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder transform(double m11, double m12, double m21, double m22,
       double dx, double dy) {
-		return append(new TransformVisitor(m11, m12, m21, m22, dx, dy));
+		return record(new TransformVisitor(m11, m12, m21, m22, dx, dy));
 	}
 	
 	/**
 	 * @see TransformVisitor#TransformVisitor(Matrix)
 	 */
 	public final ShapeBuilder transform(Matrix matrix) {
-		return append(new TransformVisitor(matrix));
+		return record(new TransformVisitor(matrix));
 	}
 	
 	/**
@@ -493,14 +624,14 @@ public class ShapeBuilder {
 	 */
 	public final ShapeBuilder setTransform(double m11, double m12, double m21, 
 			double m22, double dx, double dy) {
-		return append(new SetTransformVisitor(m11, m12, m21, m22, dx, dy));
+		return record(new SetTransformVisitor(m11, m12, m21, m22, dx, dy));
 	}
 	
 	/**
 	 * @see SetTransformVisitor#SetTransformVisitor(Matrix)
 	 */
 	public final ShapeBuilder setTransform(Matrix matrix) {
-		return append(new SetTransformVisitor(matrix));
+		return record(new SetTransformVisitor(matrix));
 	}
 	
 	/**
@@ -514,14 +645,63 @@ public class ShapeBuilder {
 	 * Represents a custom shape.
 	 */
 	public final class CustomShape extends Shape {
+		private int pathModificationCount = -1;
+		
 		@Override
 		public final void draw(Surface surface) {
-			Context2d context = surface.getContext();
-			context.beginPath();
-			for (ShapeVisitor shape : shapes) {
-				shape.visit(surface);
+			surface.getContext().beginPath();
+			path.replay(surface);
+			surface.getContext().closePath();
+		}
+		
+		/**
+		 * Adds the geometry of the shape to the given path. All visitors 
+		 * appended with {@link ShapeBuilder#append(ShapeVisitor)} must 
+		 * implement {@link PathVisitor}.
+		 */
+		@Override
+		public final void appendPath(PathContext path) {
+			ShapeBuilder.this.path.replay(path);
+			path.closePath();
+		}
+		
+		/**
+		 * Compiles the shape into a path that is drawn with a single call.
+		 * The builder must not be appended to afterwards.
+		 * 
+		 * @see CompiledShape
+		 */
+		public CompiledShape compile() {
+			return new CompiledShape(this);
+		}
+		
+		@Override
+		public FlattenedPath getFlattenedPath() {
+			checkModification();
+			return super.getFlattenedPath();
+		}
+			
+		@Override
+		public Rectangle getBounds() {
+			checkModification();
+			return super.getBounds();
+		}
+		
+		@Override
+		public boolean hasGeometry() {
+			checkModification();
+			return super.hasGeometry();
+		}
+		
+		/**
+		 * Discards the cached geometry if the builder was appended to after 
+		 * the shape was built.
+		 */
+		private void checkModification() {
+			if (pathModificationCount != modificationCount) {
+				invalidatePath();
+				pathModificationCount = modificationCount;
 			}
-			context.closePath();
 		}
 	}
 }
@@ -0,0 +1,231 @@
+package gwt.g2d.client.graphics.shapes;
+
+import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.client.graphics.visitor.PathContext;
+import gwt.g2d.client.math.PolylineSimplifier;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gwt.canvas.dom.client.Context2d;
+
+/**
+ * A polyline with many points that is drawn with only as much detail as
+ * the current scale can show: points that would land within a fraction of a
+ * pixel of the simplified line are dropped, so the cost of drawing follows
+ * the detail on the screen rather than the number of points.
+ *
+ * The pixel scale is quantized into zoom buckets, a few per doubling of the
+ * scale, and the simplified points of the recently used buckets are cached,
+ * so zooming back and forth doesn't simplify the points again. Within a
+ * bucket, the points are simplified for its largest scale, so they are
+ * never coarser than the tolerance.
+ *
+ * {@link #appendPath(PathContext)}, and everything based on it (bounds,
+ * hit tests), uses every point.
+ */
+public class SimplifiedPolyline extends Shape {
+
+	/**
+	 * The algorithm that removes points.
+	 */
+	public enum Method {
+		/**
+		 * Keeps every removed point within the tolerance of the simplified
+		 * line. Fast, but spiky at coarse scales.
+		 */
+		DOUGLAS_PEUCKER,
+
+		/**
+		 * Removes the points whose triangle with their neighbors is smaller
+		 * than the square of the tolerance. Keeps the overall shape better.
+		 */
+		VISVALINGAM
+	}
+
+	/** The number of zoom buckets whose points are kept. */
+	private static final int MAX_CACHED_BUCKETS = 8;
+
+	private final double[] points;
+	private final boolean closed;
+	private Method method = Method.DOUGLAS_PEUCKER;
+	private double tolerance = 0.5;
+	private int bucketsPerDoubling = 2;
+
+	/** Simplified points by zoom bucket, least recently used first. */
+	private final Map<Integer, double[]> cache =
+			new LinkedHashMap<Integer, double[]>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, double[]> eldest) {
+			return size() > MAX_CACHED_BUCKETS;
+		}
+	};
+
+	/**
+	 * Creates an open polyline through the given points.
+	 *
+	 * @param points the coordinates of the points: x0, y0, x1, y1, ... The
+	 * 				array is not copied, and must not change afterwards.
+	 */
+	public SimplifiedPolyline(double[] points) {
+		this(points, false);
+	}
+
+	/**
+	 * Creates a polyline through the given points.
+	 *
+	 * @param points the coordinates of the points: x0, y0, x1, y1, ... The
+	 * 				array is not copied, and must not change afterwards.
+	 * @param closed whether the last point is connected to the first one.
+	 */
+	public SimplifiedPolyline(double[] points, boolean closed) {
+		this.points = points;
+		this.closed = closed;
+	}
+
+	/**
+	 * Gets the number of points at full detail.
+	 */
+	public int getPointCount() {
+		return points.length / 2;
+	}
+
+	/**
+	 * Sets the algorithm that removes points. Default: Douglas-Peucker.
+	 */
+	public void setMethod(Method method) {
+		if (method != this.method) {
+			this.method = method;
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Gets the algorithm that removes points.
+	 */
+	public Method getMethod() {
+		return method;
+	}
+
+	/**
+	 * Sets how far, in canvas pixels, the simplified line may be from the
+	 * points it leaves out. Default: 0.5.
+	 */
+	public void setTolerance(double tolerance) {
+		if (tolerance != this.tolerance) {
+			this.tolerance = tolerance;
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Gets how far, in canvas pixels, the simplified line may be from the
+	 * points it leaves out.
+	 */
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Sets the number of zoom buckets per doubling of the scale: more buckets
+	 * follow the scale more closely, but are simplified more often.
+	 * Default: 2.
+	 */
+	public void setBucketsPerDoubling(int bucketsPerDoubling) {
+		if (bucketsPerDoubling < 1) {
+			throw new IllegalArgumentException("At least one bucket is needed: "
+					+ bucketsPerDoubling);
+		}
+		if (bucketsPerDoubling != this.bucketsPerDoubling) {
+			this.bucketsPerDoubling = bucketsPerDoubling;
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Gets the points to draw at the given number of canvas pixels per unit
+	 * (see {@link Surface#getPixelScale()}). The result is cached, and must
+	 * not be modified.
+	 *
+	 * @param pixelScale canvas pixels per unit, or NaN for every point.
+	 * @return the coordinates of the points: x0, y0, x1, y1, ...
+	 */
+	public double[] getPoints(double pixelScale) {
+		if (!(pixelScale > 0) || Double.isInfinite(pixelScale) || !(tolerance > 0)) {
+			return points;
+		}
+		int bucket = (int) Math.ceil(Math.log(pixelScale) / Math.log(2) * bucketsPerDoubling);
+		Integer key = Integer.valueOf(bucket);
+		double[] simplified = cache.get(key);
+		if (simplified == null) {
+			double bucketScale = Math.pow(2, (double) bucket / bucketsPerDoubling);
+			double distance = tolerance / bucketScale;
+			simplified = method == Method.VISVALINGAM
+					? PolylineSimplifier.visvalingam(points, distance * distance)
+					: PolylineSimplifier.douglasPeucker(points, distance);
+
+			// nothing to gain: keep the original points
+			if (simplified.length == points.length) {
+				simplified = points;
+			}
+			cache.put(key, simplified);
+		}
+		return simplified;
+	}
+
+	/**
+	 * Forgets the simplified points of every zoom bucket.
+	 */
+	public void clearCache() {
+		cache.clear();
+	}
+
+	/**
+	 * Adds the polyline to the current path of the given surface, with the
+	 * detail of its current pixel scale.
+	 */
+	@Override
+	public void draw(Surface surface) {
+		double[] points = getPoints(surface.getPixelScale());
+		Context2d context = surface.getContext();
+		context.beginPath();
+		if (points.length < 2) {
+			return;
+		}
+		context.moveTo(points[0], points[1]);
+		for (int i = 2; i < points.length; i += 2) {
+			context.lineTo(points[i], points[i + 1]);
+		}
+		if (closed) {
+			context.closePath();
+		}
+	}
+
+	/**
+	 * Adds every point of the polyline to the given path.
+	 */
+	@Override
+	public void appendPath(PathContext path) {
+		appendPath(path, Double.NaN);
+	}
+
+	/**
+	 * Adds the polyline to the given path, with the detail of the given
+	 * number of canvas pixels per unit.
+	 *
+	 * @param pixelScale canvas pixels per unit, or NaN for every point.
+	 */
+	public void appendPath(PathContext path, double pixelScale) {
+		double[] points = getPoints(pixelScale);
+		if (points.length < 2) {
+			return;
+		}
+		path.moveTo(points[0], points[1]);
+		for (int i = 2; i < points.length; i += 2) {
+			path.lineTo(points[i], points[i + 1]);
+		}
+		if (closed) {
+			path.closePath();
+		}
+	}
+}
@@ -25,7 +25,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class ArcToVisitor implements ShapeVisitor {
+public class ArcToVisitor implements PathVisitor {
 	private final double x0, y0, x1, y1, x2, y2, radius;
 	private final boolean connectFromPrev;
 	
@@ -121,4 +121,12 @@ public class ArcToVisitor implements ShapeVisitor {
 		}
 		surface.getContext().arcTo(x1, y1, x2, y2, radius);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		if (!connectFromPrev) {
+			path.moveTo(x0, y0);
+		}
+		path.arcTo(x1, y1, x2, y2, radius);
+	}
 }
@@ -28,7 +28,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class ArcVisitor implements ShapeVisitor {
+public class ArcVisitor implements PathVisitor {
 	private final double x, y, radius, startAngle, endAngle;
 	private final boolean antiClockwise, connectFromPrev;
 	
@@ -116,4 +116,12 @@ public class ArcVisitor implements ShapeVisitor {
 		}
 		surface.getContext().arc(x, y, radius, startAngle, endAngle, antiClockwise);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		if (!connectFromPrev) {
+			path.moveTo(x, y);
+		}
+		path.arc(x, y, radius, startAngle, endAngle, antiClockwise);
+	}
 }
@@ -25,7 +25,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class BezierCurveToVisitor implements ShapeVisitor {
+public class BezierCurveToVisitor implements PathVisitor {
 	private final double controlPoint1X, controlPoint1Y, 
 			controlPoint2X, controlPoint2Y, 
 			endPointX, endPointY;
@@ -63,4 +63,11 @@ public class BezierCurveToVisitor implements ShapeVisitor {
 				controlPoint2X, controlPoint2Y, 
 				endPointX, endPointY);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.bezierCurveTo(controlPoint1X, controlPoint1Y, 
+				controlPoint2X, controlPoint2Y, 
+				endPointX, endPointY);
+	}
 }
@@ -28,7 +28,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class BezierCurveVisitor implements ShapeVisitor {
+public class BezierCurveVisitor implements PathVisitor {
 	private final double startPointX, startPointY, controlPoint1X, controlPoint1Y, 
 	 		controlPoint2X, controlPoint2Y, endPointX, endPointY;
 	
@@ -70,4 +70,12 @@ public class BezierCurveVisitor implements ShapeVisitor {
 				controlPoint2X, controlPoint2Y, 
 				endPointX, endPointY);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.moveTo(startPointX, startPointY);
+		path.bezierCurveTo(controlPoint1X, controlPoint1Y, 
+				controlPoint2X, controlPoint2Y, 
+				endPointX, endPointY);
+	}
 }
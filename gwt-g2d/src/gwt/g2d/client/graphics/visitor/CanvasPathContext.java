@@ -0,0 +1,100 @@
+package gwt.g2d.client.graphics.visitor;
+
+import com.google.gwt.canvas.dom.client.Context2d;
+
+/**
+ * A {@link PathContext} that forwards all operations to a canvas context.
+ */
+public class CanvasPathContext implements PathContext {
+	private final Context2d context;
+	
+	public CanvasPathContext(Context2d context) {
+		this.context = context;
+	}
+	
+	/**
+	 * Gets the canvas context that all operations are forwarded to.
+	 */
+	public final Context2d getContext() {
+		return context;
+	}
+	
+	@Override
+	public void moveTo(double x, double y) {
+		context.moveTo(x, y);
+	}
+	
+	@Override
+	public void lineTo(double x, double y) {
+		context.lineTo(x, y);
+	}
+	
+	@Override
+	public void quadraticCurveTo(double cpx, double cpy, double x, double y) {
+		context.quadraticCurveTo(cpx, cpy, x, y);
+	}
+	
+	@Override
+	public void bezierCurveTo(double cp1x, double cp1y, double cp2x, 
+			double cp2y, double x, double y) {
+		context.bezierCurveTo(cp1x, cp1y, cp2x, cp2y, x, y);
+	}
+	
+	@Override
+	public void arc(double x, double y, double radius, double startAngle, 
+			double endAngle, boolean antiClockwise) {
+		context.arc(x, y, radius, startAngle, endAngle, antiClockwise);
+	}
+	
+	@Override
+	public void arcTo(double x1, double y1, double x2, double y2, double radius) {
+		context.arcTo(x1, y1, x2, y2, radius);
+	}
+	
+	@Override
+	public void rect(double x, double y, double width, double height) {
+		context.rect(x, y, width, height);
+	}
+	
+	@Override
+	public void closePath() {
+		context.closePath();
+	}
+	
+	@Override
+	public void save() {
+		context.save();
+	}
+	
+	@Override
+	public void restore() {
+		context.restore();
+	}
+	
+	@Override
+	public void translate(double x, double y) {
+		context.translate(x, y);
+	}
+	
+	@Override
+	public void scale(double x, double y) {
+		context.scale(x, y);
+	}
+	
+	@Override
+	public void rotate(double angle) {
+		context.rotate(angle);
+	}
+	
+	@Override
+	public void transform(double m11, double m12, double m21, double m22, 
+			double dx, double dy) {
+		context.transform(m11, m12, m21, m22, dx, dy);
+	}
+	
+	@Override
+	public void setTransform(double m11, double m12, double m21, double m22, 
+			double dx, double dy) {
+		context.setTransform(m11, m12, m21, m22, dx, dy);
+	}
+}
@@ -29,7 +29,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class CircleVisitor implements ShapeVisitor {
+public class CircleVisitor implements PathVisitor {
 	private final double x, y, radius;
 	
 	public CircleVisitor(double x, double y, double radius) {
@@ -51,4 +51,9 @@ public class CircleVisitor implements ShapeVisitor {
 		Context2d context = surface.getContext();
 		context.arc(x, y, radius, 0, MathHelper.TWO_PI, true);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.arc(x, y, radius, 0, MathHelper.TWO_PI, true);
+	}
 }
@@ -25,7 +25,7 @@ import java.util.List;
  * 
  * @author hao1300@gmail.com
  */
-public abstract class CompositeShapeVisitor implements ShapeVisitor {
+public abstract class CompositeShapeVisitor implements PathVisitor {
 	private final List<ShapeVisitor> shapes;
 	
 	protected CompositeShapeVisitor() {
@@ -86,4 +86,15 @@ public abstract class CompositeShapeVisitor implements ShapeVisitor {
 			shape.visit(surface);
 		}
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		for (ShapeVisitor shape : shapes) {
+			if (!(shape instanceof PathVisitor)) {
+				throw new UnsupportedOperationException(
+						shape.getClass().getName() + " does not implement PathVisitor");
+			}
+			((PathVisitor) shape).visit(path);
+		}
+	}
 }
@@ -28,7 +28,7 @@ import gwt.g2d.shared.math.Vector2;
  * @author hao1300@gmail.com
  */
 @Deprecated
-public class CubicCurveToVisitor implements ShapeVisitor {
+public class CubicCurveToVisitor implements PathVisitor {
 	private final double controlPoint1X, controlPoint1Y, 
 			controlPoint2X, controlPoint2Y, 
 			endPointX, endPointY;
@@ -66,4 +66,11 @@ public class CubicCurveToVisitor implements ShapeVisitor {
 				controlPoint2X, controlPoint2Y, 
 				endPointX, endPointY);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.bezierCurveTo(controlPoint1X, controlPoint1Y, 
+				controlPoint2X, controlPoint2Y, 
+				endPointX, endPointY);
+	}
 }
@@ -25,7 +25,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class DashedLineVisitor implements ShapeVisitor {
+public class DashedLineVisitor implements PathVisitor {
 	private final double fromX, fromY, toX, toY;
 	private final double dashLength, gapLength;
 	
@@ -70,4 +70,10 @@ public class DashedLineVisitor implements ShapeVisitor {
 		DashedLineRenderer.drawDashedLine(surface.getContext(), fromX, fromY, 
 				toX, toY, dashLength, gapLength);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		DashedLineRenderer.drawDashedLine(path, fromX, fromY, 
+				toX, toY, dashLength, gapLength);
+	}
 }
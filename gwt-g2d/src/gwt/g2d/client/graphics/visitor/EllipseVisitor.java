@@ -29,7 +29,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class EllipseVisitor implements ShapeVisitor {
+public class EllipseVisitor implements PathVisitor {
 	private final double x, y, width, height;
 	
 	/**
@@ -60,4 +60,13 @@ public class EllipseVisitor implements ShapeVisitor {
 		context.arc(0, 0, 1, 0, MathHelper.TWO_PI, true);
 		context.restore();
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.save();
+		path.translate(x + width / 2, y + height / 2);
+		path.scale(width / 2, height / 2);
+		path.arc(0, 0, 1, 0, MathHelper.TWO_PI, true);
+		path.restore();
+	}
 }
@@ -27,7 +27,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class LineSegmentVisitor implements ShapeVisitor {
+public class LineSegmentVisitor implements PathVisitor {
 	private final double fromX, fromY, toX, toY;
 	
 	/**
@@ -53,4 +53,10 @@ public class LineSegmentVisitor implements ShapeVisitor {
 		context.moveTo(fromX, fromY);
 		context.lineTo(toX, toY);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.moveTo(fromX, fromY);
+		path.lineTo(toX, toY);
+	}
 }
@@ -25,7 +25,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class LineToVisitor implements ShapeVisitor {
+public class LineToVisitor implements PathVisitor {
 	private final double x, y;
 	
 	/**
@@ -47,4 +47,9 @@ public class LineToVisitor implements ShapeVisitor {
 	public void visit(Surface surface) {
 		surface.getContext().lineTo(x, y);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.lineTo(x, y);
+	}
 }
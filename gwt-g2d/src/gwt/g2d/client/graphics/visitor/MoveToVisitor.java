@@ -24,7 +24,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class MoveToVisitor implements ShapeVisitor {
+public class MoveToVisitor implements PathVisitor {
 	private final double x, y;
 	
 	/**
@@ -46,4 +46,9 @@ public class MoveToVisitor implements ShapeVisitor {
 	public void visit(Surface surface) {
 		surface.getContext().moveTo(x, y);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.moveTo(x, y);
+	}
 }
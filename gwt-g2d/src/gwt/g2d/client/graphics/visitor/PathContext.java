@@ -0,0 +1,98 @@
+package gwt.g2d.client.graphics.visitor;
+
+/**
+ * The path building and transformation operations of a canvas context.
+ * This allows the geometry of a shape to be described once, and be sent to
+ * either a canvas context for drawing, or to a pure Java implementation such
+ * as {@link gwt.g2d.client.graphics.shapes.FlattenedPath} for hit testing.
+ * 
+ * All methods follow the semantics of the methods with the same name on the
+ * canvas context.
+ */
+public interface PathContext {
+	/**
+	 * Creates a new subpath with the given point.
+	 */
+	void moveTo(double x, double y);
+	
+	/**
+	 * Adds the given point to the current subpath, connected to the previous 
+	 * one by a straight line.
+	 */
+	void lineTo(double x, double y);
+	
+	/**
+	 * Adds the given point to the current subpath, connected to the previous 
+	 * one by a quadratic Bezier curve with the given control point.
+	 */
+	void quadraticCurveTo(double cpx, double cpy, double x, double y);
+	
+	/**
+	 * Adds the given point to the current subpath, connected to the previous 
+	 * one by a cubic Bezier curve with the given control points.
+	 */
+	void bezierCurveTo(double cp1x, double cp1y, double cp2x, double cp2y, 
+			double x, double y);
+	
+	/**
+	 * Adds an arc of the circle with the given center and radius to the 
+	 * current subpath, connected to the previous point by a straight line.
+	 */
+	void arc(double x, double y, double radius, double startAngle, 
+			double endAngle, boolean antiClockwise);
+	
+	/**
+	 * Adds an arc with the given control points and radius to the current 
+	 * subpath, connected to the previous point by a straight line.
+	 */
+	void arcTo(double x1, double y1, double x2, double y2, double radius);
+	
+	/**
+	 * Adds a new closed subpath representing the given rectangle.
+	 */
+	void rect(double x, double y, double width, double height);
+	
+	/**
+	 * Marks the current subpath as closed, and starts a new subpath with a 
+	 * point the same as the start and end of the newly closed subpath.
+	 */
+	void closePath();
+	
+	/**
+	 * Pushes the current transformation onto the stack.
+	 */
+	void save();
+	
+	/**
+	 * Pops the transformation from the top of the stack.
+	 */
+	void restore();
+	
+	/**
+	 * Translates the origin by (x, y).
+	 */
+	void translate(double x, double y);
+	
+	/**
+	 * Scales by x-units horizontally and y-units vertically.
+	 */
+	void scale(double x, double y);
+	
+	/**
+	 * Rotates clockwise by the given angle in radian.
+	 */
+	void rotate(double angle);
+	
+	/**
+	 * Multiplies the current transformation by the given transformation 
+	 * matrix.
+	 */
+	void transform(double m11, double m12, double m21, double m22, 
+			double dx, double dy);
+	
+	/**
+	 * Sets the current transformation to be the given transformation matrix.
+	 */
+	void setTransform(double m11, double m12, double m21, double m22, 
+			double dx, double dy);
+}
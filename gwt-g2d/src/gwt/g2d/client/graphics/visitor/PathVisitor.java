@@ -0,0 +1,15 @@
+package gwt.g2d.client.graphics.visitor;
+
+/**
+ * A shape visitor that can also describe its geometry to a 
+ * {@link PathContext}, without a canvas. All built-in visitors implement this 
+ * interface.
+ */
+public interface PathVisitor extends ShapeVisitor {
+	/**
+	 * Adds the shape to the given path.
+	 * 
+	 * @param path the path to add the shape to.
+	 */
+	void visit(PathContext path);
+}
@@ -25,7 +25,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class QuadraticCurveToVisitor implements ShapeVisitor {
+public class QuadraticCurveToVisitor implements PathVisitor {
 	private final double controlPointX, controlPointY, endPointX, endPointY;
 	
 	/**
@@ -54,4 +54,10 @@ public class QuadraticCurveToVisitor implements ShapeVisitor {
 		surface.getContext().quadraticCurveTo(controlPointX, controlPointY,
 				endPointX, endPointY);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.quadraticCurveTo(controlPointX, controlPointY,
+				endPointX, endPointY);
+	}
 }
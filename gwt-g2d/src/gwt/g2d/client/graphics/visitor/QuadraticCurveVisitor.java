@@ -28,7 +28,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class QuadraticCurveVisitor implements ShapeVisitor {
+public class QuadraticCurveVisitor implements PathVisitor {
 	private final double startPointX, startPointY, controlPointX, controlPointY, 
 			endPointX, endPointY;
 	
@@ -66,4 +66,11 @@ public class QuadraticCurveVisitor implements ShapeVisitor {
 		context.quadraticCurveTo(controlPointX, controlPointY,
 				endPointX, endPointY);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.moveTo(startPointX, startPointY);
+		path.quadraticCurveTo(controlPointX, controlPointY,
+				endPointX, endPointY);
+	}
 }
@@ -28,7 +28,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class RectangleVisitor implements ShapeVisitor {
+public class RectangleVisitor implements PathVisitor {
 	private final double x, y, width, height;
 	
 	public RectangleVisitor(Rectangle rectangle) {
@@ -64,4 +64,13 @@ public class RectangleVisitor implements ShapeVisitor {
 		context.lineTo(x, y + height);
 		context.lineTo(x, y);
 	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.moveTo(x, y);
+		path.lineTo(x + width, y);
+		path.lineTo(x + width, y + height);
+		path.lineTo(x, y + height);
+		path.lineTo(x, y);
+	}
 }
@@ -22,7 +22,7 @@ import gwt.g2d.client.graphics.Surface;
  * 
  * @author hao1300@gmail.com
  */
-public class RotateVisitor implements ShapeVisitor {
+public class RotateVisitor implements PathVisitor {
 	private final double angle;
 	
 	/**
@@ -34,6 +34,11 @@ public class RotateVisitor implements ShapeVisitor {
 	
 	@Override
 	public void visit(Surface surface) {
-		surface.getContext().rotate(angle);
+		surface.rotate(angle);
+	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.rotate(angle);
 	}
 }
@@ -23,7 +23,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class ScaleVisitor implements ShapeVisitor {
+public class ScaleVisitor implements PathVisitor {
 	private final double x, y;
 	
 	/**
@@ -47,6 +47,11 @@ public class ScaleVisitor implements ShapeVisitor {
 	
 	@Override
 	public void visit(Surface surface) {
-		surface.getContext().scale(x, y);
+		surface.scale(x, y);
+	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.scale(x, y);
 	}
 }
@@ -23,7 +23,7 @@ import gwt.g2d.client.math.Matrix;
  * 
  * @author hao1300@gmail.com
  */
-public class TransformVisitor implements ShapeVisitor {
+public class TransformVisitor implements PathVisitor {
 	private final double m11, m12, m21, m22, dx, dy;
 	
 	/**
@@ -58,6 +58,11 @@ public class TransformVisitor implements ShapeVisitor {
 		
 	@Override
 	public void visit(Surface surface) {
-		surface.getContext().transform(m11, m12, m21, m22, dx, dy);
+		surface.transform(m11, m12, m21, m22, dx, dy);
+	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.transform(m11, m12, m21, m22, dx, dy);
 	}
 }
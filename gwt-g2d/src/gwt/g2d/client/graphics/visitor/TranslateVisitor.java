@@ -23,7 +23,7 @@ import gwt.g2d.shared.math.Vector2;
  * 
  * @author hao1300@gmail.com
  */
-public class TranslateVisitor implements ShapeVisitor {
+public class TranslateVisitor implements PathVisitor {
 	private final double x, y;
 	
 	/**
@@ -40,6 +40,11 @@ public class TranslateVisitor implements ShapeVisitor {
 	
 	@Override
 	public void visit(Surface surface) {
-		surface.getContext().translate(x, y);
+		surface.translate(x, y);
+	}
+	
+	@Override
+	public void visit(PathContext path) {
+		path.translate(x, y);
 	}
 }
@@ -0,0 +1,259 @@
+package gwt.g2d.client.math;
+
+/**
+ * Reduces the number of points of a polyline while keeping its shape within
+ * a tolerance. Points are given and returned as packed coordinates: x0, y0,
+ * x1, y1, ... The first and the last point are always kept.
+ */
+public final class PolylineSimplifier {
+
+	private PolylineSimplifier() {
+	}
+
+	/**
+	 * Simplifies the given polyline with the Douglas-Peucker algorithm: no
+	 * point that is removed is farther than the tolerance from the simplified
+	 * polyline.
+	 *
+	 * @param points the coordinates of the points.
+	 * @param tolerance the largest distance a removed point may have from the
+	 * 				simplified polyline.
+	 * @return the coordinates of the kept points.
+	 */
+	public static double[] douglasPeucker(double[] points, double tolerance) {
+		return douglasPeucker(points, 0, points.length / 2, tolerance);
+	}
+
+	/**
+	 * Simplifies the given points of a polyline with the Douglas-Peucker
+	 * algorithm.
+	 *
+	 * @param offset the index of the x-coordinate of the first point.
+	 * @param count the number of points.
+	 * @see #douglasPeucker(double[], double)
+	 */
+	public static double[] douglasPeucker(double[] points, int offset, int count,
+			double tolerance) {
+		if (count <= 2) {
+			return copy(points, offset, count);
+		}
+		boolean[] keep = new boolean[count];
+		keep[0] = keep[count - 1] = true;
+		double toleranceSquared = tolerance * tolerance;
+
+		// ranges of points still to split, without recursion since polylines
+		// can have more points than the stack has frames
+		int[] stack = new int[64];
+		int stackSize = 0;
+		stack[stackSize++] = 0;
+		stack[stackSize++] = count - 1;
+		while (stackSize > 0) {
+			int last = stack[--stackSize];
+			int first = stack[--stackSize];
+			double x1 = points[offset + first * 2], y1 = points[offset + first * 2 + 1];
+			double x2 = points[offset + last * 2], y2 = points[offset + last * 2 + 1];
+			double farthest = -1;
+			int index = -1;
+			for (int i = first + 1; i < last; i++) {
+				double distance = segmentDistanceSquared(points[offset + i * 2],
+						points[offset + i * 2 + 1], x1, y1, x2, y2);
+				if (distance > farthest) {
+					farthest = distance;
+					index = i;
+				}
+			}
+			if (farthest > toleranceSquared) {
+				keep[index] = true;
+				if (stackSize + 4 > stack.length) {
+					int[] newStack = new int[stack.length * 2];
+					System.arraycopy(stack, 0, newStack, 0, stackSize);
+					stack = newStack;
+				}
+				if (index - first > 1) {
+					stack[stackSize++] = first;
+					stack[stackSize++] = index;
+				}
+				if (last - index > 1) {
+					stack[stackSize++] = index;
+					stack[stackSize++] = last;
+				}
+			}
+		}
+		return compact(points, offset, count, keep);
+	}
+
+	/**
+	 * Simplifies the given polyline with the Visvalingam-Whyatt algorithm:
+	 * repeatedly removes the point whose triangle with its neighbors has the
+	 * smallest area, until every remaining triangle is at least the given
+	 * area. Tends to keep the overall shape better than Douglas-Peucker, at
+	 * the cost of a heap.
+	 *
+	 * @param points the coordinates of the points.
+	 * @param minArea the smallest area of the triangle of a kept point.
+	 * @return the coordinates of the kept points.
+	 */
+	public static double[] visvalingam(double[] points, double minArea) {
+		return visvalingam(points, 0, points.length / 2, minArea);
+	}
+
+	/**
+	 * Simplifies the given points of a polyline with the Visvalingam-Whyatt
+	 * algorithm.
+	 *
+	 * @param offset the index of the x-coordinate of the first point.
+	 * @param count the number of points.
+	 * @see #visvalingam(double[], double)
+	 */
+	public static double[] visvalingam(double[] points, int offset, int count,
+			double minArea) {
+		if (count <= 2) {
+			return copy(points, offset, count);
+		}
+
+		// the remaining points as a linked list, and the inner ones in a heap
+		// ordered by the area of their triangle
+		int[] previous = new int[count], next = new int[count];
+		double[] areas = new double[count];
+		int[] heap = new int[count - 2], positions = new int[count];
+		for (int i = 0; i < count; i++) {
+			previous[i] = i - 1;
+			next[i] = i + 1;
+		}
+		int heapSize = 0;
+		for (int i = 1; i < count - 1; i++) {
+			areas[i] = triangleArea(points, offset, i - 1, i, i + 1);
+			heap[heapSize] = i;
+			positions[i] = heapSize++;
+		}
+		for (int i = heapSize / 2 - 1; i >= 0; i--) {
+			siftDown(heap, heapSize, positions, areas, i);
+		}
+
+		boolean[] keep = new boolean[count];
+		for (int i = 0; i < count; i++) {
+			keep[i] = true;
+		}
+		double lastArea = 0;
+		while (heapSize > 0 && areas[heap[0]] < minArea) {
+			int removed = heap[0];
+			heap[0] = heap[--heapSize];
+			positions[heap[0]] = 0;
+			siftDown(heap, heapSize, positions, areas, 0);
+
+			// a neighbor never gets a smaller area than the point removed
+			// before it, so that points are removed in the order of the area
+			// they actually represent
+			lastArea = Math.max(lastArea, areas[removed]);
+			keep[removed] = false;
+			int p = previous[removed], n = next[removed];
+			next[p] = n;
+			previous[n] = p;
+			if (p > 0) {
+				areas[p] = Math.max(lastArea, triangleArea(points, offset, previous[p], p, n));
+				update(heap, heapSize, positions, areas, positions[p]);
+			}
+			if (n < count - 1) {
+				areas[n] = Math.max(lastArea, triangleArea(points, offset, p, n, next[n]));
+				update(heap, heapSize, positions, areas, positions[n]);
+			}
+		}
+		return compact(points, offset, count, keep);
+	}
+
+	/**
+	 * Gets the squared distance of the point (x, y) from the segment between
+	 * (x1, y1) and (x2, y2).
+	 */
+	private static double segmentDistanceSquared(double x, double y, double x1,
+			double y1, double x2, double y2) {
+		double dx = x2 - x1, dy = y2 - y1;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared == 0 ? 0
+				: Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared));
+		double px = x1 + t * dx - x, py = y1 + t * dy - y;
+		return px * px + py * py;
+	}
+
+	/**
+	 * Gets the area of the triangle of the points with the given indices.
+	 */
+	private static double triangleArea(double[] points, int offset, int a, int b,
+			int c) {
+		double ax = points[offset + a * 2], ay = points[offset + a * 2 + 1];
+		double bx = points[offset + b * 2], by = points[offset + b * 2 + 1];
+		double cx = points[offset + c * 2], cy = points[offset + c * 2 + 1];
+		return Math.abs((bx - ax) * (cy - ay) - (cx - ax) * (by - ay)) / 2;
+	}
+
+	/**
+	 * Moves the heap entry at the given position up or down to its place.
+	 */
+	private static void update(int[] heap, int heapSize, int[] positions,
+			double[] areas, int position) {
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+			if (areas[heap[parent]] <= areas[heap[position]]) {
+				break;
+			}
+			swap(heap, positions, parent, position);
+			position = parent;
+		}
+		siftDown(heap, heapSize, positions, areas, position);
+	}
+
+	private static void siftDown(int[] heap, int heapSize, int[] positions,
+			double[] areas, int position) {
+		while (true) {
+			int smallest = position;
+			int left = position * 2 + 1, right = left + 1;
+			if (left < heapSize && areas[heap[left]] < areas[heap[smallest]]) {
+				smallest = left;
+			}
+			if (right < heapSize && areas[heap[right]] < areas[heap[smallest]]) {
+				smallest = right;
+			}
+			if (smallest == position) {
+				return;
+			}
+			swap(heap, positions, smallest, position);
+			position = smallest;
+		}
+	}
+
+	private static void swap(int[] heap, int[] positions, int i, int j) {
+		int t = heap[i];
+		heap[i] = heap[j];
+		heap[j] = t;
+		positions[heap[i]] = i;
+		positions[heap[j]] = j;
+	}
+
+	/**
+	 * Copies the coordinates of the kept points.
+	 */
+	private static double[] compact(double[] points, int offset, int count,
+			boolean[] keep) {
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			if (keep[i]) {
+				kept++;
+			}
+		}
+		double[] result = new double[kept * 2];
+		int j = 0;
+		for (int i = 0; i < count; i++) {
+			if (keep[i]) {
+				result[j++] = points[offset + i * 2];
+				result[j++] = points[offset + i * 2 + 1];
+			}
+		}
+		return result;
+	}
+
+	private static double[] copy(double[] points, int offset, int count) {
+		double[] result = new double[count * 2];
+		System.arraycopy(points, offset, result, 0, count * 2);
+		return result;
+	}
+}
@@ -0,0 +1,158 @@
+package gwt.g2d.client.mouse;
+
+import com.google.gwt.canvas.dom.client.CanvasPixelArray;
+
+import gwt.g2d.client.graphics.shapes.FillRule;
+import gwt.g2d.client.graphics.shapes.FlattenedPath;
+import gwt.g2d.shared.math.Rectangle;
+
+/**
+ * The coverage of a single registration of a {@link MouseSurface}, stored as one bit per pixel and cropped to
+ * the non-transparent pixels. Once created, a mask can be queried without touching the canvas.
+ */
+class AlphaMask {
+
+	// position and size of the mask, in surface coordinates
+	int fX;
+	int fY;
+	int fWidth;
+	int fHeight;
+
+	// one bit per pixel, row by row, 32 pixels per int
+	int[] fBits;
+
+
+	// create an empty mask of the given area, to be filled in
+	private AlphaMask(int x, int y, int width, int height) {
+		fX = x;
+		fY = y;
+		fWidth = Math.max(0, width);
+		fHeight = Math.max(0, height);
+		fBits = new int[(fWidth * fHeight + 31) >>> 5];
+	}
+
+
+	/**
+	 * Create a mask from the alpha channel of a block of pixels, read at the given position with the given
+	 * size. The mask is cropped to the pixels that aren't fully transparent.
+	 */
+	public AlphaMask(CanvasPixelArray data, int x, int y, int width, int height) {
+
+		// find the non-transparent pixels
+		int minX = width, minY = height, maxX = -1, maxY = -1;
+		for (int py = 0, i = 3; py < height; py++) {
+			for (int px = 0; px < width; px++, i += 4) {
+				if (data.get(i) == 0) continue;
+				if (px < minX) minX = px;
+				if (px > maxX) maxX = px;
+				if (py < minY) minY = py;
+				maxY = py;
+			}
+		}
+
+		// nothing was drawn - an empty mask
+		if (maxX < 0) {
+			fX = x;
+			fY = y;
+			fBits = new int[0];
+			return;
+		}
+
+		// pack the cropped area
+		fX = x + minX;
+		fY = y + minY;
+		fWidth = maxX - minX + 1;
+		fHeight = maxY - minY + 1;
+		fBits = new int[(fWidth * fHeight + 31) >>> 5];
+		for (int py = 0; py < fHeight; py++) {
+			int i = (((py + minY) * width) + minX) * 4 + 3;
+			int bit = py * fWidth;
+			for (int px = 0; px < fWidth; px++, i += 4, bit++) {
+				if (data.get(i) != 0) fBits[bit >>> 5] |= 1 << (bit & 31);
+			}
+		}
+	}
+
+
+	// does the mask cover the given point (in surface coordinates)?
+	public boolean contains(int x, int y) {
+		x -= fX;
+		y -= fY;
+		if (x < 0 || y < 0 || x >= fWidth || y >= fHeight) return false;
+		int bit = y * fWidth + x;
+		return (fBits[bit >>> 5] & (1 << (bit & 31))) != 0;
+	}
+
+
+	// the bounds of the non-transparent pixels
+	public Rectangle getBounds() {
+		return new Rectangle(fX, fY, fWidth, fHeight);
+	}
+
+
+	// squared distance from the given point to the nearest covered pixel within the given radius (-1 if there is none)
+	public int distanceSquared(int x, int y, int radius) {
+		int limit = radius * radius;
+		int best = -1;
+		int x0 = Math.max(fX, x - radius), x1 = Math.min(fX + fWidth, x + radius + 1);
+		int y0 = Math.max(fY, y - radius), y1 = Math.min(fY + fHeight, y + radius + 1);
+		for (int py = y0; py < y1; py++) {
+			int dy = py - y;
+			for (int px = x0; px < x1; px++) {
+				int dx = px - x;
+				int distance = dx * dx + dy * dy;
+				if (distance > limit || (best >= 0 && distance >= best) || !contains(px, py)) continue;
+				best = distance;
+			}
+		}
+		return best;
+	}
+
+
+	// is the mask empty?
+	public boolean isEmpty() {
+		return fWidth == 0 || fHeight == 0;
+	}
+
+
+	// does this mask share at least one pixel with the given one?
+	public boolean intersects(AlphaMask other) {
+		int x0 = Math.max(fX, other.fX), x1 = Math.min(fX + fWidth, other.fX + other.fWidth);
+		int y0 = Math.max(fY, other.fY), y1 = Math.min(fY + fHeight, other.fY + other.fHeight);
+		for (int y = y0; y < y1; y++) {
+			for (int x = x0; x < x1; x++) {
+				if (contains(x, y) && other.contains(x, y)) return true;
+			}
+		}
+		return false;
+	}
+
+
+	// a mask covering every pixel of the given area
+	public static AlphaMask filled(int x, int y, int width, int height) {
+		AlphaMask mask = new AlphaMask(x, y, width, height);
+		for (int i = 0; i < mask.fBits.length; i++) {
+			mask.fBits[i] = -1;
+		}
+		return mask;
+	}
+
+
+	// a mask covering the pixels of the given area of which the center is inside the path
+	public static AlphaMask fill(FlattenedPath path, FillRule fillRule, int x, int y, int width, int height) {
+		AlphaMask mask = new AlphaMask(x, y, width, height);
+		for (int py = 0; py < mask.fHeight; py++) {
+			double[] spans = path.getSpans(y + py + 0.5, fillRule);
+			for (int i = 0; i + 1 < spans.length; i += 2) {
+
+				// the pixels of which the center lies in the span
+				int start = Math.max(0, (int)Math.ceil(spans[i] - 0.5) - x);
+				int end = Math.min(mask.fWidth, (int)Math.ceil(spans[i + 1] - 0.5) - x);
+				for (int px = start, bit = py * mask.fWidth + start; px < end; px++, bit++) {
+					mask.fBits[bit >>> 5] |= 1 << (bit & 31);
+				}
+			}
+		}
+		return mask;
+	}
+}
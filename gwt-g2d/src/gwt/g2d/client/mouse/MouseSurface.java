@@ -1,19 +1,24 @@
 package gwt.g2d.client.mouse;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Vector;
 
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationCallback;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationHandle;
+import com.google.gwt.canvas.dom.client.CanvasPixelArray;
 import com.google.gwt.canvas.dom.client.Context2d;
 import com.google.gwt.canvas.dom.client.Context2d.Composite;
 
 
 import gwt.g2d.client.graphics.ImageData;
 import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.client.graphics.SurfacePool;
+import gwt.g2d.client.graphics.shapes.FillRule;
+import gwt.g2d.client.graphics.shapes.FlattenedPath;
+import gwt.g2d.client.util.LongMap;
 import gwt.g2d.shared.Color;
 import gwt.g2d.shared.math.Rectangle;
 import gwt.g2d.shared.math.Vector2;
@@ -22,18 +27,71 @@ import gwt.g2d.shared.math.Vector2;
  * A mouse surface is tied to a normal surface, and registers different shapes that can be checked for
  * clicks or hovers form the mouse. This system works with any complex shape, and will detect hovers/clicks on
  * all non-transparent areas in the drawn shape or image.
+ * <p>
+ * Registrations are stacked in an explicit z-order: every registration has a z-index (0 unless given to
+ * {@link #startRegister(long, Rectangle, int)} or {@link #setZIndex(long, int)}), and registrations with a
+ * higher z-index are always on top. Within the same z-index, the last registered one is on top, and
+ * {@link #bringToFront(long)} and {@link #sendToBack(long)} move a registration without re-registering it.
+ * The grid cells and the list of registrations without bounds are kept in z-order, so moving a registration
+ * only re-files it there, and a hit test never has to sort.
+ * <p>
+ * In {@link PickMode#COLOR_BUFFER} mode, all registrations share a single hidden canvas, twice as high as the
+ * surface: every registration is drawn on its bottom half, and copied in its own flat color to the pick buffer
+ * in its top half. Each re-registration of an id gets a new color, so pixels
+ * left behind by its previous registration no longer resolve to it. Scenes where objects move should call
+ * {@link #clearPickBuffer()} before registering the new frame. Pixels that a registration only partly covers,
+ * such as anti-aliased edges, are made translucent in the pick buffer and treated as misses, and pick colors
+ * are spread apart, so that a color that is slightly off never resolves to another registration. The pick canvas only knows the drawing order, so z-indices and reordering
+ * have no effect in this mode.
+ * <p>
+ * In {@link PickMode#SURFACE_PER_ID} mode, the bounds of every registration are kept in a uniform grid, so only
+ * the registrations whose bounds contain the mouse are pixel-tested. The bounds can be given to
+ * {@link #startRegister(long, Rectangle)}, or inferred from the drawn pixels (see {@link #setInferBounds(boolean)}).
+ * Registrations without bounds are always tested. The canvas of a registration with known bounds is only as
+ * large as these bounds.
+ * <p>
+ * In {@link PickMode#ALPHA_MASK} mode, the coverage of every registration is read back once, when it is stopped,
+ * and kept as a bitmask. All mouse events are then resolved from these masks, without touching any canvas.
+ * Giving bounds to {@link #startRegister(long, Rectangle)} limits the size of this single readback.
+ * <p>
+ * All canvases are taken from a {@link SurfacePool}, and given back when an id is removed with
+ * {@link #unregister(long)}, so that screens on which objects come and go don't keep growing.
+ * <p>
+ * With {@link #setCoalesceMoves(boolean)}, mouse moves are only handled once per animation frame, at the last
+ * position. Clicks, mouse downs and ups, overs and outs first handle the pending move, so everything is still
+ * delivered in order.
+ * <p>
+ * Besides the mouse, the registrations can be queried for many points at once with {@link #findHits(int[], int[])},
+ * and for everything inside a rectangle or lasso with {@link #findIntersecting(Rectangle)} and
+ * {@link #findIntersecting(FlattenedPath, FillRule)}. Touches are resolved through the same batch queries, and
+ * every touch point gets its own over, out, move, drag and click (tap) events.
+ * <p>
+ * With {@link #setPickRadius(int)}, a point that doesn't hit anything exactly hits the nearest registration
+ * within the given number of pixels instead, so thin lines and small markers can be hovered and clicked
+ * without registering larger invisible hit areas. All handlers, and all queries for points, use this.
  * @author Karel
  *
  */
 public class MouseSurface {
 	
-	// handlers
-	private class Handlers {
-		public SurfaceClickHandler clickHandler;
-		public SurfaceMouseOutHandler mouseOutHandler;
-		public SurfaceMouseOverHandler mouseOverHandler;
-		public SurfaceMouseMoveHandler mouseMoveHandler;
-	};
+	// a single touch point
+	private static class Pointer {
+		public Vector2 startLoc;
+		public Registration start;
+		public Registration last;
+	}
+	
+	// pick colors use 64 levels per channel, 4 values apart and with the lowest 2 bits set to 2, so that a channel
+	// that is off by up to 2 doesn't decode to another color
+	private static final int PICK_LEVELS = 64;
+	private static final int PICK_STRIDE = 4;
+	private static final int PICK_CHECK = 2;
+	
+	// largest index of a pick color (the index 0 is reserved for 'no hit')
+	private static final int MAX_PICK_COLOR = PICK_LEVELS * PICK_LEVELS * PICK_LEVELS - 1;
+	
+	// largest area of the pick buffer read back at once to resolve several points
+	private static final int MAX_BATCH_READBACK = 512 * 512;
 	
 	// the surface we are tied to
 	Surface fOriginalSurface;
@@ -41,79 +99,262 @@ public class MouseSurface {
 	// original context
 	Context2d fOriginalContext;
 	
+	// surface whose draws are captured by the current registration, and its own context
+	Surface fTarget = null;
+	Context2d fTargetContext = null;
+	
 	// the temporary surface which is used to draw on during mouse registration
 	public Surface fTempSurface = null;
 	
-	// current id
-	Long fCurrentId = null;
+	// current registration
+	Registration fCurrent = null;
+	
+	// bounds given for the current registration, rounded to whole pixels and clipped to the surface (null if unknown)
+	Rectangle fCurrentBounds = null;
+	
+	// how the registrations are stored and resolved
+	PickMode fPickMode;
+	
+	// map of id to registration
+	LongMap<Registration> fRegistrations = new LongMap<Registration>();
+	
+	// pool from which all canvases are taken
+	SurfacePool fPool;
+	
+	// the canvas of which the top half is the pick buffer, on which every registration is drawn in its own flat
+	// color (color buffer mode) - the same canvas as the scratch surface
+	Surface fPickSurface = null;
+	
+	// the surface on which registrations are drawn before they are copied in flat color to the pick buffer, or
+	// before their coverage or bounds are read back
+	Surface fScratchSurface = null;
+	
+	// first row of the scratch surface on which registrations are drawn - below the pick buffer in color buffer mode
+	int fScratchY = 0;
 	
-	// map of id to handlers
-	Map<Long, Handlers> fIdToHandlers = new HashMap<Long, Handlers>();
+	// map of pick color index to registration (color buffer mode)
+	LongMap<Registration> fColorToRegistration = new LongMap<Registration>();
 	
-	// map of id to surface (used for checking against this specific collision)
-	Map<Long, Surface> fIdToSurface = new HashMap<Long, Surface>();
+	// the grid in which the registrations with bounds are stored
+	RegistrationGrid fGrid = null;
+	
+	// registrations of which the bounds are unknown, from top to bottom - these are always tested
+	List<Registration> fUnbounded = new ArrayList<Registration>();
+	
+	// stamps handed out to the registrations that were last moved to the front and to the back
+	long fFrontStamp = 0;
+	long fBackStamp = 0;
+	
+	// infer the bounds of registrations without bounds from the drawn pixels
+	boolean fInferBounds = false;
+	
+	// registrations that may contain the point being hit tested, reused for every hit test
+	List<Registration> fCandidates = new ArrayList<Registration>();
+	
+	// last area query, so that every registration is only reported once per query
+	int fQueryMark = 0;
+	
+	// distance in pixels within which a point still hits a registration it doesn't touch exactly
+	int fPickRadius = 0;
+	
+	// within the pick radius, take the nearest registration (or otherwise the topmost)
+	boolean fPickNearest = true;
+	
+	// touch points that are currently down, by their identifier
+	LongMap<Pointer> fPointers = new LongMap<Pointer>();
 	
 	// drag handlers
 	Vector<SurfaceMouseDragHandler> fDragHandlers = new Vector<SurfaceMouseDragHandler>();
 	
-	// the id where the drag begin
-	Long fStartDragId = null;
+	// the registration where the drag begin
+	Registration fStartDrag = null;
 	
 	// the position where the drag began
 	Vector2 fStartDragLoc = null;
 	
-	// list of id's in the order in which they were drawn - used to make sure that only the topmost object is actually triggered
-	List<Long> fIds = new LinkedList<Long>();
-	
-	// last color
-	Color fCurrentColor = new Color(200, 200, 0);
+	// last pick color handed out
+	int fCurrentColor = 0;
 	
-	// last id that was hovered by the mouse
-	Long fLastId = null;
+	// last registration that was hovered by the mouse
+	Registration fLast = null;
 	
 	// does this surface has move handlers - otherwise, don't perform the calculations
 	boolean fHasMoveHandlers = false;
 	
+	// only handle the last mouse move once per animation frame
+	boolean fCoalesceMoves = false;
+	
+	// the last mouse move that wasn't handled yet
+	boolean fHasPendingMove = false;
+	int fPendingMoveX;
+	int fPendingMoveY;
+	
+	// the animation frame in which the pending move will be handled
+	AnimationHandle fFrameRequest = null;
+	
+	// handles the pending move at the next animation frame
+	private final AnimationCallback fFrameCallback = new AnimationCallback() {
+		@Override
+		public void execute(double timestamp) {
+			fFrameRequest = null;
+			flushMouseMove();
+		}
+	};
+	
 	
 	// create a new mouse surface
 	public MouseSurface(Surface originalSurface) {
+		this(originalSurface, PickMode.SURFACE_PER_ID);
+	}
+	
+	
+	// create a new mouse surface that stores its registrations in the given way
+	public MouseSurface(Surface originalSurface, PickMode pickMode) {
 		fOriginalSurface = originalSurface;
 		fOriginalContext = fOriginalSurface.getContext();
+		fPickMode = pickMode;
+		fPool = new SurfacePool();
+	}
+	
+	
+	// how the registrations are stored and resolved
+	public PickMode getPickMode() {
+		return fPickMode;
+	}
+	
+	
+	/**
+	 * Gets the pool from which all canvases of this mouse surface are taken. Its counters show the number of
+	 * canvases in use and pooled, and the memory they hold.
+	 */
+	public SurfacePool getSurfacePool() {
+		return fPool;
+	}
+	
+	
+	/**
+	 * Take the canvases of this mouse surface from the given pool from now on, e.g. to share a single pixel
+	 * budget between several surfaces.
+	 */
+	public void setSurfacePool(SurfacePool pool) {
+		fPool = pool;
+	}
+	
+	
+	/**
+	 * Infer the bounds of registrations that were started without bounds, by scanning the drawn pixels once
+	 * when the registration stops. This costs a readback of the whole surface per registration, but lets
+	 * the mouse handlers skip the registration everywhere outside of its bounds, and, in
+	 * {@link PickMode#SURFACE_PER_ID} mode, keeps the canvas of the registration only as large as the drawn
+	 * area. Disabled by default.
+	 */
+	public void setInferBounds(boolean inferBounds) {
+		fInferBounds = inferBounds;
 	}
 	
 	
 	// start registering a new clickable surface
-	public void startRegister(Long id) {
+	public void startRegister(long id) {
+		startRegister(id, null);
+	}
+	
+	
+	/**
+	 * Start registering a new clickable surface, of which everything will be drawn inside the given bounds
+	 * (in surface coordinates). Only mouse events inside these bounds will be tested against this registration.
+	 * The registration is put on top of all others with the same z-index; an id that is registered for the
+	 * first time gets z-index 0.
+	 */
+	public void startRegister(long id, Rectangle bounds) {
+		startRegister(fOriginalSurface, id, bounds);
+	}
+	
+	
+	/**
+	 * Same as {@link #startRegister(long, Rectangle)}, but captures the draws made on the given surface instead
+	 * of the surface this mouse surface belongs to. The surface must be as large as the original one and lie
+	 * exactly on top of it, like the layers of a {@link gwt.g2d.client.graphics.LayeredSurface}.
+	 */
+	public void startRegister(Surface target, long id, Rectangle bounds) {
+		Registration registration = fRegistrations.get(id);
+		startRegister(target, id, bounds, registration == null ? 0 : registration.fZIndex);
+	}
 		
-		// set id
-		fCurrentId = id;
+	
+	/**
+	 * Same as {@link #startRegister(long, Rectangle)}, but puts the registration in the given z-index: it
+	 * will be on top of all registrations with a lower z-index, and below all registrations with a higher one.
+	 */
+	public void startRegister(long id, Rectangle bounds, int zIndex) {
+		startRegister(fOriginalSurface, id, bounds, zIndex);
+	}
+	
+	
+	/**
+	 * Same as {@link #startRegister(long, Rectangle, int)}, but captures the draws made on the given surface,
+	 * as in {@link #startRegister(Surface, long, Rectangle)}.
+	 */
+	public void startRegister(Surface target, long id, Rectangle bounds, int zIndex) {
+		
+		// find the registration, or create a new one - either way, it goes on top of its z-index
+		Registration registration = fRegistrations.get(id);
+		if (registration == null) {
+			registration = new Registration(id, zIndex);
+			fRegistrations.put(id, registration);
+		}
+		else {
+			unindex(registration);
+			registration.fZIndex = zIndex;
+		}
+		registration.fStamp = ++fFrontStamp;
+		
+		// set the current registration
+		fCurrent = registration;
+		fCurrentBounds = bounds == null ? null : toPixelArea(bounds);
 		
 		// surface
 		Surface surface = null;
 		
-		// doesn't exist yet - create a new canvas
-		if (!fIdToSurface.containsKey(id)) {
-			surface = new Surface(fOriginalSurface.getCoordinateSpaceWidth(), fOriginalSurface.getCoordinateSpaceHeight());
-			fIdToSurface.put(id,  surface);
-			fIdToHandlers.put(id, new Handlers());
-			fIds.add(id);
+		// color buffer or alpha mask - everything is drawn on the shared scratch surface
+		if (fPickMode == PickMode.COLOR_BUFFER || fPickMode == PickMode.ALPHA_MASK) {
+			surface = getScratchSurface();
 		}
 		
-		// exist - get the existing canvas
+		// surface per id - take the existing canvas, or create a new one
 		else {
+		
+			// a canvas as big as the bounds, with the origin moved to the top-left corner of the bounds
+			if (fCurrentBounds != null) {
+				surface = getSurface(registration, (int)fCurrentBounds.width, (int)fCurrentBounds.height);
+				surface.getContext().setTransform(1, 0, 0, 1, -fCurrentBounds.x, -fCurrentBounds.y);
+			}
 			
-			// get the surface
-			surface = fIdToSurface.get(id);
-			surface.clear();
+			// draw on the scratch surface first, and copy the part that was drawn on to a canvas of its own later
+			else if (fInferBounds) {
+				surface = getScratchSurface();
+			}
 			
-			// find the position of this id, and put it at the end of our draw list
-			fIds.remove(id);
-			fIds.add(id);
+			// no bounds - a canvas as big as the original surface
+			else {
+				surface = getSurface(registration, fOriginalSurface.getCoordinateSpaceWidth(), fOriginalSurface.getCoordinateSpaceHeight());
+			}
 		}
 		
 		// start drawing on the temp surface now
 		fTempSurface = surface;
-		fOriginalSurface.replaceContext(fTempSurface.getContext());
+		fTarget = target;
+		fTargetContext = target.getContext();
+		
+		// color buffer - draw below the pick buffer, and never on it
+		if (fPickMode == PickMode.COLOR_BUFFER) {
+			Context2d context = fTempSurface.getContext();
+			context.save();
+			clipToScratch(context);
+			context.setTransform(1, 0, 0, 1, 0, fScratchY);
+			fTarget.replaceContext(context, 0, -fScratchY);
+		}
+		else if (fTempSurface == fScratchSurface || fCurrentBounds == null) fTarget.replaceContext(fTempSurface.getContext());
+		else fTarget.replaceContext(fTempSurface.getContext(), fCurrentBounds.x, fCurrentBounds.y);
 	}
 	
 	
@@ -124,44 +365,411 @@ public class MouseSurface {
 		if (fTempSurface == null) return;
 		
 		// switch back to the original context
-		fOriginalSurface.replaceContext(fOriginalContext);
-		if (draw) fOriginalSurface.drawImage(fTempSurface.getCanvasElement(), 0, 0, fTempSurface.getCoordinateSpaceWidth(), fTempSurface.getCoordinateSpaceHeight());
+		fTarget.replaceContext(fTargetContext);
+		if (fPickMode == PickMode.COLOR_BUFFER) fTempSurface.getContext().restore();
+		
+		// surface per id, without bounds - only keep the part of the scratch surface that was drawn on
+		if (fPickMode == PickMode.SURFACE_PER_ID && fTempSurface == fScratchSurface) {
+			fCurrentBounds = inferBounds(fScratchSurface);
+			fTempSurface = getSurface(fCurrent, (int)fCurrentBounds.width, (int)fCurrentBounds.height);
+			if (fCurrentBounds.width > 0) fTempSurface.getContext().drawImage(fScratchSurface.getCanvasElement(),
+					fCurrentBounds.x, fCurrentBounds.y, fCurrentBounds.width, fCurrentBounds.height, 0, 0, fCurrentBounds.width, fCurrentBounds.height);
+			clearScratch();
+		}
+		
+		// copy only the area that can contain something
+		if (draw) {
+			Rectangle area = fCurrentBounds;
+			if (area == null) area = new Rectangle(0, 0, fOriginalSurface.getCoordinateSpaceWidth(), fOriginalSurface.getCoordinateSpaceHeight());
+			double sourceX = fTempSurface == fScratchSurface ? area.x : 0;
+			double sourceY = fTempSurface == fScratchSurface ? area.y + fScratchY : 0;
+			if (area.width > 0 && area.height > 0) fTarget.drawImage(fTempSurface.getCanvasElement(), sourceX, sourceY, area.width, area.height, area.x, area.y, area.width, area.height);
+		}
+		
+		// copy the silhouette of what was drawn to the pick buffer, and make the scratch surface ready for the next one
+		if (fPickMode == PickMode.COLOR_BUFFER) {
+			drawPickColor(fCurrent);
+			clearScratch();
+		}
+		
+		// take a snapshot of the coverage, and make the scratch surface ready for the next one
+		else if (fPickMode == PickMode.ALPHA_MASK) {
+			fCurrent.fMask = createMask(fTempSurface, fCurrentBounds);
+			index(fCurrent, fCurrent.fMask.getBounds());
+			clearScratch();
+		}
+		
+		// store the bounds, so that we only test this registration when the mouse is inside
+		else {
+			index(fCurrent, fCurrentBounds);
+		}
 		
 		// done
-		fCurrentId = null;
+		fCurrent = null;
+		fCurrentBounds = null;
 		fTempSurface = null;
+		fTarget = null;
+		fTargetContext = null;
 		
 
 	}
 	
 	
-	// next color
-	private void generateNextColor() {
-		fCurrentColor = new Color(fCurrentColor.red, fCurrentColor.green, fCurrentColor.blue+1);
-		if (fCurrentColor.blue > 255) {
-			fCurrentColor = new Color(fCurrentColor.red, fCurrentColor.green+1, 0);
-			if (fCurrentColor.green > 255) {
-				fCurrentColor = new Color(fCurrentColor.red+1, 0, 0);
-				if (fCurrentColor.red > 255) {
-					fCurrentColor = new Color(0, 0, 0); // reset back to zero
-				}
+	/**
+	 * Clears the pick buffer, so that no registration is hit until it is registered again. Only used in
+	 * {@link PickMode#COLOR_BUFFER} mode - call this before re-registering a scene in which objects have moved.
+	 */
+	public void clearPickBuffer() {
+		if (fPickSurface != null) clearSurface(fPickSurface);
+		clearPickColors();
+	}
+	
+	
+	// forget the pick colors of all registrations
+	private void clearPickColors() {
+		for (int slot = 0; slot < fColorToRegistration.capacity(); slot++) {
+			if (fColorToRegistration.isOccupied(slot)) fColorToRegistration.valueAt(slot).fColor = 0;
+		}
+		fColorToRegistration.clear();
+	}
+	
+	
+	// get the shared scratch surface, creating it on first use - in color buffer mode, it is twice as high, with
+	// the pick buffer on top, so that a single extra canvas is used
+	private Surface getScratchSurface() {
+		int width = fOriginalSurface.getCoordinateSpaceWidth();
+		int height = fOriginalSurface.getCoordinateSpaceHeight();
+		fScratchY = fPickMode == PickMode.COLOR_BUFFER ? height : 0;
+		if (fScratchSurface == null) {
+			fScratchSurface = fPool.acquire(width, fScratchY + height);
+		}
+		
+		// the original surface was resized - the pick buffer is no longer valid
+		else if (fScratchSurface.getCoordinateSpaceWidth() != width || fScratchSurface.getCoordinateSpaceHeight() != fScratchY + height) {
+			fPool.release(fScratchSurface);
+			fScratchSurface = fPool.acquire(width, fScratchY + height);
+			clearPickColors();
+		}
+		if (fPickMode == PickMode.COLOR_BUFFER) fPickSurface = fScratchSurface;
+		return fScratchSurface;
+	}
+	
+	
+	// restrict drawing on the given context of the scratch surface to the part below the pick buffer
+	private void clipToScratch(Context2d context) {
+		context.setTransform(1, 0, 0, 1, 0, 0);
+		context.beginPath();
+		context.rect(0, fScratchY, fScratchSurface.getCoordinateSpaceWidth(), fScratchSurface.getCoordinateSpaceHeight() - fScratchY);
+		context.clip();
+	}
+	
+	
+	// clear the part of the scratch surface on which registrations are drawn, keeping the pick buffer
+	private void clearScratch() {
+		Context2d context = fScratchSurface.getContext();
+		context.save();
+		context.setTransform(1, 0, 0, 1, 0, 0);
+		context.clearRect(0, fScratchY, fScratchSurface.getCoordinateSpaceWidth(), fScratchSurface.getCoordinateSpaceHeight() - fScratchY);
+		context.restore();
+	}
+	
+	
+	// draw everything on the scratch surface in the pick color of the given registration, on top of the pick buffer
+	private void drawPickColor(Registration registration) {
+		
+		// a new color for every registration, so that the previous pixels of this id are no longer matched
+		int color = generateNextColor();
+		if (registration.fColor != 0) fColorToRegistration.remove(registration.fColor);
+		registration.fColor = color;
+		fColorToRegistration.put(color, registration);
+		
+		// replace all drawn pixels by the flat color, keeping their coverage
+		Context2d context = fScratchSurface.getContext();
+		int width = fScratchSurface.getCoordinateSpaceWidth(), height = fScratchY;
+		context.save();
+		clipToScratch(context);
+		context.setGlobalAlpha(1.0);
+		context.setGlobalCompositeOperation(Composite.SOURCE_IN);
+		context.setFillStyle(toPickColor(color).getColorCode());
+		context.fillRect(0, fScratchY, width, height);
+		context.restore();
+		
+		// and put it on top of everything registered before - partly covered pixels are cut out of the pixels
+		// below first, so that they stay translucent instead of blending into a color of another registration
+		context.save();
+		context.setTransform(1, 0, 0, 1, 0, 0);
+		context.setGlobalCompositeOperation(Composite.DESTINATION_OUT);
+		context.drawImage(fScratchSurface.getCanvasElement(), 0, fScratchY, width, height, 0, 0, width, height);
+		context.setGlobalCompositeOperation(Composite.SOURCE_OVER);
+		context.drawImage(fScratchSurface.getCanvasElement(), 0, fScratchY, width, height, 0, 0, width, height);
+		context.restore();
+	}
+		
+	
+	// the pick color with the given index
+	private static Color toPickColor(int index) {
+		int red = index / (PICK_LEVELS * PICK_LEVELS), green = index / PICK_LEVELS % PICK_LEVELS, blue = index % PICK_LEVELS;
+		return new Color(red * PICK_STRIDE + PICK_CHECK, green * PICK_STRIDE + PICK_CHECK, blue * PICK_STRIDE + PICK_CHECK);
+	}
+	
+	
+	// read back the coverage of everything drawn on the surface inside the given area (or the whole surface)
+	private static AlphaMask createMask(Surface surface, Rectangle area) {
+		if (area == null) area = new Rectangle(0, 0, surface.getCoordinateSpaceWidth(), surface.getCoordinateSpaceHeight());
+		
+		// the bounds are completely outside of the surface - nothing can be hit
+		int x = (int)area.x, y = (int)area.y, width = (int)area.width, height = (int)area.height;
+		if (width <= 0 || height <= 0) return new AlphaMask(null, x, y, 0, 0);
+		return new AlphaMask(surface.getImageData(x, y, width, height).getData(), x, y, width, height);
+	}
+	
+	
+	// round the given bounds outwards to whole pixels, and clip them to the original surface
+	private Rectangle toPixelArea(Rectangle bounds) {
+		int width = fOriginalSurface.getCoordinateSpaceWidth();
+		int height = fOriginalSurface.getCoordinateSpaceHeight();
+		int x0 = Math.max(0, (int)Math.floor(bounds.x));
+		int y0 = Math.max(0, (int)Math.floor(bounds.y));
+		int x1 = Math.min(width, (int)Math.ceil(bounds.x + bounds.width));
+		int y1 = Math.min(height, (int)Math.ceil(bounds.y + bounds.height));
+		return new Rectangle(x0, y0, Math.max(0, x1 - x0), Math.max(0, y1 - y0));
+	}
+	
+	
+	// get the canvas of the given registration, cleared and of the given size (at least a single pixel)
+	private Surface getSurface(Registration registration, int width, int height) {
+		width = Math.max(1, width);
+		height = Math.max(1, height);
+		Surface surface = registration.fSurface;
+		
+		// a canvas of a different size - swap it for one of the right size
+		if (surface != null && (surface.getCoordinateSpaceWidth() != width || surface.getCoordinateSpaceHeight() != height)) {
+			fPool.release(surface);
+			surface = null;
+		}
+		if (surface == null) {
+			surface = fPool.acquire(width, height);
+			registration.fSurface = surface;
+		}
+		else {
+			clearSurface(surface);
+		}
+		surface.getContext().setTransform(1, 0, 0, 1, 0, 0);
+		return surface;
+	}
+	
+	
+	// store the bounds of a registration, so that it can be found by the hit tests
+	private void index(Registration registration, Rectangle bounds) {
+		registration.fBounds = bounds;
+		registration.fIndexed = true;
+		if (bounds == null) {
+			Registration.addInOrder(fUnbounded, registration);
+			return;
+		}
+		if (fGrid != null) fGrid.add(registration);
+	}
+	
+	
+	// forget the bounds of a registration
+	private void unindex(Registration registration) {
+		if (!registration.fIndexed) return;
+		registration.fIndexed = false;
+		
+		if (registration.fBounds == null) {
+			Registration.removeInOrder(fUnbounded, registration);
+		}
+		else if (fGrid != null) {
+			fGrid.remove(registration);
+		}
+		registration.fBounds = null;
+	}
+	
+	
+	// move a registration in the z-order, re-filing it so that the grid and the unbounded list stay in order
+	private void reorder(Registration registration, int zIndex, long stamp) {
+		boolean indexed = registration.fIndexed;
+		Rectangle bounds = registration.fBounds;
+		unindex(registration);
+		registration.fZIndex = zIndex;
+		registration.fStamp = stamp;
+		if (indexed) index(registration, bounds);
+	}
+	
+	
+	// get the grid, (re)building it if the original surface was resized
+	private RegistrationGrid getGrid() {
+		int width = fOriginalSurface.getCoordinateSpaceWidth();
+		int height = fOriginalSurface.getCoordinateSpaceHeight();
+		if (fGrid != null && fGrid.covers(width, height)) return fGrid;
+		if (fGrid == null) fGrid = new RegistrationGrid(width, height);
+		else fGrid.resize(width, height);
+		for (int slot = 0; slot < fRegistrations.capacity(); slot++) {
+			if (!fRegistrations.isOccupied(slot)) continue;
+			Registration registration = fRegistrations.valueAt(slot);
+			if (registration.fIndexed && registration.fBounds != null) fGrid.add(registration);
+		}
+		return fGrid;
+	}
+	
+	
+	// bounding rectangle of all non-transparent pixels on the surface (empty if nothing was drawn)
+	private static Rectangle inferBounds(Surface surface) {
+		int width = surface.getCoordinateSpaceWidth();
+		int height = surface.getCoordinateSpaceHeight();
+		CanvasPixelArray data = surface.getImageData(0, 0, width, height).getData();
+		int minX = width, minY = height, maxX = -1, maxY = -1;
+		for (int y = 0, i = 3; y < height; y++) {
+			for (int x = 0; x < width; x++, i += 4) {
+				if (data.get(i) == 0) continue;
+				if (x < minX) minX = x;
+				if (x > maxX) maxX = x;
+				if (y < minY) minY = y;
+				maxY = y;
 			}
 		}
+		if (maxX < 0) return new Rectangle(0, 0, 0, 0);
+		return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+	}
+	
+	
+	// clear a surface completely, regardless of the transformation that was left on it
+	private static void clearSurface(Surface surface) {
+		Context2d context = surface.getContext();
+		context.save();
+		context.setTransform(1, 0, 0, 1, 0, 0);
+		context.clearRect(0, 0, surface.getCoordinateSpaceWidth(), surface.getCoordinateSpaceHeight());
+		context.restore();
+	}
+	
+	
+	// next color
+	private int generateNextColor() {
+		
+		// skip the colors that are still in use once we wrapped around
+		do {
+			fCurrentColor++;
+			if (fCurrentColor > MAX_PICK_COLOR) fCurrentColor = 1; // reset back to the first color
+		} while (fColorToRegistration.containsKey(fCurrentColor) && fColorToRegistration.size() < MAX_PICK_COLOR);
+		return fCurrentColor;
+	}
+	
+	
+	/**
+	 * Remove a registration completely: its handlers will no longer be called, and its canvas is given back
+	 * to the pool.
+	 */
+	public void unregister(long id) {
+		
+		// still drawing it - stop first
+		if (fCurrent != null && fCurrent.fId == id) stopRegister(false);
+		
+		// forget everything about it
+		Registration registration = fRegistrations.remove(id);
+		if (registration == null) return;
+		unindex(registration);
+		if (registration.fColor != 0) fColorToRegistration.remove(registration.fColor);
+		if (registration.fSurface != null) fPool.release(registration.fSurface);
+		registration.fSurface = null;
+		registration.fMask = null;
+		
+		// don't send any further events to it
+		if (fLast == registration) fLast = null;
+		if (fStartDrag == registration) fStartDrag = null;
+		for (int slot = 0; slot < fPointers.capacity(); slot++) {
+			if (!fPointers.isOccupied(slot)) continue;
+			Pointer pointer = fPointers.valueAt(slot);
+			if (pointer.start == registration) pointer.start = null;
+			if (pointer.last == registration) pointer.last = null;
+		}
+	}
+	
+	
+	/**
+	 * Is the given id registered?
+	 */
+	public boolean isRegistered(long id) {
+		return fRegistrations.containsKey(id);
+	}
+	
+	
+	/**
+	 * Put a registration on top of all others with the same z-index.
+	 */
+	public void bringToFront(long id) {
+		Registration registration = fRegistrations.get(id);
+		if (registration != null) reorder(registration, registration.fZIndex, ++fFrontStamp);
+	}
+	
+	
+	/**
+	 * Put a registration below all others with the same z-index.
+	 */
+	public void sendToBack(long id) {
+		Registration registration = fRegistrations.get(id);
+		if (registration != null) reorder(registration, registration.fZIndex, --fBackStamp);
+	}
+	
+	
+	/**
+	 * Move a registration to the given z-index, on top of the registrations that already have it.
+	 */
+	public void setZIndex(long id, int zIndex) {
+		Registration registration = fRegistrations.get(id);
+		if (registration == null) return;
+		reorder(registration, zIndex, ++fFrontStamp);
+	}
+	
+	
+	/**
+	 * Gets the z-index of a registration, or 0 if the id isn't registered.
+	 */
+	public int getZIndex(long id) {
+		Registration registration = fRegistrations.get(id);
+		return registration == null ? 0 : registration.fZIndex;
+	}
+	
+	
+	/**
+	 * Coalesce mouse moves, so that hit testing and the move, over, out and drag handlers run at most once
+	 * per animation frame, for the last position of the mouse. Disabled by default.
+	 */
+	public void setCoalesceMoves(boolean coalesceMoves) {
+		fCoalesceMoves = coalesceMoves;
+		if (!coalesceMoves) flushMouseMove();
+	}
+	
+	
+	/**
+	 * Handle the mouse move that is waiting for the next animation frame right away, if there is one.
+	 */
+	public void flushMouseMove() {
+		if (fFrameRequest != null) {
+			fFrameRequest.cancel();
+			fFrameRequest = null;
+		}
+		if (!fHasPendingMove) return;
+		fHasPendingMove = false;
+		handleMouseMove(fPendingMoveX, fPendingMoveY);
+	}
+	
+	
+	// number of registered id's
+	public int getRegistrationCount() {
+		return fRegistrations.size();
 	}
 	
 	
 	// active?
 	public boolean isActive() {
-		return fCurrentId != null;
+		return fCurrent != null;
 	}
 	
 	
 	// add click handler
 	public void addClickHandler(SurfaceClickHandler handler) {
-		if (fCurrentId == null) return;
-		Handlers handlers = fIdToHandlers.get(fCurrentId);
-		if (handlers == null) return;
-		handlers.clickHandler = handler;
+		if (fCurrent == null) return;
+		fCurrent.fClickHandler = handler;
 	}
 	
 	
@@ -172,59 +780,387 @@ public class MouseSurface {
 	
 	// add mouse over handler
 	public void addMouseOverHandler(SurfaceMouseOverHandler handler) {
-		if (fCurrentId == null) return;
-		Handlers handlers = fIdToHandlers.get(fCurrentId);
-		if (handlers == null) return;
-		handlers.mouseOverHandler = handler;
+		if (fCurrent == null) return;
+		fCurrent.fMouseOverHandler = handler;
 		fHasMoveHandlers = true;
 	}
 	
 	
 	// add mouse out handler
 	public void addMouseOutHandler(SurfaceMouseOutHandler handler) {
-		if (fCurrentId == null) return;
-		Handlers handlers = fIdToHandlers.get(fCurrentId);
-		if (handlers == null) return;
-		handlers.mouseOutHandler = handler;
+		if (fCurrent == null) return;
+		fCurrent.fMouseOutHandler = handler;
 		fHasMoveHandlers = true;
 	}
 	
 	
 	// add mouse move handler
 	public void addMouseMoveHandler(SurfaceMouseMoveHandler handler) {
-		if (fCurrentId == null) return;
-		Handlers handlers = fIdToHandlers.get(fCurrentId);
-		if (handlers == null) return;
-		handlers.mouseMoveHandler = handler;
+		if (fCurrent == null) return;
+		fCurrent.fMouseMoveHandler = handler;
 		fHasMoveHandlers = true;
 	}
 	
 	
 	/**
-	 * We clicked on the canvas - check where we clicked exactly.
+	 * Let points that don't hit any registration exactly hit a registration within the given number of pixels
+	 * instead (0, the default, only allows exact hits). The area around the point is read back only once per
+	 * candidate - in {@link PickMode#ALPHA_MASK} mode it isn't read back at all.
 	 */
-	public void onClick(int x, int y) {
+	public void setPickRadius(int radius) {
+		fPickRadius = Math.max(0, radius);
+	}
+	
+	
+	// distance within which a point still hits a registration
+	public int getPickRadius() {
+		return fPickRadius;
+	}
+	
+	
+	/**
+	 * Within the pick radius, take the registration with the nearest pixel (the default), or the topmost
+	 * registration that has any pixel within the radius. Exact hits always go to the topmost registration.
+	 */
+	public void setPickNearest(boolean nearest) {
+		fPickNearest = nearest;
+	}
+	
+	
+	/**
+	 * Find the topmost registration that has a non-transparent pixel at the given location, or, if there is
+	 * none, the registration that is picked within the pick radius.
+	 * @return the id of the registration, or null if nothing was hit.
+	 */
+	public Long findHit(int x, int y) {
+		return idOf(findRegistration(x, y));
+	}
 		
-		// get all different canvases and check for a collision
-		ListIterator<Long> it = fIds.listIterator(fIds.size());
-		while (it.hasPrevious()) {
-			Long id = it.previous();
-			Surface surface = fIdToSurface.get(id);
-			
-			// get the color at the given location
-			ImageData data = surface.getImageData(x, y, 1, 1);
-			double alpha = data.getAlpha(0, 0);
-			
-			// hit is not transparent - we got a hit!
-			if (alpha > Double.MIN_VALUE) {
-				
-				// look up color
-				Handlers handlers = fIdToHandlers.get(id);
-				if (handlers != null && handlers.clickHandler != null) handlers.clickHandler.onClick(new Vector2(x, y), id);
-				return;
-
+	
+	// find the registration hit at the given location, exactly or within the pick radius (null if none)
+	private Registration findRegistration(int x, int y) {
+		Registration registration = findExact(x, y);
+		if (registration == null && fPickRadius > 0) registration = findNearby(x, y);
+		return registration;
+	}
+	
+	
+	// find the topmost registration that has a non-transparent pixel at the given location (null if none)
+	private Registration findExact(int x, int y) {
+		
+		// a single pixel read, and look up the registration by its color
+		if (fPickMode == PickMode.COLOR_BUFFER) {
+			if (fPickSurface == null) return null;
+			return pickAt(fPickSurface.getImageData(x, y, 1, 1), 0, 0);
+		}
+		
+		// only the registrations of which the bounds contain the point can be hit - the cell is in z-order already
+		List<Registration> candidates = fCandidates;
+		candidates.clear();
+		List<Registration> cell = getGrid().getCell(x, y);
+		if (cell != null) {
+			for (int i = 0; i < cell.size(); i++) {
+				Registration registration = cell.get(i);
+				if (registration.boundsContain(x, y)) candidates.add(registration);
+			}
+		}
+		
+		// merge the candidates with the unbounded registrations, and check them for a collision from top to bottom
+		List<Registration> unbounded = fUnbounded;
+		int i = 0, j = 0;
+		while (i < candidates.size() || j < unbounded.size()) {
+			Registration registration;
+			if (j == unbounded.size() || (i < candidates.size() && Registration.TOP_FIRST.compare(candidates.get(i), unbounded.get(j)) < 0)) {
+				registration = candidates.get(i++);
+			}
+			else {
+				registration = unbounded.get(j++);
+			}
+			if (isHitAt(registration, x, y)) return hit(registration);
+		}
+		candidates.clear();
+		return null;
+	}
+	
+	
+	// does the registration have a non-transparent pixel at the given location?
+	private boolean isHitAt(Registration registration, int x, int y) {
+		
+		// the mask is all we need
+		if (fPickMode == PickMode.ALPHA_MASK) return registration.fMask.contains(x, y);
+		
+		Surface surface = registration.fSurface;
+		Rectangle bounds = registration.fBounds;
+		
+		// get the color at the given location (the canvas starts at the top-left corner of the bounds)
+		ImageData data = bounds == null ? surface.getImageData(x, y, 1, 1) : surface.getImageData(x - bounds.x, y - bounds.y, 1, 1);
+		double alpha = data.getAlpha(0, 0);
+		
+		// hit is not transparent - we got a hit!
+		return alpha > Double.MIN_VALUE;
+	}
+	
+	
+	// done hit testing - don't hold on to the candidates
+	private Registration hit(Registration registration) {
+		fCandidates.clear();
+		return registration;
+	}
+	
+	
+	// find the registration picked within the pick radius around the given location (null if none)
+	private Registration findNearby(int x, int y) {
+		int radius = fPickRadius;
+		Rectangle area = toPixelArea(new Rectangle(x - radius, y - radius, 2 * radius + 1, 2 * radius + 1));
+		if (area.width <= 0 || area.height <= 0) return null;
+		Registration best = null;
+		int bestDistance = Integer.MAX_VALUE;
+		
+		// color buffer - a single readback of the area, looking at every pick color within the radius
+		if (fPickMode == PickMode.COLOR_BUFFER) {
+			if (fPickSurface == null) return null;
+			ImageData data = fPickSurface.getImageData(area.x, area.y, area.width, area.height);
+			for (int py = 0; py < area.height; py++) {
+				for (int px = 0; px < area.width; px++) {
+					int dx = (int)area.x + px - x, dy = (int)area.y + py - y;
+					int distance = dx * dx + dy * dy;
+					if (distance > radius * radius) continue;
+					Registration registration = pickAt(data, px, py);
+					if (registration != null && isPicked(registration, distance, best, bestDistance)) {
+						best = registration;
+						bestDistance = distance;
+					}
+				}
+			}
+			return best;
+		}
+		
+		// only the registrations of which the bounds overlap the area can be near enough
+		List<Registration> candidates = new ArrayList<Registration>(fUnbounded);
+		getGrid().collect(area, ++fQueryMark, candidates);
+		for (int i = 0; i < candidates.size(); i++) {
+			Registration registration = candidates.get(i);
+			int distance = distanceSquared(registration, x, y, area);
+			if (distance >= 0 && isPicked(registration, distance, best, bestDistance)) {
+				best = registration;
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+	
+	
+	// is the registration at the given squared distance picked before the best one so far?
+	private boolean isPicked(Registration registration, int distance, Registration best, int bestDistance) {
+		if (best == null) return true;
+		if (best == registration) return distance < bestDistance;
+		if (fPickNearest && distance != bestDistance) return distance < bestDistance;
+		return Registration.TOP_FIRST.compare(registration, best) < 0;
+	}
+	
+	
+	// squared distance from the given location to the nearest pixel of the registration within the pick radius (-1 if none)
+	private int distanceSquared(Registration registration, int x, int y, Rectangle area) {
+		
+		// the mask is all we need
+		if (fPickMode == PickMode.ALPHA_MASK) return registration.fMask.distanceSquared(x, y, fPickRadius);
+		
+		// read back the part of the canvas that overlaps the area (the canvas starts at the top-left corner of the bounds)
+		Rectangle bounds = registration.fBounds;
+		int x0 = (int)area.x, y0 = (int)area.y, x1 = (int)(area.x + area.width), y1 = (int)(area.y + area.height);
+		int offsetX = 0, offsetY = 0;
+		if (bounds != null) {
+			offsetX = (int)bounds.x;
+			offsetY = (int)bounds.y;
+			x0 = Math.max(x0, offsetX);
+			y0 = Math.max(y0, offsetY);
+			x1 = Math.min(x1, offsetX + (int)bounds.width);
+			y1 = Math.min(y1, offsetY + (int)bounds.height);
+		}
+		if (x1 <= x0 || y1 <= y0) return -1;
+		ImageData data = registration.fSurface.getImageData(x0 - offsetX, y0 - offsetY, x1 - x0, y1 - y0);
+		return new AlphaMask(data.getData(), x0, y0, x1 - x0, y1 - y0).distanceSquared(x, y, fPickRadius);
+	}
+	
+	
+	// the boxed id of a registration, or null
+	private static Long idOf(Registration registration) {
+		return registration == null ? null : registration.getBoxedId();
+	}
+	
+	
+	// the registration of which the pick color is at the given location of data read back from the pick buffer -
+	// translucent pixels were only partly covered, and colors that aren't pick colors were blended: both are misses
+	private Registration pickAt(ImageData data, int x, int y) {
+		com.google.gwt.canvas.dom.client.ImageData pixels = data.getGWTImageData();
+		if (pixels.getAlphaAt(x, y) < 255) return null;
+		int red = pixels.getRedAt(x, y), green = pixels.getGreenAt(x, y), blue = pixels.getBlueAt(x, y);
+		if (red % PICK_STRIDE != PICK_CHECK || green % PICK_STRIDE != PICK_CHECK || blue % PICK_STRIDE != PICK_CHECK) return null;
+		int index = ((red / PICK_STRIDE) * PICK_LEVELS + green / PICK_STRIDE) * PICK_LEVELS + blue / PICK_STRIDE;
+		return fColorToRegistration.get(index);
+	}
+	
+	
+	/**
+	 * Find the topmost registration at each of the given locations, e.g. all active touch points. In
+	 * {@link PickMode#COLOR_BUFFER} mode, the pick buffer is only read back once for all of them.
+	 * @return for every location, the id of the registration, or null if nothing was hit.
+	 */
+	public Long[] findHits(int[] x, int[] y) {
+		Registration[] registrations = findRegistrations(x, y);
+		Long[] ids = new Long[registrations.length];
+		for (int i = 0; i < registrations.length; i++) {
+			ids[i] = idOf(registrations[i]);
+		}
+		return ids;
+	}
+	
+	
+	// find the topmost registration at each of the given locations (null where nothing was hit)
+	private Registration[] findRegistrations(int[] x, int[] y) {
+		Registration[] hits = new Registration[x.length];
+		
+		// color buffer - read back the area around all points at once, if it isn't too large
+		if (fPickMode == PickMode.COLOR_BUFFER && x.length > 1) {
+			if (fPickSurface == null) return hits;
+			int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+			for (int i = 0; i < x.length; i++) {
+				minX = Math.min(minX, x[i]);
+				minY = Math.min(minY, y[i]);
+				maxX = Math.max(maxX, x[i]);
+				maxY = Math.max(maxY, y[i]);
+			}
+			Rectangle area = toPixelArea(new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1));
+			if (area.width * area.height <= MAX_BATCH_READBACK) {
+				if (area.width <= 0 || area.height <= 0) return hits;
+				ImageData data = fPickSurface.getImageData(area.x, area.y, area.width, area.height);
+				for (int i = 0; i < x.length; i++) {
+					int px = x[i] - (int)area.x, py = y[i] - (int)area.y;
+					if (px >= 0 && py >= 0 && px < area.width && py < area.height) hits[i] = pickAt(data, px, py);
+					if (hits[i] == null && fPickRadius > 0) hits[i] = findNearby(x[i], y[i]);
+				}
+				return hits;
+			}
+		}
+		
+		// look up every point in the grid
+		for (int i = 0; i < x.length; i++) {
+			hits[i] = findRegistration(x[i], y[i]);
+		}
+		return hits;
+	}
+	
+	
+	/**
+	 * Find every registration that has a non-transparent pixel inside the given rectangle (in surface
+	 * coordinates), e.g. for a rubber-band selection. Only the registrations of which the bounds overlap the
+	 * rectangle are read back; in {@link PickMode#ALPHA_MASK} mode nothing is read back, and in
+	 * {@link PickMode#COLOR_BUFFER} mode the rectangle is read back once from the pick buffer, so only the
+	 * registrations that aren't completely covered by others are found.
+	 * @return the ids of the registrations, from top to bottom.
+	 */
+	public List<Long> findIntersecting(Rectangle area) {
+		Rectangle pixels = toPixelArea(area);
+		return findIntersecting(AlphaMask.filled((int)pixels.x, (int)pixels.y, (int)pixels.width, (int)pixels.height));
+	}
+	
+	
+	/**
+	 * Same as {@link #findIntersecting(FlattenedPath, FillRule)}, with the non-zero winding rule.
+	 */
+	public List<Long> findIntersecting(FlattenedPath lasso) {
+		return findIntersecting(lasso, FillRule.NONZERO);
+	}
+	
+	
+	/**
+	 * Find every registration that has a non-transparent pixel inside the area of the given path (in surface
+	 * coordinates), e.g. for a lasso selection. A pixel is inside the path if its center is. Otherwise the
+	 * same as {@link #findIntersecting(Rectangle)}.
+	 * @return the ids of the registrations, from top to bottom.
+	 */
+	public List<Long> findIntersecting(FlattenedPath lasso, FillRule fillRule) {
+		if (lasso.isEmpty()) return new ArrayList<Long>();
+		Rectangle pixels = toPixelArea(lasso.getBounds());
+		return findIntersecting(AlphaMask.fill(lasso, fillRule, (int)pixels.x, (int)pixels.y, (int)pixels.width, (int)pixels.height));
+	}
+	
+	
+	// find every registration that has a non-transparent pixel inside the given mask, from top to bottom
+	private List<Long> findIntersecting(AlphaMask query) {
+		List<Long> ids = new ArrayList<Long>();
+		if (query.isEmpty()) return ids;
+		int mark = ++fQueryMark;
+		List<Registration> found = new ArrayList<Registration>();
+		
+		// color buffer - collect the registrations of all pick colors inside the mask, in a single readback
+		if (fPickMode == PickMode.COLOR_BUFFER) {
+			if (fPickSurface == null) return ids;
+			ImageData data = fPickSurface.getImageData(query.fX, query.fY, query.fWidth, query.fHeight);
+			for (int y = 0; y < query.fHeight; y++) {
+				for (int x = 0; x < query.fWidth; x++) {
+					if (!query.contains(query.fX + x, query.fY + y)) continue;
+					Registration registration = pickAt(data, x, y);
+					if (registration == null || registration.fQueryMark == mark) continue;
+					registration.fQueryMark = mark;
+					found.add(registration);
+				}
+			}
+		}
+		
+		// only the registrations of which the bounds overlap the mask can intersect it
+		else {
+			List<Registration> candidates = new ArrayList<Registration>(fUnbounded);
+			getGrid().collect(query.getBounds(), mark, candidates);
+			for (int i = 0; i < candidates.size(); i++) {
+				Registration registration = candidates.get(i);
+				if (intersects(registration, query)) found.add(registration);
 			}
 		}
+		
+		// top to bottom
+		Collections.sort(found, Registration.TOP_FIRST);
+		for (int i = 0; i < found.size(); i++) {
+			ids.add(found.get(i).getBoxedId());
+		}
+		return ids;
+	}
+	
+	
+	// does the registration have a non-transparent pixel inside the given mask?
+	private boolean intersects(Registration registration, AlphaMask query) {
+		
+		// the mask is all we need
+		if (fPickMode == PickMode.ALPHA_MASK) return registration.fMask.intersects(query);
+		
+		// read back the part of the canvas that overlaps the mask (the canvas starts at the top-left corner of the bounds)
+		Rectangle bounds = registration.fBounds;
+		int x0 = query.fX, y0 = query.fY, x1 = query.fX + query.fWidth, y1 = query.fY + query.fHeight;
+		int offsetX = 0, offsetY = 0;
+		if (bounds != null) {
+			offsetX = (int)bounds.x;
+			offsetY = (int)bounds.y;
+			x0 = Math.max(x0, offsetX);
+			y0 = Math.max(y0, offsetY);
+			x1 = Math.min(x1, offsetX + (int)bounds.width);
+			y1 = Math.min(y1, offsetY + (int)bounds.height);
+		}
+		if (x1 <= x0 || y1 <= y0) return false;
+		ImageData data = registration.fSurface.getImageData(x0 - offsetX, y0 - offsetY, x1 - x0, y1 - y0);
+		return new AlphaMask(data.getData(), x0, y0, x1 - x0, y1 - y0).intersects(query);
+	}
+				
+
+	/**
+	 * We clicked on the canvas - check where we clicked exactly.
+	 */
+	public void onClick(int x, int y) {
+		flushMouseMove();
+		Registration registration = findRegistration(x, y);
+		if (registration == null) return;
+		
+		// let the handler know
+		if (registration.fClickHandler != null) registration.fClickHandler.onClick(new Vector2(x, y), registration.getBoxedId());
 	}
 	
 	
@@ -234,15 +1170,16 @@ public class MouseSurface {
 	public void onMouseDown(int x, int y) {
 		
 		// perform one single onMouseMove call to detect where we are
+		flushMouseMove();
 		fStartDragLoc = new Vector2(x, y);
-		onMouseMove(x, y);
+		handleMouseMove(x, y);
 		
-		// set the id matched by onMouseMove
-		fStartDragId = fLastId;
+		// set the registration matched by onMouseMove
+		fStartDrag = fLast;
 		
 		// let all handlers know
 		for (SurfaceMouseDragHandler handler : fDragHandlers) {
-			handler.onDragStart(fStartDragLoc, fStartDragId);
+			handler.onDragStart(fStartDragLoc, idOf(fStartDrag));
 		}
 	}
 	
@@ -251,14 +1188,15 @@ public class MouseSurface {
 	 * We lifted up our mouse on the canvas - check where we clicked exactly.
 	 */
 	public void onMouseUp(int x, int y) {
+		flushMouseMove();
 		
 		// let all handlers know
 		for (SurfaceMouseDragHandler handler : fDragHandlers) {
-			handler.onDragStop(fStartDragLoc, new Vector2(x, y), fStartDragId, fLastId); 
+			handler.onDragStop(fStartDragLoc, new Vector2(x, y), idOf(fStartDrag), idOf(fLast));
 		}
 		
 		// disable the onMouseMove calls again by setting fStartDragLoc to null
-		fStartDragId = null;
+		fStartDrag = null;
 		fStartDragLoc = null;
 	}
 	
@@ -267,43 +1205,30 @@ public class MouseSurface {
 	 * We're entering the canvas - check if we entered immediately on an object.
 	 */
 	public void onMouseOver(int x, int y) {
+		flushMouseMove();
 		if (!fHasMoveHandlers) return;
 		
-		// get all different canvases and check for a collision
-		ListIterator<Long> it = fIds.listIterator(fIds.size());
-		while (it.hasPrevious()) {
-			Long id = it.previous();
-			Surface surface = fIdToSurface.get(id);
-			
-			// get the color at the given location
-			ImageData data = surface.getImageData(x, y, 1, 1);
-			double alpha = data.getAlpha(0, 0);
+		Registration registration = findRegistration(x, y);
+		if (registration == null) return;
 			
-			// hit is not transparent - we got a hit!
-			if (alpha > Double.MIN_VALUE) {
-				
-				// we entered on an object, signal it
-				Handlers handlers = fIdToHandlers.get(id);
-				if (handlers != null && handlers.mouseOverHandler != null) handlers.mouseOverHandler.onMouseOver(new Vector2(x, y), id);
-				fLastId = id;
-				return;
-			}
-		}
+		// we entered on an object, signal it
+		if (registration.fMouseOverHandler != null) registration.fMouseOverHandler.onMouseOver(new Vector2(x, y), registration.getBoxedId());
+		fLast = registration;
 	}
 	
 	/**
 	 * We left the surface - make sure we send the last selected object a message.
 	 */
 	public void onMouseOut(int x, int y) {
+		flushMouseMove();
 		if (!fHasMoveHandlers) return;
 		
 		// no entity selected when we left the surface - don't do anything
-		if (fLastId == null) return;
+		if (fLast == null) return;
 		
-		// look up color
-		Handlers handlers = fIdToHandlers.get(fLastId);
-		if (handlers != null && handlers.mouseOutHandler != null) handlers.mouseOutHandler.onMouseOut(new Vector2(x, y));
-		fLastId = null;
+		// let the handler know
+		if (fLast.fMouseOutHandler != null) fLast.fMouseOutHandler.onMouseOut(new Vector2(x, y));
+		fLast = null;
 	}
 	
 	/**
@@ -312,60 +1237,155 @@ public class MouseSurface {
 	public void onMouseMove(int x, int y) {
 		if (!fHasMoveHandlers && fStartDragLoc == null) return;
 		
-		// get all different canvases and check for a collision
-		boolean hit = false;
-		ListIterator<Long> it = fIds.listIterator(fIds.size());
-		while (it.hasPrevious()) {
-			Long id = it.previous();
-			Surface surface = fIdToSurface.get(id);
+		// wait for the next animation frame - only the last position counts
+		if (fCoalesceMoves) {
+			fPendingMoveX = x;
+			fPendingMoveY = y;
+			fHasPendingMove = true;
+			if (fFrameRequest == null) fFrameRequest = AnimationScheduler.get().requestAnimationFrame(fFrameCallback);
+			return;
+		}
+		handleMouseMove(x, y);
+	}
+	
+	
+	// find the object under the mouse, and send the move, over, out and drag events
+	private void handleMouseMove(int x, int y) {
+		if (!fHasMoveHandlers && fStartDragLoc == null) return;
+		
+		// find the topmost object under the mouse
+		Registration registration = findRegistration(x, y);
+		boolean hit = registration != null;
+		if (hit) {
 			
-			// get the color at the given location
-			ImageData data = surface.getImageData(x, y, 1, 1);
-			double alpha = data.getAlpha(0, 0);
+			// we were hovering over another object and now we're hovering over nothing or a new object - send a mouse out event
+			if (fLast != null && fLast != registration) {
+				if (fLast.fMouseOutHandler != null) fLast.fMouseOutHandler.onMouseOut(new Vector2(x, y));
+				fLast = null;
 			
-			// hit is not transparent - we got a hit!
-			if (alpha > Double.MIN_VALUE) {
-				hit = true;
+			}
 				
-				// we were hovering over another id and now we're hovering over nothing or a new id - send a mouse out event
-				if (fLastId != null && fLastId != id) {
-					Handlers handlers = fIdToHandlers.get(fLastId);
-					if (handlers != null && handlers.mouseOutHandler != null) handlers.mouseOutHandler.onMouseOut(new Vector2(x, y));
-					fLastId = null;
+			// we enter a new object
+			if (fLast == null) {
+				fLast = registration;
+				if (fLast.fMouseOverHandler != null) fLast.fMouseOverHandler.onMouseOver(new Vector2(x, y), fLast.getBoxedId());
+			}
 					
-				}
-				
-				// we enter a new object
-				if (fLastId == null) {
-					fLastId = id;
-					Handlers handlers = fIdToHandlers.get(fLastId);
-					if (handlers != null && handlers.mouseOverHandler != null) handlers.mouseOverHandler.onMouseOver(new Vector2(x, y), fLastId);
-				}
-				
-				// we were already on this object, but we moved the mouse
-				else {
-					Handlers handlers = fIdToHandlers.get(fLastId);
-					if (handlers != null && handlers.mouseMoveHandler != null) handlers.mouseMoveHandler.onMouseMove(new Vector2(x, y), fLastId);
-				}
-				
-				// only process one hit
-				break;
+			// we were already on this object, but we moved the mouse
+			else {
+				if (fLast.fMouseMoveHandler != null) fLast.fMouseMoveHandler.onMouseMove(new Vector2(x, y), fLast.getBoxedId());
 			}
 		}
 		
 		// update drag
 		if (fStartDragLoc != null) {
 			for (SurfaceMouseDragHandler handler : fDragHandlers) {
-				handler.onDragChange(fStartDragLoc, new Vector2(x, y), fStartDragId, fLastId); 
+				handler.onDragChange(fStartDragLoc, new Vector2(x, y), idOf(fStartDrag), idOf(fLast));
 			}
 		}
 		
 		// we got here - this means there was no hit
 		// if we were above an object in the previous cycle, let it know we left
 		if (!hit) {
-			Handlers handlers = fIdToHandlers.get(fLastId);
-			if (handlers != null && handlers.mouseOutHandler != null) handlers.mouseOutHandler.onMouseOut(new Vector2(x, y));
-			fLastId = null;
+			if (fLast != null && fLast.fMouseOutHandler != null) fLast.fMouseOutHandler.onMouseOut(new Vector2(x, y));
+			fLast = null;
+		}
+	}
+	
+	
+	/**
+	 * Touches started on the canvas - every touch is a pointer of its own, which enters the object under it
+	 * and starts a drag.
+	 * @param identifiers the identifiers of the new touches, to recognize them in later touch events.
+	 * @return true if any of the touches started on a registered object.
+	 */
+	public boolean onTouchStart(int[] identifiers, int[] x, int[] y) {
+		flushMouseMove();
+		Registration[] hits = findRegistrations(x, y);
+		boolean hit = false;
+		for (int i = 0; i < identifiers.length; i++) {
+			Pointer pointer = new Pointer();
+			pointer.startLoc = new Vector2(x[i], y[i]);
+			pointer.start = hits[i];
+			pointer.last = hits[i];
+			fPointers.put(identifiers[i], pointer);
+			
+			// we touched an object, signal it
+			if (hits[i] != null) {
+				hit = true;
+				if (hits[i].fMouseOverHandler != null) hits[i].fMouseOverHandler.onMouseOver(pointer.startLoc, hits[i].getBoxedId());
+			}
+			for (SurfaceMouseDragHandler handler : fDragHandlers) {
+				handler.onDragStart(pointer.startLoc, idOf(pointer.start));
+			}
+		}
+		return hit;
+	}
+	
+	
+	/**
+	 * Touches moved over the canvas - send the move, over, out and drag events of every touch.
+	 */
+	public void onTouchMove(int[] identifiers, int[] x, int[] y) {
+		Registration[] hits = findRegistrations(x, y);
+		for (int i = 0; i < identifiers.length; i++) {
+			Pointer pointer = fPointers.get(identifiers[i]);
+			if (pointer == null) continue;
+			Vector2 location = new Vector2(x[i], y[i]);
+			
+			// we moved from one object to another (or to nothing)
+			if (hits[i] != pointer.last) {
+				if (pointer.last != null && pointer.last.fMouseOutHandler != null) pointer.last.fMouseOutHandler.onMouseOut(location);
+				pointer.last = hits[i];
+				if (hits[i] != null && hits[i].fMouseOverHandler != null) hits[i].fMouseOverHandler.onMouseOver(location, hits[i].getBoxedId());
+			}
+			
+			// we moved over the same object
+			else if (hits[i] != null && hits[i].fMouseMoveHandler != null) {
+				hits[i].fMouseMoveHandler.onMouseMove(location, hits[i].getBoxedId());
+			}
+			for (SurfaceMouseDragHandler handler : fDragHandlers) {
+				handler.onDragChange(pointer.startLoc, location, idOf(pointer.start), idOf(pointer.last));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Touches were lifted from the canvas - stop their drags, and click the object if the touch started and
+	 * ended on it.
+	 */
+	public void onTouchEnd(int[] identifiers, int[] x, int[] y) {
+		Registration[] hits = findRegistrations(x, y);
+		for (int i = 0; i < identifiers.length; i++) {
+			Pointer pointer = fPointers.remove(identifiers[i]);
+			if (pointer == null) continue;
+			Vector2 location = new Vector2(x[i], y[i]);
+			for (SurfaceMouseDragHandler handler : fDragHandlers) {
+				handler.onDragStop(pointer.startLoc, location, idOf(pointer.start), idOf(hits[i]));
+			}
+			
+			// a tap
+			if (hits[i] != null && hits[i] == pointer.start && hits[i].fClickHandler != null) hits[i].fClickHandler.onClick(location, hits[i].getBoxedId());
+			
+			// the finger left the object
+			if (pointer.last != null && pointer.last.fMouseOutHandler != null) pointer.last.fMouseOutHandler.onMouseOut(location);
+		}
+	}
+	
+	
+	/**
+	 * Touches were cancelled - stop their drags, without clicking anything.
+	 */
+	public void onTouchCancel(int[] identifiers, int[] x, int[] y) {
+		for (int i = 0; i < identifiers.length; i++) {
+			Pointer pointer = fPointers.remove(identifiers[i]);
+			if (pointer == null) continue;
+			Vector2 location = new Vector2(x[i], y[i]);
+			for (SurfaceMouseDragHandler handler : fDragHandlers) {
+				handler.onDragStop(pointer.startLoc, location, idOf(pointer.start), null);
+			}
+			if (pointer.last != null && pointer.last.fMouseOutHandler != null) pointer.last.fMouseOutHandler.onMouseOut(location);
 		}
 	}
 }
@@ -0,0 +1,29 @@
+package gwt.g2d.client.mouse;
+
+/**
+ * Determines how a {@link MouseSurface} stores the coverage of its registrations and how it resolves
+ * which registration is under the mouse.
+ */
+public enum PickMode {
+
+	/**
+	 * Every registration gets its own canvas, the size of the original surface. A hit is resolved by
+	 * reading a single pixel from each canvas, top-down, until a non-transparent pixel is found.
+	 */
+	SURFACE_PER_ID,
+
+	/**
+	 * All registrations are drawn into one shared hidden canvas, each with its own unique flat color.
+	 * A hit is resolved with a single pixel read and a color to id lookup, regardless of the number of
+	 * registrations.
+	 */
+	COLOR_BUFFER,
+
+	/**
+	 * All registrations are drawn into one shared hidden canvas, from which the coverage of each registration
+	 * is read back once when it is stopped, and stored as a packed bitmask of 1 bit per pixel, cropped to its
+	 * bounds. A hit is resolved without any readback, by looking up the bits of the registrations whose bounds
+	 * contain the point.
+	 */
+	ALPHA_MASK
+}
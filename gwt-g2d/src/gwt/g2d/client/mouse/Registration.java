@@ -0,0 +1,109 @@
+package gwt.g2d.client.mouse;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.shared.math.Rectangle;
+
+/**
+ * Everything a {@link MouseSurface} knows about a single registered id: its handlers, what it looks like in
+ * the current pick mode, and its place in the z-order.
+ * <p>
+ * The z-order of a registration is given by its z-index first, and its stamp second: registrations with a
+ * higher z-index are always on top of those with a lower one, and within the same z-index, the one with the
+ * highest stamp is on top. Moving a registration to the front or the back of its z-index hands out a new
+ * stamp, and re-files it in the lists that are kept from top to bottom.
+ */
+class Registration {
+
+	// sorts registrations from top to bottom
+	public static final Comparator<Registration> TOP_FIRST = new Comparator<Registration>() {
+		@Override
+		public int compare(Registration a, Registration b) {
+			if (a.fZIndex != b.fZIndex) return a.fZIndex > b.fZIndex ? -1 : 1;
+			if (a.fStamp != b.fStamp) return a.fStamp > b.fStamp ? -1 : 1;
+			return 0;
+		}
+	};
+
+	// the registered id
+	long fId;
+
+	// boxed id, handed to the handlers
+	Long fBoxedId;
+
+	// handlers
+	SurfaceClickHandler fClickHandler;
+	SurfaceMouseOutHandler fMouseOutHandler;
+	SurfaceMouseOverHandler fMouseOverHandler;
+	SurfaceMouseMoveHandler fMouseMoveHandler;
+
+	// layer of the registration - higher layers are on top
+	int fZIndex;
+
+	// place within the layer - the higher, the closer to the top
+	long fStamp;
+
+	// bounds in surface coordinates, or null if unknown
+	Rectangle fBounds;
+
+	// is the registration stored in the grid or the unbounded list?
+	boolean fIndexed = false;
+
+	// canvas of the registration (surface per id mode)
+	Surface fSurface;
+
+	// coverage of the registration (alpha mask mode)
+	AlphaMask fMask;
+
+	// index of the pick color of the registration, 0 if none (color buffer mode)
+	int fColor = 0;
+
+	// last area query that found this registration, so that it is only reported once
+	int fQueryMark = 0;
+
+
+	// create a registration for the given id
+	public Registration(long id, int zIndex) {
+		fId = id;
+		fZIndex = zIndex;
+	}
+
+
+	// add a registration to a list that is kept from top to bottom
+	public static void addInOrder(List<Registration> list, Registration registration) {
+		int index = Collections.binarySearch(list, registration, TOP_FIRST);
+		list.add(index < 0 ? -index - 1 : index, registration);
+	}
+
+
+	// remove a registration from a list that is kept from top to bottom (its z-order must not have changed since it was added)
+	public static void removeInOrder(List<Registration> list, Registration registration) {
+		int index = Collections.binarySearch(list, registration, TOP_FIRST);
+		if (index >= 0) list.remove(index);
+	}
+
+
+	// the id, boxed only once
+	public Long getBoxedId() {
+		if (fBoxedId == null) fBoxedId = Long.valueOf(fId);
+		return fBoxedId;
+	}
+
+
+	// does the registration contain the given point in its bounds (always true for unknown bounds)?
+	public boolean boundsContain(int x, int y) {
+		if (fBounds == null) return true;
+		return x >= fBounds.x && y >= fBounds.y && x < fBounds.x + fBounds.width && y < fBounds.y + fBounds.height;
+	}
+
+
+	// do the bounds of the registration overlap the given area (always true for unknown bounds)?
+	public boolean boundsOverlap(Rectangle area) {
+		if (fBounds == null) return true;
+		return fBounds.x < area.x + area.width && area.x < fBounds.x + fBounds.width
+				&& fBounds.y < area.y + area.height && area.y < fBounds.y + fBounds.height;
+	}
+}
@@ -0,0 +1,144 @@
+package gwt.g2d.client.mouse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gwt.g2d.shared.math.Rectangle;
+
+/**
+ * A uniform grid over the coordinate space of a surface, in which every registration of a {@link MouseSurface}
+ * is stored in all cells that its bounding rectangle overlaps. This allows a hit test to only look at the
+ * registrations near the mouse, instead of at all of them.
+ */
+class RegistrationGrid {
+
+	// default size of a single cell, in pixels
+	public static final int DEFAULT_CELL_SIZE = 64;
+
+	// size of a single cell
+	int fCellSize;
+
+	// number of columns and rows
+	int fColumns;
+	int fRows;
+
+	// the registrations stored in every cell, from top to bottom (created lazily)
+	List<List<Registration>> fCells = new ArrayList<List<Registration>>();
+
+
+	// create a new grid covering the given area
+	public RegistrationGrid(int width, int height) {
+		this(width, height, DEFAULT_CELL_SIZE);
+	}
+
+
+	// create a new grid covering the given area, with the given cell size
+	public RegistrationGrid(int width, int height, int cellSize) {
+		fCellSize = cellSize;
+		resize(width, height);
+	}
+
+
+	// does the grid cover exactly the given area?
+	public boolean covers(int width, int height) {
+		return fColumns == columnsFor(width) && fRows == columnsFor(height);
+	}
+
+
+	// resize the grid - this removes everything that was stored in it
+	public void resize(int width, int height) {
+		fColumns = columnsFor(width);
+		fRows = columnsFor(height);
+		fCells.clear();
+		for (int i = fColumns * fRows; i > 0; i--) {
+			fCells.add(null);
+		}
+	}
+
+
+	// remove everything from the grid
+	public void clear() {
+		for (int i = 0; i < fCells.size(); i++) {
+			fCells.set(i, null);
+		}
+	}
+
+
+	// add a registration in all cells overlapped by its bounds
+	public void add(Registration registration) {
+		Rectangle bounds = registration.fBounds;
+		int x0 = cellX(bounds.x), x1 = cellX(bounds.x + bounds.width);
+		int y0 = cellY(bounds.y), y1 = cellY(bounds.y + bounds.height);
+		for (int y = y0; y <= y1; y++) {
+			for (int x = x0; x <= x1; x++) {
+				int index = y * fColumns + x;
+				List<Registration> cell = fCells.get(index);
+				if (cell == null) {
+					cell = new ArrayList<Registration>(4);
+					fCells.set(index, cell);
+				}
+				Registration.addInOrder(cell, registration);
+			}
+		}
+	}
+
+
+	// remove a registration from all cells overlapped by its bounds (the same bounds as it was added with)
+	public void remove(Registration registration) {
+		Rectangle bounds = registration.fBounds;
+		int x0 = cellX(bounds.x), x1 = cellX(bounds.x + bounds.width);
+		int y0 = cellY(bounds.y), y1 = cellY(bounds.y + bounds.height);
+		for (int y = y0; y <= y1; y++) {
+			for (int x = x0; x <= x1; x++) {
+				List<Registration> cell = fCells.get(y * fColumns + x);
+				if (cell != null) Registration.removeInOrder(cell, registration);
+			}
+		}
+	}
+
+
+	// get the registrations stored in the cell containing the given point (may be null) - only their bounds can contain the point
+	public List<Registration> getCell(int x, int y) {
+		if (x < 0 || y < 0) return null;
+		int cx = x / fCellSize, cy = y / fCellSize;
+		if (cx >= fColumns || cy >= fRows) return null;
+		return fCells.get(cy * fColumns + cx);
+	}
+
+
+	// add the registrations of which the bounds overlap the given area to the list, each only once
+	public void collect(Rectangle area, int mark, List<Registration> result) {
+		int x0 = cellX(area.x), x1 = cellX(area.x + area.width);
+		int y0 = cellY(area.y), y1 = cellY(area.y + area.height);
+		for (int y = y0; y <= y1; y++) {
+			for (int x = x0; x <= x1; x++) {
+				List<Registration> cell = fCells.get(y * fColumns + x);
+				if (cell == null) continue;
+				for (int i = 0; i < cell.size(); i++) {
+					Registration registration = cell.get(i);
+					if (registration.fQueryMark == mark || !registration.boundsOverlap(area)) continue;
+					registration.fQueryMark = mark;
+					result.add(registration);
+				}
+			}
+		}
+	}
+
+
+	// number of cells needed to cover the given length
+	private int columnsFor(int length) {
+		return Math.max(1, (length + fCellSize - 1) / fCellSize);
+	}
+
+
+	// column of the given x-coordinate, clamped to the grid
+	private int cellX(double x) {
+		return Math.max(0, Math.min(fColumns - 1, (int)Math.floor(x / fCellSize)));
+	}
+
+
+	// row of the given y-coordinate, clamped to the grid
+	private int cellY(double y) {
+		return Math.max(0, Math.min(fRows - 1, (int)Math.floor(y / fCellSize)));
+	}
+}
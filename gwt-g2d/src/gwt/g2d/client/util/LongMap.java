@@ -0,0 +1,220 @@
+package gwt.g2d.client.util;
+
+/**
+ * A hash map from primitive long keys to values, with open addressing and linear probing. Unlike a
+ * {@code HashMap<Long, V>}, looking up, adding and removing a key doesn't box it, which matters when the
+ * same keys are looked up many times per frame.
+ * <p>
+ * The entries can be iterated through their slots: every slot from 0 to {@link #capacity()} that
+ * {@link #isOccupied(int) is occupied} holds a key and a value. Adding or removing entries while iterating
+ * moves entries to other slots.
+ */
+public class LongMap<V> {
+
+	// default number of slots
+	private static final int DEFAULT_CAPACITY = 16;
+
+	// keys and values of every slot
+	long[] fKeys;
+	V[] fValues;
+
+	// which slots are in use
+	boolean[] fUsed;
+
+	// number of entries
+	int fSize = 0;
+
+
+	/**
+	 * Create an empty map.
+	 */
+	public LongMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+
+	/**
+	 * Create an empty map with room for about the given number of entries.
+	 */
+	public LongMap(int expectedSize) {
+		int capacity = 4;
+		while (capacity * 3 < expectedSize * 4) capacity <<= 1;
+		allocate(capacity);
+	}
+
+
+	/**
+	 * Gets the value of the given key, or null if the key isn't in the map.
+	 */
+	public V get(long key) {
+		int slot = find(key);
+		return slot < 0 ? null : fValues[slot];
+	}
+
+
+	/**
+	 * Does the map contain the given key?
+	 */
+	public boolean containsKey(long key) {
+		return find(key) >= 0;
+	}
+
+
+	/**
+	 * Sets the value of the given key.
+	 * @return the previous value of the key, or null if the key wasn't in the map.
+	 */
+	public V put(long key, V value) {
+		int mask = fKeys.length - 1;
+		int slot = hash(key) & mask;
+		while (fUsed[slot]) {
+			if (fKeys[slot] == key) {
+				V old = fValues[slot];
+				fValues[slot] = value;
+				return old;
+			}
+			slot = (slot + 1) & mask;
+		}
+		fUsed[slot] = true;
+		fKeys[slot] = key;
+		fValues[slot] = value;
+		fSize++;
+
+		// keep the map at most three quarters full
+		if (fSize * 4 > fKeys.length * 3) rehash(fKeys.length << 1);
+		return null;
+	}
+
+
+	/**
+	 * Removes the given key from the map.
+	 * @return the value of the key, or null if the key wasn't in the map.
+	 */
+	public V remove(long key) {
+		int slot = find(key);
+		if (slot < 0) return null;
+		V old = fValues[slot];
+		fSize--;
+
+		// shift the following entries of the probe sequence back, so that no tombstones are needed
+		int mask = fKeys.length - 1;
+		int free = slot;
+		int next = (slot + 1) & mask;
+		while (fUsed[next]) {
+			int home = hash(fKeys[next]) & mask;
+
+			// the entry can move to the free slot if its home isn't between the free slot and itself
+			if (((next - home) & mask) >= ((next - free) & mask)) {
+				fKeys[free] = fKeys[next];
+				fValues[free] = fValues[next];
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		fUsed[free] = false;
+		fValues[free] = null;
+		return old;
+	}
+
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		for (int i = 0; i < fKeys.length; i++) {
+			fUsed[i] = false;
+			fValues[i] = null;
+		}
+		fSize = 0;
+	}
+
+
+	/**
+	 * Gets the number of entries.
+	 */
+	public int size() {
+		return fSize;
+	}
+
+
+	/**
+	 * Is the map empty?
+	 */
+	public boolean isEmpty() {
+		return fSize == 0;
+	}
+
+
+	/**
+	 * Gets the number of slots, for iterating over the entries.
+	 */
+	public int capacity() {
+		return fKeys.length;
+	}
+
+
+	/**
+	 * Does the given slot hold an entry?
+	 */
+	public boolean isOccupied(int slot) {
+		return fUsed[slot];
+	}
+
+
+	/**
+	 * Gets the key of the entry in the given slot.
+	 */
+	public long keyAt(int slot) {
+		return fKeys[slot];
+	}
+
+
+	/**
+	 * Gets the value of the entry in the given slot.
+	 */
+	public V valueAt(int slot) {
+		return fValues[slot];
+	}
+
+
+	// slot of the given key, or -1 if the key isn't in the map
+	private int find(long key) {
+		int mask = fKeys.length - 1;
+		int slot = hash(key) & mask;
+		while (fUsed[slot]) {
+			if (fKeys[slot] == key) return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+
+	// move all entries to a table with the given number of slots
+	private void rehash(int capacity) {
+		long[] keys = fKeys;
+		V[] values = fValues;
+		boolean[] used = fUsed;
+		allocate(capacity);
+		fSize = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (used[i]) put(keys[i], values[i]);
+		}
+	}
+
+
+	// create empty tables with the given number of slots (a power of two)
+	@SuppressWarnings("unchecked")
+	private void allocate(int capacity) {
+		fKeys = new long[capacity];
+		fValues = (V[])new Object[capacity];
+		fUsed = new boolean[capacity];
+	}
+
+
+	// spread the bits of the key, so that sequential keys don't end up in neighbouring slots only
+	private static int hash(long key) {
+		int h = (int)(key ^ (key >>> 32));
+		h ^= (h >>> 20) ^ (h >>> 12);
+		return h ^ (h >>> 7) ^ (h >>> 4);
+	}
+}
@@ -0,0 +1,111 @@
+package gwt.g2d.client.graphics;
+
+import gwt.g2d.client.math.Matrix;
+import gwt.g2d.shared.math.Vector2;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the copy of the transformation that {@link Surface} keeps in its
+ * {@link ContextState}, and the conversion of points with it.
+ */
+public class ContextStateTest extends TestCase {
+	private static final double EPSILON = 1e-9;
+
+	public void testNewStateHasIdentity() {
+		ContextState state = new ContextState();
+		assertTrue(state.isTransformKnown());
+		assertTransform(state, 1, 0, 0, 1, 0, 0);
+	}
+
+	public void testTranslateThenScaleAndRotate() {
+		// the same calls as Surface.translate, scale and rotate
+		ContextState state = new ContextState();
+		state.transform(1, 0, 0, 1, 10, 20);
+		state.transform(2, 0, 0, 3, 0, 0);
+		double angle = Math.PI / 2;
+		state.transform(Math.cos(angle), Math.sin(angle), -Math.sin(angle),
+				Math.cos(angle), 0, 0);
+		assertTransform(state, 0, 3, -2, 0, 10, 20);
+	}
+
+	public void testTransformIsAppliedAfterCurrentOne() {
+		ContextState state = new ContextState();
+		state.transform(1, 0, 0, 1, 5, 5);
+		state.transform(2, 0, 0, 2, 1, 1);
+		assertTransform(state, 2, 0, 0, 2, 6, 6);
+	}
+
+	public void testSetTransformReplacesCurrentOne() {
+		ContextState state = new ContextState();
+		state.transform(3, 0, 0, 3, 7, 7);
+		state.setTransform(1, 2, 3, 4, 5, 6);
+		assertTransform(state, 1, 2, 3, 4, 5, 6);
+	}
+
+	public void testPointConversion() {
+		ContextState state = new ContextState();
+		state.transform(1, 0, 0, 1, 10, 20);
+		state.transform(2, 0, 0, 2, 0, 0);
+
+		Vector2 point = new Vector2(3, 4);
+		state.toSurfaceSpace(point);
+		assertEquals(16, point.getX(), EPSILON);
+		assertEquals(28, point.getY(), EPSILON);
+		state.toUserSpace(point);
+		assertEquals(3, point.getX(), EPSILON);
+		assertEquals(4, point.getY(), EPSILON);
+	}
+
+	public void testInverseTransform() {
+		ContextState state = new ContextState();
+		state.setTransform(0, 3, -2, 0, 10, 20);
+		Matrix inverse = new Matrix();
+		state.getInverseTransform(inverse);
+
+		// the inverse maps a converted point back
+		Vector2 point = new Vector2(7, -5);
+		state.toSurfaceSpace(point);
+		double x = inverse.getM11() * point.getX() + inverse.getM21() * point.getY()
+				+ inverse.getDx();
+		double y = inverse.getM12() * point.getX() + inverse.getM22() * point.getY()
+				+ inverse.getDy();
+		assertEquals(7, x, EPSILON);
+		assertEquals(-5, y, EPSILON);
+	}
+
+	public void testSingularTransformHasNoInverse() {
+		ContextState state = new ContextState();
+		state.setTransform(1, 2, 2, 4, 0, 0);
+		Vector2 point = new Vector2(1, 1);
+		state.toUserSpace(point);
+		assertTrue(Double.isNaN(point.getX()));
+		assertTrue(Double.isNaN(point.getY()));
+		Matrix inverse = new Matrix();
+		state.getInverseTransform(inverse);
+		assertTrue(Double.isNaN(inverse.getM11()));
+	}
+
+	public void testInvalidateForgetsTransform() {
+		ContextState state = new ContextState();
+		state.invalidate();
+		assertFalse(state.isTransformKnown());
+		Vector2 point = new Vector2(1, 1);
+		state.toSurfaceSpace(point);
+		assertTrue(Double.isNaN(point.getX()));
+
+		ContextState copy = new ContextState();
+		copy.copyTransformFrom(state);
+		assertFalse(copy.isTransformKnown());
+	}
+
+	private static void assertTransform(ContextState state, double m11, double m12,
+			double m21, double m22, double dx, double dy) {
+		assertEquals(m11, state.m11, EPSILON);
+		assertEquals(m12, state.m12, EPSILON);
+		assertEquals(m21, state.m21, EPSILON);
+		assertEquals(m22, state.m22, EPSILON);
+		assertEquals(dx, state.dx, EPSILON);
+		assertEquals(dy, state.dy, EPSILON);
+	}
+}
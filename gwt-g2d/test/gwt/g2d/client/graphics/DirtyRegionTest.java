@@ -0,0 +1,116 @@
+package gwt.g2d.client.graphics;
+
+import gwt.g2d.shared.math.Rectangle;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the merging of the rectangles of a {@link DirtyRegion}.
+ */
+public class DirtyRegionTest extends TestCase {
+	private static final double EPSILON = 1e-9;
+	private static final int WIDTH = 1000, HEIGHT = 1000;
+
+	public void testRectangleIsGrownToPixels() {
+		DirtyRegion region = new DirtyRegion();
+		assertTrue(region.isEmpty());
+		region.add(10.5, 10.5, 20.2, 20.2, WIDTH, HEIGHT);
+		assertFalse(region.isEmpty());
+		assertEquals(1, region.getCount());
+		assertRectangle(region, 0, 9, 9, 22, 22);
+	}
+
+	public void testRectangleIsClippedToSurface() {
+		DirtyRegion region = new DirtyRegion();
+		region.add(-5, -5, 3, 3, WIDTH, HEIGHT);
+		assertRectangle(region, 0, 0, 0, 4, 4);
+
+		region.clear();
+		region.add(WIDTH + 10, 0, WIDTH + 20, 10, WIDTH, HEIGHT);
+		assertTrue(region.isEmpty());
+	}
+
+	public void testOverlappingRectanglesAreMerged() {
+		DirtyRegion region = new DirtyRegion();
+		region.add(0, 0, 100, 100, WIDTH, HEIGHT);
+		region.add(50, 50, 150, 150, WIDTH, HEIGHT);
+		assertEquals(1, region.getCount());
+		assertRectangle(region, 0, 0, 0, 151, 151);
+	}
+
+	public void testDistantRectanglesAreKept() {
+		DirtyRegion region = new DirtyRegion();
+		region.add(10, 10, 20, 20, WIDTH, HEIGHT);
+		region.add(500, 500, 510, 510, WIDTH, HEIGHT);
+		assertEquals(2, region.getCount());
+	}
+
+	public void testMergedRectangleAbsorbsOthers() {
+		DirtyRegion region = new DirtyRegion();
+		region.add(100, 100, 110, 110, WIDTH, HEIGHT);
+		region.add(130, 130, 140, 140, WIDTH, HEIGHT);
+		assertEquals(2, region.getCount());
+
+		// merging with either rectangle makes it overlap the other one
+		region.add(105, 105, 135, 135, WIDTH, HEIGHT);
+		assertEquals(1, region.getCount());
+		assertRectangle(region, 0, 99, 99, 141, 141);
+	}
+
+	public void testRectangleCountIsBounded() {
+		DirtyRegion region = new DirtyRegion();
+		for (int i = 0; i < 17; i++) {
+			region.add(i * 50, 0, i * 50 + 10, 10, WIDTH, HEIGHT);
+		}
+		assertFalse(region.isFull());
+		assertEquals(16, region.getCount());
+
+		// every drawn rectangle is still covered
+		List<Rectangle> rectangles = region.getRectangles(WIDTH, HEIGHT);
+		for (int i = 0; i < 17; i++) {
+			boolean covered = false;
+			for (Rectangle r : rectangles) {
+				covered |= r.getX() <= i * 50 && r.getX() + r.getWidth() >= i * 50 + 10
+						&& r.getY() <= 0 && r.getY() + r.getHeight() >= 10;
+			}
+			assertTrue(covered);
+		}
+	}
+
+	public void testLargeAreaMakesRegionFull() {
+		DirtyRegion region = new DirtyRegion();
+		region.add(0, 0, 800, 800, WIDTH, HEIGHT);
+		assertTrue(region.isFull());
+		assertFalse(region.isEmpty());
+		assertEquals(0, region.getCount());
+
+		List<Rectangle> rectangles = region.getRectangles(WIDTH, HEIGHT);
+		assertEquals(1, rectangles.size());
+		assertEquals(WIDTH, rectangles.get(0).getWidth(), EPSILON);
+		assertEquals(HEIGHT, rectangles.get(0).getHeight(), EPSILON);
+
+		region.add(10, 10, 20, 20, WIDTH, HEIGHT);
+		assertEquals(0, region.getCount());
+		region.clear();
+		assertTrue(region.isEmpty());
+		assertFalse(region.isFull());
+	}
+
+	public void testSetFull() {
+		DirtyRegion region = new DirtyRegion();
+		region.add(10, 10, 20, 20, WIDTH, HEIGHT);
+		region.setFull();
+		assertTrue(region.isFull());
+		assertEquals(0, region.getCount());
+	}
+
+	private static void assertRectangle(DirtyRegion region, int index,
+			double left, double top, double right, double bottom) {
+		assertEquals(left, region.getLeft(index), EPSILON);
+		assertEquals(top, region.getTop(index), EPSILON);
+		assertEquals(right, region.getRight(index), EPSILON);
+		assertEquals(bottom, region.getBottom(index), EPSILON);
+	}
+}
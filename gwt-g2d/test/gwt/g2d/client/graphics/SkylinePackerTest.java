@@ -0,0 +1,87 @@
+package gwt.g2d.client.graphics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the placement of rectangles by {@link SkylinePacker}.
+ */
+public class SkylinePackerTest extends TestCase {
+
+	public void testRectanglesArePlacedBottomLeft() {
+		SkylinePacker packer = new SkylinePacker(100, 100);
+		assertPacked(packer, 60, 20, 0, 0);
+		assertPacked(packer, 40, 30, 60, 0);
+
+		// lower on top of the first rectangle than on top of the second
+		assertPacked(packer, 50, 10, 0, 20);
+		assertEquals(3, packer.fCount);
+	}
+
+	public void testRectangleSpanningSegmentsRestsOnHighest() {
+		SkylinePacker packer = new SkylinePacker(100, 100);
+		assertPacked(packer, 30, 10, 0, 0);
+		assertPacked(packer, 30, 40, 30, 0);
+		assertPacked(packer, 40, 20, 60, 0);
+		assertPacked(packer, 100, 10, 0, 40);
+		assertEquals(1, packer.fCount);
+	}
+
+	public void testSegmentsOfSameHeightAreMerged() {
+		SkylinePacker packer = new SkylinePacker(100, 100);
+		assertPacked(packer, 50, 10, 0, 0);
+		assertPacked(packer, 50, 10, 50, 0);
+		assertEquals(1, packer.fCount);
+		assertEquals(10, packer.fY[0]);
+		assertEquals(100, packer.fW[0]);
+	}
+
+	public void testRectangleThatDoesNotFit() {
+		SkylinePacker packer = new SkylinePacker(100, 100);
+		assertFalse(packer.pack(101, 10));
+		assertFalse(packer.pack(10, 101));
+		assertPacked(packer, 100, 100, 0, 0);
+		assertFalse(packer.pack(1, 1));
+	}
+
+	public void testRandomRectanglesDoNotOverlap() {
+		Random random = new Random(42);
+		SkylinePacker packer = new SkylinePacker(256, 256);
+		List<int[]> packed = new ArrayList<int[]>();
+		for (int i = 0; i < 500; i++) {
+			int width = 1 + random.nextInt(24), height = 1 + random.nextInt(24);
+			if (!packer.pack(width, height)) {
+				continue;
+			}
+			int[] rectangle = {packer.fPackedX, packer.fPackedY, width, height};
+			assertTrue(rectangle[0] >= 0 && rectangle[0] + width <= 256);
+			assertTrue(rectangle[1] >= 0 && rectangle[1] + height <= 256);
+			for (int[] other : packed) {
+				assertFalse(rectangle[0] < other[0] + other[2]
+						&& other[0] < rectangle[0] + width
+						&& rectangle[1] < other[1] + other[3]
+						&& other[1] < rectangle[1] + height);
+			}
+			packed.add(rectangle);
+		}
+		assertTrue(packed.size() > 100);
+
+		// the skyline still covers the whole width
+		int x = 0;
+		for (int i = 0; i < packer.fCount; i++) {
+			assertEquals(x, packer.fX[i]);
+			x += packer.fW[i];
+		}
+		assertEquals(256, x);
+	}
+
+	private static void assertPacked(SkylinePacker packer, int width, int height,
+			int x, int y) {
+		assertTrue(packer.pack(width, height));
+		assertEquals(x, packer.fPackedX);
+		assertEquals(y, packer.fPackedY);
+	}
+}
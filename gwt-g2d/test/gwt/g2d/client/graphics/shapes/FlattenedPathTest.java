@@ -0,0 +1,120 @@
+package gwt.g2d.client.graphics.shapes;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the hit testing of {@link FlattenedPath}: fill rules, open and
+ * closed subpaths, and strokes.
+ */
+public class FlattenedPathTest extends TestCase {
+	private static final double EPSILON = 1e-9;
+
+	public void testNonZeroFillsHoleWoundTheSameWay() {
+		FlattenedPath path = new FlattenedPath();
+		path.rect(0, 0, 10, 10);
+		path.rect(2, 2, 6, 6);
+		assertTrue(path.contains(5, 5.5, FillRule.NONZERO));
+		assertFalse(path.contains(5, 5.5, FillRule.EVEN_ODD));
+		assertTrue(path.contains(1, 5.5, FillRule.NONZERO));
+		assertTrue(path.contains(1, 5.5, FillRule.EVEN_ODD));
+		assertFalse(path.contains(11, 5.5, FillRule.NONZERO));
+	}
+
+	public void testHoleWoundTheOtherWay() {
+		FlattenedPath path = new FlattenedPath();
+		path.rect(0, 0, 10, 10);
+		path.moveTo(2, 2);
+		path.lineTo(2, 8);
+		path.lineTo(8, 8);
+		path.lineTo(8, 2);
+		path.closePath();
+		assertFalse(path.contains(5, 5.5, FillRule.NONZERO));
+		assertFalse(path.contains(5, 5.5, FillRule.EVEN_ODD));
+		assertTrue(path.contains(1, 5.5));
+	}
+
+	public void testOpenSubpathIsFilledAsClosed() {
+		FlattenedPath path = new FlattenedPath();
+		path.moveTo(0, 0);
+		path.lineTo(10, 0);
+		path.lineTo(10, 10);
+		assertTrue(path.contains(8, 2.5));
+		assertFalse(path.contains(2, 7.5));
+	}
+
+	public void testOpenSubpathIsStrokedWithoutClosingSegment() {
+		FlattenedPath open = new FlattenedPath();
+		open.moveTo(0, 0);
+		open.lineTo(10, 0);
+		open.lineTo(10, 10);
+		assertTrue(open.strokeContains(5, 0.5, 2));
+		assertTrue(open.strokeContains(10.5, 5, 2));
+		assertFalse(open.strokeContains(5, 5, 2));
+
+		FlattenedPath closed = new FlattenedPath();
+		closed.moveTo(0, 0);
+		closed.lineTo(10, 0);
+		closed.lineTo(10, 10);
+		closed.closePath();
+		assertTrue(closed.strokeContains(5, 5, 2));
+	}
+
+	public void testStrokeWidth() {
+		FlattenedPath path = new FlattenedPath();
+		path.moveTo(0, 0);
+		path.lineTo(10, 0);
+		assertTrue(path.strokeContains(5, 1, 2));
+		assertFalse(path.strokeContains(5, 1, 1.9));
+		assertTrue(path.strokeContains(5, -1, 2));
+
+		// the ends are measured to the end points
+		assertTrue(path.strokeContains(10.5, 0.5, 2));
+		assertFalse(path.strokeContains(11, 1, 2));
+		assertFalse(path.strokeContains(5, 0.5, 0));
+	}
+
+	public void testSpans() {
+		FlattenedPath path = new FlattenedPath();
+		path.rect(0, 0, 10, 10);
+		path.rect(2, 2, 6, 6);
+		path.rect(20, 0, 5, 10);
+		assertSpans(path.getSpans(5.5, FillRule.NONZERO), 0, 10, 20, 25);
+		assertSpans(path.getSpans(5.5, FillRule.EVEN_ODD), 0, 2, 8, 10, 20, 25);
+		assertSpans(path.getSpans(11, FillRule.NONZERO));
+	}
+
+	public void testCircleIsFlattenedWithinTolerance() {
+		FlattenedPath path = new FlattenedPath(0.01);
+		path.arc(0, 0, 10, 0, 2 * Math.PI, false);
+		path.closePath();
+		assertTrue(path.contains(0, 0));
+		assertTrue(path.contains(9.9, 0.05));
+		assertFalse(path.contains(9, 9));
+		assertTrue(path.strokeContains(0, 10.4, 1));
+		assertFalse(path.strokeContains(0, 0, 1));
+		assertEquals(-10, path.getBounds().getX(), 0.01);
+		assertEquals(20, path.getBounds().getWidth(), 0.01);
+	}
+
+	public void testTransformationsApplyToPoints() {
+		FlattenedPath path = new FlattenedPath();
+		path.translate(100, 0);
+		path.scale(2, 2);
+		path.rect(0, 0, 5, 5);
+		assertTrue(path.contains(105, 5.5));
+		assertFalse(path.contains(5, 5.5));
+		assertEquals(100, path.getBounds().getX(), EPSILON);
+		assertEquals(10, path.getBounds().getWidth(), EPSILON);
+
+		path.clear();
+		assertTrue(path.isEmpty());
+		assertFalse(path.contains(105, 5.5));
+	}
+
+	private static void assertSpans(double[] spans, double... expected) {
+		assertEquals(expected.length, spans.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], spans[i], EPSILON);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package gwt.g2d.client.graphics.shapes;
+
+import gwt.g2d.client.graphics.visitor.RotateVisitor;
+import gwt.g2d.client.graphics.visitor.ScaleVisitor;
+import gwt.g2d.client.graphics.visitor.TranslateVisitor;
+import gwt.g2d.shared.math.Rectangle;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the bounds and the transformation that the transform visitors of a
+ * shape leave in a {@link PathBounds}.
+ */
+public class PathBoundsTest extends TestCase {
+	private static final double EPSILON = 1e-9;
+
+	public void testVisitorTransformations() {
+		PathBounds bounds = new PathBounds();
+		new ShapeBuilder()
+				.append(new TranslateVisitor(10, 20))
+				.append(new ScaleVisitor(2, 2))
+				.drawRect(0, 0, 5, 5)
+				.build()
+				.appendPath(bounds);
+		assertTransform(bounds.getTransform(), 2, 0, 0, 2, 10, 20);
+		assertBounds(bounds.getBounds(), 10, 20, 10, 10);
+	}
+
+	public void testRotation() {
+		PathBounds bounds = new PathBounds();
+		new ShapeBuilder()
+				.append(new ScaleVisitor(2, 3))
+				.append(new RotateVisitor(Math.PI / 2))
+				.drawRect(0, 0, 1, 1)
+				.build()
+				.appendPath(bounds);
+		assertTransform(bounds.getTransform(), 0, 3, -2, 0, 0, 0);
+		assertBounds(bounds.getBounds(), -2, 0, 2, 3);
+	}
+
+	public void testSaveAndRestore() {
+		PathBounds bounds = new PathBounds();
+		bounds.save();
+		bounds.translate(100, 0);
+		bounds.rect(0, 0, 10, 10);
+		bounds.restore();
+		bounds.rect(0, 0, 10, 10);
+		assertTransform(bounds.getTransform(), 1, 0, 0, 1, 0, 0);
+		assertBounds(bounds.getBounds(), 0, 0, 110, 10);
+	}
+
+	public void testCurveExtrema() {
+		PathBounds bounds = new PathBounds();
+		bounds.moveTo(0, 0);
+		bounds.quadraticCurveTo(5, 10, 10, 0);
+		assertBounds(bounds.getBounds(), 0, 0, 10, 5);
+
+		bounds.clear();
+		assertTrue(bounds.isEmpty());
+		bounds.arc(0, 0, 1, 0, Math.PI, false);
+		assertBounds(bounds.getBounds(), -1, 0, 2, 1);
+	}
+
+	private static void assertTransform(double[] matrix, double m11, double m12,
+			double m21, double m22, double dx, double dy) {
+		assertEquals(m11, matrix[0], EPSILON);
+		assertEquals(m12, matrix[1], EPSILON);
+		assertEquals(m21, matrix[2], EPSILON);
+		assertEquals(m22, matrix[3], EPSILON);
+		assertEquals(dx, matrix[4], EPSILON);
+		assertEquals(dy, matrix[5], EPSILON);
+	}
+
+	private static void assertBounds(Rectangle bounds, double x, double y,
+			double width, double height) {
+		assertEquals(x, bounds.getX(), EPSILON);
+		assertEquals(y, bounds.getY(), EPSILON);
+		assertEquals(width, bounds.getWidth(), EPSILON);
+		assertEquals(height, bounds.getHeight(), EPSILON);
+	}
+}
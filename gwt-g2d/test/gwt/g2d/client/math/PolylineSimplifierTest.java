@@ -0,0 +1,110 @@
+package gwt.g2d.client.math;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the Douglas-Peucker and Visvalingam-Whyatt simplification of
+ * {@link PolylineSimplifier}.
+ */
+public class PolylineSimplifierTest extends TestCase {
+	private static final double EPSILON = 1e-9;
+
+	public void testShortPolylinesAreCopied() {
+		double[] points = {0, 0, 10, 5};
+		double[] simplified = PolylineSimplifier.douglasPeucker(points, 100);
+		assertNotSame(points, simplified);
+		assertPoints(simplified, 0, 0, 10, 5);
+		assertPoints(PolylineSimplifier.visvalingam(points, 100), 0, 0, 10, 5);
+		assertPoints(PolylineSimplifier.douglasPeucker(new double[0], 1));
+	}
+
+	public void testDouglasPeuckerRemovesCollinearPoints() {
+		double[] points = {0, 0, 1, 0, 2, 0, 3, 0};
+		assertPoints(PolylineSimplifier.douglasPeucker(points, 0), 0, 0, 3, 0);
+	}
+
+	public void testDouglasPeuckerTolerance() {
+		double[] points = {0, 0, 5, 1, 10, 0};
+		assertPoints(PolylineSimplifier.douglasPeucker(points, 1), 0, 0, 10, 0);
+		assertPoints(PolylineSimplifier.douglasPeucker(points, 0.9),
+				0, 0, 5, 1, 10, 0);
+	}
+
+	public void testDouglasPeuckerKeepsRemovedPointsWithinTolerance() {
+		int count = 200;
+		double[] points = new double[count * 2];
+		for (int i = 0; i < count; i++) {
+			points[i * 2] = i;
+			points[i * 2 + 1] = 10 * Math.sin(i / 10.0) + (i % 3) * 0.2;
+		}
+		double tolerance = 0.5;
+		double[] simplified = PolylineSimplifier.douglasPeucker(points, tolerance);
+		assertTrue(simplified.length < points.length / 2);
+		assertEquals(0, simplified[0], EPSILON);
+		assertEquals(count - 1, simplified[simplified.length - 2], EPSILON);
+		for (int i = 0; i < count; i++) {
+			assertTrue(distance(simplified, points[i * 2], points[i * 2 + 1])
+					<= tolerance + EPSILON);
+		}
+	}
+
+	public void testDouglasPeuckerWithManyPoints() {
+		// a zigzag keeps every point, splitting deeper than a recursion could
+		int count = 5000;
+		double[] points = new double[count * 2];
+		for (int i = 0; i < count; i++) {
+			points[i * 2] = i;
+			points[i * 2 + 1] = i % 2;
+		}
+		assertEquals(points.length,
+				PolylineSimplifier.douglasPeucker(points, 0.1).length);
+	}
+
+	public void testOffsetAndCount() {
+		double[] points = {99, 99, 0, 0, 1, 0, 2, 0, 99, 99};
+		assertPoints(PolylineSimplifier.douglasPeucker(points, 2, 3, 0.1),
+				0, 0, 2, 0);
+		assertPoints(PolylineSimplifier.visvalingam(points, 2, 3, 0.1),
+				0, 0, 2, 0);
+	}
+
+	public void testVisvalingamArea() {
+		// the middle point spans a triangle of area 1
+		double[] points = {0, 0, 1, 1, 2, 0};
+		assertPoints(PolylineSimplifier.visvalingam(points, 1), 0, 0, 1, 1, 2, 0);
+		assertPoints(PolylineSimplifier.visvalingam(points, 1.01), 0, 0, 2, 0);
+	}
+
+	public void testVisvalingamRecomputesNeighbors() {
+		// removing (1, 0.1) grows the triangle of (2, 0) from 1.05 to 2
+		double[] points = {0, 0, 1, 0.1, 2, 0, 3, 2, 5, 0};
+		assertPoints(PolylineSimplifier.visvalingam(points, 1.5),
+				0, 0, 2, 0, 3, 2, 5, 0);
+
+		// then removing (2, 0) grows the triangle of (3, 2) from 3 to 5
+		assertPoints(PolylineSimplifier.visvalingam(points, 4), 0, 0, 3, 2, 5, 0);
+		assertPoints(PolylineSimplifier.visvalingam(points, 6), 0, 0, 5, 0);
+	}
+
+	/**
+	 * Gets the distance of the point (x, y) from the given polyline.
+	 */
+	private static double distance(double[] polyline, double x, double y) {
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = 0; i + 3 < polyline.length; i += 2) {
+			double x1 = polyline[i], y1 = polyline[i + 1];
+			double dx = polyline[i + 2] - x1, dy = polyline[i + 3] - y1;
+			double t = Math.max(0, Math.min(1,
+					((x - x1) * dx + (y - y1) * dy) / (dx * dx + dy * dy)));
+			min = Math.min(min, Math.hypot(x1 + t * dx - x, y1 + t * dy - y));
+		}
+		return min;
+	}
+
+	private static void assertPoints(double[] points, double... expected) {
+		assertEquals(expected.length, points.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], points[i], EPSILON);
+		}
+	}
+}
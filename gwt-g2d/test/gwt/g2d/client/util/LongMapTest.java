@@ -0,0 +1,118 @@
+package gwt.g2d.client.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link LongMap} against a {@link HashMap}, including removals that
+ * shift the entries of a probe sequence.
+ */
+public class LongMapTest extends TestCase {
+
+	public void testPutGetAndReplace() {
+		LongMap<String> map = new LongMap<String>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(1, "a"));
+		assertNull(map.put(-1, "b"));
+		assertNull(map.put(Long.MAX_VALUE, "c"));
+		assertNull(map.put(Long.MIN_VALUE, "d"));
+		assertEquals(4, map.size());
+		assertEquals("a", map.get(1));
+		assertEquals("b", map.get(-1));
+		assertEquals("c", map.get(Long.MAX_VALUE));
+		assertEquals("d", map.get(Long.MIN_VALUE));
+		assertNull(map.get(2));
+
+		assertEquals("a", map.put(1, "e"));
+		assertEquals("e", map.get(1));
+		assertEquals(4, map.size());
+	}
+
+	public void testNullValue() {
+		LongMap<String> map = new LongMap<String>();
+		map.put(7, null);
+		assertTrue(map.containsKey(7));
+		assertNull(map.get(7));
+		assertFalse(map.containsKey(8));
+		assertEquals(1, map.size());
+	}
+
+	public void testGrowth() {
+		LongMap<Long> map = new LongMap<Long>(4);
+		for (long key = 0; key < 1000; key++) {
+			map.put(key << 32, key);
+		}
+		assertEquals(1000, map.size());
+		assertTrue(map.capacity() * 3 >= map.size() * 4);
+		for (long key = 0; key < 1000; key++) {
+			assertEquals(Long.valueOf(key), map.get(key << 32));
+		}
+	}
+
+	public void testRemove() {
+		LongMap<String> map = new LongMap<String>();
+		map.put(1, "a");
+		map.put(2, "b");
+		assertEquals("a", map.remove(1));
+		assertNull(map.remove(1));
+		assertFalse(map.containsKey(1));
+		assertEquals("b", map.get(2));
+		assertEquals(1, map.size());
+	}
+
+	public void testRandomOperationsMatchHashMap() {
+		// few distinct keys in a small table make long probe sequences
+		Random random = new Random(42);
+		LongMap<Integer> map = new LongMap<Integer>();
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		for (int i = 0; i < 20000; i++) {
+			long key = random.nextInt(64) * 1024L;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), map.remove(key));
+			} else {
+				assertEquals(expected.put(key, i), map.put(key, i));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (long key = 0; key < 64 * 1024L; key += 1024) {
+			assertEquals(expected.get(key), map.get(key));
+			assertEquals(expected.containsKey(key), map.containsKey(key));
+		}
+	}
+
+	public void testIterationThroughSlots() {
+		LongMap<String> map = new LongMap<String>();
+		Map<Long, String> expected = new HashMap<Long, String>();
+		for (long key = 0; key < 50; key++) {
+			map.put(key * 31, "v" + key);
+			expected.put(key * 31, "v" + key);
+		}
+		map.remove(0);
+		expected.remove(0L);
+
+		Map<Long, String> found = new HashMap<Long, String>();
+		for (int slot = 0; slot < map.capacity(); slot++) {
+			if (map.isOccupied(slot)) {
+				found.put(map.keyAt(slot), map.valueAt(slot));
+			}
+		}
+		assertEquals(expected, found);
+	}
+
+	public void testClear() {
+		LongMap<String> map = new LongMap<String>();
+		map.put(1, "a");
+		map.put(2, "b");
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertFalse(map.containsKey(1));
+		for (int slot = 0; slot < map.capacity(); slot++) {
+			assertFalse(map.isOccupied(slot));
+		}
+		map.put(1, "c");
+		assertEquals("c", map.get(1));
+	}
+}